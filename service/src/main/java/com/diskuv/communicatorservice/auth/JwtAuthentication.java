@@ -21,8 +21,10 @@ import com.auth0.jwt.exceptions.JWTDecodeException;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.auth0.jwt.interfaces.JWTVerifier;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.HashCode;
 import com.google.common.hash.Hashing;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,12 +38,33 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Enumeration;
 import java.util.Map;
+import java.util.Optional;
 
+@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
 public class JwtAuthentication {
-  private final Logger log = LoggerFactory.getLogger(getClass());
+  private static final Logger log = LoggerFactory.getLogger(JwtAuthentication.class);
   private final Map<String, JWTVerifier> jwtVerifiers;
+  private final Optional<VerifiedBearerTokenCache> verifiedBearerTokenCache;
 
   public JwtAuthentication(JwtKeysConfiguration jwtKeysConfiguration) throws IOException, JwkException {
+    this(jwtKeysConfiguration, Optional.empty());
+  }
+
+  /**
+   * @param verifiedBearerTokenCache if present, remembers the tokens that have been verified so
+   *     that a token reused for its whole lifetime is only verified once
+   */
+  public JwtAuthentication(JwtKeysConfiguration jwtKeysConfiguration, Optional<VerifiedBearerTokenCache> verifiedBearerTokenCache) throws IOException, JwkException {
+    this(loadJwtVerifiers(jwtKeysConfiguration), verifiedBearerTokenCache);
+  }
+
+  @VisibleForTesting
+  JwtAuthentication(Map<String, JWTVerifier> jwtVerifiers, Optional<VerifiedBearerTokenCache> verifiedBearerTokenCache) {
+    this.jwtVerifiers             = jwtVerifiers;
+    this.verifiedBearerTokenCache = verifiedBearerTokenCache;
+  }
+
+  private static Map<String, JWTVerifier> loadJwtVerifiers(JwtKeysConfiguration jwtKeysConfiguration) throws IOException, JwkException {
     ImmutableMap.Builder<String, JWTVerifier> jwtVerifierBuilder = ImmutableMap.builder();
 
     // Construct the url hash
@@ -65,8 +88,9 @@ public class JwtAuthentication {
       }
     }
 
-    jwtVerifiers = jwtVerifierBuilder.build();
+    Map<String, JWTVerifier> jwtVerifiers = jwtVerifierBuilder.build();
     Preconditions.checkArgument(!jwtVerifiers.isEmpty(), "You have no JSON Web Key Sets, which were expected in the classpath at %s. Use configurator's generate-code-config and then check in the hashed files", jwksJsonClasspathResource);
+    return jwtVerifiers;
   }
 
   /**
@@ -84,8 +108,20 @@ public class JwtAuthentication {
    *
    * <p>* The audience ("aud") specified in the payload matches the app client ID created in the
    * Amazon Cognito user pool.
+   *
+   * <p>A token that has already been verified, and has not yet expired, is taken from the
+   * verified bearer token cache if there is one.
    */
   public @Nonnull String verifyBearerTokenAndGetEmailAddress(String bearerToken) throws IllegalArgumentException {
+    HashCode cacheKey = null;
+    if (verifiedBearerTokenCache.isPresent() && bearerToken != null) {
+      cacheKey = VerifiedBearerTokenCache.getKey(bearerToken);
+      Optional<String> cachedEmail = verifiedBearerTokenCache.get().get(cacheKey);
+      if (cachedEmail.isPresent()) {
+        return cachedEmail.get();
+      }
+    }
+
     // 1. search for the key with a key ID that matches the key ID of the JWT
     DecodedJWT unverifiedJwt;
     try {
@@ -114,6 +150,10 @@ public class JwtAuthentication {
     Preconditions.checkArgument(
         Boolean.TRUE.equals(jwt.getClaim("email_verified").asBoolean()),
         "The email address was not claimed by Cognito as a true 'email_verified'");
+
+    if (cacheKey != null) {
+      verifiedBearerTokenCache.get().put(cacheKey, jwt.getExpiresAt(), email);
+    }
     return email;
   }
 }
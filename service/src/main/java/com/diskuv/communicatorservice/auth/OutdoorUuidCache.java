@@ -0,0 +1,87 @@
+// Copyright 2021 Diskuv, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.diskuv.communicatorservice.auth;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.whispersystems.textsecuregcm.util.Constants;
+import org.whispersystems.textsecuregcm.util.DiskuvUuidUtil;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * A bounded cache of the outdoor UUIDs of recently authenticated email addresses.
+ *
+ * <p>Every authenticated request derives the outdoor UUID of its email address, which is a SHA-224
+ * hash of the address. Only the UUIDs of valid email addresses are cached, so invalid addresses are
+ * still rejected by {@link DiskuvUuidUtil#uuidForOutdoorEmailAddress(String)}.
+ */
+public class OutdoorUuidCache {
+
+  private final MetricRegistry metricRegistry = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private final Meter          hitMeter       = metricRegistry.meter(name(OutdoorUuidCache.class, "hit"));
+  private final Meter          missMeter      = metricRegistry.meter(name(OutdoorUuidCache.class, "miss"));
+
+  private final Cache<String, UUID> cache;
+
+  public OutdoorUuidCache(long maximumSize) {
+    this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+
+    metricRegistry.gauge(name(OutdoorUuidCache.class, "size"), () -> (Gauge<Long>) cache::size);
+  }
+
+  /**
+   * @return the UUID that is valid for the user outside of a sanctuary
+   * @throws IllegalArgumentException if the email address is not valid
+   */
+  public UUID uuidForOutdoorEmailAddress(String emailAddress) throws IllegalArgumentException {
+    UUID uuid = emailAddress != null ? cache.getIfPresent(emailAddress) : null;
+
+    if (uuid != null) {
+      hitMeter.mark();
+      return uuid;
+    }
+
+    missMeter.mark();
+    uuid = DiskuvUuidUtil.uuidForOutdoorEmailAddress(emailAddress);
+    cache.put(emailAddress, uuid);
+    return uuid;
+  }
+
+  /**
+   * @return the outdoor UUID of the email address, taken from the cache if there is one
+   * @throws IllegalArgumentException if the email address is not valid
+   */
+  public static UUID uuidForOutdoorEmailAddress(Optional<OutdoorUuidCache> outdoorUuidCache, String emailAddress) throws IllegalArgumentException {
+    return outdoorUuidCache.isPresent()
+        ? outdoorUuidCache.get().uuidForOutdoorEmailAddress(emailAddress)
+        : DiskuvUuidUtil.uuidForOutdoorEmailAddress(emailAddress);
+  }
+
+  /**
+   * @return the number of UUID derivations that the cache has avoided
+   */
+  @VisibleForTesting
+  long getHitCount() {
+    return hitMeter.getCount();
+  }
+}
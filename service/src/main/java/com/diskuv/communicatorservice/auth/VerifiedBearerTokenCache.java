@@ -0,0 +1,108 @@
+// Copyright 2021 Diskuv, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.diskuv.communicatorservice.auth;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import org.whispersystems.textsecuregcm.util.Constants;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.Date;
+import java.util.Optional;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * A bounded cache of the email addresses of bearer tokens that {@link JwtAuthentication} has
+ * already verified.
+ *
+ * <p>Clients send the same bearer token with every request until it expires, and verifying it is
+ * an RSA signature check. Entries are keyed by a SHA-256 hash of the token, so the tokens
+ * themselves are not kept, and an entry is only found for the exact token that was verified. An
+ * entry expires at the token's expiry time, without the leeway the verifier allows. Tokens without
+ * an expiry time are never cached.
+ */
+public class VerifiedBearerTokenCache {
+
+  private static class Entry {
+    private final String emailAddress;
+    private final long   expiresAt;
+
+    private Entry(String emailAddress, long expiresAt) {
+      this.emailAddress = emailAddress;
+      this.expiresAt    = expiresAt;
+    }
+  }
+
+  private final MetricRegistry metricRegistry = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private final Meter          hitMeter       = metricRegistry.meter(name(VerifiedBearerTokenCache.class, "hit"));
+  private final Meter          missMeter      = metricRegistry.meter(name(VerifiedBearerTokenCache.class, "miss"));
+
+  private final Cache<HashCode, Entry> cache;
+  private final Clock                  clock;
+
+  public VerifiedBearerTokenCache(long maximumSize) {
+    this(maximumSize, Clock.systemUTC());
+  }
+
+  @VisibleForTesting
+  VerifiedBearerTokenCache(long maximumSize, Clock clock) {
+    this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    this.clock = clock;
+
+    metricRegistry.gauge(name(VerifiedBearerTokenCache.class, "size"), () -> (Gauge<Long>) cache::size);
+  }
+
+  public static HashCode getKey(String bearerToken) {
+    return Hashing.sha256().hashString(bearerToken, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return the email address of the verified token, or empty if the token must be verified
+   */
+  public Optional<String> get(HashCode key) {
+    Entry entry = cache.getIfPresent(key);
+
+    if (entry == null || entry.expiresAt <= clock.millis()) {
+      if (entry != null) cache.invalidate(key);
+      missMeter.mark();
+      return Optional.empty();
+    }
+
+    hitMeter.mark();
+    return Optional.of(entry.emailAddress);
+  }
+
+  public void put(HashCode key, Date expiresAt, String emailAddress) {
+    if (expiresAt != null && expiresAt.getTime() > clock.millis()) {
+      cache.put(key, new Entry(emailAddress, expiresAt.getTime()));
+    }
+  }
+
+  /**
+   * @return the number of RSA verifications that the cache has avoided
+   */
+  @VisibleForTesting
+  long getHitCount() {
+    return hitMeter.getCount();
+  }
+}
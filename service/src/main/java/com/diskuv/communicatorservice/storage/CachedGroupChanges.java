@@ -22,6 +22,7 @@ import java.util.List;
 class CachedGroupChanges {
   private final List<GroupChanges.GroupChangeState> groupChanges;
   private Integer lastGroupVersion;
+  private long serializedBytes;
 
   public CachedGroupChanges() {
     this.groupChanges = new ArrayList<>();
@@ -31,12 +32,18 @@ class CachedGroupChanges {
     return lastGroupVersion;
   }
 
+  /** The total serialized size of the group changes. */
+  public long getSerializedBytes() {
+    return serializedBytes;
+  }
+
   public List<GroupChanges.GroupChangeState> getGroupChanges() {
     return groupChanges;
   }
 
   public void add(int groupVersion, GroupChanges.GroupChangeState changeState) {
     lastGroupVersion = groupVersion;
+    serializedBytes += changeState.getSerializedSize();
     groupChanges.add(changeState);
   }
 }
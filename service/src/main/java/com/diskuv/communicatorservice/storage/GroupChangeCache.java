@@ -15,6 +15,8 @@ package com.diskuv.communicatorservice.storage;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
 
 public interface GroupChangeCache {
   int getSuggestedNumberOfCacheCheckingThreads();
@@ -22,5 +24,27 @@ public interface GroupChangeCache {
   @Nullable
   byte[] getValueIfPresent(@Nonnull byte[] keyBytes);
 
+  /**
+   * Look up several keys at once.
+   *
+   * <p>The default implementation calls {@link #getValueIfPresent(byte[])} one key at a time and
+   * stops at the first absent value, which is all that callers reading a contiguous run of group
+   * versions can use. Implementations backed by a remote store should override this to fetch all
+   * the keys in as few round trips as possible.
+   *
+   * @return a list with one entry for each key, in the same order as the keys, where an entry is
+   *     null if its value is absent (or was not looked up)
+   */
+  default List<byte[]> getValuesIfPresent(@Nonnull List<byte[]> keysBytes) {
+    List<byte[]> values = new ArrayList<>(keysBytes.size());
+    boolean missed = false;
+    for (byte[] keyBytes : keysBytes) {
+      byte[] valueBytes = missed ? null : getValueIfPresent(keyBytes);
+      missed = valueBytes == null;
+      values.add(valueBytes);
+    }
+    return values;
+  }
+
   void putValue(@Nonnull byte[] keyBytes, @Nonnull byte[] valueBytes);
 }
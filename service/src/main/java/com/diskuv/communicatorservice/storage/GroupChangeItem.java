@@ -44,11 +44,15 @@ public class GroupChangeItem {
   static final String ATTRIBUTE_GROUP_VERSION = "groupVersion";
   static final String ATTRIBUTE_GROUP_BYTES = "groupBytes";
   static final String ATTRIBUTE_GROUP_CHANGE_BYTES = "groupChangeBytes";
+  static final String ATTRIBUTE_GROUP_DELTA_BYTES = "groupDeltaBytes";
+  static final String ATTRIBUTE_SNAPSHOT_VERSION = "snapshotVersion";
 
   private byte[] groupId;
   private int groupVersion;
   private byte[] groupBytes;
   private byte[] groupChangeBytes;
+  private byte[] groupDeltaBytes;
+  private Integer snapshotVersion;
 
   @DynamoDbPartitionKey
   @DynamoDbAttribute(ATTRIBUTE_GROUP_ID)
@@ -87,4 +91,31 @@ public class GroupChangeItem {
   public void setGroupChangeBytes(byte[] groupChangeBytes) {
     this.groupChangeBytes = groupChangeBytes;
   }
+
+  /**
+   * The group state as a {@link GroupStateDeltas delta} from the previous version's state. Only
+   * set when {@link #getGroupBytes()} is not; items written before deltas existed always have the
+   * full group state.
+   */
+  @DynamoDbAttribute(ATTRIBUTE_GROUP_DELTA_BYTES)
+  public byte[] getGroupDeltaBytes() {
+    return groupDeltaBytes;
+  }
+
+  public void setGroupDeltaBytes(byte[] groupDeltaBytes) {
+    this.groupDeltaBytes = groupDeltaBytes;
+  }
+
+  /**
+   * For delta items, the version at or before which a full group state is guaranteed to be stored,
+   * so readers know where to start reconstructing from.
+   */
+  @DynamoDbAttribute(ATTRIBUTE_SNAPSHOT_VERSION)
+  public Integer getSnapshotVersion() {
+    return snapshotVersion;
+  }
+
+  public void setSnapshotVersion(Integer snapshotVersion) {
+    this.snapshotVersion = snapshotVersion;
+  }
 }
@@ -17,10 +17,14 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
 import org.signal.storageservice.storage.protos.groups.Group;
 import org.signal.storageservice.storage.protos.groups.GroupChange;
 import org.signal.storageservice.storage.protos.groups.GroupChanges;
 import org.signal.zkgroup.groups.GroupIdentifier;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.core.SdkBytes;
@@ -28,10 +32,11 @@ import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncTable;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
 import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
-import software.amazon.awssdk.enhanced.dynamodb.model.PagePublisher;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
 import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
+import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.utils.ThreadFactoryBuilder;
 
 import javax.annotation.Nullable;
@@ -41,10 +46,10 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
+import static com.codahale.metrics.MetricRegistry.name;
 import static com.diskuv.communicatorservice.storage.DaoCommons.checkIsNotConditionalFailure;
 import static com.diskuv.communicatorservice.storage.GroupChangeItem.GROUP_LOG_TABLE_SCHEMA;
 
@@ -54,18 +59,54 @@ import static com.diskuv.communicatorservice.storage.GroupChangeItem.GROUP_LOG_T
  * <p>Manages a cache of the immutable group logs if you supply a {@link GroupChangeCache} in the
  * constructor
  *
+ * <p>With a snapshot interval greater than one, the full group state is only stored for every
+ * N-th version (and whenever a delta would be too large or could not reproduce the state exactly);
+ * the other versions store a {@link GroupStateDeltas delta} from the previous version's state.
+ * Readers always get full group states: they are reconstructed from the nearest earlier snapshot,
+ * or from the last state already found in the cache. Items written with an interval of one (the
+ * default, and the only format before deltas existed) are all snapshots. A delta is only written
+ * when the item of the previous version is already in the log, so a change record whose append
+ * failed is followed by a snapshot rather than by deltas that could never be reconstructed.
+ *
  * @author Jonah Beckford
  */
 public class GroupLogDao {
   private static final Logger                              LOGGER = LoggerFactory.getLogger(GroupLogDao.class);
+
+  /** A delta is only stored if it is at most this percentage of the size of the full state. */
+  private static final int MAXIMUM_DELTA_PERCENT_OF_SNAPSHOT = 50;
+
+  private static final DistributionSummary SNAPSHOT_BYTES_WRITTEN =
+      Metrics.summary(name(GroupLogDao.class, "bytesWritten"), "kind", "snapshot");
+  private static final DistributionSummary DELTA_BYTES_WRITTEN =
+      Metrics.summary(name(GroupLogDao.class, "bytesWritten"), "kind", "delta");
+  private static final DistributionSummary BYTES_READ =
+      Metrics.summary(name(GroupLogDao.class, "bytesRead"));
+
+  private final        DynamoDbAsyncClient                 asyncClient;
   private final        DynamoDbAsyncTable<GroupChangeItem> table;
   private final @Nullable GroupChangeCache cache;
   private final @Nullable Executor executorCacheCheck;
+  private final int snapshotInterval;
 
   public GroupLogDao(
       DynamoDbAsyncClient asyncClient, String tableName, Optional<GroupChangeCache> cache) {
+    this(asyncClient, tableName, cache, 1);
+  }
+
+  /**
+   * @param snapshotInterval store the full group state at least every this many versions; 1 stores
+   *     it for every version
+   */
+  public GroupLogDao(
+      DynamoDbAsyncClient asyncClient,
+      String tableName,
+      Optional<GroupChangeCache> cache,
+      int snapshotInterval) {
     Preconditions.checkArgument(asyncClient != null);
+    Preconditions.checkArgument(snapshotInterval >= 1);
 
+    this.asyncClient = asyncClient;
     DynamoDbEnhancedAsyncClient enhancedAsyncClient =
         DynamoDbEnhancedAsyncClient.builder().dynamoDbClient(asyncClient).build();
     this.table = enhancedAsyncClient.table(tableName, GROUP_LOG_TABLE_SCHEMA);
@@ -81,6 +122,7 @@ public class GroupLogDao {
                             .daemonThreads(true)
                             .build()))
             .orElse(null);
+    this.snapshotInterval = snapshotInterval;
   }
 
   @VisibleForTesting
@@ -95,47 +137,137 @@ public class GroupLogDao {
    */
   public CompletableFuture<Boolean> append(
       ByteString groupId, int version, GroupChange groupChange, Group group) {
+    return append(groupId, version, groupChange, group, null);
+  }
+
+  /**
+   * Append a group change within DDB, storing the group state as a delta from {@code
+   * previousGroup} when the snapshot interval allows it.
+   *
+   * @param previousGroup the group state of version {@code version - 1}, if known
+   * @return True if the group change was appended, or false if the group change already existed.
+   */
+  public CompletableFuture<Boolean> append(
+      ByteString groupId,
+      int version,
+      GroupChange groupChange,
+      Group group,
+      @Nullable Group previousGroup) {
+    return prepareAppendRequest(groupId, version, groupChange, group, previousGroup)
+        .thenCompose(
+            request -> checkIsNotConditionalFailure(table.putItem(request), "group change"));
+  }
+
+  /**
+   * The conditional put that appends a group change. Also used by {@link GroupsDao} to append
+   * within a transaction.
+   *
+   * <p>The state is only stored as a delta from {@code previousGroup} if the item of the previous
+   * version is in the log. Without atomic change records a group can be updated while the append
+   * of its change record fails, and a delta following that gap could not be reconstructed.
+   */
+  CompletableFuture<PutItemEnhancedRequest<GroupChangeItem>> prepareAppendRequest(
+      ByteString groupId,
+      int version,
+      GroupChange groupChange,
+      Group group,
+      @Nullable Group previousGroup) {
+    Preconditions.checkArgument(groupId != null);
+    if (!isDeltaCandidate(group, previousGroup, version)) {
+      return CompletableFuture.completedFuture(
+          toAppendRequest(groupId, version, groupChange, group, null));
+    }
+    return isAppended(groupId, version - 1)
+        .thenApply(
+            previousAppended ->
+                toAppendRequest(
+                    groupId, version, groupChange, group, previousAppended ? previousGroup : null));
+  }
+
+  /**
+   * Whether the item of the version is in the log. The read is eventually consistent: missing an
+   * item that was just appended only costs a snapshot where a delta would have done.
+   */
+  private CompletableFuture<Boolean> isAppended(ByteString groupId, int version) {
+    return asyncClient
+        .getItem(
+            GetItemRequest.builder()
+                .tableName(table.tableName())
+                .key(getKey(groupId, version).primaryKeyMap(GROUP_LOG_TABLE_SCHEMA))
+                .projectionExpression(GroupChangeItem.ATTRIBUTE_GROUP_VERSION)
+                .build())
+        .thenApply(getItemResponse -> getItemResponse.hasItem() && !getItemResponse.item().isEmpty());
+  }
+
+  private PutItemEnhancedRequest<GroupChangeItem> toAppendRequest(
+      ByteString groupId,
+      int version,
+      GroupChange groupChange,
+      Group group,
+      @Nullable Group previousGroup) {
     Preconditions.checkArgument(groupId != null);
     Preconditions.checkArgument(version >= 0);
     Preconditions.checkArgument(groupChange != null);
     Preconditions.checkArgument(group != null);
 
-    GroupChangeItem item = toGroupChangeItem(groupId, group, groupChange, version);
-
-    PutItemEnhancedRequest<GroupChangeItem> request =
-        PutItemEnhancedRequest.builder(GroupChangeItem.class)
-            .item(item)
-            .conditionExpression(
-                Expression.builder()
-                    .expression(
-                        String.format(
-                            "attribute_not_exists(%s)", GroupChangeItem.ATTRIBUTE_GROUP_VERSION))
-                    .build())
-            .build();
-    return checkIsNotConditionalFailure(table.putItem(request), "group change");
+    GroupChangeItem item = toGroupChangeItem(groupId, group, previousGroup, groupChange, version);
+    if (item.getGroupDeltaBytes() != null) {
+      DELTA_BYTES_WRITTEN.record(getStoredBytes(item));
+    } else {
+      SNAPSHOT_BYTES_WRITTEN.record(getStoredBytes(item));
+    }
+
+    return PutItemEnhancedRequest.builder(GroupChangeItem.class)
+        .item(item)
+        .conditionExpression(
+            Expression.builder()
+                .expression(
+                    String.format(
+                        "attribute_not_exists(%s)", GroupChangeItem.ATTRIBUTE_GROUP_VERSION))
+                .build())
+        .build();
   }
 
   /** Gets a list of group changes from DDB. */
   public CompletableFuture<List<GroupChanges.GroupChangeState>> getRecordsFromVersion(
       ByteString groupId, int fromVersionInclusive, int toVersionExclusive) {
+    return getRecordsFromVersion(groupId, fromVersionInclusive, toVersionExclusive, Long.MAX_VALUE);
+  }
+
+  /**
+   * Gets a list of group changes from DDB, stopping at the first change with which the serialized
+   * size of the changes reaches {@code maxBytes}. The first change is returned however large it is.
+   *
+   * <p>No more items are read from DDB once the budget is spent, so a caller that only sends a
+   * bounded number of bytes does not have to hold every change of a long range in memory.
+   */
+  public CompletableFuture<List<GroupChanges.GroupChangeState>> getRecordsFromVersion(
+      ByteString groupId, int fromVersionInclusive, int toVersionExclusive, long maxBytes) {
     Preconditions.checkArgument(groupId != null);
     Preconditions.checkArgument(fromVersionInclusive >= 0);
     Preconditions.checkArgument(toVersionExclusive >= 0);
+    Preconditions.checkArgument(maxBytes > 0);
 
     // if we don't have a cache, simply grab from the database
     if (executorCacheCheck == null) {
       return queryDatabaseForRemaining(
-          groupId, fromVersionInclusive, toVersionExclusive, new CachedGroupChanges());
+          groupId, fromVersionInclusive, toVersionExclusive, maxBytes, new CachedGroupChanges());
     }
 
     // otherwise, grab from the cache and also populate it as necessary
     return CompletableFuture.supplyAsync(
-            () -> readAsMuchAsPossibleFromCache(groupId, fromVersionInclusive, toVersionExclusive),
+            () ->
+                readAsMuchAsPossibleFromCache(
+                    groupId, fromVersionInclusive, toVersionExclusive, maxBytes),
             executorCacheCheck)
         .thenCompose(
             cachedGroupChanges ->
                 queryDatabaseForRemaining(
-                    groupId, fromVersionInclusive, toVersionExclusive, cachedGroupChanges));
+                    groupId,
+                    fromVersionInclusive,
+                    toVersionExclusive,
+                    maxBytes,
+                    cachedGroupChanges));
   }
 
   public CompletableFuture<Void> startupProbe(SecureRandom secureRandom) {
@@ -156,17 +288,26 @@ public class GroupLogDao {
   }
 
   private CachedGroupChanges readAsMuchAsPossibleFromCache(
-      ByteString groupId, int fromVersionInclusive, int toVersionExclusive) {
+      ByteString groupId, int fromVersionInclusive, int toVersionExclusive, long maxBytes) {
     // Read as many versions as we can grab from the cache (if we have a cache)
     CachedGroupChanges cachedGroupChanges = new CachedGroupChanges();
     if (cache == null) {
       return cachedGroupChanges;
     }
+    List<byte[]> keysBytes = new ArrayList<>(Math.max(0, toVersionExclusive - fromVersionInclusive));
     for (int currentVersion = fromVersionInclusive;
         currentVersion < toVersionExclusive;
         ++currentVersion) {
-      byte[] keyBytes = getKeyBytes(groupId, currentVersion);
-      byte[] valueBytes = cache.getValueIfPresent(keyBytes);
+      keysBytes.add(getKeyBytes(groupId, currentVersion));
+    }
+    if (keysBytes.isEmpty()) {
+      return cachedGroupChanges;
+    }
+    // fetch every version in one go; only the leading run of hits is usable since the database
+    // query for the remainder is a contiguous range
+    List<byte[]> valuesBytes = cache.getValuesIfPresent(keysBytes);
+    for (int i = 0; i < valuesBytes.size(); ++i) {
+      byte[] valueBytes = valuesBytes.get(i);
       if (valueBytes == null) {
         return cachedGroupChanges;
       }
@@ -177,7 +318,10 @@ public class GroupLogDao {
         // this should never happen, except during an upgrade of the cache
         return cachedGroupChanges;
       }
-      cachedGroupChanges.add(currentVersion, changeState);
+      cachedGroupChanges.add(fromVersionInclusive + i, changeState);
+      if (cachedGroupChanges.getSerializedBytes() >= maxBytes) {
+        break;
+      }
     }
     return cachedGroupChanges;
   }
@@ -186,6 +330,7 @@ public class GroupLogDao {
       ByteString groupId,
       int fromVersionInclusive,
       int toVersionExclusive,
+      long maxBytes,
       CachedGroupChanges cachedGroupChanges) {
     // use last change of `cachedGroupChanges`. we'll start one past that.
     final int startVersion;
@@ -196,45 +341,239 @@ public class GroupLogDao {
       startVersion = lastCachedGroupVersion + 1;
     }
 
-    // use something thread safe for the changes
-
     // query the database for anything remaining
-    if (startVersion >= toVersionExclusive) {
+    long remainingBytes = maxBytes - cachedGroupChanges.getSerializedBytes();
+    if (startVersion >= toVersionExclusive || remainingBytes <= 0) {
       return CompletableFuture.completedFuture(cachedGroupChanges.getGroupChanges());
     }
-    final ConcurrentLinkedDeque<GroupChanges.GroupChangeState> threadSafeResult =
-        new ConcurrentLinkedDeque<>(cachedGroupChanges.getGroupChanges());
-    PagePublisher<GroupChangeItem> queryPublisher =
-        table.query(
+    // a stored item is never larger than the change and full state it is replayed into, so the
+    // items that fill the remaining budget are enough to fill it with replayed changes
+    return queryItems(groupId, startVersion, toVersionExclusive, remainingBytes)
+        .thenCompose(
+            items ->
+                getStateBefore(groupId, items, cachedGroupChanges)
+                    .thenApply(
+                        previousGroup -> {
+                          List<GroupChanges.GroupChangeState> result =
+                              new ArrayList<>(cachedGroupChanges.getGroupChanges());
+                          long bytes = cachedGroupChanges.getSerializedBytes();
+                          Replay replay =
+                              new Replay(
+                                  items.isEmpty() ? -1 : items.get(0).getGroupVersion() - 1,
+                                  previousGroup.orElse(null));
+                          for (GroupChangeItem item : items) {
+                            if (!result.isEmpty() && bytes >= maxBytes) {
+                              break;
+                            }
+                            Group group = replay.next(item);
+                            if (group == null) {
+                              // a delta whose snapshot or intermediate deltas are missing; a
+                              // record without its state would be a malformed log entry
+                              throw new IllegalStateException(
+                                  String.format(
+                                      "Group state of version %d could not be reconstructed from its snapshot at version %s",
+                                      item.getGroupVersion(), item.getSnapshotVersion()));
+                            }
+                            GroupChanges.GroupChangeState groupChangeStateWithGroup =
+                                GroupChanges.GroupChangeState.newBuilder()
+                                    .setGroupChange(parseGroupChange(item))
+                                    .setGroupState(group)
+                                    .build();
+                            result.add(groupChangeStateWithGroup);
+                            bytes += groupChangeStateWithGroup.getSerializedSize();
+
+                            // populate the cache as well, if present
+                            if (cache != null) {
+                              byte[] keyBytes = getKeyBytes(groupId, item.getGroupVersion());
+                              cache.putValue(keyBytes, groupChangeStateWithGroup.toByteArray());
+                            }
+                          }
+                          return result;
+                        }));
+  }
+
+  /**
+   * Queries the items of versions {@code [fromVersionInclusive, toVersionExclusive)}, in order,
+   * stopping after the page with which the stored size of the items reaches {@code maxBytes}.
+   */
+  private CompletableFuture<List<GroupChangeItem>> queryItems(
+      ByteString groupId, int fromVersionInclusive, int toVersionExclusive, long maxBytes) {
+    // pages are delivered one at a time and in order, since each is only requested after the last
+    final List<GroupChangeItem> items = new ArrayList<>();
+    final CompletableFuture<List<GroupChangeItem>> result = new CompletableFuture<>();
+    table
+        .query(
             QueryConditional.sortBetween(
-                getKey(groupId, startVersion), getKey(groupId, toVersionExclusive - 1)));
-    return queryPublisher
-        // scatter the pages (in reality, DDB probably goes through one page at a time)
+                getKey(groupId, fromVersionInclusive), getKey(groupId, toVersionExclusive - 1)))
         .subscribe(
-            groupChangeItemPage -> {
-              List<GroupChanges.GroupChangeState> collectedGroupChanges = new ArrayList<>();
-              for (GroupChangeItem item : groupChangeItemPage.items()) {
-                try {
-                  GroupChanges.GroupChangeState groupChangeState =
-                      GroupChanges.GroupChangeState.newBuilder()
-                          .setGroupChange(GroupChange.parseFrom(item.getGroupChangeBytes()))
-                          .setGroupState(Group.parseFrom(item.getGroupBytes()))
-                          .build();
-                  collectedGroupChanges.add(groupChangeState);
-
-                  // populate the cache as well, if present
-                  if (cache != null) {
-                    byte[] keyBytes = getKeyBytes(groupId, item.getGroupVersion());
-                    cache.putValue(keyBytes, groupChangeState.toByteArray());
-                  }
-                } catch (InvalidProtocolBufferException e) {
-                  throw new IllegalStateException(e);
+            new Subscriber<Page<GroupChangeItem>>() {
+              private Subscription subscription;
+              private long bytes;
+
+              @Override
+              public void onSubscribe(Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(1);
+              }
+
+              @Override
+              public void onNext(Page<GroupChangeItem> groupChangeItemPage) {
+                for (GroupChangeItem item : groupChangeItemPage.items()) {
+                  int storedBytes = getStoredBytes(item);
+                  BYTES_READ.record(storedBytes);
+                  bytes += storedBytes;
+                  items.add(item);
+                }
+                if (bytes >= maxBytes) {
+                  subscription.cancel();
+                  result.complete(items);
+                } else {
+                  subscription.request(1);
                 }
               }
-              threadSafeResult.addAll(collectedGroupChanges);
-            })
-        // and gather
-        .thenApply(unused -> new ArrayList<>(threadSafeResult));
+
+              @Override
+              public void onError(Throwable throwable) {
+                result.completeExceptionally(throwable);
+              }
+
+              @Override
+              public void onComplete() {
+                result.complete(items);
+              }
+            });
+    return result;
+  }
+
+  /** Queries the items of versions {@code [fromVersionInclusive, toVersionExclusive)}, in order. */
+  private CompletableFuture<List<GroupChangeItem>> queryItems(
+      ByteString groupId, int fromVersionInclusive, int toVersionExclusive) {
+    return queryItems(groupId, fromVersionInclusive, toVersionExclusive, Long.MAX_VALUE);
+  }
+
+  /**
+   * Gets the group state just before the first of {@code items}, if the first item is a delta.
+   * The last cached state is used when it is the right version; otherwise the items from the
+   * delta's snapshot onwards are read and replayed.
+   */
+  private CompletableFuture<Optional<Group>> getStateBefore(
+      ByteString groupId, List<GroupChangeItem> items, CachedGroupChanges cachedGroupChanges) {
+    if (items.isEmpty() || items.get(0).getGroupBytes() != null) {
+      return CompletableFuture.completedFuture(Optional.empty());
+    }
+    GroupChangeItem first = items.get(0);
+    Integer lastCachedGroupVersion = cachedGroupChanges.getLastGroupVersion();
+    if (lastCachedGroupVersion != null && lastCachedGroupVersion == first.getGroupVersion() - 1) {
+      List<GroupChanges.GroupChangeState> cached = cachedGroupChanges.getGroupChanges();
+      GroupChanges.GroupChangeState lastCached = cached.get(cached.size() - 1);
+      if (lastCached.hasGroupState()) {
+        return CompletableFuture.completedFuture(Optional.of(lastCached.getGroupState()));
+      }
+    }
+    if (first.getSnapshotVersion() == null) {
+      return CompletableFuture.completedFuture(Optional.empty());
+    }
+    return loadState(groupId, first.getSnapshotVersion(), first.getGroupVersion());
+  }
+
+  /**
+   * Reconstructs the group state of version {@code toVersionExclusive - 1} from the items starting
+   * at {@code fromVersionInclusive}, which is normally a snapshot. If the interval was changed
+   * after that item was written it may itself be a delta, in which case we go further back.
+   */
+  private CompletableFuture<Optional<Group>> loadState(
+      ByteString groupId, int fromVersionInclusive, int toVersionExclusive) {
+    if (fromVersionInclusive >= toVersionExclusive) {
+      return CompletableFuture.completedFuture(Optional.empty());
+    }
+    return queryItems(groupId, fromVersionInclusive, toVersionExclusive)
+        .thenCompose(
+            items -> {
+              if (items.isEmpty()
+                  || items.get(items.size() - 1).getGroupVersion() != toVersionExclusive - 1) {
+                return CompletableFuture.completedFuture(Optional.<Group>empty());
+              }
+              GroupChangeItem first = items.get(0);
+              CompletableFuture<Optional<Group>> stateBefore;
+              if (first.getGroupBytes() == null
+                  && first.getSnapshotVersion() != null
+                  && first.getSnapshotVersion() < fromVersionInclusive) {
+                stateBefore = loadState(groupId, first.getSnapshotVersion(), first.getGroupVersion());
+              } else {
+                stateBefore = CompletableFuture.completedFuture(Optional.empty());
+              }
+              return stateBefore.thenApply(
+                  previousGroup -> {
+                    List<Group> groups = reconstruct(items, previousGroup.orElse(null));
+                    return Optional.ofNullable(groups.get(groups.size() - 1));
+                  });
+            });
+  }
+
+  /**
+   * Replays the items in order.
+   *
+   * @param previousGroup the state of the version before the first item, if known
+   * @return the state of each item; null where a delta has no known previous state
+   */
+  private static List<Group> reconstruct(
+      List<GroupChangeItem> items, @Nullable Group previousGroup) {
+    List<Group> groups = new ArrayList<>(items.size());
+    Replay replay =
+        new Replay(items.isEmpty() ? -1 : items.get(0).getGroupVersion() - 1, previousGroup);
+    for (GroupChangeItem item : items) {
+      groups.add(replay.next(item));
+    }
+    return groups;
+  }
+
+  /** Replays items one at a time, so that only the states that are kept need to be built. */
+  private static class Replay {
+    private int groupVersion;
+    private @Nullable Group group;
+
+    /**
+     * @param groupVersion the version before the first item
+     * @param group the state of that version, if known
+     */
+    Replay(int groupVersion, @Nullable Group group) {
+      this.groupVersion = groupVersion;
+      this.group = group;
+    }
+
+    /** @return the state of the item; null if it is a delta with no known previous state */
+    @Nullable
+    Group next(GroupChangeItem item) {
+      try {
+        if (item.getGroupBytes() != null) {
+          group = Group.parseFrom(item.getGroupBytes());
+        } else if (group != null && groupVersion == item.getGroupVersion() - 1) {
+          group =
+              GroupStateDeltas.apply(group, GroupChange.Actions.parseFrom(item.getGroupDeltaBytes()));
+        } else {
+          group = null;
+        }
+      } catch (InvalidProtocolBufferException e) {
+        throw new IllegalStateException(e);
+      }
+      groupVersion = item.getGroupVersion();
+      return group;
+    }
+  }
+
+  private static GroupChange parseGroupChange(GroupChangeItem item) {
+    try {
+      return GroupChange.parseFrom(item.getGroupChangeBytes());
+    } catch (InvalidProtocolBufferException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static int getStoredBytes(GroupChangeItem item) {
+    int bytes = item.getGroupChangeBytes() == null ? 0 : item.getGroupChangeBytes().length;
+    if (item.getGroupBytes() != null) bytes += item.getGroupBytes().length;
+    if (item.getGroupDeltaBytes() != null) bytes += item.getGroupDeltaBytes().length;
+    return bytes;
   }
 
   private static Key getKey(ByteString groupId, int version) {
@@ -254,15 +593,49 @@ public class GroupLogDao {
   }
 
   private GroupChangeItem toGroupChangeItem(
-      ByteString groupId, Group group, GroupChange groupChange, int groupVersion) {
+      ByteString groupId,
+      Group group,
+      @Nullable Group previousGroup,
+      GroupChange groupChange,
+      int groupVersion) {
     Preconditions.checkArgument(groupId != null);
     Preconditions.checkArgument(group != null);
     Preconditions.checkArgument(groupChange != null);
     GroupChangeItem item = new GroupChangeItem();
     item.setGroupId(groupId.toByteArray());
-    item.setGroupBytes(group.toByteArray());
     item.setGroupChangeBytes(groupChange.toByteArray());
     item.setGroupVersion(groupVersion);
+
+    byte[] groupBytes = group.toByteArray();
+    Optional<byte[]> groupDeltaBytes =
+        getGroupDeltaBytes(group, groupBytes, previousGroup, groupVersion);
+    if (groupDeltaBytes.isPresent()) {
+      item.setGroupDeltaBytes(groupDeltaBytes.get());
+      item.setSnapshotVersion(groupVersion - groupVersion % snapshotInterval);
+    } else {
+      item.setGroupBytes(groupBytes);
+    }
     return item;
   }
+
+  private boolean isDeltaCandidate(Group group, @Nullable Group previousGroup, int groupVersion) {
+    return snapshotInterval > 1
+        && groupVersion % snapshotInterval != 0
+        && previousGroup != null
+        && previousGroup.getVersion() == groupVersion - 1
+        && group.getVersion() == groupVersion;
+  }
+
+  private Optional<byte[]> getGroupDeltaBytes(
+      Group group, byte[] groupBytes, @Nullable Group previousGroup, int groupVersion) {
+    if (!isDeltaCandidate(group, previousGroup, groupVersion)) {
+      return Optional.empty();
+    }
+    return GroupStateDeltas.diff(previousGroup, group)
+        .map(GroupChange.Actions::toByteArray)
+        .filter(
+            deltaBytes ->
+                (long) deltaBytes.length * 100
+                    <= (long) groupBytes.length * MAXIMUM_DELTA_PERCENT_OF_SNAPSHOT);
+  }
 }
@@ -0,0 +1,185 @@
+// Copyright 2021 Diskuv, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.diskuv.communicatorservice.storage;
+
+import com.google.protobuf.ByteString;
+import org.signal.storageservice.storage.protos.groups.AccessControl;
+import org.signal.storageservice.storage.protos.groups.Group;
+import org.signal.storageservice.storage.protos.groups.GroupChange;
+import org.signal.storageservice.storage.protos.groups.Member;
+import org.signal.storageservice.storage.protos.groups.MemberPendingAdminApproval;
+import org.signal.storageservice.storage.protos.groups.MemberPendingProfileKey;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Differences between two consecutive states of a group.
+ *
+ * <p>A delta is encoded as a {@link GroupChange.Actions} message, but unlike the actions that a
+ * client submits it is <em>materialized</em>: "add" actions carry the exact stored member entries
+ * (including server-assigned fields like timestamps, joined-at versions and profile key
+ * ciphertexts) and are upserts keyed by user id, "delete" actions remove entries by user id, and
+ * the "modify" actions carry the new scalar values. Applying a delta needs no authorization or
+ * zero-knowledge verification, so stored group states can be reconstructed from the log alone.
+ */
+final class GroupStateDeltas {
+  private GroupStateDeltas() {}
+
+  /**
+   * Computes the delta that turns {@code previous} into {@code next}.
+   *
+   * @return the delta, or empty if the delta would not reproduce {@code next} exactly (in which
+   *     case a full snapshot must be stored instead)
+   */
+  static Optional<GroupChange.Actions> diff(Group previous, Group next) {
+    if (!previous.getPublicKey().equals(next.getPublicKey())) {
+      return Optional.empty();
+    }
+
+    GroupChange.Actions.Builder delta = GroupChange.Actions.newBuilder().setVersion(next.getVersion());
+
+    diffList(previous.getMembersList(), next.getMembersList(), Member::getUserId,
+             deleted -> delta.addDeleteMembers(GroupChange.Actions.DeleteMemberAction.newBuilder().setDeletedUserId(deleted)),
+             upserted -> delta.addAddMembers(GroupChange.Actions.AddMemberAction.newBuilder().setAdded(upserted)));
+    diffList(previous.getMembersPendingProfileKeyList(), next.getMembersPendingProfileKeyList(), pending -> pending.getMember().getUserId(),
+             deleted -> delta.addDeleteMembersPendingProfileKey(GroupChange.Actions.DeleteMemberPendingProfileKeyAction.newBuilder().setDeletedUserId(deleted)),
+             upserted -> delta.addAddMembersPendingProfileKey(GroupChange.Actions.AddMemberPendingProfileKeyAction.newBuilder().setAdded(upserted)));
+    diffList(previous.getMembersPendingAdminApprovalList(), next.getMembersPendingAdminApprovalList(), MemberPendingAdminApproval::getUserId,
+             deleted -> delta.addDeleteMembersPendingAdminApproval(GroupChange.Actions.DeleteMemberPendingAdminApprovalAction.newBuilder().setDeletedUserId(deleted)),
+             upserted -> delta.addAddMembersPendingAdminApproval(GroupChange.Actions.AddMemberPendingAdminApprovalAction.newBuilder().setAdded(upserted)));
+
+    if (!previous.getTitle().equals(next.getTitle())) {
+      delta.setModifyTitle(GroupChange.Actions.ModifyTitleAction.newBuilder().setTitle(next.getTitle()));
+    }
+    if (!previous.getAvatar().equals(next.getAvatar())) {
+      delta.setModifyAvatar(GroupChange.Actions.ModifyAvatarAction.newBuilder().setAvatar(next.getAvatar()));
+    }
+    if (!previous.getDisappearingMessagesTimer().equals(next.getDisappearingMessagesTimer())) {
+      delta.setModifyDisappearingMessageTimer(GroupChange.Actions.ModifyDisappearingMessageTimerAction.newBuilder().setTimer(next.getDisappearingMessagesTimer()));
+    }
+    if (!previous.getInviteLinkPassword().equals(next.getInviteLinkPassword())) {
+      delta.setModifyInviteLinkPassword(GroupChange.Actions.ModifyInviteLinkPasswordAction.newBuilder().setInviteLinkPassword(next.getInviteLinkPassword()));
+    }
+
+    AccessControl previousAccess = previous.getAccessControl();
+    AccessControl nextAccess     = next.getAccessControl();
+    if (previousAccess.getAttributes() != nextAccess.getAttributes()) {
+      delta.setModifyAttributesAccess(GroupChange.Actions.ModifyAttributesAccessControlAction.newBuilder().setAttributesAccess(nextAccess.getAttributes()));
+    }
+    if (previousAccess.getMembers() != nextAccess.getMembers()) {
+      delta.setModifyMemberAccess(GroupChange.Actions.ModifyMembersAccessControlAction.newBuilder().setMembersAccess(nextAccess.getMembers()));
+    }
+    if (previousAccess.getAddFromInviteLink() != nextAccess.getAddFromInviteLink()) {
+      delta.setModifyAddFromInviteLinkAccess(GroupChange.Actions.ModifyAddFromInviteLinkAccessControlAction.newBuilder().setAddFromInviteLinkAccess(nextAccess.getAddFromInviteLink()));
+    }
+
+    GroupChange.Actions result = delta.build();
+
+    // Anything the delta cannot express (unknown fields, duplicate user ids, reordered entries, an
+    // access control that is present-but-default on one side only, ...) shows up as a mismatch here
+    if (!apply(previous, result).equals(next)) {
+      return Optional.empty();
+    }
+    return Optional.of(result);
+  }
+
+  /** Applies a delta produced by {@link #diff(Group, Group)} to the state it was computed from. */
+  static Group apply(Group previous, GroupChange.Actions delta) {
+    Group.Builder next = previous.toBuilder().setVersion(delta.getVersion());
+
+    List<Member> members = applyList(previous.getMembersList(), Member::getUserId,
+                                     collect(delta.getDeleteMembersList(), GroupChange.Actions.DeleteMemberAction::getDeletedUserId),
+                                     collect(delta.getAddMembersList(), GroupChange.Actions.AddMemberAction::getAdded));
+    List<MemberPendingProfileKey> membersPendingProfileKey = applyList(previous.getMembersPendingProfileKeyList(), pending -> pending.getMember().getUserId(),
+                                                                       collect(delta.getDeleteMembersPendingProfileKeyList(), GroupChange.Actions.DeleteMemberPendingProfileKeyAction::getDeletedUserId),
+                                                                       collect(delta.getAddMembersPendingProfileKeyList(), GroupChange.Actions.AddMemberPendingProfileKeyAction::getAdded));
+    List<MemberPendingAdminApproval> membersPendingAdminApproval = applyList(previous.getMembersPendingAdminApprovalList(), MemberPendingAdminApproval::getUserId,
+                                                                             collect(delta.getDeleteMembersPendingAdminApprovalList(), GroupChange.Actions.DeleteMemberPendingAdminApprovalAction::getDeletedUserId),
+                                                                             collect(delta.getAddMembersPendingAdminApprovalList(), GroupChange.Actions.AddMemberPendingAdminApprovalAction::getAdded));
+
+    next.clearMembers().addAllMembers(members);
+    next.clearMembersPendingProfileKey().addAllMembersPendingProfileKey(membersPendingProfileKey);
+    next.clearMembersPendingAdminApproval().addAllMembersPendingAdminApproval(membersPendingAdminApproval);
+
+    if (delta.hasModifyTitle()) next.setTitle(delta.getModifyTitle().getTitle());
+    if (delta.hasModifyAvatar()) next.setAvatar(delta.getModifyAvatar().getAvatar());
+    if (delta.hasModifyDisappearingMessageTimer()) next.setDisappearingMessagesTimer(delta.getModifyDisappearingMessageTimer().getTimer());
+    if (delta.hasModifyInviteLinkPassword()) next.setInviteLinkPassword(delta.getModifyInviteLinkPassword().getInviteLinkPassword());
+
+    if (delta.hasModifyAttributesAccess()) next.setAccessControl(next.getAccessControlBuilder().setAttributes(delta.getModifyAttributesAccess().getAttributesAccess()));
+    if (delta.hasModifyMemberAccess()) next.setAccessControl(next.getAccessControlBuilder().setMembers(delta.getModifyMemberAccess().getMembersAccess()));
+    if (delta.hasModifyAddFromInviteLinkAccess()) next.setAccessControl(next.getAccessControlBuilder().setAddFromInviteLink(delta.getModifyAddFromInviteLinkAccess().getAddFromInviteLinkAccess()));
+
+    return next.build();
+  }
+
+  private static <T> void diffList(List<T> previous, List<T> next, Function<T, ByteString> idOf,
+                                   Consumer<ByteString> deleted, Consumer<T> upserted) {
+    Map<ByteString, T> previousById = new LinkedHashMap<>();
+    for (T entry : previous) {
+      previousById.put(idOf.apply(entry), entry);
+    }
+
+    Set<ByteString> nextIds = new HashSet<>();
+    for (T entry : next) {
+      ByteString id = idOf.apply(entry);
+      nextIds.add(id);
+      if (!entry.equals(previousById.get(id))) {
+        upserted.accept(entry);
+      }
+    }
+
+    for (ByteString id : previousById.keySet()) {
+      if (!nextIds.contains(id)) {
+        deleted.accept(id);
+      }
+    }
+  }
+
+  private static <T> List<T> applyList(List<T> previous, Function<T, ByteString> idOf, List<ByteString> deleted, List<T> upserted) {
+    Set<ByteString>    deletedIds  = new HashSet<>(deleted);
+    Map<ByteString, T> upsertsById = new LinkedHashMap<>();
+    for (T entry : upserted) {
+      upsertsById.put(idOf.apply(entry), entry);
+    }
+
+    List<T> result = new ArrayList<>(previous.size() + upserted.size());
+    for (T entry : previous) {
+      ByteString id = idOf.apply(entry);
+      if (deletedIds.contains(id)) {
+        continue;
+      }
+      T replacement = upsertsById.remove(id);
+      result.add(replacement != null ? replacement : entry);
+    }
+    result.addAll(upsertsById.values());
+    return result;
+  }
+
+  private static <A, T> List<T> collect(List<A> actions, Function<A, T> mapper) {
+    List<T> result = new ArrayList<>(actions.size());
+    for (A action : actions) {
+      result.add(mapper.apply(action));
+    }
+    return result;
+  }
+}
@@ -20,7 +20,10 @@ import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
 import org.signal.storageservice.storage.protos.groups.Group;
+import org.signal.storageservice.storage.protos.groups.GroupChange;
 import org.signal.zkgroup.groups.GroupIdentifier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,18 +31,24 @@ import software.amazon.awssdk.core.SdkBytes;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbAsyncTable;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedAsyncClient;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
+import software.amazon.awssdk.enhanced.dynamodb.model.TransactWriteItemsEnhancedRequest;
 import software.amazon.awssdk.services.dynamodb.DynamoDbAsyncClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.CancellationReason;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.ResourceNotFoundException;
+import software.amazon.awssdk.services.dynamodb.model.TransactionCanceledException;
 
 import javax.annotation.Nullable;
 import java.nio.ByteBuffer;
 import java.security.SecureRandom;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
+import static com.codahale.metrics.MetricRegistry.name;
 import static com.diskuv.communicatorservice.storage.DaoCommons.checkIsNotConditionalFailure;
 import static com.diskuv.communicatorservice.storage.GroupItem.*;
 import static com.diskuv.communicatorservice.storage.configuration.DiskuvGroupsConfiguration.CHECKSUM_SHARED_KEY_SIZE;
@@ -49,7 +58,13 @@ public class GroupsDao {
   private static final Logger  LOGGER                          = LoggerFactory.getLogger(GroupsDao.class);
   private static final Integer INITIAL_OPTIMISTIC_LOCK_VERSION = null;
 
+  private static final Timer UPDATE_GROUP_TIMER =
+      Metrics.timer(name(GroupsDao.class, "updateGroup"));
+  private static final Timer UPDATE_GROUP_WITH_CHANGE_RECORD_TIMER =
+      Metrics.timer(name(GroupsDao.class, "updateGroupWithChangeRecord"));
+
   private final DynamoDbAsyncClient asyncClient;
+  private final DynamoDbEnhancedAsyncClient enhancedAsyncClient;
   private final DynamoDbAsyncTable<GroupItem> table;
   private final HashFunction checksumFunction;
 
@@ -60,7 +75,7 @@ public class GroupsDao {
         checksumSharedKey != null && checksumSharedKey.length == CHECKSUM_SHARED_KEY_SIZE);
 
     this.asyncClient = asyncClient;
-    DynamoDbEnhancedAsyncClient enhancedAsyncClient =
+    this.enhancedAsyncClient =
         DynamoDbEnhancedAsyncClient.builder().dynamoDbClient(asyncClient).build();
     this.table = enhancedAsyncClient.table(tableName, GROUPS_TABLE_SCHEMA);
 
@@ -109,6 +124,34 @@ public class GroupsDao {
         groupItem -> groupItem != null ? Optional.of(toGroup(groupItem)) : Optional.empty());
   }
 
+  /**
+   * Gets only the version of a group from DDB, which is much smaller to transfer and parse than the
+   * group itself.
+   *
+   * @return an optional version which is present if the group exists, or not present if the group
+   *     does not exist
+   */
+  public CompletableFuture<Optional<Integer>> getGroupVersion(ByteString groupId) {
+    Preconditions.checkArgument(groupId != null);
+    return asyncClient
+        .getItem(
+            GetItemRequest.builder()
+                .tableName(table.tableName())
+                .key(getKey(groupId).primaryKeyMap(GROUPS_TABLE_SCHEMA))
+                .projectionExpression(ATTRIBUTE_GROUP_VERSION)
+                .build())
+        .thenApply(
+            getItemResponse -> {
+              if (!getItemResponse.hasItem()) {
+                return Optional.empty();
+              }
+              AttributeValue gv = getItemResponse.item().get(ATTRIBUTE_GROUP_VERSION);
+              Preconditions.checkState(gv != null, "No group version present in record");
+              Preconditions.checkState(gv.n() != null, "The group version was not a number");
+              return Optional.of(Integer.parseInt(gv.n()));
+            });
+  }
+
   public CompletableFuture<Void> startupProbe(SecureRandom secureRandom) {
     byte[] groupId = new byte[GroupIdentifier.SIZE];
     secureRandom.nextBytes(groupId);
@@ -137,6 +180,76 @@ public class GroupsDao {
   public CompletableFuture<Boolean> updateGroup(ByteString groupId, Group group) {
     Preconditions.checkArgument(groupId != null);
     Preconditions.checkArgument(group != null);
+    Timer.Sample sample = Timer.start();
+    return prepareUpdate(groupId, group)
+        .thenCompose(
+            updatedItem -> {
+              if (updatedItem.isEmpty()) {
+                return CompletableFuture.completedFuture(false);
+              }
+              return table.updateItem(updatedItem.get()).thenApply(groupItem -> true);
+            })
+        .whenComplete((result, throwable) -> sample.stop(UPDATE_GROUP_TIMER));
+  }
+
+  /**
+   * Updates a group and appends the change that produced it to the group log in a single DDB
+   * transaction, so the log can never lag behind the group.
+   *
+   * <p>The same checks as {@link #updateGroup(ByteString, Group)} apply. In addition, losing a race
+   * against a concurrent modification of the group is reported as not updated, rather than as a
+   * failure, since nothing was written.
+   *
+   * @param groupLogDao the group log, which must be reachable through the same DDB client
+   * @param previousGroup the group before the change, if known; see {@link
+   *     GroupLogDao#append(ByteString, int, GroupChange, Group, Group)}
+   * @return true if the group was updated to a new value and the change appended, or false
+   *     otherwise
+   */
+  public CompletableFuture<Boolean> updateGroupWithChangeRecord(
+      ByteString groupId,
+      Group group,
+      GroupLogDao groupLogDao,
+      GroupChange groupChange,
+      @Nullable Group previousGroup) {
+    Preconditions.checkArgument(groupId != null);
+    Preconditions.checkArgument(group != null);
+    Preconditions.checkArgument(groupLogDao != null);
+    Preconditions.checkArgument(groupChange != null);
+    Timer.Sample sample = Timer.start();
+    return prepareUpdate(groupId, group)
+        .thenCompose(
+            updatedItem -> {
+              if (updatedItem.isEmpty()) {
+                return CompletableFuture.completedFuture(false);
+              }
+              return groupLogDao
+                  .prepareAppendRequest(
+                      groupId, group.getVersion(), groupChange, group, previousGroup)
+                  .thenCompose(
+                      appendRequest -> {
+                        // the versioned record extension adds the optimistic lock condition to
+                        // the update, just as it does for a plain updateItem
+                        TransactWriteItemsEnhancedRequest request =
+                            TransactWriteItemsEnhancedRequest.builder()
+                                .addUpdateItem(table, updatedItem.get())
+                                .addPutItem(groupLogDao.getTable(), appendRequest)
+                                .build();
+                        return enhancedAsyncClient
+                            .transactWriteItems(request)
+                            .thenApply(unused -> true)
+                            .exceptionally(GroupsDao::checkIsNotLostUpdateRace);
+                      });
+            })
+        .whenComplete((result, throwable) -> sample.stop(UPDATE_GROUP_WITH_CHANGE_RECORD_TIMER));
+  }
+
+  /**
+   * Reads the optimistic lock of the group and checks that {@code group} is the next version.
+   *
+   * @return the item to update the group with, or empty if no update should occur
+   */
+  private CompletableFuture<Optional<GroupItem>> prepareUpdate(ByteString groupId, Group group) {
     return asyncClient
         .getItem(
             GetItemRequest.builder()
@@ -178,34 +291,58 @@ public class GroupsDao {
                         .message("The group could not be updated because it does not exist")
                         .build());
               }
-              // if the existing group is not one version older than what we want to update, return
-              // false
+              // if the existing group is not one version older than what we want to update, don't
+              // update
               if (existingVersionsAndChecksum.get().getGroupVersion() != group.getVersion() - 1) {
-                return CompletableFuture.completedFuture(false);
+                return CompletableFuture.completedFuture(Optional.<GroupItem>empty());
               }
 
               // if the existing group has the same groupBytesChecksum as what to want to update
-              // towards, return false
+              // towards, don't update
               byte[] groupBytes = group.toByteArray();
               byte[] groupBytesChecksum = getChecksum(groupBytes);
               if (Arrays.equals(
                   groupBytesChecksum, existingVersionsAndChecksum.get().getChecksum())) {
-                return CompletableFuture.completedFuture(false);
+                return CompletableFuture.completedFuture(Optional.<GroupItem>empty());
               }
 
-              // otherwise try the update
-              return table
-                  .updateItem(
+              // otherwise the update can be tried
+              return CompletableFuture.completedFuture(
+                  Optional.of(
                       toGroupItem(
                           groupId,
                           existingVersionsAndChecksum.get().getOptimisticLockVersion(),
                           group.getVersion(),
                           groupBytes,
-                          groupBytesChecksum))
-                  .thenApply(groupItem -> true);
+                          groupBytesChecksum)));
             });
   }
 
+  private static Boolean checkIsNotLostUpdateRace(Throwable throwable) {
+    Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+    if (cause instanceof TransactionCanceledException) {
+      // the group update is the first item of the transaction and the change record put the
+      // second. either the group lost the optimistic lock, a change record of that version was
+      // already written (for example by an earlier non-atomic update), or one of them collided
+      // with a transaction that is still in progress. the caller reloads the group in every case
+      List<CancellationReason> reasons = ((TransactionCanceledException) cause).cancellationReasons();
+      for (int i = 0; i < Math.min(2, reasons.size()); i++) {
+        if ("ConditionalCheckFailed".equals(reasons.get(i).code())
+            || "TransactionConflict".equals(reasons.get(i).code())) {
+          LOGGER.warn(
+              i == 0
+                  ? "Rejecting group update since the group was concurrently modified"
+                  : "Rejecting group update since its change record already exists");
+          return false;
+        }
+      }
+    }
+    if (throwable instanceof RuntimeException) {
+      throw (RuntimeException) throwable;
+    }
+    throw new RuntimeException(throwable);
+  }
+
   private static Key getKey(ByteString groupId) {
     Preconditions.checkArgument(groupId != null);
     return Key.builder().partitionValue(SdkBytes.fromByteArray(groupId.toByteArray())).build();
@@ -19,6 +19,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.io.BaseEncoding;
 
 import javax.annotation.Nonnull;
+import java.time.Duration;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -79,6 +80,122 @@ public class DiskuvGroupsConfiguration implements DiskuvDynamoDBConfiguration {
     this.numberOfGroupCacheCheckingThreads = numberOfGroupCacheCheckingThreads;
   }
 
+  /**
+   * How long an unread group change stays in Redis. Each read from Redis restarts the clock, and so
+   * do reads from the in-process tier, at most once an hour (or per half of this time) per change.
+   */
+  @JsonProperty private Duration groupChangeCacheTimeToLive = Duration.ofDays(7);
+
+  public Duration getGroupChangeCacheTimeToLive() {
+    return groupChangeCacheTimeToLive;
+  }
+
+  /** Upper bound on the bytes held by the in-process tier of the group change cache. */
+  @JsonProperty private long groupChangeLocalCacheMaximumBytes = 32L * 1024 * 1024;
+
+  public long getGroupChangeLocalCacheMaximumBytes() {
+    return groupChangeLocalCacheMaximumBytes;
+  }
+
+  /**
+   * Store the full group state in the group log at least every this many versions, and only the
+   * difference from the previous state otherwise. 1 stores the full state for every version.
+   */
+  @JsonProperty private int groupLogSnapshotInterval = 1;
+
+  public int getGroupLogSnapshotInterval() {
+    return groupLogSnapshotInterval;
+  }
+
+  /**
+   * Update a group and append its change to the group log in a single DynamoDB transaction. Both
+   * tables must be in the same account and region.
+   */
+  @JsonProperty private boolean atomicGroupChangeRecords = false;
+
+  public boolean isAtomicGroupChangeRecords() {
+    return atomicGroupChangeRecords;
+  }
+
+  /**
+   * Size of the thread pool on which the profile key credential presentations of a request that
+   * adds several members are verified concurrently. Zero verifies them one at a time on the request
+   * thread.
+   */
+  @JsonProperty private int presentationVerificationThreads = 0;
+
+  public int getPresentationVerificationThreads() {
+    return presentationVerificationThreads;
+  }
+
+  /**
+   * Maximum number of sanctuary change records, already pruned for non-owners, kept in memory so
+   * that members fetching the same group log do not prune it again. Zero disables the cache.
+   */
+  @JsonProperty private long prunedChangeRecordCacheSize = 10_000;
+
+  public long getPrunedChangeRecordCacheSize() {
+    return prunedChangeRecordCacheSize;
+  }
+
+  /**
+   * Maximum number of group auth credential presentations kept in memory after they were verified,
+   * so that the requests of a burst carrying the same presentation are verified once. Zero disables
+   * the cache.
+   */
+  @JsonProperty private long verifiedPresentationCacheSize = 10_000;
+
+  public long getVerifiedPresentationCacheSize() {
+    return verifiedPresentationCacheSize;
+  }
+
+  /**
+   * Longest time a verified presentation stays cached. It never outlives the redemption day of the
+   * presentation.
+   */
+  @JsonProperty private Duration verifiedPresentationCacheTimeToLive = Duration.ofHours(1);
+
+  public Duration getVerifiedPresentationCacheTimeToLive() {
+    return verifiedPresentationCacheTimeToLive;
+  }
+
+  /**
+   * Maximum serialized bytes of the group states kept in memory, so that reads of busy groups do not
+   * fetch and parse the whole group from DDB every time. Zero disables the cache.
+   */
+  @JsonProperty private long groupStateCacheMaximumBytes = 64L * 1024 * 1024;
+
+  public long getGroupStateCacheMaximumBytes() {
+    return groupStateCacheMaximumBytes;
+  }
+
+  /**
+   * How long a cached group state is served without checking DDB. After that the cached state is
+   * served only if the group version in DDB still matches it.
+   *
+   * <p>Each server has its own cache, so when several servers run, membership changes and removals
+   * made through another server are not seen for up to this long. A removed member could keep reading
+   * the group in that window. The default of zero checks the group version on every cache hit. That
+   * check is a DDB read charged for the whole item, so it saves transfer and parsing but not read
+   * capacity. Only raise it when running a single server or when that staleness is acceptable.
+   */
+  @JsonProperty private Duration groupStateCacheFreshness = Duration.ZERO;
+
+  public Duration getGroupStateCacheFreshness() {
+    return groupStateCacheFreshness;
+  }
+
+  /**
+   * Largest protocol buffer request entity, in bytes, accepted by the groups API unless the resource
+   * sets its own limit with {@code @ProtocolBufferSizeLimit}, as creating and modifying a group do.
+   * Larger entities get 413 Request Entity Too Large.
+   */
+  @JsonProperty private long protocolBufferRequestSizeLimit = 64L * 1024;
+
+  public long getProtocolBufferRequestSizeLimit() {
+    return protocolBufferRequestSizeLimit;
+  }
+
   @JsonProperty @Nonnull
   private List<String> emailAddressesAllowedToDeploySanctuary = new LinkedList<>();
 
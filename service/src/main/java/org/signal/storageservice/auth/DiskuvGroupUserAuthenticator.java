@@ -1,8 +1,10 @@
 package org.signal.storageservice.auth;
 
+import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
 import com.diskuv.communicatorservice.auth.DiskuvRoleCredentials;
 import com.diskuv.communicatorservice.auth.JwtAuthentication;
 import com.google.protobuf.ByteString;
@@ -19,6 +21,8 @@ import org.signal.zkgroup.groups.GroupPublicParams;
 import org.whispersystems.textsecuregcm.util.Constants;
 import org.whispersystems.textsecuregcm.util.DiskuvUuidUtil;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -28,21 +32,34 @@ public class DiskuvGroupUserAuthenticator implements Authenticator<DiskuvRoleCre
   private final MetricRegistry metricRegistry                = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
   private final Meter          invalidJwtTokenMeter          = metricRegistry.meter(name(getClass(), "authentication", "invalidJwtToken"));
   private final Meter          invalidGroupPresentationMeter = metricRegistry.meter(name(getClass(), "authentication", "invalidGroupPresentation"));
+  private final Timer          verifyPresentationTimer       = metricRegistry.timer(name(getClass(), "verifyPresentation"));
+  private final Histogram      cpuNanosHistogram             = metricRegistry.histogram(name(getClass(), "authentication", "cpuNanos"));
 
-  private final JwtAuthentication      jwtAuthentication;
-  private final ServerZkAuthOperations serverZkAuthOperations;
+  private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+  private final JwtAuthentication                   jwtAuthentication;
+  private final ServerZkAuthOperations              serverZkAuthOperations;
+  private final Optional<VerifiedPresentationCache> verifiedPresentationCache;
 
   public DiskuvGroupUserAuthenticator(JwtAuthentication jwtAuthentication, ServerZkAuthOperations serverZkAuthOperations) {
-    this.jwtAuthentication      = jwtAuthentication;
-    this.serverZkAuthOperations = serverZkAuthOperations;
+    this(jwtAuthentication, serverZkAuthOperations, Optional.empty());
+  }
+
+  public DiskuvGroupUserAuthenticator(JwtAuthentication jwtAuthentication, ServerZkAuthOperations serverZkAuthOperations, Optional<VerifiedPresentationCache> verifiedPresentationCache) {
+    this.jwtAuthentication         = jwtAuthentication;
+    this.serverZkAuthOperations    = serverZkAuthOperations;
+    this.verifiedPresentationCache = verifiedPresentationCache;
   }
 
   @Override
   public Optional<GroupUser> authenticate(DiskuvRoleCredentials roleCredentials) {
+    long startCpuNanos = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : -1;
+
     try {
       jwtAuthentication.verifyBearerTokenAndGetEmailAddress(roleCredentials.getBearerToken());
     } catch (IllegalArgumentException iae) {
       invalidJwtTokenMeter.mark();
+      if (startCpuNanos >= 0) cpuNanosHistogram.update(THREAD_MX_BEAN.getCurrentThreadCpuTime() - startCpuNanos);
       return Optional.empty();
     }
 
@@ -51,17 +68,39 @@ public class DiskuvGroupUserAuthenticator implements Authenticator<DiskuvRoleCre
       String encodedGroupPublicKey = roleCredentials.getUsername();
       String encodedPresentation   = roleCredentials.getPassword();
 
-      GroupPublicParams          groupPublicKey = new GroupPublicParams(Hex.decodeHex(encodedGroupPublicKey));
-      AuthCredentialPresentation presentation   = new AuthCredentialPresentation(Hex.decodeHex(encodedPresentation));
+      byte[] groupPublicKeyBytes = Hex.decodeHex(encodedGroupPublicKey);
+      byte[] presentationBytes   = Hex.decodeHex(encodedPresentation);
+
+      // Skip the zero-knowledge verification of a presentation already verified for this group
+      ByteString cacheKey = null;
+      if (verifiedPresentationCache.isPresent()) {
+        cacheKey = VerifiedPresentationCache.getKey(groupPublicKeyBytes, presentationBytes);
+
+        Optional<GroupUser> cached = verifiedPresentationCache.get().get(cacheKey);
+        if (cached.isPresent()) return cached;
+      }
+
+      GroupPublicParams          groupPublicKey = new GroupPublicParams(groupPublicKeyBytes);
+      AuthCredentialPresentation presentation   = new AuthCredentialPresentation(presentationBytes);
+
+      try (Timer.Context ignored = verifyPresentationTimer.time()) {
+        serverZkAuthOperations.verifyAuthCredentialPresentation(groupPublicKey, presentation);
+      }
+
+      GroupUser groupUser = new GroupUser(ByteString.copyFrom(presentation.getUuidCiphertext().serialize()),
+                                          ByteString.copyFrom(groupPublicKey.serialize()),
+                                          ByteString.copyFrom(groupPublicKey.getGroupIdentifier().serialize()));
 
-      serverZkAuthOperations.verifyAuthCredentialPresentation(groupPublicKey, presentation);
+      if (cacheKey != null) {
+        verifiedPresentationCache.get().put(cacheKey, presentation.getRedemptionTime(), groupUser);
+      }
 
-      return Optional.of(new GroupUser(ByteString.copyFrom(presentation.getUuidCiphertext().serialize()),
-                                       ByteString.copyFrom(groupPublicKey.serialize()),
-                                       ByteString.copyFrom(groupPublicKey.getGroupIdentifier().serialize())));
+      return Optional.of(groupUser);
 
     } catch (DecoderException | VerificationFailedException | InvalidInputException | InvalidRedemptionTimeException e) {
       return Optional.empty();
+    } finally {
+      if (startCpuNanos >= 0) cpuNanosHistogram.update(THREAD_MX_BEAN.getCurrentThreadCpuTime() - startCpuNanos);
     }
   }
 }
@@ -18,12 +18,12 @@ import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import com.diskuv.communicatorservice.auth.JwtAuthentication;
+import com.diskuv.communicatorservice.auth.OutdoorUuidCache;
 import io.dropwizard.auth.AuthenticationException;
 import io.dropwizard.auth.Authenticator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.util.Constants;
-import org.whispersystems.textsecuregcm.util.DiskuvUuidUtil;
 
 import java.util.Optional;
 import java.util.UUID;
@@ -37,10 +37,16 @@ public class DiskuvOutdoorUserAuthenticator implements Authenticator<String, Use
   private final Meter invalidJwtTokenMeter =
       metricRegistry.meter(name(getClass(), "authentication", "invalidJwtToken"));
 
-  private final JwtAuthentication jwtAuthentication;
+  private final JwtAuthentication          jwtAuthentication;
+  private final Optional<OutdoorUuidCache> outdoorUuidCache;
 
   public DiskuvOutdoorUserAuthenticator(JwtAuthentication jwtAuthentication) {
+    this(jwtAuthentication, Optional.empty());
+  }
+
+  public DiskuvOutdoorUserAuthenticator(JwtAuthentication jwtAuthentication, Optional<OutdoorUuidCache> outdoorUuidCache) {
     this.jwtAuthentication = jwtAuthentication;
+    this.outdoorUuidCache  = outdoorUuidCache;
   }
 
   @Override
@@ -48,7 +54,7 @@ public class DiskuvOutdoorUserAuthenticator implements Authenticator<String, Use
     final UUID accountId;
     try {
       String emailAddress = jwtAuthentication.verifyBearerTokenAndGetEmailAddress(bearerToken);
-      accountId = DiskuvUuidUtil.uuidForOutdoorEmailAddress(emailAddress);
+      accountId = OutdoorUuidCache.uuidForOutdoorEmailAddress(outdoorUuidCache, emailAddress);
 
     } catch (IllegalArgumentException iae) {
       invalidJwtTokenMeter.mark();
@@ -35,6 +35,10 @@ public class GroupUser implements Principal {
             MessageDigest.isEqual(this.userCiphertext.toByteArray(), uuid.toByteArray());
   }
 
+  public ByteString getUserCiphertext() {
+    return userCiphertext;
+  }
+
   public GroupPublicParams getGroupPublicKey() {
     try {
       return new GroupPublicParams(groupPublicKey.toByteArray());
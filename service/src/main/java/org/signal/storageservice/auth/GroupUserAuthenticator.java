@@ -5,6 +5,10 @@
 
 package org.signal.storageservice.auth;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
 import com.google.protobuf.ByteString;
 import io.dropwizard.auth.Authenticator;
 import io.dropwizard.auth.basic.BasicCredentials;
@@ -16,34 +20,77 @@ import org.signal.zkgroup.VerificationFailedException;
 import org.signal.zkgroup.auth.AuthCredentialPresentation;
 import org.signal.zkgroup.auth.ServerZkAuthOperations;
 import org.signal.zkgroup.groups.GroupPublicParams;
+import org.whispersystems.textsecuregcm.util.Constants;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.Optional;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
 public class GroupUserAuthenticator implements Authenticator<BasicCredentials, GroupUser> {
 
+  // [Diskuv Change] CPU spent per authentication, and in the zero-knowledge verification alone
+  private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+  private final MetricRegistry metricRegistry          = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private final Timer          verifyPresentationTimer = metricRegistry.timer(name(getClass(), "verifyPresentation"));
+  private final Histogram      cpuNanosHistogram       = metricRegistry.histogram(name(getClass(), "authentication", "cpuNanos"));
+
   private ServerZkAuthOperations serverZkAuthOperations;
 
+  private final Optional<VerifiedPresentationCache> verifiedPresentationCache;
+
   public GroupUserAuthenticator(ServerZkAuthOperations serverZkAuthOperations) {
-    this.serverZkAuthOperations = serverZkAuthOperations;
+    this(serverZkAuthOperations, Optional.empty());
+  }
+
+  public GroupUserAuthenticator(ServerZkAuthOperations serverZkAuthOperations, Optional<VerifiedPresentationCache> verifiedPresentationCache) {
+    this.serverZkAuthOperations    = serverZkAuthOperations;
+    this.verifiedPresentationCache = verifiedPresentationCache;
   }
 
   @Override
   public Optional<GroupUser> authenticate(BasicCredentials basicCredentials) {
+    long startCpuNanos = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : -1;
+
     try {
       String encodedGroupPublicKey = basicCredentials.getUsername();
       String encodedPresentation   = basicCredentials.getPassword();
 
-      GroupPublicParams          groupPublicKey = new GroupPublicParams(Hex.decodeHex(encodedGroupPublicKey));
-      AuthCredentialPresentation presentation   = new AuthCredentialPresentation(Hex.decodeHex(encodedPresentation));
+      byte[] groupPublicKeyBytes = Hex.decodeHex(encodedGroupPublicKey);
+      byte[] presentationBytes   = Hex.decodeHex(encodedPresentation);
+
+      // [Diskuv Change] Skip the zero-knowledge verification of a presentation already verified for this group
+      ByteString cacheKey = null;
+      if (verifiedPresentationCache.isPresent()) {
+        cacheKey = VerifiedPresentationCache.getKey(groupPublicKeyBytes, presentationBytes);
+
+        Optional<GroupUser> cached = verifiedPresentationCache.get().get(cacheKey);
+        if (cached.isPresent()) return cached;
+      }
+
+      GroupPublicParams          groupPublicKey = new GroupPublicParams(groupPublicKeyBytes);
+      AuthCredentialPresentation presentation   = new AuthCredentialPresentation(presentationBytes);
+
+      try (Timer.Context ignored = verifyPresentationTimer.time()) {
+        serverZkAuthOperations.verifyAuthCredentialPresentation(groupPublicKey, presentation);
+      }
+
+      GroupUser groupUser = new GroupUser(ByteString.copyFrom(presentation.getUuidCiphertext().serialize()),
+                                          ByteString.copyFrom(groupPublicKey.serialize()),
+                                          ByteString.copyFrom(groupPublicKey.getGroupIdentifier().serialize()));
 
-      serverZkAuthOperations.verifyAuthCredentialPresentation(groupPublicKey, presentation);
+      if (cacheKey != null) {
+        verifiedPresentationCache.get().put(cacheKey, presentation.getRedemptionTime(), groupUser);
+      }
 
-      return Optional.of(new GroupUser(ByteString.copyFrom(presentation.getUuidCiphertext().serialize()),
-                                       ByteString.copyFrom(groupPublicKey.serialize()),
-                                       ByteString.copyFrom(groupPublicKey.getGroupIdentifier().serialize())));
+      return Optional.of(groupUser);
 
     } catch (DecoderException | VerificationFailedException | InvalidInputException | InvalidRedemptionTimeException e) {
       return Optional.empty();
+    } finally {
+      if (startCpuNanos >= 0) cpuNanosHistogram.update(THREAD_MX_BEAN.getCurrentThreadCpuTime() - startCpuNanos);
     }
   }
 }
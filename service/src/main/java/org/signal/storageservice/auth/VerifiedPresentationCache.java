@@ -0,0 +1,102 @@
+package org.signal.storageservice.auth;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.protobuf.ByteString;
+import org.whispersystems.textsecuregcm.util.Constants;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * [Diskuv Change] A bounded cache of auth credential presentations that have already been verified
+ * for a group.
+ *
+ * <p>Clients send the same presentation with every request of a burst, and verifying it is a
+ * zero-knowledge proof check. Entries are keyed by a SHA-256 hash of the group public params and
+ * the presentation, so a presentation is only ever accepted again for the group it was verified
+ * against. An entry expires at the end of the presentation's redemption day, which is inside the
+ * window {@link org.signal.zkgroup.auth.ServerZkAuthOperations} accepts, or after the configured
+ * time to live, whichever is first.
+ */
+public class VerifiedPresentationCache {
+
+  private static final long MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+
+  private static class Entry {
+    private final GroupUser groupUser;
+    private final long      expiresAt;
+
+    private Entry(GroupUser groupUser, long expiresAt) {
+      this.groupUser = groupUser;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private final MetricRegistry metricRegistry = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private final Meter          hitMeter       = metricRegistry.meter(name(VerifiedPresentationCache.class, "hit"));
+  private final Meter          missMeter      = metricRegistry.meter(name(VerifiedPresentationCache.class, "miss"));
+
+  private final Cache<ByteString, Entry> cache;
+  private final Duration                 timeToLive;
+  private final Clock                    clock;
+
+  public VerifiedPresentationCache(long maximumSize, Duration timeToLive) {
+    this(maximumSize, timeToLive, Clock.systemUTC());
+  }
+
+  @VisibleForTesting
+  VerifiedPresentationCache(long maximumSize, Duration timeToLive, Clock clock) {
+    this.cache      = CacheBuilder.newBuilder()
+                                  .maximumSize(maximumSize)
+                                  .expireAfterWrite(timeToLive.toMillis(), TimeUnit.MILLISECONDS)
+                                  .build();
+    this.timeToLive = timeToLive;
+    this.clock      = clock;
+
+    metricRegistry.gauge(name(VerifiedPresentationCache.class, "size"), () -> (Gauge<Long>) cache::size);
+  }
+
+  public static ByteString getKey(byte[] groupPublicParams, byte[] presentation) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(groupPublicParams);
+      digest.update(presentation);
+      return ByteString.copyFrom(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  public Optional<GroupUser> get(ByteString key) {
+    Entry entry = cache.getIfPresent(key);
+
+    if (entry == null || entry.expiresAt <= clock.millis()) {
+      if (entry != null) cache.invalidate(key);
+      missMeter.mark();
+      return Optional.empty();
+    }
+
+    hitMeter.mark();
+    return Optional.of(entry.groupUser);
+  }
+
+  public void put(ByteString key, int redemptionTime, GroupUser groupUser) {
+    long expiresAt = Math.min(clock.millis() + timeToLive.toMillis(), (redemptionTime + 1L) * MILLIS_PER_DAY);
+
+    if (expiresAt > clock.millis()) {
+      cache.put(key, new Entry(groupUser, expiresAt));
+    }
+  }
+}
@@ -26,6 +26,12 @@ public class GroupConfiguration {
   @NotEmpty
   private String externalServiceSecret;
 
+  // [Diskuv Change] Serialized size a group log response may grow to before it is cut short with a
+  // 206. The first change record is always returned, whatever its size.
+  @JsonProperty
+  @Positive
+  private long maxLogResponseBytes = 2 * 1024 * 1024;
+
   public int getMaxGroupSize() {
     return maxGroupSize;
   }
@@ -44,6 +50,15 @@ public class GroupConfiguration {
     this.maxGroupTitleLengthBytes = maxGroupTitleLengthBytes;
   }
 
+  public long getMaxLogResponseBytes() {
+    return maxLogResponseBytes;
+  }
+
+  @VisibleForTesting
+  public void setMaxLogResponseBytes(long maxLogResponseBytes) {
+    this.maxLogResponseBytes = maxLogResponseBytes;
+  }
+
   public byte[] getExternalServiceSecret() throws DecoderException {
     return Hex.decodeHex(externalServiceSecret);
   }
@@ -5,9 +5,13 @@
 
 package org.signal.storageservice.controllers;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
 import com.codahale.metrics.annotation.Timed;
 import com.diskuv.communicatorservice.storage.SanctuariesDao;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
 import io.dropwizard.auth.Auth;
 import io.dropwizard.util.Strings;
 import org.apache.commons.codec.binary.Base64;
@@ -19,11 +23,14 @@ import org.signal.storageservice.configuration.GroupConfiguration;
 import org.signal.storageservice.groups.GroupAuth;
 import org.signal.storageservice.groups.GroupChangeApplicator;
 import org.signal.storageservice.groups.GroupValidator;
+import org.signal.storageservice.groups.IndexedGroup;
 import org.signal.storageservice.providers.NoUnknownFields;
 import org.signal.storageservice.providers.ProtocolBufferMediaType;
+import org.signal.storageservice.providers.ProtocolBufferSizeLimit;
 import org.signal.storageservice.s3.PolicySigner;
 import org.signal.storageservice.s3.PostPolicyGenerator;
 import org.signal.storageservice.sanctuaries.GroupPlusSanctuary;
+import org.signal.storageservice.sanctuaries.PrunedChangeRecordCache;
 import org.signal.storageservice.sanctuaries.SanctuaryPruner;
 import org.signal.storageservice.storage.GroupsManager;
 import org.signal.storageservice.storage.protos.groups.*;
@@ -33,7 +40,9 @@ import org.signal.storageservice.util.Pair;
 import org.signal.zkgroup.NotarySignature;
 import org.signal.zkgroup.ServerSecretParams;
 import org.signal.zkgroup.profiles.ServerZkProfileOperations;
+import org.whispersystems.textsecuregcm.util.Constants;
 
+import javax.annotation.Nullable;
 import javax.ws.rs.*;
 import javax.ws.rs.core.Response;
 import java.security.MessageDigest;
@@ -45,15 +54,28 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
 @Path("/v1/groups")
 public class GroupsController {
   private static final int LOG_VERSION_LIMIT = 64;
   private static final int INVITE_LINKS_CHANGE_EPOCH = 1;
 
+  // [Diskuv Change] A whole group, or a change adding most of one, carries a profile key credential
+  // presentation of about 1 KiB per member. This is the only protocol buffer input that can be large.
+  private static final long GROUP_REQUEST_SIZE_LIMIT = 4L * 1024 * 1024;
+
+  // [Diskuv Change] Per-stage latencies of the concurrent group and sanctuary reads.
+  private final MetricRegistry metricRegistry             = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private final Timer          getGroupPlusTimer          = metricRegistry.timer(name(getClass(), "getGroupPlus"));
+  private final Timer          getGroupPlusGroupTimer     = metricRegistry.timer(name(getClass(), "getGroupPlus", "group"));
+  private final Timer          getGroupPlusSanctuaryTimer = metricRegistry.timer(name(getClass(), "getGroupPlus", "sanctuary"));
+
   private final GroupsManager             groupsManager;
   private final ServerSecretParams        serverSecretParams;
   private final GroupValidator            groupValidator;
@@ -65,6 +87,11 @@ public class GroupsController {
 
   private final ExternalGroupCredentialGenerator externalGroupCredentialGenerator;
 
+  private final long maxLogResponseBytes;
+
+  @Nullable
+  private final PrunedChangeRecordCache prunedChangeRecordCache;
+
   public GroupsController(GroupsManager                    groupsManager,
                           ServerSecretParams               serverSecretParams,
                           PolicySigner                     policySigner,
@@ -72,15 +99,32 @@ public class GroupsController {
                           GroupConfiguration               groupConfiguration,
                           SanctuariesDao                   sanctuariesDao,
                           ExternalGroupCredentialGenerator externalGroupCredentialGenerator)
+  {
+    this(groupsManager, serverSecretParams, policySigner, policyGenerator, groupConfiguration, sanctuariesDao, externalGroupCredentialGenerator, Optional.empty(), Optional.empty());
+  }
+
+  // [Diskuv Change] Optionally verify the presentations of requests that add several members concurrently,
+  //                 and optionally reuse sanctuary change records already pruned for other members
+  public GroupsController(GroupsManager                    groupsManager,
+                          ServerSecretParams               serverSecretParams,
+                          PolicySigner                     policySigner,
+                          PostPolicyGenerator              policyGenerator,
+                          GroupConfiguration               groupConfiguration,
+                          SanctuariesDao                   sanctuariesDao,
+                          ExternalGroupCredentialGenerator externalGroupCredentialGenerator,
+                          Optional<Executor>               presentationVerificationExecutor,
+                          Optional<PrunedChangeRecordCache> prunedChangeRecordCache)
   {
     this.groupsManager                    = groupsManager;
     this.serverSecretParams               = serverSecretParams;
-    this.groupValidator                   = new GroupValidator       (new ServerZkProfileOperations(serverSecretParams), groupConfiguration);
+    this.groupValidator                   = new GroupValidator       (new ServerZkProfileOperations(serverSecretParams), groupConfiguration, presentationVerificationExecutor);
     this.groupChangeApplicator            = new GroupChangeApplicator(this.groupValidator                                            );
     this.policySigner                     = policySigner;
     this.policyGenerator                  = policyGenerator;
     this.sanctuariesDao                   = sanctuariesDao;
     this.externalGroupCredentialGenerator = externalGroupCredentialGenerator;
+    this.prunedChangeRecordCache          = prunedChangeRecordCache.orElse(null);
+    this.maxLogResponseBytes              = groupConfiguration.getMaxLogResponseBytes();
   }
 
   @Timed
@@ -146,7 +190,9 @@ public class GroupsController {
   @GET
   @Produces(ProtocolBufferMediaType.APPLICATION_PROTOBUF)
   @Path("/logs/{fromVersion}")
-  public CompletableFuture<Response> getGroupLogs(@Auth GroupUser user, @PathParam("fromVersion") int fromVersion) {
+  public CompletableFuture<Response> getGroupLogs(@Auth GroupUser user, @PathParam("fromVersion") int fromVersion,
+                                                  @QueryParam("includeIntermediateStates") @DefaultValue("true") boolean includeIntermediateStates)
+  {
     return getGroupPlus(user.getGroupId()).thenCompose(groupPlusSanctuary -> {
       Optional<Group> group = groupPlusSanctuary.getGroup();
       if (group.isEmpty()) {
@@ -170,25 +216,67 @@ public class GroupsController {
 
       boolean sanctuary = groupPlusSanctuary.isSanctuary();
       if (latestGroupVersion + 1 - fromVersion > LOG_VERSION_LIMIT) {
-        return groupsManager.getChangeRecords(user.getGroupId(), group.get(), fromVersion, fromVersion + LOG_VERSION_LIMIT)
-                            .thenApply(groupChangeStates -> SanctuaryPruner.pruneChangeRecords(user, group.get(), sanctuary, groupChangeStates))
-                            .thenApply(records -> Response.status(HttpStatus.SC_PARTIAL_CONTENT)
-                                                          .header(HttpHeaders.CONTENT_RANGE, String.format(Locale.US, "versions %d-%d/%d", fromVersion, fromVersion + LOG_VERSION_LIMIT - 1, latestGroupVersion))
-                                                          .entity(GroupChanges.newBuilder()
-                                                                              .addAllGroupChanges(records)
-                                                                              .build())
-                                                          .build());
+        return groupsManager.getChangeRecords(user.getGroupId(), group.get(), fromVersion, fromVersion + LOG_VERSION_LIMIT, maxLogResponseBytes)
+                            .thenApply(groupChangeStates -> SanctuaryPruner.pruneChangeRecords(user, group.get(), sanctuary, groupChangeStates, prunedChangeRecordCache))
+                            .thenApply(records -> getGroupLogsResponse(records, fromVersion, fromVersion + LOG_VERSION_LIMIT - 1, latestGroupVersion, includeIntermediateStates));
       } else {
-        return groupsManager.getChangeRecords(user.getGroupId(), group.get(), fromVersion, latestGroupVersion + 1)
-                            .thenApply(groupChangeStates -> SanctuaryPruner.pruneChangeRecords(user, group.get(), sanctuary, groupChangeStates))
-                            .thenApply(records -> Response.ok(GroupChanges.newBuilder()
-                                                                          .addAllGroupChanges(records)
-                                                                          .build())
-                                                          .build());
+        return groupsManager.getChangeRecords(user.getGroupId(), group.get(), fromVersion, latestGroupVersion + 1, maxLogResponseBytes)
+                            .thenApply(groupChangeStates -> SanctuaryPruner.pruneChangeRecords(user, group.get(), sanctuary, groupChangeStates, prunedChangeRecordCache))
+                            .thenApply(records -> getGroupLogsResponse(records, fromVersion, latestGroupVersion, latestGroupVersion, includeIntermediateStates));
       }
     });
   }
 
+  // [Diskuv Change] Cut the log short once it would exceed maxLogResponseBytes, and optionally leave
+  // out the group states between the first and the last change
+  private Response getGroupLogsResponse(List<GroupChanges.GroupChangeState> records, int fromVersion, int toVersion, int latestGroupVersion,
+                                        boolean includeIntermediateStates)
+  {
+    int  count = 0;
+    long bytes = 0;
+
+    for (GroupChanges.GroupChangeState record : records) {
+      // Whichever record ends up last keeps its state, so it must fit in full
+      long lastSize = CodedOutputStream.computeMessageSize(GroupChanges.GROUPCHANGES_FIELD_NUMBER, record);
+      if (count > 0 && bytes + lastSize > maxLogResponseBytes) {
+        break;
+      }
+
+      bytes += count == 0 ? lastSize : CodedOutputStream.computeMessageSize(GroupChanges.GROUPCHANGES_FIELD_NUMBER, withoutIntermediateState(record, includeIntermediateStates));
+      count++;
+    }
+
+    GroupChanges.Builder groupChanges = GroupChanges.newBuilder();
+
+    for (int i = 0; i < count; i++) {
+      GroupChanges.GroupChangeState record = records.get(i);
+      groupChanges.addGroupChanges(i == 0 || i == count - 1 ? record : withoutIntermediateState(record, includeIntermediateStates));
+    }
+
+    if (count > 0) {
+      // The group log stops reading once maxLogResponseBytes is spent, and versions in the log need
+      // not be dense, so the range ends at the last version returned
+      toVersion = Math.min(toVersion, records.get(count - 1).getGroupState().getVersion());
+    }
+
+    if (toVersion < latestGroupVersion) {
+      return Response.status(HttpStatus.SC_PARTIAL_CONTENT)
+                     .header(HttpHeaders.CONTENT_RANGE, String.format(Locale.US, "versions %d-%d/%d", fromVersion, toVersion, latestGroupVersion))
+                     .entity(groupChanges.build())
+                     .build();
+    }
+
+    return Response.ok(groupChanges.build()).build();
+  }
+
+  private static GroupChanges.GroupChangeState withoutIntermediateState(GroupChanges.GroupChangeState record, boolean includeIntermediateStates) {
+    // A record without a change (like one truncated for a sanctuary member) only has its state to offer
+    if (includeIntermediateStates || !record.hasGroupChange()) {
+      return record;
+    }
+    return GroupChanges.GroupChangeState.newBuilder(record).clearGroupState().build();
+  }
+
   @Timed
   @GET
   @Produces(ProtocolBufferMediaType.APPLICATION_PROTOBUF)
@@ -217,7 +305,7 @@ public class GroupsController {
   @PUT
   @Produces(ProtocolBufferMediaType.APPLICATION_PROTOBUF)
   @Consumes(ProtocolBufferMediaType.APPLICATION_PROTOBUF)
-  public CompletableFuture<Response> createGroup(@Auth GroupUser user, @NoUnknownFields Group group) {
+  public CompletableFuture<Response> createGroup(@Auth GroupUser user, @NoUnknownFields @ProtocolBufferSizeLimit(GROUP_REQUEST_SIZE_LIMIT) Group group) {
     if (group.getVersion() != 0)                                        return CompletableFuture.completedFuture(Response.status(Response.Status.BAD_REQUEST).build());
     if (group.getPublicKey() == null || group.getPublicKey().isEmpty()) return CompletableFuture.completedFuture(Response.status(Response.Status.BAD_REQUEST).build());
     if (group.getTitle() == null || group.getTitle().isEmpty())         return CompletableFuture.completedFuture(Response.status(Response.Status.BAD_REQUEST).build());
@@ -238,13 +326,9 @@ public class GroupsController {
       return CompletableFuture.completedFuture(Response.status(Response.Status.BAD_REQUEST).build());
     }
 
-    List<Member>                  validatedMembers                  = new LinkedList<>();
+    List<Member>                  validatedMembers                  = groupValidator.validateMembers(group, group.getMembersList());
     List<MemberPendingProfileKey> validatedMemberPendingProfileKeys = new LinkedList<>();
 
-    for (Member member : group.getMembersList()) {
-      validatedMembers.add(groupValidator.validateMember(group, member));
-    }
-
     group = group.toBuilder().clearMembers().addAllMembers(validatedMembers).build();
 
     Optional<Member> source = GroupAuth.getMember(user, group);
@@ -295,7 +379,7 @@ public class GroupsController {
   @PATCH
   @Produces(ProtocolBufferMediaType.APPLICATION_PROTOBUF)
   @Consumes(ProtocolBufferMediaType.APPLICATION_PROTOBUF)
-  public CompletableFuture<Response> modifyGroup(@Auth GroupUser user, @QueryParam("inviteLinkPassword") String inviteLinkPasswordString, @NoUnknownFields GroupChange.Actions submittedActions) {
+  public CompletableFuture<Response> modifyGroup(@Auth GroupUser user, @QueryParam("inviteLinkPassword") String inviteLinkPasswordString, @NoUnknownFields @ProtocolBufferSizeLimit(GROUP_REQUEST_SIZE_LIMIT) GroupChange.Actions submittedActions) {
     final byte[] inviteLinkPassword;
     if (Strings.isNullOrEmpty(inviteLinkPasswordString)) {
       inviteLinkPassword = null;
@@ -323,48 +407,49 @@ public class GroupsController {
       int changeEpoch = 0;
 
       Group.Builder modifiedGroupBuilder = group.get().toBuilder();
+      IndexedGroup  indexedGroup         = IndexedGroup.of(group.get());
 
-      groupChangeApplicator.applyAddMembers(user, inviteLinkPassword, group.get(), modifiedGroupBuilder, actions.getAddMembersList());
-      groupChangeApplicator.applyDeleteMembers(user, inviteLinkPassword, group.get(), modifiedGroupBuilder, actions.getDeleteMembersList());
-      groupChangeApplicator.applyModifyMemberRoles(user, inviteLinkPassword, group.get(), modifiedGroupBuilder, actions.getModifyMemberRolesList());
-      groupChangeApplicator.applyModifyMemberProfileKeys(user, inviteLinkPassword, group.get(), modifiedGroupBuilder, actions.getModifyMemberProfileKeysList());
+      groupChangeApplicator.applyAddMembers(user, inviteLinkPassword, indexedGroup, modifiedGroupBuilder, actions.getAddMembersList());
+      groupChangeApplicator.applyDeleteMembers(user, inviteLinkPassword, indexedGroup, modifiedGroupBuilder, actions.getDeleteMembersList());
+      groupChangeApplicator.applyModifyMemberRoles(user, inviteLinkPassword, indexedGroup, modifiedGroupBuilder, actions.getModifyMemberRolesList());
+      groupChangeApplicator.applyModifyMemberProfileKeys(user, inviteLinkPassword, indexedGroup, modifiedGroupBuilder, actions.getModifyMemberProfileKeysList());
 
-      groupChangeApplicator.applyAddMembersPendingProfileKey(user, inviteLinkPassword, group.get(), modifiedGroupBuilder, actions.getAddMembersPendingProfileKeyList());
-      groupChangeApplicator.applyDeleteMembersPendingProfileKey(user, inviteLinkPassword, group.get(), modifiedGroupBuilder, actions.getDeleteMembersPendingProfileKeyList());
-      groupChangeApplicator.applyPromoteMembersPendingProfileKey(user, inviteLinkPassword, group.get(), modifiedGroupBuilder, actions.getPromoteMembersPendingProfileKeyList());
+      groupChangeApplicator.applyAddMembersPendingProfileKey(user, inviteLinkPassword, indexedGroup, modifiedGroupBuilder, actions.getAddMembersPendingProfileKeyList());
+      groupChangeApplicator.applyDeleteMembersPendingProfileKey(user, inviteLinkPassword, indexedGroup, modifiedGroupBuilder, actions.getDeleteMembersPendingProfileKeyList());
+      groupChangeApplicator.applyPromoteMembersPendingProfileKey(user, inviteLinkPassword, indexedGroup, modifiedGroupBuilder, actions.getPromoteMembersPendingProfileKeyList());
 
-      if (actions.hasModifyTitle()) groupChangeApplicator.applyModifyTitle(user, inviteLinkPassword, group.get(), modifiedGroupBuilder, actions.getModifyTitle());
-      if (actions.hasModifyAvatar()) groupChangeApplicator.applyModifyAvatar(user, inviteLinkPassword, group.get(), modifiedGroupBuilder, actions.getModifyAvatar());
-      if (actions.hasModifyDisappearingMessageTimer()) groupChangeApplicator.applyModifyDisappearingMessageTimer(user, inviteLinkPassword, group.get(), modifiedGroupBuilder, actions.getModifyDisappearingMessageTimer());
+      if (actions.hasModifyTitle()) groupChangeApplicator.applyModifyTitle(user, inviteLinkPassword, indexedGroup, modifiedGroupBuilder, actions.getModifyTitle());
+      if (actions.hasModifyAvatar()) groupChangeApplicator.applyModifyAvatar(user, inviteLinkPassword, indexedGroup, modifiedGroupBuilder, actions.getModifyAvatar());
+      if (actions.hasModifyDisappearingMessageTimer()) groupChangeApplicator.applyModifyDisappearingMessageTimer(user, inviteLinkPassword, indexedGroup, modifiedGroupBuilder, actions.getModifyDisappearingMessageTimer());
 
-      if (actions.hasModifyAttributesAccess()) groupChangeApplicator.applyModifyAttributesAccess(user, inviteLinkPassword, group.get(), modifiedGroupBuilder, actions.getModifyAttributesAccess());
-      if (actions.hasModifyMemberAccess()) groupChangeApplicator.applyModifyMembersAccess(user, inviteLinkPassword, group.get(), modifiedGroupBuilder, actions.getModifyMemberAccess());
+      if (actions.hasModifyAttributesAccess()) groupChangeApplicator.applyModifyAttributesAccess(user, inviteLinkPassword, indexedGroup, modifiedGroupBuilder, actions.getModifyAttributesAccess());
+      if (actions.hasModifyMemberAccess()) groupChangeApplicator.applyModifyMembersAccess(user, inviteLinkPassword, indexedGroup, modifiedGroupBuilder, actions.getModifyMemberAccess());
 
       if (actions.hasModifyAddFromInviteLinkAccess()) {
-        groupChangeApplicator.applyModifyAddFromInviteLinkAccess(user, inviteLinkPassword, group.get(), modifiedGroupBuilder, actions.getModifyAddFromInviteLinkAccess());
+        groupChangeApplicator.applyModifyAddFromInviteLinkAccess(user, inviteLinkPassword, indexedGroup, modifiedGroupBuilder, actions.getModifyAddFromInviteLinkAccess());
         changeEpoch = Math.max(changeEpoch, INVITE_LINKS_CHANGE_EPOCH);
       }
       if (actions.getAddMembersPendingAdminApprovalCount() != 0) {
-        groupChangeApplicator.applyAddMembersPendingAdminApproval(user, inviteLinkPassword, group.get(), modifiedGroupBuilder, actions.getAddMembersPendingAdminApprovalList());
+        groupChangeApplicator.applyAddMembersPendingAdminApproval(user, inviteLinkPassword, indexedGroup, modifiedGroupBuilder, actions.getAddMembersPendingAdminApprovalList());
         changeEpoch = Math.max(changeEpoch, INVITE_LINKS_CHANGE_EPOCH);
       }
       if (actions.getDeleteMembersPendingAdminApprovalCount() != 0) {
-        groupChangeApplicator.applyDeleteMembersPendingAdminApproval(user, inviteLinkPassword, group.get(), modifiedGroupBuilder, actions.getDeleteMembersPendingAdminApprovalList());
+        groupChangeApplicator.applyDeleteMembersPendingAdminApproval(user, inviteLinkPassword, indexedGroup, modifiedGroupBuilder, actions.getDeleteMembersPendingAdminApprovalList());
         changeEpoch = Math.max(changeEpoch, INVITE_LINKS_CHANGE_EPOCH);
       }
       if (actions.getPromoteMembersPendingAdminApprovalCount() != 0) {
-        groupChangeApplicator.applyPromotePendingAdminApproval(user, inviteLinkPassword, group.get(), modifiedGroupBuilder, actions.getPromoteMembersPendingAdminApprovalList());
+        groupChangeApplicator.applyPromotePendingAdminApproval(user, inviteLinkPassword, indexedGroup, modifiedGroupBuilder, actions.getPromoteMembersPendingAdminApprovalList());
         changeEpoch = Math.max(changeEpoch, INVITE_LINKS_CHANGE_EPOCH);
       }
       if (actions.hasModifyInviteLinkPassword()) {
-        groupChangeApplicator.applyModifyInviteLinkPassword(user, inviteLinkPassword, group.get(), modifiedGroupBuilder, actions.getModifyInviteLinkPassword());
+        groupChangeApplicator.applyModifyInviteLinkPassword(user, inviteLinkPassword, indexedGroup, modifiedGroupBuilder, actions.getModifyInviteLinkPassword());
         changeEpoch = Math.max(changeEpoch, INVITE_LINKS_CHANGE_EPOCH);
       }
 
-      ByteString sourceUuid = Stream.of((Supplier<Optional<ByteString>>) () -> GroupAuth.getMember(user, group.get()).map(Member::getUserId),
+      ByteString sourceUuid = Stream.of((Supplier<Optional<ByteString>>) () -> GroupAuth.getMember(user, indexedGroup).map(Member::getUserId),
                                         (Supplier<Optional<ByteString>>) () -> GroupAuth.getMember(user, modifiedGroupBuilder.build()).map(Member::getUserId),
-                                        (Supplier<Optional<ByteString>>) () -> GroupAuth.getMemberPendingProfileKey(user, group.get()).map(pending -> pending.getMember().getUserId()),
-                                        (Supplier<Optional<ByteString>>) () -> GroupAuth.getMemberPendingAdminApproval(user, group.get()).map(MemberPendingAdminApproval::getUserId),
+                                        (Supplier<Optional<ByteString>>) () -> GroupAuth.getMemberPendingProfileKey(user, indexedGroup).map(pending -> pending.getMember().getUserId()),
+                                        (Supplier<Optional<ByteString>>) () -> GroupAuth.getMemberPendingAdminApproval(user, indexedGroup).map(MemberPendingAdminApproval::getUserId),
                                         (Supplier<Optional<ByteString>>) () -> GroupAuth.getMemberPendingAdminApproval(user, modifiedGroupBuilder.build()).map(MemberPendingAdminApproval::getUserId))
                                     .map(Supplier::get)
                                     .filter(Optional::isPresent)
@@ -386,13 +471,25 @@ public class GroupsController {
 
       groupValidator.validateFinalGroupState(updatedGroupState);
 
+      // [Diskuv Change] Optionally update the group and append its change record in one transaction.
+      if (groupsManager.isAtomicChangeRecords()) {
+        return groupsManager.updateGroupWithChangeRecord(user.getGroupId(), updatedGroupState, signedGroupChange, group.get())
+                            .thenApply(result -> {
+                              if (result.isPresent()) {
+                                return Response.status(Response.Status.CONFLICT).entity(result.get()).build();
+                              }
+
+                              return Response.ok(signedGroupChange).build();
+                            });
+      }
+
       return groupsManager.updateGroup(user.getGroupId(), updatedGroupState)
                           .thenCompose(result -> {
                             if (result.isPresent()) {
                               return CompletableFuture.completedFuture(Response.status(Response.Status.CONFLICT).entity(result.get()).build());
                             }
 
-                            return groupsManager.appendChangeRecord(user.getGroupId(), version, signedGroupChange, updatedGroupState)
+                            return groupsManager.appendChangeRecord(user.getGroupId(), version, signedGroupChange, updatedGroupState, group.get())
                                                 .thenApply(success -> Response.ok(signedGroupChange).build());
                           });
 
@@ -423,11 +520,24 @@ public class GroupsController {
   }
 
   private CompletableFuture<GroupPlusSanctuary> getGroupPlus(ByteString groupId) {
-    return groupsManager.getGroup(groupId).thenCompose(group -> {
-      if (group.isEmpty()) {
-        return CompletableFuture.completedFuture(new GroupPlusSanctuary(group, false));
-      }
-      return sanctuariesDao.getSanctuary(groupId).thenApply(sanctuaryItem -> new GroupPlusSanctuary(group, sanctuaryItem.isPresent()));
-    });
+    // [Diskuv Change] Issue both reads at once so the latency is that of the slower read rather than
+    // their sum. The sanctuary read is wasted when the group does not exist, which is rare, and its
+    // outcome is then ignored so that a failed sanctuary read does not turn a 404 into a 500.
+    Timer.Context                      context   = getGroupPlusTimer.time();
+    CompletableFuture<Optional<Group>> group     = timed(getGroupPlusGroupTimer, () -> groupsManager.getGroup(groupId));
+    CompletableFuture<Boolean>         sanctuary = timed(getGroupPlusSanctuaryTimer, () -> sanctuariesDao.getSanctuary(groupId).thenApply(Optional::isPresent));
+
+    return group.thenCompose(groupValue -> {
+                  if (groupValue.isEmpty()) {
+                    return CompletableFuture.completedFuture(new GroupPlusSanctuary(groupValue, false));
+                  }
+                  return sanctuary.thenApply(sanctuaryValue -> new GroupPlusSanctuary(groupValue, sanctuaryValue));
+                })
+                .whenComplete((result, throwable) -> context.stop());
+  }
+
+  private static <T> CompletableFuture<T> timed(Timer timer, Supplier<CompletableFuture<T>> supplier) {
+    Timer.Context context = timer.time();
+    return supplier.get().whenComplete((result, throwable) -> context.stop());
   }
 }
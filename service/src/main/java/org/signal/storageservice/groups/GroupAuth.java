@@ -49,6 +49,18 @@ public class GroupAuth {
     return Optional.empty();
   }
 
+  public static Optional<Member> getMember(GroupUser user, IndexedGroup group) {
+    return group.getMember(user);
+  }
+
+  public static Optional<MemberPendingProfileKey> getMemberPendingProfileKey(GroupUser user, IndexedGroup group) {
+    return group.getMemberPendingProfileKey(user);
+  }
+
+  public static Optional<MemberPendingAdminApproval> getMemberPendingAdminApproval(GroupUser user, IndexedGroup group) {
+    return group.getMemberPendingAdminApproval(user);
+  }
+
   public static boolean isAccessRequiredOneOf(AccessControl.AccessRequired valueToTest, AccessControl.AccessRequired... acceptableValues) {
     for (AccessControl.AccessRequired acceptableValue : acceptableValues) {
       if (acceptableValue == valueToTest) {
@@ -97,8 +109,13 @@ public class GroupAuth {
     return false;
   }
 
-  public static boolean isModifyAttributesAllowed(GroupUser user, Group group) {
-    Optional<Member> member = getMember(user, group);
+  public static boolean isAdminstrator(GroupUser user, IndexedGroup group) {
+    return group.getMember(user).map(member -> member.getRole() == Member.Role.ADMINISTRATOR).orElse(false);
+  }
+
+  public static boolean isModifyAttributesAllowed(GroupUser user, IndexedGroup indexedGroup) {
+    Group group = indexedGroup.getGroup();
+    Optional<Member> member = getMember(user, indexedGroup);
 
     if (member.isEmpty()) {
       return false;
@@ -112,8 +129,9 @@ public class GroupAuth {
     }
   }
 
-  public static boolean isAddMembersAllowed(GroupUser user, byte[] inviteLinkPassword, Group group, List<Actions.AddMemberAction> actions) {
-    Optional<Member> member = getMember(user, group);
+  public static boolean isAddMembersAllowed(GroupUser user, byte[] inviteLinkPassword, IndexedGroup indexedGroup, List<Actions.AddMemberAction> actions) {
+    Group group = indexedGroup.getGroup();
+    Optional<Member> member = getMember(user, indexedGroup);
 
     if (member.isPresent()) {
       switch (member.get().getRole()) {
@@ -131,8 +149,9 @@ public class GroupAuth {
            user.isMember(actions.get(0).getAdded(), group.getPublicKey());
   }
 
-  public static boolean isAddMembersPendingProfileKeyAllowed(GroupUser user, Group group) {
-    Optional<Member> member = getMember(user, group);
+  public static boolean isAddMembersPendingProfileKeyAllowed(GroupUser user, IndexedGroup indexedGroup) {
+    Group group = indexedGroup.getGroup();
+    Optional<Member> member = getMember(user, indexedGroup);
 
     if (!member.isPresent()) {
       return false;
@@ -143,40 +162,44 @@ public class GroupAuth {
            group.getAccessControl().getMembers() == AccessControl.AccessRequired.ANY;
   }
 
-  public static boolean isDeleteMembersAllowed(GroupUser user, Group group, List<Actions.DeleteMemberAction> members) {
-    if (isAdminstrator(user, group)) {
+  public static boolean isDeleteMembersAllowed(GroupUser user, IndexedGroup indexedGroup, List<Actions.DeleteMemberAction> members) {
+    Group group = indexedGroup.getGroup();
+    if (isAdminstrator(user, indexedGroup)) {
       return true;
     }
 
     return members.size() == 1 && user.isMember(members.get(0).getDeletedUserId(), group.getPublicKey());
   }
 
-  public static boolean isDeleteMembersPendingProfileKeyAllowed(GroupUser user, Group group, List<Actions.DeleteMemberPendingProfileKeyAction> actions) {
-    if (isAdminstrator(user, group)) {
+  public static boolean isDeleteMembersPendingProfileKeyAllowed(GroupUser user, IndexedGroup indexedGroup, List<Actions.DeleteMemberPendingProfileKeyAction> actions) {
+    Group group = indexedGroup.getGroup();
+    if (isAdminstrator(user, indexedGroup)) {
       return true;
     }
 
     return actions.size() == 1 && user.isMember(actions.get(0).getDeletedUserId(), group.getPublicKey());
   }
 
-  public static boolean isModifyAddFromInviteLinkAccessControlAllowed(GroupUser user, Group group) {
-    return isAdminstrator(user, group);
+  public static boolean isModifyAddFromInviteLinkAccessControlAllowed(GroupUser user, IndexedGroup indexedGroup) {
+    return isAdminstrator(user, indexedGroup);
   }
 
-  public static boolean isModifyInviteLinkPasswordAllowed(GroupUser user, Group group) {
-    return isAdminstrator(user, group);
+  public static boolean isModifyInviteLinkPasswordAllowed(GroupUser user, IndexedGroup indexedGroup) {
+    return isAdminstrator(user, indexedGroup);
   }
 
-  public static boolean isAddMembersPendingAdminApprovalAllowed(GroupUser user, byte[] inviteLinkPassword, Group group) {
+  public static boolean isAddMembersPendingAdminApprovalAllowed(GroupUser user, byte[] inviteLinkPassword, IndexedGroup indexedGroup) {
+    Group group = indexedGroup.getGroup();
     return group.getAccessControl().getAddFromInviteLink() == AccessControl.AccessRequired.ADMINISTRATOR &&
             MessageDigest.isEqual(group.getInviteLinkPassword().toByteArray(), inviteLinkPassword);
   }
 
-  public static boolean isDeleteMembersPendingAdminApprovalAllowed(GroupUser user, Group group, List<Actions.DeleteMemberPendingAdminApprovalAction> actions) {
-    return isAdminstrator(user, group) || (actions.size() == 1 && user.isMember(actions.get(0).getDeletedUserId(), group.getPublicKey()));
+  public static boolean isDeleteMembersPendingAdminApprovalAllowed(GroupUser user, IndexedGroup indexedGroup, List<Actions.DeleteMemberPendingAdminApprovalAction> actions) {
+    Group group = indexedGroup.getGroup();
+    return isAdminstrator(user, indexedGroup) || (actions.size() == 1 && user.isMember(actions.get(0).getDeletedUserId(), group.getPublicKey()));
   }
 
-  public static boolean isPromoteMembersPendingAdminApprovalAllowed(GroupUser user, Group group) {
-    return isAdminstrator(user, group);
+  public static boolean isPromoteMembersPendingAdminApprovalAllowed(GroupUser user, IndexedGroup indexedGroup) {
+    return isAdminstrator(user, indexedGroup);
   }
 }
@@ -18,13 +18,13 @@ import org.signal.zkgroup.profiles.ProfileKeyCredentialPresentation;
 
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.ForbiddenException;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class GroupChangeApplicator {
   private final GroupValidator groupValidator;
@@ -35,7 +35,7 @@ public class GroupChangeApplicator {
 
   public void applyAddMembers(GroupUser user,
                               byte[] inviteLinkPassword,
-                              Group group,
+                              IndexedGroup group,
                               Group.Builder modifiedGroupBuilder,
                               List<GroupChange.Actions.AddMemberAction> addMembers)
           throws ForbiddenException, BadRequestException {
@@ -55,11 +55,13 @@ public class GroupChangeApplicator {
       throw new BadRequestException();
     }
 
-    if (CollectionUtil.containsAny(group.getMembersList().stream().map(Member::getUserId).collect(Collectors.toList()),
+    if (CollectionUtil.containsAny(group.getMemberUserIds(),
                                    addMembers.stream().map(action -> action.getAdded().getUserId()).collect(Collectors.toList()))) {
       throw new BadRequestException();
     }
 
+    Set<ByteString> addedUserIds = new HashSet<>();
+
     for (GroupChange.Actions.AddMemberAction action : addMembers) {
       final ByteString userId = action.getAdded().getUserId();
       if (userId == null || userId.isEmpty()) {
@@ -76,26 +78,34 @@ public class GroupChangeApplicator {
 
       modifiedGroupBuilder.addMembers(Member.newBuilder()
                                             .setRole(action.getAdded().getRole())
-                                            .setJoinedAtVersion(group.getVersion() + 1)
+                                            .setJoinedAtVersion(group.getGroup().getVersion() + 1)
                                             .setUserId(userId)
                                             .setProfileKey(action.getAdded().getProfileKey()));
 
-      for (int i = 0; i < modifiedGroupBuilder.getMembersPendingProfileKeyList().size(); i++) {
-        if (userId.equals(modifiedGroupBuilder.getMembersPendingProfileKey(i).getMember().getUserId())) {
-          modifiedGroupBuilder.removeMembersPendingProfileKey(i);
-          i--;  // decrement i because subsequent elements have shifted to the left
-        }
-      }
-      for (int i = 0; i < modifiedGroupBuilder.getMembersPendingAdminApprovalList().size(); i++) {
-        if (userId.equals(modifiedGroupBuilder.getMembersPendingAdminApproval(i).getUserId())) {
-          modifiedGroupBuilder.removeMembersPendingAdminApproval(i);
-          i--;  // decrement i because subsequent elements have shifted to the left
-        }
-      }
+      addedUserIds.add(userId);
+    }
+
+    // drop the added users from both pending lists in a single pass each
+    List<MemberPendingProfileKey> membersPendingProfileKey = modifiedGroupBuilder.getMembersPendingProfileKeyList()
+                                                                                 .stream()
+                                                                                 .filter(pending -> !addedUserIds.contains(pending.getMember().getUserId()))
+                                                                                 .collect(Collectors.toList());
+
+    if (membersPendingProfileKey.size() != modifiedGroupBuilder.getMembersPendingProfileKeyCount()) {
+      modifiedGroupBuilder.clearMembersPendingProfileKey().addAllMembersPendingProfileKey(membersPendingProfileKey);
+    }
+
+    List<MemberPendingAdminApproval> membersPendingAdminApproval = modifiedGroupBuilder.getMembersPendingAdminApprovalList()
+                                                                                       .stream()
+                                                                                       .filter(pending -> !addedUserIds.contains(pending.getUserId()))
+                                                                                       .collect(Collectors.toList());
+
+    if (membersPendingAdminApproval.size() != modifiedGroupBuilder.getMembersPendingAdminApprovalCount()) {
+      modifiedGroupBuilder.clearMembersPendingAdminApproval().addAllMembersPendingAdminApproval(membersPendingAdminApproval);
     }
   }
 
-  public void applyDeleteMembers(GroupUser user, byte[] inviteLinkPassword, Group group, Group.Builder modifiedGroupBuilder, List<GroupChange.Actions.DeleteMemberAction> deleteMembers)
+  public void applyDeleteMembers(GroupUser user, byte[] inviteLinkPassword, IndexedGroup group, Group.Builder modifiedGroupBuilder, List<GroupChange.Actions.DeleteMemberAction> deleteMembers)
           throws BadRequestException, ForbiddenException {
     if (deleteMembers.isEmpty()) {
       return;
@@ -123,7 +133,7 @@ public class GroupChangeApplicator {
     modifiedGroupBuilder.clearMembers().addAllMembers(membership);
   }
 
-  public void applyModifyMemberRoles(GroupUser user, byte[] inviteLinkPassword, Group group, Group.Builder modifiedGroupBuilder, List<GroupChange.Actions.ModifyMemberRoleAction> modifyMembers)
+  public void applyModifyMemberRoles(GroupUser user, byte[] inviteLinkPassword, IndexedGroup group, Group.Builder modifiedGroupBuilder, List<GroupChange.Actions.ModifyMemberRoleAction> modifyMembers)
           throws BadRequestException, ForbiddenException {
     if (modifyMembers.isEmpty()) {
       return;
@@ -150,14 +160,16 @@ public class GroupChangeApplicator {
       throw new BadRequestException();
     }
 
-    List<Member> currentMembership = modifiedGroupBuilder.getMembersList();
-    List<Member> newMembership     = new LinkedList<>();
+    Map<ByteString, Member.Role> userIdToRoleMap   = modifyMembers.stream().collect(Collectors.toMap(GroupChange.Actions.ModifyMemberRoleAction::getUserId,
+                                                                                                      GroupChange.Actions.ModifyMemberRoleAction::getRole));
+    List<Member>                 currentMembership = modifiedGroupBuilder.getMembersList();
+    List<Member>                 newMembership     = new ArrayList<>(currentMembership.size());
 
     for (Member member : currentMembership) {
-      Optional<GroupChange.Actions.ModifyMemberRoleAction> action = modifyMembers.stream().filter(candidate -> candidate.getUserId().equals(member.getUserId())).findAny();
+      Member.Role role = userIdToRoleMap.get(member.getUserId());
 
-      if (action.isPresent()) {
-        newMembership.add(member.toBuilder().setRole(action.get().getRole()).build());
+      if (role != null) {
+        newMembership.add(member.toBuilder().setRole(role).build());
       } else {
         newMembership.add(member);
       }
@@ -166,45 +178,56 @@ public class GroupChangeApplicator {
     modifiedGroupBuilder.clearMembers().addAllMembers(newMembership);
   }
 
-  public void applyModifyMemberProfileKeys(GroupUser user, byte[] inviteLinkPassword, Group group, Group.Builder modifiedGroupBuilder, List<GroupChange.Actions.ModifyMemberProfileKeyAction> modifyMembers)
+  public void applyModifyMemberProfileKeys(GroupUser user, byte[] inviteLinkPassword, IndexedGroup group, Group.Builder modifiedGroupBuilder, List<GroupChange.Actions.ModifyMemberProfileKeyAction> modifyMembers)
           throws BadRequestException, ForbiddenException {
     if (modifyMembers.isEmpty()) {
       return;
     }
 
-    List<ProfileKeyCredentialPresentation> presentations = new LinkedList<>();
+    List<ProfileKeyCredentialPresentation> presentations = new ArrayList<>();
 
     for (GroupChange.Actions.ModifyMemberProfileKeyAction action : modifyMembers) {
-      presentations.add(groupValidator.validatePresentationUpdate(user, group, action.getPresentation()));
+      presentations.add(groupValidator.validatePresentationUpdate(user, group.getGroup(), action.getPresentation()));
     }
 
     if (CollectionUtil.containsDuplicates(presentations.stream().map(presentation -> ByteString.copyFrom(presentation.getUuidCiphertext().serialize())).collect(Collectors.toList()))) {
       throw new BadRequestException();
     }
 
+    Map<ByteString, ProfileKeyCredentialPresentation> presentationsByUserId = new HashMap<>();
+
     for (ProfileKeyCredentialPresentation presentation : presentations) {
-      List<Member> currentMembers = modifiedGroupBuilder.getMembersList();
-      Member member = currentMembers.stream()
-                                    .filter(candidate -> candidate.getUserId().equals(ByteString.copyFrom(presentation.getUuidCiphertext().serialize())))
-                                    .findFirst()
-                                    .orElseThrow(ForbiddenException::new)
-                                    .toBuilder()
-                                    .clearPresentation()
-                                    .clearProfileKey()
-                                    .setProfileKey(ByteString.copyFrom(presentation.getProfileKeyCiphertext().serialize()))
-                                    .build();
-
-      modifiedGroupBuilder.clearMembers()
-                          .addAllMembers(currentMembers.stream().map(candidate -> {
-                            if (candidate.getUserId().equals(member.getUserId())) return member;
-                            else return candidate;
-                          }).collect(Collectors.toList()));
+      presentationsByUserId.put(ByteString.copyFrom(presentation.getUuidCiphertext().serialize()), presentation);
+    }
+
+    // rewrite the membership once, replacing every entry of a user with the updated copy of the first one
+    Map<ByteString, Member> updatedMembers = new HashMap<>();
+    List<Member>            newMembership  = new ArrayList<>(modifiedGroupBuilder.getMembersCount());
+
+    for (Member candidate : modifiedGroupBuilder.getMembersList()) {
+      ProfileKeyCredentialPresentation presentation = presentationsByUserId.get(candidate.getUserId());
+
+      if (presentation == null) {
+        newMembership.add(candidate);
+      } else {
+        newMembership.add(updatedMembers.computeIfAbsent(candidate.getUserId(), userId -> candidate.toBuilder()
+                                                                                                   .clearPresentation()
+                                                                                                   .clearProfileKey()
+                                                                                                   .setProfileKey(ByteString.copyFrom(presentation.getProfileKeyCiphertext().serialize()))
+                                                                                                   .build()));
+      }
+    }
+
+    if (updatedMembers.size() != presentationsByUserId.size()) {
+      throw new ForbiddenException();
     }
+
+    modifiedGroupBuilder.clearMembers().addAllMembers(newMembership);
   }
 
   public void applyAddMembersPendingProfileKey(GroupUser user,
                                                byte[] inviteLinkPassword,
-                                               Group group,
+                                               IndexedGroup group,
                                                Group.Builder modifiedGroupBuilder,
                                                List<GroupChange.Actions.AddMemberPendingProfileKeyAction> addMembersPendingProfileKey)
           throws ForbiddenException, BadRequestException {
@@ -225,14 +248,15 @@ public class GroupChangeApplicator {
       throw new BadRequestException();
     }
 
-    Stream<ByteString> existingMembers                  = group.getMembersList().stream().map(Member::getUserId);
-    Stream<ByteString> existingMembersPendingProfileKey = group.getMembersPendingProfileKeyList().stream().map(pending -> pending.getMember().getUserId());
+    List<ByteString> addedUserIds = addMembersPendingProfileKey.stream().map(action -> action.getAdded().getMember().getUserId()).collect(Collectors.toList());
 
-    if (CollectionUtil.containsAny(Stream.concat(existingMembers, existingMembersPendingProfileKey).collect(Collectors.toList()),
-                                   addMembersPendingProfileKey.stream().map(action -> action.getAdded().getMember().getUserId()).collect(Collectors.toList()))) {
+    if (CollectionUtil.containsAny(group.getMemberUserIds(), addedUserIds) ||
+        CollectionUtil.containsAny(group.getMemberPendingProfileKeyUserIds(), addedUserIds)) {
       throw new BadRequestException("Member is already present");
     }
 
+    ByteString addedByUserId = GroupAuth.getMember(user, group).get().getUserId();
+
     for (GroupChange.Actions.AddMemberPendingProfileKeyAction action : addMembersPendingProfileKey) {
       if (!action.getAdded().hasMember() || action.getAdded().getMember() == null) {
         throw new BadRequestException("No member");
@@ -259,15 +283,15 @@ public class GroupChangeApplicator {
                                      .setMember(Member.newBuilder()
                                                       .setRole(action.getAdded().getMember().getRole())
                                                       .setUserId(action.getAdded().getMember().getUserId())
-                                                      .setJoinedAtVersion(group.getVersion() + 1)
+                                                      .setJoinedAtVersion(group.getGroup().getVersion() + 1)
                                                       .build())
-                                     .setAddedByUserId(GroupAuth.getMember(user, group).get().getUserId())
+                                     .setAddedByUserId(addedByUserId)
                                      .setTimestamp(System.currentTimeMillis())
                                      .build());
     }
   }
 
-  public void applyDeleteMembersPendingProfileKey(GroupUser user, byte[] inviteLinkPassword, Group group, Group.Builder modifiedGroupBuilder, List<GroupChange.Actions.DeleteMemberPendingProfileKeyAction> deleteMembersPendingProfileKey)
+  public void applyDeleteMembersPendingProfileKey(GroupUser user, byte[] inviteLinkPassword, IndexedGroup group, Group.Builder modifiedGroupBuilder, List<GroupChange.Actions.DeleteMemberPendingProfileKeyAction> deleteMembersPendingProfileKey)
           throws BadRequestException, ForbiddenException {
     if (deleteMembersPendingProfileKey.isEmpty()) {
       return;
@@ -296,16 +320,16 @@ public class GroupChangeApplicator {
     modifiedGroupBuilder.clearMembersPendingProfileKey().addAllMembersPendingProfileKey(membership);
   }
 
-  public void applyPromoteMembersPendingProfileKey(GroupUser user, byte[] inviteLinkPassword, Group group, Group.Builder modifiedGroupBuilder, List<GroupChange.Actions.PromoteMemberPendingProfileKeyAction> promoteMembersPendingProfileKey)
+  public void applyPromoteMembersPendingProfileKey(GroupUser user, byte[] inviteLinkPassword, IndexedGroup group, Group.Builder modifiedGroupBuilder, List<GroupChange.Actions.PromoteMemberPendingProfileKeyAction> promoteMembersPendingProfileKey)
           throws BadRequestException, ForbiddenException {
     if (promoteMembersPendingProfileKey.isEmpty()) {
       return;
     }
 
-    List<ProfileKeyCredentialPresentation> presentations = new LinkedList<>();
+    List<ProfileKeyCredentialPresentation> presentations = new ArrayList<>();
 
     for (GroupChange.Actions.PromoteMemberPendingProfileKeyAction action : promoteMembersPendingProfileKey) {
-      presentations.add(groupValidator.validatePresentationUpdate(user, group, action.getPresentation()));
+      presentations.add(groupValidator.validatePresentationUpdate(user, group.getGroup(), action.getPresentation()));
     }
 
     if (CollectionUtil.containsDuplicates(presentations.stream()
@@ -314,29 +338,46 @@ public class GroupChangeApplicator {
       throw new BadRequestException("Duplicate user id");
     }
 
+    Map<ByteString, MemberPendingProfileKey> membersPendingProfileKey = new HashMap<>();
+
+    for (MemberPendingProfileKey candidate : modifiedGroupBuilder.getMembersPendingProfileKeyList()) {
+      membersPendingProfileKey.putIfAbsent(candidate.getMember().getUserId(), candidate);
+    }
+
+    List<ByteString> promotedUserIds = new ArrayList<>(presentations.size());
+
     for (ProfileKeyCredentialPresentation presentation : presentations) {
-      ByteString                    presentationUuid         = ByteString.copyFrom(presentation.getUuidCiphertext().serialize());
-      List<MemberPendingProfileKey> membersPendingProfileKey = modifiedGroupBuilder.getMembersPendingProfileKeyList();
-      MemberPendingProfileKey memberPendingProfileKey = membersPendingProfileKey.stream()
-                                                                                .filter(candidate -> candidate.getMember().getUserId().equals(presentationUuid))
-                                                                                .findFirst()
-                                                                                .orElseThrow(ForbiddenException::new);
-
-      modifiedGroupBuilder.clearMembersPendingProfileKey()
-                          .addAllMembersPendingProfileKey(membersPendingProfileKey.stream()
-                                                                                  .filter(candidate -> !candidate.getMember().getUserId().equals(presentationUuid))
-                                                                                  .collect(Collectors.toList()));
+      ByteString presentationUuid = ByteString.copyFrom(presentation.getUuidCiphertext().serialize());
+
+      if (!membersPendingProfileKey.containsKey(presentationUuid)) {
+        throw new ForbiddenException();
+      }
+
+      promotedUserIds.add(presentationUuid);
+    }
+
+    Set<ByteString>               promotedUserIdSet = new HashSet<>(promotedUserIds);
+    List<MemberPendingProfileKey> remaining         = modifiedGroupBuilder.getMembersPendingProfileKeyList()
+                                                                          .stream()
+                                                                          .filter(candidate -> !promotedUserIdSet.contains(candidate.getMember().getUserId()))
+                                                                          .collect(Collectors.toList());
+
+    modifiedGroupBuilder.clearMembersPendingProfileKey().addAllMembersPendingProfileKey(remaining);
+
+    for (int i = 0; i < presentations.size(); i++) {
+      ProfileKeyCredentialPresentation presentation            = presentations.get(i);
+      MemberPendingProfileKey          memberPendingProfileKey = membersPendingProfileKey.get(promotedUserIds.get(i));
 
       modifiedGroupBuilder.addMembers(memberPendingProfileKey.getMember()
                                                              .toBuilder()
                                                              .clearPresentation()
                                                              .clearProfileKey()
                                                              .setProfileKey(ByteString.copyFrom(presentation.getProfileKeyCiphertext().serialize()))
-                                                             .setJoinedAtVersion(group.getVersion() + 1));
+                                                             .setJoinedAtVersion(group.getGroup().getVersion() + 1));
     }
   }
 
-  public void applyModifyTitle(GroupUser user, byte[] inviteLinkPassword, Group group, Group.Builder modifiedGroupBuilder, GroupChange.Actions.ModifyTitleAction modifyTitle)
+  public void applyModifyTitle(GroupUser user, byte[] inviteLinkPassword, IndexedGroup group, Group.Builder modifiedGroupBuilder, GroupChange.Actions.ModifyTitleAction modifyTitle)
           throws ForbiddenException, BadRequestException {
     if (modifyTitle == null) {
       return;
@@ -353,7 +394,7 @@ public class GroupChangeApplicator {
     modifiedGroupBuilder.setTitle(modifyTitle.getTitle());
   }
 
-  public void applyModifyAvatar(GroupUser user, byte[] inviteLinkPassword, Group group, Group.Builder modifiedGroupBuilder, GroupChange.Actions.ModifyAvatarAction modifyAvatar)
+  public void applyModifyAvatar(GroupUser user, byte[] inviteLinkPassword, IndexedGroup group, Group.Builder modifiedGroupBuilder, GroupChange.Actions.ModifyAvatarAction modifyAvatar)
           throws ForbiddenException, BadRequestException {
     if (modifyAvatar == null) {
       return;
@@ -370,7 +411,7 @@ public class GroupChangeApplicator {
     modifiedGroupBuilder.setAvatar(modifyAvatar.getAvatar());
   }
 
-  public void applyModifyDisappearingMessageTimer(GroupUser user, byte[] inviteLinkPassword, Group group, Group.Builder modifiedGroupBuilder, GroupChange.Actions.ModifyDisappearingMessageTimerAction modifyDisappearingMessageTimer)
+  public void applyModifyDisappearingMessageTimer(GroupUser user, byte[] inviteLinkPassword, IndexedGroup group, Group.Builder modifiedGroupBuilder, GroupChange.Actions.ModifyDisappearingMessageTimerAction modifyDisappearingMessageTimer)
           throws ForbiddenException {
     if (modifyDisappearingMessageTimer == null) {
       return;
@@ -383,7 +424,7 @@ public class GroupChangeApplicator {
     modifiedGroupBuilder.setDisappearingMessagesTimer(modifyDisappearingMessageTimer.getTimer());
   }
 
-  public void applyModifyAttributesAccess(GroupUser user, byte[] inviteLinkPassword, Group group, Group.Builder modifiedGroupBuilder, GroupChange.Actions.ModifyAttributesAccessControlAction modifyAttributesAccess) throws ForbiddenException, BadRequestException {
+  public void applyModifyAttributesAccess(GroupUser user, byte[] inviteLinkPassword, IndexedGroup group, Group.Builder modifiedGroupBuilder, GroupChange.Actions.ModifyAttributesAccessControlAction modifyAttributesAccess) throws ForbiddenException, BadRequestException {
     if (modifyAttributesAccess == null || !modifyAttributesAccess.isInitialized()) {
       throw new BadRequestException();
     }
@@ -400,7 +441,7 @@ public class GroupChangeApplicator {
     modifiedGroupBuilder.setAccessControl(modifiedGroupBuilder.getAccessControlBuilder().setAttributes(modifyAttributesAccess.getAttributesAccess()));
   }
 
-  public void applyModifyMembersAccess(GroupUser user, byte[] inviteLinkPassword, Group group, Group.Builder modifiedGroupBuilder, GroupChange.Actions.ModifyMembersAccessControlAction modifyMembersAccess) throws ForbiddenException, BadRequestException {
+  public void applyModifyMembersAccess(GroupUser user, byte[] inviteLinkPassword, IndexedGroup group, Group.Builder modifiedGroupBuilder, GroupChange.Actions.ModifyMembersAccessControlAction modifyMembersAccess) throws ForbiddenException, BadRequestException {
     if (modifyMembersAccess == null || !modifyMembersAccess.isInitialized()) {
       throw new BadRequestException();
     }
@@ -417,7 +458,7 @@ public class GroupChangeApplicator {
     modifiedGroupBuilder.setAccessControl(modifiedGroupBuilder.getAccessControlBuilder().setMembers(modifyMembersAccess.getMembersAccess()));
   }
 
-  public void applyModifyAddFromInviteLinkAccess(GroupUser user, byte[] inviteLinkPassword, Group group, Group.Builder modifiedGroupBuilder, GroupChange.Actions.ModifyAddFromInviteLinkAccessControlAction action) throws ForbiddenException, BadRequestException {
+  public void applyModifyAddFromInviteLinkAccess(GroupUser user, byte[] inviteLinkPassword, IndexedGroup group, Group.Builder modifiedGroupBuilder, GroupChange.Actions.ModifyAddFromInviteLinkAccessControlAction action) throws ForbiddenException, BadRequestException {
     if (!GroupAuth.isModifyAddFromInviteLinkAccessControlAllowed(user, group)) {
       throw new ForbiddenException();
     }
@@ -431,7 +472,7 @@ public class GroupChangeApplicator {
     modifiedGroupBuilder.setAccessControl(modifiedGroupBuilder.getAccessControlBuilder().setAddFromInviteLink(action.getAddFromInviteLinkAccess()));
   }
 
-  public void applyAddMembersPendingAdminApproval(GroupUser user, byte[] inviteLinkPassword, Group group, Group.Builder modifiedGroupBuilder, List<GroupChange.Actions.AddMemberPendingAdminApprovalAction> actions) throws ForbiddenException {
+  public void applyAddMembersPendingAdminApproval(GroupUser user, byte[] inviteLinkPassword, IndexedGroup group, Group.Builder modifiedGroupBuilder, List<GroupChange.Actions.AddMemberPendingAdminApprovalAction> actions) throws ForbiddenException {
     if (!GroupAuth.isAddMembersPendingAdminApprovalAllowed(user, inviteLinkPassword, group)) {
       throw new ForbiddenException();
     }
@@ -454,14 +495,14 @@ public class GroupChangeApplicator {
       throw new BadRequestException("duplicate user ids in request");
     }
 
-    if (addedUserIds.size() != 1 || !user.isMember(addedUserIds.get(0), group.getPublicKey())) {
+    if (addedUserIds.size() != 1 || !user.isMember(addedUserIds.get(0), group.getGroup().getPublicKey())) {
       throw new BadRequestException("request contains non-self user ids");
     }
 
     actions.stream().map(GroupChange.Actions.AddMemberPendingAdminApprovalAction::getAdded).forEach(modifiedGroupBuilder::addMembersPendingAdminApproval);
   }
 
-  public void applyDeleteMembersPendingAdminApproval(GroupUser user, byte[] inviteLinkPassword, Group group, Group.Builder modifiedGroupBuilder, List<GroupChange.Actions.DeleteMemberPendingAdminApprovalAction> actions) throws ForbiddenException {
+  public void applyDeleteMembersPendingAdminApproval(GroupUser user, byte[] inviteLinkPassword, IndexedGroup group, Group.Builder modifiedGroupBuilder, List<GroupChange.Actions.DeleteMemberPendingAdminApprovalAction> actions) throws ForbiddenException {
     if (!GroupAuth.isDeleteMembersPendingAdminApprovalAllowed(user, group, actions)) {
       throw new ForbiddenException();
     }
@@ -486,7 +527,7 @@ public class GroupChangeApplicator {
     modifiedGroupBuilder.clearMembersPendingAdminApproval().addAllMembersPendingAdminApproval(members);
   }
 
-  public void applyPromotePendingAdminApproval(GroupUser user, byte[] inviteLinkPassword, Group group, Group.Builder modifiedGroupBuilder, List<GroupChange.Actions.PromoteMemberPendingAdminApprovalAction> actions) throws ForbiddenException {
+  public void applyPromotePendingAdminApproval(GroupUser user, byte[] inviteLinkPassword, IndexedGroup group, Group.Builder modifiedGroupBuilder, List<GroupChange.Actions.PromoteMemberPendingAdminApprovalAction> actions) throws ForbiddenException {
     if (!GroupAuth.isPromoteMembersPendingAdminApprovalAllowed(user, group)) {
       throw new ForbiddenException();
     }
@@ -503,17 +544,23 @@ public class GroupChangeApplicator {
       throw new BadRequestException("some user ids already in members");
     }
 
+    Map<ByteString, MemberPendingAdminApproval> membersPendingAdminApproval = new HashMap<>();
+
+    for (MemberPendingAdminApproval candidate : modifiedGroupBuilder.getMembersPendingAdminApprovalList()) {
+      membersPendingAdminApproval.putIfAbsent(candidate.getUserId(), candidate);
+    }
+
     for (Map.Entry<ByteString, Member.Role> entry : userIdToRoleMap.entrySet()) {
-      Optional<MemberPendingAdminApproval> memberPendingAdminApproval = modifiedGroupBuilder.getMembersPendingAdminApprovalList().stream().filter(m -> m.getUserId().equals(entry.getKey())).findFirst();
-      if (memberPendingAdminApproval.isEmpty()) {
+      MemberPendingAdminApproval memberPendingAdminApproval = membersPendingAdminApproval.get(entry.getKey());
+      if (memberPendingAdminApproval == null) {
         throw new BadRequestException("some user ids were not in the set of members pending admin approval");
       }
 
       modifiedGroupBuilder.addMembers(Member.newBuilder()
                                             .setUserId(entry.getKey())
                                             .setRole(entry.getValue())
-                                            .setJoinedAtVersion(group.getVersion() + 1)
-                                            .setProfileKey(memberPendingAdminApproval.get().getProfileKey()));
+                                            .setJoinedAtVersion(group.getGroup().getVersion() + 1)
+                                            .setProfileKey(memberPendingAdminApproval.getProfileKey()));
     }
 
     List<MemberPendingAdminApproval> members = modifiedGroupBuilder.getMembersPendingAdminApprovalList()
@@ -524,7 +571,7 @@ public class GroupChangeApplicator {
                         .addAllMembersPendingAdminApproval(members);
   }
 
-  public void applyModifyInviteLinkPassword(GroupUser user, byte[] inviteLinkPassword, Group group, Group.Builder modifiedGroupBuilder, GroupChange.Actions.ModifyInviteLinkPasswordAction modifyInviteLinkPassword) throws ForbiddenException {
+  public void applyModifyInviteLinkPassword(GroupUser user, byte[] inviteLinkPassword, IndexedGroup group, Group.Builder modifiedGroupBuilder, GroupChange.Actions.ModifyInviteLinkPasswordAction modifyInviteLinkPassword) throws ForbiddenException {
     if (!GroupAuth.isModifyInviteLinkPasswordAllowed(user, group)) {
       throw new ForbiddenException();
     }
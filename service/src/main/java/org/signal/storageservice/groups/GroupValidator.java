@@ -5,6 +5,9 @@
 
 package org.signal.storageservice.groups;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
 import com.google.protobuf.ByteString;
 import org.apache.commons.codec.binary.Base64;
 import org.signal.storageservice.auth.GroupUser;
@@ -24,6 +27,7 @@ import org.signal.zkgroup.profiles.ProfileKeyCredentialPresentation;
 import org.signal.zkgroup.profiles.ServerZkProfileOperations;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.whispersystems.textsecuregcm.util.Constants;
 
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.ForbiddenException;
@@ -31,25 +35,55 @@ import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
 public class GroupValidator {
   private static final int INVITE_LINK_PASSWORD_SIZE_BYTES = 16;
   private final Logger logger = LoggerFactory.getLogger(GroupsController.class);
 
+  // [Diskuv Change] Verifying a profile key credential presentation is the expensive part of adding a member
+  private final MetricRegistry metricRegistry            = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private final Timer          verifyPresentationsTimer  = metricRegistry.timer(name(getClass(), "verifyPresentations"));
+
   private final ServerZkProfileOperations profileOperations;
+  private final Optional<Executor>        verificationExecutor;
   private final int maxGroupSize;
   private final int maxGroupTitleLengthBytes;
 
   public GroupValidator(ServerZkProfileOperations profileOperations, GroupConfiguration groupConfiguration) {
+    this(profileOperations, groupConfiguration, Optional.empty());
+  }
+
+  /**
+   * @param verificationExecutor if present, a bounded pool on which the presentations of a request
+   *     that adds several members are verified concurrently; otherwise they are verified one at a
+   *     time on the request thread
+   */
+  public GroupValidator(ServerZkProfileOperations profileOperations, GroupConfiguration groupConfiguration, Optional<Executor> verificationExecutor) {
     this.profileOperations = profileOperations;
+    this.verificationExecutor = verificationExecutor;
     this.maxGroupSize = groupConfiguration.getMaxGroupSize();
     this.maxGroupTitleLengthBytes = groupConfiguration.getMaxGroupTitleLengthBytes();
   }
 
   public Member validateMember(Group group, Member member) throws BadRequestException {
-    try {
+    return validateMembers(group, List.of(member)).get(0);
+  }
+
+  /**
+   * Validates the members of a group being created or added to it. The group public params are
+   * deserialized once and the presentations are verified together, so that if several of them are
+   * invalid the error reported is always the one for the first invalid member.
+   */
+  public List<Member> validateMembers(Group group, List<Member> members) throws BadRequestException {
+    for (Member member : members) {
       if (member.getRole() == Member.Role.UNRECOGNIZED ||
               member.getRole() == Member.Role.UNKNOWN) {
         throw new BadRequestException("Unknown member role");
@@ -58,22 +92,31 @@ public class GroupValidator {
       if (member.getPresentation().isEmpty()) {
         throw new BadRequestException("Missing presentation");
       }
+    }
 
-      GroupPublicParams                publicParams                     = new GroupPublicParams(group.getPublicKey().toByteArray());
-      ProfileKeyCredentialPresentation profileKeyCredentialPresentation = new ProfileKeyCredentialPresentation(member.getPresentation().toByteArray());
-
-      profileOperations.verifyProfileKeyCredentialPresentation(publicParams, profileKeyCredentialPresentation);
+    List<ProfileKeyCredentialPresentation> presentations;
 
-      return member.toBuilder()
-                   .clearPresentation()
-                   .setProfileKey(ByteString.copyFrom(profileKeyCredentialPresentation.getProfileKeyCiphertext().serialize()))
-                   .setUserId(ByteString.copyFrom(profileKeyCredentialPresentation.getUuidCiphertext().serialize()))
-                   .setJoinedAtVersion(group.getVersion())
-                   .build();
+    try {
+      presentations = verifyPresentations(group, members.stream().map(Member::getPresentation).collect(Collectors.toList()));
     } catch (InvalidInputException | VerificationFailedException e) {
       logger.info("Member validation", e);
       throw new BadRequestException(e);
     }
+
+    List<Member> validatedMembers = new ArrayList<>(members.size());
+
+    for (int i = 0; i < members.size(); i++) {
+      ProfileKeyCredentialPresentation profileKeyCredentialPresentation = presentations.get(i);
+
+      validatedMembers.add(members.get(i).toBuilder()
+                                  .clearPresentation()
+                                  .setProfileKey(ByteString.copyFrom(profileKeyCredentialPresentation.getProfileKeyCiphertext().serialize()))
+                                  .setUserId(ByteString.copyFrom(profileKeyCredentialPresentation.getUuidCiphertext().serialize()))
+                                  .setJoinedAtVersion(group.getVersion())
+                                  .build());
+    }
+
+    return validatedMembers;
   }
 
   public MemberPendingProfileKey validateMemberPendingProfileKey(Member addedBy, Group group, MemberPendingProfileKey memberPendingProfileKey)
@@ -111,7 +154,11 @@ public class GroupValidator {
   }
 
   public MemberPendingAdminApproval validateMemberPendingAdminApproval(GroupUser user, Group group, MemberPendingAdminApproval memberPendingAdminApproval) throws BadRequestException {
-    try {
+    return validateMembersPendingAdminApproval(user, group, List.of(memberPendingAdminApproval)).get(0);
+  }
+
+  private List<MemberPendingAdminApproval> validateMembersPendingAdminApproval(GroupUser user, Group group, List<MemberPendingAdminApproval> membersPendingAdminApproval) throws BadRequestException {
+    for (MemberPendingAdminApproval memberPendingAdminApproval : membersPendingAdminApproval) {
       if (!memberPendingAdminApproval.getUserId().isEmpty()) {
         throw new BadRequestException("user id should not be set in request");
       }
@@ -127,27 +174,37 @@ public class GroupValidator {
       if (memberPendingAdminApproval.getTimestamp() != 0L) {
         throw new BadRequestException("timestamp should not be set in request");
       }
+    }
+
+    List<ProfileKeyCredentialPresentation> presentations;
+
+    try {
+      presentations = verifyPresentations(group, membersPendingAdminApproval.stream().map(MemberPendingAdminApproval::getPresentation).collect(Collectors.toList()));
+    } catch (VerificationFailedException | InvalidInputException e) {
+      throw new BadRequestException("invalid presentation", e);
+    }
 
-      GroupPublicParams                publicParams                     = new GroupPublicParams(group.getPublicKey().toByteArray());
-      ProfileKeyCredentialPresentation profileKeyCredentialPresentation = new ProfileKeyCredentialPresentation(memberPendingAdminApproval.getPresentation().toByteArray());
-      profileOperations.verifyProfileKeyCredentialPresentation(publicParams, profileKeyCredentialPresentation);
+    List<MemberPendingAdminApproval> validatedMembers = new ArrayList<>(presentations.size());
 
+    for (ProfileKeyCredentialPresentation profileKeyCredentialPresentation : presentations) {
       if (!user.isMember(ByteString.copyFrom(profileKeyCredentialPresentation.getUuidCiphertext().serialize()), group.getPublicKey())) {
         throw new BadRequestException("cannot add others to a group using an invite link");
       }
 
-      return MemberPendingAdminApproval.newBuilder()
-                                       .setProfileKey(ByteString.copyFrom(profileKeyCredentialPresentation.getProfileKeyCiphertext().serialize()))
-                                       .setUserId(ByteString.copyFrom(profileKeyCredentialPresentation.getUuidCiphertext().serialize()))
-                                       .setTimestamp(System.currentTimeMillis())
-                                       .build();
-    } catch (VerificationFailedException | InvalidInputException e) {
-      throw new BadRequestException("invalid presentation", e);
+      validatedMembers.add(MemberPendingAdminApproval.newBuilder()
+                                                     .setProfileKey(ByteString.copyFrom(profileKeyCredentialPresentation.getProfileKeyCiphertext().serialize()))
+                                                     .setUserId(ByteString.copyFrom(profileKeyCredentialPresentation.getUuidCiphertext().serialize()))
+                                                     .setTimestamp(System.currentTimeMillis())
+                                                     .build());
     }
+
+    return validatedMembers;
   }
 
   public List<GroupChange.Actions.AddMemberAction> validateAddMember(GroupUser user, byte[] inviteLinkPassword, Group group, List<GroupChange.Actions.AddMemberAction> actions) throws BadRequestException {
-    List<GroupChange.Actions.AddMemberAction> validatedActions = new LinkedList<>();
+    if (actions.isEmpty()) {
+      return actions;
+    }
 
     for (GroupChange.Actions.AddMemberAction action : actions) {
       if (!action.hasAdded() || action.getAdded().getPresentation() == null || action.getAdded().getPresentation().isEmpty()) {
@@ -157,9 +214,15 @@ public class GroupValidator {
       if (action.getJoinFromInviteLink()) {
         throw new BadRequestException("Invalid field set on action");
       }
+    }
 
-      final GroupChange.Actions.AddMemberAction.Builder builder = action.toBuilder().setAdded(validateMember(group, action.getAdded()));
-      if (!GroupAuth.isMember(user, group)
+    List<Member>                              validatedMembers = validateMembers(group, actions.stream().map(GroupChange.Actions.AddMemberAction::getAdded).collect(Collectors.toList()));
+    List<GroupChange.Actions.AddMemberAction> validatedActions = new ArrayList<>(actions.size());
+    boolean                                   isMember         = GroupAuth.isMember(user, group);
+
+    for (int i = 0; i < actions.size(); i++) {
+      final GroupChange.Actions.AddMemberAction.Builder builder = actions.get(i).toBuilder().setAdded(validatedMembers.get(i));
+      if (!isMember
               && user.isMember(builder.getAdded().getUserId(), group.getPublicKey())
               && group.getAccessControl().getMembers() != AccessControl.AccessRequired.ANY
               && group.getAccessControl().getAddFromInviteLink() == AccessControl.AccessRequired.ANY
@@ -202,13 +265,18 @@ public class GroupValidator {
       throw new ForbiddenException();
     }
 
-    List<GroupChange.Actions.AddMemberPendingAdminApprovalAction> validatedActions = new ArrayList<>(actions.size());
     for (GroupChange.Actions.AddMemberPendingAdminApprovalAction action : actions) {
       if (!action.hasAdded()) {
         throw new BadRequestException("missing added field in add members pending admin approval actions");
       }
+    }
+
+    List<MemberPendingAdminApproval> validatedMembers = validateMembersPendingAdminApproval(user, group, actions.stream().map(GroupChange.Actions.AddMemberPendingAdminApprovalAction::getAdded).collect(Collectors.toList()));
+
+    List<GroupChange.Actions.AddMemberPendingAdminApprovalAction> validatedActions = new ArrayList<>(actions.size());
+    for (MemberPendingAdminApproval validatedMember : validatedMembers) {
       validatedActions.add(GroupChange.Actions.AddMemberPendingAdminApprovalAction.newBuilder()
-                                                                                  .setAdded(validateMemberPendingAdminApproval(user, group, action.getAdded()))
+                                                                                  .setAdded(validatedMember)
                                                                                   .build());
     }
     return validatedActions;
@@ -236,6 +304,69 @@ public class GroupValidator {
     }
   }
 
+  /**
+   * Deserializes and verifies profile key credential presentations against the group's public
+   * params, which are deserialized only once.
+   *
+   * <p>With a verification executor and more than one presentation, the presentations are
+   * verified concurrently. Every verification is awaited before any failure is reported, and the
+   * failure reported is that of the first invalid presentation in list order, exactly as when
+   * verifying serially.
+   *
+   * @return the deserialized presentations, in the same order
+   */
+  private List<ProfileKeyCredentialPresentation> verifyPresentations(Group group, List<ByteString> presentationsData)
+      throws InvalidInputException, VerificationFailedException {
+    try (Timer.Context ignored = verifyPresentationsTimer.time()) {
+      GroupPublicParams publicParams = new GroupPublicParams(group.getPublicKey().toByteArray());
+
+      if (verificationExecutor.isEmpty() || presentationsData.size() < 2) {
+        List<ProfileKeyCredentialPresentation> presentations = new ArrayList<>(presentationsData.size());
+
+        for (ByteString presentationData : presentationsData) {
+          presentations.add(verifyPresentation(publicParams, presentationData));
+        }
+
+        return presentations;
+      }
+
+      List<CompletableFuture<ProfileKeyCredentialPresentation>> futures = new ArrayList<>(presentationsData.size());
+
+      for (ByteString presentationData : presentationsData) {
+        futures.add(CompletableFuture.supplyAsync(() -> {
+          try {
+            return verifyPresentation(publicParams, presentationData);
+          } catch (InvalidInputException | VerificationFailedException e) {
+            throw new CompletionException(e);
+          }
+        }, verificationExecutor.get()));
+      }
+
+      CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).handle((ignoredResult, ignoredCause) -> null).join();
+
+      List<ProfileKeyCredentialPresentation> presentations = new ArrayList<>(futures.size());
+
+      for (CompletableFuture<ProfileKeyCredentialPresentation> future : futures) {
+        try {
+          presentations.add(future.join());
+        } catch (CompletionException e) {
+          if (e.getCause() instanceof InvalidInputException)       throw (InvalidInputException) e.getCause();
+          if (e.getCause() instanceof VerificationFailedException) throw (VerificationFailedException) e.getCause();
+          throw e;
+        }
+      }
+
+      return presentations;
+    }
+  }
+
+  private ProfileKeyCredentialPresentation verifyPresentation(GroupPublicParams publicParams, ByteString presentationData)
+      throws InvalidInputException, VerificationFailedException {
+    ProfileKeyCredentialPresentation presentation = new ProfileKeyCredentialPresentation(presentationData.toByteArray());
+    profileOperations.verifyProfileKeyCredentialPresentation(publicParams, presentation);
+    return presentation;
+  }
+
   public boolean isValidAvatarUrl(String url, ByteString groupId) {
     if (url == null || url.isEmpty()) return true;
 
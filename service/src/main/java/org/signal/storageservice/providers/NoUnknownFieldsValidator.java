@@ -10,10 +10,17 @@ import com.google.protobuf.Message;
 
 import javax.validation.ConstraintValidator;
 import javax.validation.ConstraintValidatorContext;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class NoUnknownFieldsValidator implements ConstraintValidator<NoUnknownFields, Message> {
 
+  // [Diskuv Change] The message-typed fields of each descriptor, so the recursive walk does not
+  // build a map of all set fields at every level
+  private static final Map<Descriptors.Descriptor, Descriptors.FieldDescriptor[]> MESSAGE_FIELDS = new ConcurrentHashMap<>();
+
   private boolean recursive;
 
   @Override
@@ -25,20 +32,30 @@ public class NoUnknownFieldsValidator implements ConstraintValidator<NoUnknownFi
   public boolean isValid(Message value, ConstraintValidatorContext context) {
     if (!value.getUnknownFields().asMap().isEmpty()) return false;
     if (recursive) {
-      for (Map.Entry<Descriptors.FieldDescriptor, Object> entry : value.getAllFields().entrySet()) {
-        if (entry.getKey().getType() == Descriptors.FieldDescriptor.Type.MESSAGE ||
-            entry.getKey().getType() == Descriptors.FieldDescriptor.Type.GROUP) {
-          if (entry.getKey().isRepeated()) {
-            //noinspection unchecked
-            for (Message message : (Iterable<? extends Message>) entry.getValue()) {
-              if (!isValid(message, context)) return false;
-            }
-          } else {
-            if (!isValid((Message) entry.getValue(), context)) return false;
+      for (Descriptors.FieldDescriptor field : getMessageFields(value.getDescriptorForType())) {
+        if (field.isRepeated()) {
+          int count = value.getRepeatedFieldCount(field);
+          for (int i = 0; i < count; i++) {
+            if (!isValid((Message) value.getRepeatedField(field, i), context)) return false;
           }
+        } else if (value.hasField(field)) {
+          if (!isValid((Message) value.getField(field), context)) return false;
         }
       }
     }
     return true;
   }
+
+  private static Descriptors.FieldDescriptor[] getMessageFields(Descriptors.Descriptor descriptor) {
+    return MESSAGE_FIELDS.computeIfAbsent(descriptor, d -> {
+      List<Descriptors.FieldDescriptor> fields = new ArrayList<>();
+      for (Descriptors.FieldDescriptor field : d.getFields()) {
+        if (field.getType() == Descriptors.FieldDescriptor.Type.MESSAGE ||
+            field.getType() == Descriptors.FieldDescriptor.Type.GROUP) {
+          fields.add(field);
+        }
+      }
+      return fields.toArray(new Descriptors.FieldDescriptor[0]);
+    });
+  }
 }
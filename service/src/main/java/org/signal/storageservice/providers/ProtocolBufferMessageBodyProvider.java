@@ -15,6 +15,7 @@
  */
 package org.signal.storageservice.providers;
 
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Message;
 import com.google.protobuf.TextFormat;
@@ -23,11 +24,14 @@ import com.google.protobuf.util.JsonFormat;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.MessageBodyReader;
 import javax.ws.rs.ext.MessageBodyWriter;
 import javax.ws.rs.ext.Provider;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -57,8 +61,28 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ProtocolBufferMessageBodyProvider
     implements MessageBodyReader<Message>, MessageBodyWriter<Message> {
 
+  private static final int MAX_BUFFER_SIZE = 4096;
+
+  // [Diskuv Change] Binary entities of a known size up to this many bytes are read into a buffer
+  // kept by the request thread, so that reading them allocates nothing but the message itself
+  private static final int MAX_REUSED_BUFFER_SIZE = 64 * 1024;
+
+  private static final ThreadLocal<byte[]> REUSED_BUFFER = new ThreadLocal<>();
+
   private final Map<Class<Message>, Method> methodCache = new ConcurrentHashMap<>();
 
+  // [Diskuv Change] Request entities are parsed while they stream in, so the size limit is
+  // enforced on the stream rather than on a buffered copy
+  private final long defaultSizeLimit;
+
+  public ProtocolBufferMessageBodyProvider() {
+    this(Long.MAX_VALUE);
+  }
+
+  public ProtocolBufferMessageBodyProvider(long defaultSizeLimit) {
+    this.defaultSizeLimit = defaultSizeLimit;
+  }
+
   @Override
   public boolean isReadable(
       final Class<?> type,
@@ -96,15 +120,89 @@ public class ProtocolBufferMessageBodyProvider
       throw new WebApplicationException(e);
     }
 
-    if (mediaType.getSubtype().contains("text-format")) {
-      TextFormat.merge(new InputStreamReader(entityStream, StandardCharsets.UTF_8), builder);
-      return builder.build();
-    } else if (mediaType.getSubtype().contains("json-format")) {
-      JsonFormat.parser()
-          .merge(new InputStreamReader(entityStream, StandardCharsets.UTF_8), builder);
-      return builder.build();
-    } else {
-      return builder.mergeFrom(entityStream).build();
+    final long sizeLimit     = getSizeLimit(annotations);
+    final long contentLength = getContentLength(httpHeaders);
+    if (contentLength > sizeLimit) {
+      throw new WebApplicationException(Response.Status.REQUEST_ENTITY_TOO_LARGE);
+    }
+
+    final InputStream limitedStream = new SizeLimitedInputStream(entityStream, sizeLimit);
+
+    try {
+      if (mediaType.getSubtype().contains("text-format")) {
+        TextFormat.merge(new InputStreamReader(limitedStream, StandardCharsets.UTF_8), builder);
+        return builder.build();
+      } else if (mediaType.getSubtype().contains("json-format")) {
+        JsonFormat.parser()
+            .merge(new InputStreamReader(limitedStream, StandardCharsets.UTF_8), builder);
+        return builder.build();
+      } else if (contentLength >= 0 && contentLength <= MAX_REUSED_BUFFER_SIZE) {
+        // Parsing from an array copies bytes and string fields out of it, so the buffer is free
+        // for the next request as soon as the message is built
+        final byte[] buffer = getReusedBuffer((int) contentLength);
+        final int    length = readFully(limitedStream, buffer, (int) contentLength);
+        final CodedInputStream codedInput = CodedInputStream.newInstance(buffer, 0, length);
+        builder.mergeFrom(codedInput);
+        codedInput.checkLastTagWas(0);
+        return builder.build();
+      } else {
+        // Entities too large to keep a buffer for, or of unknown size, are parsed as they stream in
+        final int bufferSize =
+            contentLength > 0 ? (int) Math.min(contentLength, MAX_BUFFER_SIZE) : MAX_BUFFER_SIZE;
+        final CodedInputStream codedInput = CodedInputStream.newInstance(limitedStream, bufferSize);
+        builder.mergeFrom(codedInput);
+        codedInput.checkLastTagWas(0);
+        return builder.build();
+      }
+    } catch (SizeLimitExceededException e) {
+      throw new WebApplicationException(Response.Status.REQUEST_ENTITY_TOO_LARGE);
+    }
+  }
+
+  private static byte[] getReusedBuffer(final int size) {
+    byte[] buffer = REUSED_BUFFER.get();
+    if (buffer == null || buffer.length < size) {
+      // Grow to the largest size needed so far, in steps that make regrowing rare
+      buffer = new byte[Math.min(MAX_REUSED_BUFFER_SIZE, Math.max(size, MAX_BUFFER_SIZE) * 2)];
+      REUSED_BUFFER.set(buffer);
+    }
+    return buffer;
+  }
+
+  /** Reads up to {@code length} bytes, fewer only if the stream ends first. */
+  private static int readFully(final InputStream input, final byte[] buffer, final int length) throws IOException {
+    int offset = 0;
+    while (offset < length) {
+      final int n = input.read(buffer, offset, length - offset);
+      if (n < 0) {
+        break;
+      }
+      offset += n;
+    }
+    return offset;
+  }
+
+  private long getSizeLimit(final Annotation[] annotations) {
+    if (annotations != null) {
+      for (final Annotation annotation : annotations) {
+        if (annotation instanceof ProtocolBufferSizeLimit) {
+          return ((ProtocolBufferSizeLimit) annotation).value();
+        }
+      }
+    }
+    return defaultSizeLimit;
+  }
+
+  private static long getContentLength(final MultivaluedMap<String, String> httpHeaders) {
+    final String contentLength =
+        httpHeaders != null ? httpHeaders.getFirst(HttpHeaders.CONTENT_LENGTH) : null;
+    if (contentLength == null) {
+      return -1L;
+    }
+    try {
+      return Long.parseLong(contentLength.trim());
+    } catch (NumberFormatException e) {
+      return -1L;
     }
   }
 
@@ -158,7 +256,68 @@ public class ProtocolBufferMessageBodyProvider
       final String formatted = JsonFormat.printer().omittingInsignificantWhitespace().print(m);
       entityStream.write(formatted.getBytes(StandardCharsets.UTF_8));
     } else {
+      // Known up front, so the response does not need chunked encoding
+      httpHeaders.putSingle(HttpHeaders.CONTENT_LENGTH, m.getSerializedSize());
       m.writeTo(entityStream);
     }
   }
+
+  /**
+   * Thrown by {@link SizeLimitedInputStream}. It is an {@link IOException} so that the protobuf,
+   * JSON and text parsers pass it through rather than reporting a malformed message.
+   */
+  private static class SizeLimitExceededException extends IOException {
+  }
+
+  /** Fails as soon as more than the limit has been read. */
+  private static class SizeLimitedInputStream extends FilterInputStream {
+
+    private final long sizeLimit;
+    private long       bytesRead;
+
+    private SizeLimitedInputStream(final InputStream in, final long sizeLimit) {
+      super(in);
+      this.sizeLimit = sizeLimit;
+    }
+
+    @Override
+    public int read() throws IOException {
+      final int b = super.read();
+      if (b >= 0) {
+        count(1);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+      // Read at most one byte past the limit, which is enough to tell that it was exceeded
+      final long remaining = sizeLimit - bytesRead;
+      final int  n         = super.read(b, off, len <= remaining ? len : (int) (remaining + 1));
+      if (n > 0) {
+        count(n);
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+      final long remaining = sizeLimit - bytesRead;
+      final long skipped   = super.skip(n <= remaining ? n : remaining + 1);
+      count(skipped);
+      return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    private void count(final long n) throws SizeLimitExceededException {
+      bytesRead += n;
+      if (bytesRead > sizeLimit) {
+        throw new SizeLimitExceededException();
+      }
+    }
+  }
 }
@@ -0,0 +1,24 @@
+/*
+ * Copyright 2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.storageservice.providers;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+/**
+ * [Diskuv Change] The largest protocol buffer request entity, in bytes, that a resource method
+ * accepts. Overrides the limit {@link ProtocolBufferMessageBodyProvider} was configured with.
+ */
+@Documented
+@Retention(RUNTIME)
+@Target({PARAMETER})
+public @interface ProtocolBufferSizeLimit {
+  long value();
+}
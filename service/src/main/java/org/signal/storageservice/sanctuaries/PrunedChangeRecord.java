@@ -0,0 +1,163 @@
+package org.signal.storageservice.sanctuaries;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.signal.storageservice.auth.GroupUser;
+import org.signal.storageservice.storage.protos.groups.Group;
+import org.signal.storageservice.storage.protos.groups.GroupChange;
+import org.signal.storageservice.storage.protos.groups.GroupChanges;
+import org.signal.storageservice.storage.protos.groups.Member;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * [Diskuv Change] A change record of a sanctuary group pruned for non-owners, in a form that does not
+ * depend on which non-owner is looking at it.
+ *
+ * <p>What a non-owner sees of a change record only depends on the viewer in two places: a change
+ * that touches exactly one member is visible to that member alone, and the group state includes the
+ * viewer's own membership. Everything else (parsing the change, checking it against the whitelist,
+ * removing the other members from the state) is done once in {@link #of(GroupChanges.GroupChangeState)},
+ * so the result can be cached and shared by every member of the group.
+ */
+class PrunedChangeRecord {
+
+  private static class Self {
+    private final int    position;
+    private final Member member;
+
+    private Self(int position, Member member) {
+      this.position = position;
+      this.member   = member;
+    }
+  }
+
+  private final GroupChanges.GroupChangeState truncated;
+  @Nullable
+  private final GroupChanges.GroupChangeState whitelisted;
+  @Nullable
+  private final ByteString                    changeTarget;
+  private final Map<ByteString, Self>         selves;
+
+  private PrunedChangeRecord(GroupChanges.GroupChangeState truncated,
+                             @Nullable GroupChanges.GroupChangeState whitelisted,
+                             @Nullable ByteString changeTarget,
+                             Map<ByteString, Self> selves)
+  {
+    this.truncated    = truncated;
+    this.whitelisted  = whitelisted;
+    this.changeTarget = changeTarget;
+    this.selves       = selves;
+  }
+
+  static PrunedChangeRecord of(GroupChanges.GroupChangeState groupChangeState) {
+    GroupChanges.GroupChangeState.Builder prunedBuilder = GroupChanges.GroupChangeState.newBuilder(groupChangeState);
+    Map<ByteString, Self>                 selves        = Collections.emptyMap();
+
+    if (groupChangeState.hasGroupState()) {
+      Group state = groupChangeState.getGroupState();
+      selves = new HashMap<>();
+      prunedBuilder.setGroupState(pruneState(state, selves));
+    }
+
+    GroupChanges.GroupChangeState truncated = GroupChanges.GroupChangeState.newBuilder(prunedBuilder.build()).clearGroupChange().build();
+
+    if (!groupChangeState.hasGroupChange()) {
+      // Nothing to do
+      return new PrunedChangeRecord(truncated, null, null, selves);
+    }
+
+    GroupChange.Actions actions;
+    try {
+      actions = GroupChange.Actions.parseFrom(groupChangeState.getGroupChange().getActions());
+    } catch (InvalidProtocolBufferException e) {
+      // Can't parse, truncate the change record
+      return new PrunedChangeRecord(truncated, null, null, selves);
+    }
+
+    // More actions may be added over time by Signal or Diskuv! So only export a change
+    // if it is part of a _whitelist_. See SanctuaryPruner for the notable exceptions.
+    GroupChange.Actions.Builder builder = GroupChange.Actions.newBuilder();
+    if (actions.hasModifyAddFromInviteLinkAccess())  builder.setModifyAddFromInviteLinkAccess(actions.getModifyAddFromInviteLinkAccess());
+    if (actions.hasModifyAttributesAccess())         builder.setModifyAttributesAccess(actions.getModifyAttributesAccess());
+    if (actions.hasModifyAvatar())                   builder.setModifyAvatar(actions.getModifyAvatar());
+    if (actions.hasModifyDisappearingMessageTimer()) builder.setModifyDisappearingMessageTimer(actions.getModifyDisappearingMessageTimer());
+    if (actions.hasModifyMemberAccess())             builder.setModifyMemberAccess(actions.getModifyMemberAccess());
+    if (actions.hasModifyTitle())                    builder.setModifyTitle(actions.getModifyTitle());
+    builder.setSourceUuid(actions.getSourceUuid());
+    builder.setVersion(actions.getVersion());
+
+    // Member actions are whitelisted only when they are about the viewer, so collect who they are about
+    Set<ByteString> targets = new HashSet<>();
+    actions.getAddMembersList().forEach(                        action -> targets.add(action.getAdded().getUserId()));
+    actions.getAddMembersPendingAdminApprovalList().forEach(    action -> targets.add(action.getAdded().getUserId()));
+    actions.getAddMembersPendingProfileKeyList().forEach(       action -> targets.add(action.getAdded().getMember().getUserId()));
+    actions.getDeleteMembersList().forEach(                     action -> targets.add(action.getDeletedUserId()));
+    actions.getDeleteMembersPendingAdminApprovalList().forEach( action -> targets.add(action.getDeletedUserId()));
+    actions.getDeleteMembersPendingProfileKeyList().forEach(    action -> targets.add(action.getDeletedUserId()));
+    actions.getModifyMemberRolesList().forEach(                 action -> targets.add(action.getUserId()));
+    actions.getPromoteMembersPendingAdminApprovalList().forEach(action -> targets.add(action.getUserId()));
+
+    builder.addAllAddMembers(actions.getAddMembersList());
+    builder.addAllAddMembersPendingAdminApproval(actions.getAddMembersPendingAdminApprovalList());
+    builder.addAllAddMembersPendingProfileKey(actions.getAddMembersPendingProfileKeyList());
+    builder.addAllDeleteMembers(actions.getDeleteMembersList());
+    builder.addAllDeleteMembersPendingAdminApproval(actions.getDeleteMembersPendingAdminApprovalList());
+    builder.addAllDeleteMembersPendingProfileKey(actions.getDeleteMembersPendingProfileKeyList());
+    builder.addAllModifyMemberRoles(actions.getModifyMemberRolesList());
+    builder.addAllPromoteMembersPendingAdminApproval(actions.getPromoteMembersPendingAdminApprovalList());
+
+    if (!builder.build().equals(actions) || targets.size() > 1) {
+      // Not whitelisted for anyone (a viewer is only ever one of the members), so truncate the change record
+      return new PrunedChangeRecord(truncated, null, null, selves);
+    }
+
+    // Whitelisted, so continue with the change as-is
+    GroupChanges.GroupChangeState whitelisted = prunedBuilder.build();
+    return new PrunedChangeRecord(truncated, whitelisted, targets.isEmpty() ? null : targets.iterator().next(), selves);
+  }
+
+  GroupChanges.GroupChangeState forViewer(GroupUser user, ByteString groupPublicKey) {
+    GroupChanges.GroupChangeState result = truncated;
+
+    if (whitelisted != null && (changeTarget == null || user.isMember(changeTarget, groupPublicKey))) {
+      result = whitelisted;
+    }
+
+    Self self = selves.get(user.getUserCiphertext());
+
+    if (self == null || !user.isMember(self.member, result.getGroupState().getPublicKey())) {
+      return result;
+    }
+
+    return GroupChanges.GroupChangeState.newBuilder(result)
+                                        .setGroupState(result.getGroupState().toBuilder().addMembers(self.position, self.member))
+                                        .build();
+  }
+
+  private static Group pruneState(Group state, Map<ByteString, Self> selves) {
+    Group.Builder builder = Group.newBuilder(state);
+
+    // Same rules as SanctuaryPruner.pruneSanctuaryGroupForNonOwner, except that a non-owner viewer
+    // is added back by forViewer
+    builder.clearInviteLinkPassword();
+    builder.clearMembers();
+    builder.clearMembersPendingAdminApproval();
+    builder.clearMembersPendingProfileKey();
+
+    for (Member member : state.getMembersList()) {
+      if (member.getRole() == Member.Role.ADMINISTRATOR) {
+        builder.addMembers(member);
+      } else {
+        selves.putIfAbsent(member.getUserId(), new Self(builder.getMembersCount(), member));
+      }
+    }
+
+    return builder.build();
+  }
+}
@@ -0,0 +1,103 @@
+package org.signal.storageservice.sanctuaries;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.protobuf.ByteString;
+import org.signal.storageservice.storage.protos.groups.GroupChanges;
+import org.whispersystems.textsecuregcm.util.Constants;
+
+import java.util.Objects;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * [Diskuv Change] A bounded, in-process cache of sanctuary change records that have already been
+ * pruned for non-owners.
+ *
+ * <p>Change records are immutable once appended, and every member of a sanctuary fetches the same
+ * versions of its log, so the parsing and whitelisting done by {@link SanctuaryPruner} only needs to
+ * happen once per (group, version, policy) on each node. Records without a change are not cached,
+ * since the change of that version may still be appended.
+ */
+public class PrunedChangeRecordCache {
+
+  enum Policy {
+    SANCTUARY_NON_OWNER
+  }
+
+  private static final class Key {
+    private final ByteString groupId;
+    private final int        version;
+    private final Policy     policy;
+
+    private Key(ByteString groupId, int version, Policy policy) {
+      this.groupId = groupId;
+      this.version = version;
+      this.policy  = policy;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      Key key = (Key) o;
+      return version == key.version && groupId.equals(key.groupId) && policy == key.policy;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(groupId, version, policy);
+    }
+  }
+
+  private final MetricRegistry metricRegistry = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private final Meter          hitMeter       = metricRegistry.meter(name(PrunedChangeRecordCache.class, "hit"));
+  private final Meter          missMeter      = metricRegistry.meter(name(PrunedChangeRecordCache.class, "miss"));
+
+  private final Cache<Key, PrunedChangeRecord> cache;
+
+  public PrunedChangeRecordCache(long maximumSize) {
+    this.cache = CacheBuilder.newBuilder()
+                             .maximumSize(maximumSize)
+                             .recordStats()
+                             .build();
+
+    metricRegistry.gauge(name(PrunedChangeRecordCache.class, "hitRatio"), () -> (Gauge<Double>) () -> cache.stats().hitRate());
+  }
+
+  PrunedChangeRecord get(ByteString groupId, Policy policy, GroupChanges.GroupChangeState groupChangeState) {
+    if (!groupChangeState.hasGroupChange()) {
+      // The current state stands in for a change record that has not been appended yet. Caching it
+      // would hide the change from members once it is appended, and pruning a state alone is cheap.
+      return PrunedChangeRecord.of(groupChangeState);
+    }
+
+    Key                key    = new Key(groupId, groupChangeState.getGroupState().getVersion(), policy);
+    PrunedChangeRecord pruned = cache.getIfPresent(key);
+
+    if (pruned != null) {
+      hitMeter.mark();
+      return pruned;
+    }
+
+    missMeter.mark();
+    pruned = PrunedChangeRecord.of(groupChangeState);
+    cache.put(key, pruned);
+    return pruned;
+  }
+
+  @VisibleForTesting
+  public long getHitCount() {
+    return cache.stats().hitCount();
+  }
+
+  @VisibleForTesting
+  public long getMissCount() {
+    return cache.stats().missCount();
+  }
+}
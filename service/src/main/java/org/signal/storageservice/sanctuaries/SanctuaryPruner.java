@@ -8,6 +8,7 @@ import org.signal.storageservice.storage.protos.groups.GroupChange;
 import org.signal.storageservice.storage.protos.groups.GroupChanges;
 import org.signal.storageservice.storage.protos.groups.Member;
 
+import javax.annotation.Nullable;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -23,12 +24,30 @@ public class SanctuaryPruner {
   }
 
   public static List<GroupChanges.GroupChangeState> pruneChangeRecords(GroupUser user, Group group, boolean sanctuary, List<GroupChanges.GroupChangeState> changeRecords) {
+    return pruneChangeRecords(user, group, sanctuary, changeRecords, null);
+  }
+
+  // [Diskuv Change] Reuse the viewer-independent part of the pruning across requests when a cache is given
+  public static List<GroupChanges.GroupChangeState> pruneChangeRecords(GroupUser user, Group group, boolean sanctuary, List<GroupChanges.GroupChangeState> changeRecords, @Nullable PrunedChangeRecordCache cache) {
     if (!sanctuary) return changeRecords;
     if (GroupAuth.isAdminstrator(user, group)) return changeRecords;
 
     // We have a sanctuary group with the user being a non-administrator. Prune!
     // -------------------------------------------------------------------------
 
+    if (cache != null) {
+      return changeRecords.stream()
+          .map(groupChangeState -> {
+            if (!groupChangeState.hasGroupState()) {
+              // Without a group state there is no version to key the record by
+              return PrunedChangeRecord.of(groupChangeState).forViewer(user, group.getPublicKey());
+            }
+            return cache.get(user.getGroupId(), PrunedChangeRecordCache.Policy.SANCTUARY_NON_OWNER, groupChangeState)
+                        .forViewer(user, group.getPublicKey());
+          })
+          .collect(Collectors.toList());
+    }
+
     return changeRecords.stream()
         .map(
             // Truncate the change from the change record if it shouldn't be seen.
@@ -0,0 +1,146 @@
+// Copyright 2021 Diskuv, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.signal.storageservice.storage;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.protobuf.ByteString;
+import org.signal.storageservice.storage.protos.groups.Group;
+import org.whispersystems.textsecuregcm.util.Constants;
+
+import javax.annotation.Nullable;
+import java.time.Clock;
+import java.time.Duration;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * [Diskuv Change] A bounded in-process cache of the latest known state of each group, used by
+ * {@link GroupsManager} to read groups through.
+ *
+ * <p>Each entry holds a group together with the time its version was last confirmed against DDB.
+ * An entry confirmed within the freshness window is served without touching DDB. An older entry is
+ * served only after a read of the group version attribute shows that the group has not moved on.
+ * That read is still a DDB read, and DDB charges read capacity for the whole item whatever the
+ * projection, so it only saves transferring and parsing the full group. Entries only ever move
+ * forward in version, so a slow read can not replace a group this server has just written.
+ *
+ * <p>The cache is bounded by the serialized size of the groups it holds, since the state of a large
+ * group can be hundreds of kilobytes.
+ */
+public class GroupStateCache {
+
+  static class Entry {
+    private final Group group;
+    private final long  validatedAt;
+
+    private Entry(Group group, long validatedAt) {
+      this.group       = group;
+      this.validatedAt = validatedAt;
+    }
+
+    Group getGroup() {
+      return group;
+    }
+  }
+
+  private final MetricRegistry metricRegistry = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private final Meter          freshMeter     = metricRegistry.meter(name(GroupStateCache.class, "fresh"));
+  private final Meter          validatedMeter = metricRegistry.meter(name(GroupStateCache.class, "validated"));
+  private final Meter          missMeter      = metricRegistry.meter(name(GroupStateCache.class, "miss"));
+
+  private final Cache<ByteString, Entry> cache;
+  private final Duration                 freshness;
+  private final Clock                    clock;
+
+  public GroupStateCache(long maximumBytes, Duration freshness) {
+    this(maximumBytes, freshness, Clock.systemUTC());
+  }
+
+  @VisibleForTesting
+  GroupStateCache(long maximumBytes, Duration freshness, Clock clock) {
+    this.cache     = CacheBuilder.newBuilder()
+                                 .maximumWeight(maximumBytes)
+                                 .<ByteString, Entry>weigher((groupId, entry) -> groupId.size() + entry.group.getSerializedSize())
+                                 .build();
+    this.freshness = freshness;
+    this.clock     = clock;
+
+    metricRegistry.gauge(name(GroupStateCache.class, "size"), () -> (Gauge<Long>) cache::size);
+    metricRegistry.gauge(name(GroupStateCache.class, "hitRatio"), () -> (Gauge<Double>) this::getHitRatio);
+  }
+
+  /**
+   * @return the cached entry of the group, or null if the group is not cached
+   */
+  @Nullable
+  Entry get(ByteString groupId) {
+    return cache.getIfPresent(groupId);
+  }
+
+  boolean isFresh(Entry entry) {
+    return clock.millis() - entry.validatedAt < freshness.toMillis();
+  }
+
+  /**
+   * Records the group as the latest confirmed state, unless a newer version is already cached.
+   */
+  void put(ByteString groupId, Group group) {
+    Entry entry = new Entry(group, clock.millis());
+    cache.asMap().merge(groupId, entry, (existing, replacement) -> existing.group.getVersion() > replacement.group.getVersion() ? existing : replacement);
+  }
+
+  void invalidate(ByteString groupId) {
+    cache.invalidate(groupId);
+  }
+
+  void markFresh() {
+    freshMeter.mark();
+  }
+
+  void markValidated() {
+    validatedMeter.mark();
+  }
+
+  void markMiss() {
+    missMeter.mark();
+  }
+
+  @VisibleForTesting
+  long getFreshCount() {
+    return freshMeter.getCount();
+  }
+
+  @VisibleForTesting
+  long getValidatedCount() {
+    return validatedMeter.getCount();
+  }
+
+  @VisibleForTesting
+  long getMissCount() {
+    return missMeter.getCount();
+  }
+
+  private double getHitRatio() {
+    long hits  = freshMeter.getCount() + validatedMeter.getCount();
+    long total = hits + missMeter.getCount();
+    return total == 0 ? 0 : (double) hits / total;
+  }
+}
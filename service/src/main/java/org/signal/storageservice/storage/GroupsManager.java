@@ -5,58 +5,160 @@
 
 package org.signal.storageservice.storage;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
 import com.diskuv.communicatorservice.storage.GroupLogDao;
 import com.diskuv.communicatorservice.storage.GroupsDao;
 import com.google.protobuf.ByteString;
 import org.signal.storageservice.storage.protos.groups.Group;
 import org.signal.storageservice.storage.protos.groups.GroupChange;
 import org.signal.storageservice.storage.protos.groups.GroupChanges.GroupChangeState;
+import org.whispersystems.textsecuregcm.util.Constants;
 
+import javax.annotation.Nullable;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
 /**
  * This is the group manager for Signal. We've swapped out the entire underlying BigTable
  * implementation; the group manager now interacts with a DynamoDB database and possibly a cache.
  */
 public class GroupsManager {
 
+  // [Diskuv Change] Measure group reads, which may be served by the group state cache.
+  private final MetricRegistry metricRegistry = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private final Timer          getGroupTimer  = metricRegistry.timer(name(GroupsManager.class, "getGroup"));
+
   // [Diskuv Change] Use Diskuv group database implementation rather Signal's BigTable implementation.
   private final GroupsDao   groupsTable;
   // [Diskuv Change] Use Diskuv group database implementation rather Signal's BigTable implementation.
   private final GroupLogDao groupLogTable;
+  // [Diskuv Change] Update groups and append their change records in one transaction.
+  private final boolean     atomicChangeRecords;
+  // [Diskuv Change] Read groups through an in-process cache validated against the group version.
+  @Nullable
+  private final GroupStateCache groupStateCache;
 
   // [Diskuv Change] Use Diskuv group database implementation rather Signal's BigTable implementation.
   public GroupsManager(GroupsDao groupsDao, GroupLogDao groupLogDao) {
-    this.groupsTable   = groupsDao;
-    this.groupLogTable = groupLogDao;
+    this(groupsDao, groupLogDao, false);
+  }
+
+  // [Diskuv Change] Update groups and append their change records in one transaction.
+  public GroupsManager(GroupsDao groupsDao, GroupLogDao groupLogDao, boolean atomicChangeRecords) {
+    this(groupsDao, groupLogDao, atomicChangeRecords, Optional.empty());
+  }
+
+  // [Diskuv Change] Read groups through an in-process cache validated against the group version.
+  public GroupsManager(GroupsDao groupsDao, GroupLogDao groupLogDao, boolean atomicChangeRecords, Optional<GroupStateCache> groupStateCache) {
+    this.groupsTable         = groupsDao;
+    this.groupLogTable       = groupLogDao;
+    this.atomicChangeRecords = atomicChangeRecords;
+    this.groupStateCache     = groupStateCache.orElse(null);
+  }
+
+  /**
+   * If true, callers should use {@link #updateGroupWithChangeRecord(ByteString, Group, GroupChange, Group)}
+   * rather than {@link #updateGroup(ByteString, Group)} followed by an append of the change record.
+   */
+  public boolean isAtomicChangeRecords() {
+    return atomicChangeRecords;
   }
 
   public CompletableFuture<Optional<Group>> getGroup(ByteString groupId) {
-    return groupsTable.getGroup(groupId);
+    // [Diskuv Change] Serve the cached group when it is fresh, or when its version is still current.
+    Timer.Context timerContext = getGroupTimer.time();
+
+    CompletableFuture<Optional<Group>> result;
+    GroupStateCache.Entry              entry  = groupStateCache != null ? groupStateCache.get(groupId) : null;
+
+    if (groupStateCache == null) {
+      result = groupsTable.getGroup(groupId);
+    } else if (entry == null) {
+      groupStateCache.markMiss();
+      result = loadGroup(groupId);
+    } else if (groupStateCache.isFresh(entry)) {
+      groupStateCache.markFresh();
+      result = CompletableFuture.completedFuture(Optional.of(entry.getGroup()));
+    } else {
+      result = groupsTable.getGroupVersion(groupId).thenCompose(version -> {
+        if (version.isPresent() && version.get() == entry.getGroup().getVersion()) {
+          groupStateCache.markValidated();
+          groupStateCache.put(groupId, entry.getGroup());
+          return CompletableFuture.completedFuture(Optional.of(entry.getGroup()));
+        }
+
+        groupStateCache.markMiss();
+        return loadGroup(groupId);
+      });
+    }
+
+    return result.whenComplete((group, throwable) -> timerContext.close());
   }
 
   public CompletableFuture<Boolean> createGroup(ByteString groupId, Group group) {
-    return groupsTable.createGroup(groupId, group);
+    return groupsTable.createGroup(groupId, group)
+                      .thenApply(created -> {
+                        // [Diskuv Change] A group we created is the latest state of the group.
+                        if (created && groupStateCache != null) groupStateCache.put(groupId, group);
+                        return created;
+                      });
   }
 
   public CompletableFuture<Optional<Group>> updateGroup(ByteString groupId, Group group) {
     return groupsTable.updateGroup(groupId, group)
-                      .thenCompose(modified -> {
-                        if (modified) return CompletableFuture.completedFuture(Optional.empty());
-                        else          return getGroup(groupId).thenApply(result -> Optional.of(result.orElseThrow()));
+                      .thenCompose(modified -> updateResult(groupId, group, modified));
+  }
+
+  // [Diskuv Change] Update groups and append their change records in one transaction.
+  public CompletableFuture<Optional<Group>> updateGroupWithChangeRecord(ByteString groupId, Group group, GroupChange change, Group previousState) {
+    return groupsTable.updateGroupWithChangeRecord(groupId, group, groupLogTable, change, previousState)
+                      .thenCompose(modified -> updateResult(groupId, group, modified));
+  }
+
+  // [Diskuv Change] A successful conditional update makes the written group the cached state. A
+  // failed one means the cached state may be behind, so the current group is read from DDB.
+  private CompletableFuture<Optional<Group>> updateResult(ByteString groupId, Group group, boolean modified) {
+    if (modified) {
+      if (groupStateCache != null) groupStateCache.put(groupId, group);
+      return CompletableFuture.completedFuture(Optional.empty());
+    }
+
+    if (groupStateCache != null) groupStateCache.invalidate(groupId);
+    return loadGroup(groupId).thenApply(result -> Optional.of(result.orElseThrow()));
+  }
+
+  // [Diskuv Change] Read the full group from DDB and remember it in the group state cache.
+  private CompletableFuture<Optional<Group>> loadGroup(ByteString groupId) {
+    return groupsTable.getGroup(groupId)
+                      .thenApply(group -> {
+                        if (groupStateCache != null) {
+                          if (group.isPresent()) groupStateCache.put(groupId, group.get());
+                          else                   groupStateCache.invalidate(groupId);
+                        }
+                        return group;
                       });
   }
 
   public CompletableFuture<List<GroupChangeState>> getChangeRecords(ByteString groupId, Group group, int fromVersionInclusive, int toVersionExclusive) {
+    return getChangeRecords(groupId, group, fromVersionInclusive, toVersionExclusive, Long.MAX_VALUE);
+  }
+
+  // [Diskuv Change] Stop reading the group log once the records reach maxBytes, as GroupLogDao does.
+  // A log cut short by the budget does not end at the latest version, so the group is not added.
+  public CompletableFuture<List<GroupChangeState>> getChangeRecords(ByteString groupId, Group group, int fromVersionInclusive, int toVersionExclusive, long maxBytes) {
     if (fromVersionInclusive >= toVersionExclusive) {
       throw new IllegalArgumentException("Version to read from (" + fromVersionInclusive + ") must be less than version to read to (" + toVersionExclusive + ")");
     }
 
-    return groupLogTable.getRecordsFromVersion(groupId, fromVersionInclusive, toVersionExclusive)
+    return groupLogTable.getRecordsFromVersion(groupId, fromVersionInclusive, toVersionExclusive, maxBytes)
                         .thenApply(groupChangeStates -> {
-                          if (isGroupInRange(group, fromVersionInclusive, toVersionExclusive) && groupVersionMissing(group, groupChangeStates) && toVersionExclusive - 1 == group.getVersion()) {
+                          if (isGroupInRange(group, fromVersionInclusive, toVersionExclusive) && groupVersionMissing(group, groupChangeStates) && toVersionExclusive - 1 == group.getVersion()
+                              && getSerializedBytes(groupChangeStates) < maxBytes) {
                             groupChangeStates.add(GroupChangeState.newBuilder().setGroupState(group).build());
                           }
                           return groupChangeStates;
@@ -67,10 +169,19 @@ public class GroupsManager {
     return groupLogTable.append(groupId, version, change, state);
   }
 
+  // [Diskuv Change] Pass the previous state so the group log can store only the difference.
+  public CompletableFuture<Boolean> appendChangeRecord(ByteString groupId, int version, GroupChange change, Group state, Group previousState) {
+    return groupLogTable.append(groupId, version, change, state, previousState);
+  }
+
   private static boolean isGroupInRange(Group group, int fromVersionInclusive, int toVersionExclusive) {
     return fromVersionInclusive <= group.getVersion() && group.getVersion() < toVersionExclusive;
   }
 
+  private static long getSerializedBytes(List<GroupChangeState> groupChangeStates) {
+    return groupChangeStates.stream().mapToLong(GroupChangeState::getSerializedSize).sum();
+  }
+
   private static boolean groupVersionMissing(Group group, List<GroupChangeState> groupChangeStates) {
     return groupChangeStates.stream().noneMatch(groupChangeState -> groupChangeState.getGroupState().getVersion() == group.getVersion());
   }
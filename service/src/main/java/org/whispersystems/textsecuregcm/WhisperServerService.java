@@ -93,15 +93,18 @@ import org.signal.storageservice.providers.CompletionExceptionMapper;
 import org.signal.storageservice.providers.InvalidProtocolBufferExceptionMapper;
 import org.signal.storageservice.providers.ProtocolBufferMessageBodyProvider;
 import org.signal.storageservice.providers.ProtocolBufferValidationErrorMessageBodyWriter;
+import org.signal.storageservice.storage.GroupStateCache;
 import org.signal.storageservice.storage.GroupsManager;
 import org.signal.zkgroup.ServerSecretParams;
 import org.signal.zkgroup.auth.ServerZkAuthOperations;
 import org.signal.zkgroup.profiles.ServerZkProfileOperations;
 import org.whispersystems.dispatch.DispatchManager;
 import org.whispersystems.textsecuregcm.auth.*;
+import org.whispersystems.textsecuregcm.auth.AuthCredentialIssuer;
 import org.whispersystems.textsecuregcm.auth.CertificateGenerator;
 import org.whispersystems.textsecuregcm.auth.DisabledPermittedAccount;
 import org.whispersystems.textsecuregcm.auth.ExternalServiceCredentialGenerator;
+import org.whispersystems.textsecuregcm.auth.SenderCertificateCache;
 import org.whispersystems.textsecuregcm.auth.TurnTokenGenerator;
 import org.whispersystems.textsecuregcm.controllers.AccountController;
 import org.whispersystems.textsecuregcm.controllers.AttachmentControllerV1;
@@ -336,7 +339,8 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
         ;
 
     DynamoDB messageDynamoDb = new DynamoDB(messageDynamoDbClientBuilder.build());
-    DynamoDB preKeyDynamoDb = new DynamoDB(keysDynamoDbClientBuilder.build());
+    AmazonDynamoDB preKeyDynamoDbClient = keysDynamoDbClientBuilder.build();
+    DynamoDB preKeyDynamoDb = new DynamoDB(preKeyDynamoDbClient);
 
     AmazonDynamoDB accountsDynamoDbClient = accountsDynamoDbClientBuilder.build();
     AmazonDynamoDBAsync accountsDynamodbAsyncClient = accountsDynamoDbAsyncClientBuilder.build();
@@ -354,7 +358,7 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
     Usernames         usernames         = new Usernames(accountDatabase);
     ReservedUsernames reservedUsernames = new ReservedUsernames(accountDatabase);
     Profiles          profiles          = new Profiles(accountDatabase);
-    KeysDynamoDb      keysDynamoDb      = new KeysDynamoDb(preKeyDynamoDb, config.getKeysDynamoDbConfiguration().getTableName());
+    KeysDynamoDb      keysDynamoDb      = new KeysDynamoDb(preKeyDynamoDbClient, preKeyDynamoDb, config.getKeysDynamoDbConfiguration().getTableName());
     MessagesDynamoDb  messagesDynamoDb  = new MessagesDynamoDb(messageDynamoDb, config.getMessageDynamoDbConfiguration().getTableName(), config.getMessageDynamoDbConfiguration().getTimeToLive());
     AbusiveHostRules  abusiveHostRules  = new AbusiveHostRules(abuseDatabase);
     RemoteConfigs     remoteConfigs     = new RemoteConfigs(accountDatabase);
@@ -412,12 +416,12 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
     PendingDevicesManager      pendingDevicesManager      = new PendingDevicesManager(pendingDevices, cacheCluster);
     UsernamesManager           usernamesManager           = new UsernamesManager(usernames, reservedUsernames, cacheCluster);
     ProfilesManager            profilesManager            = new ProfilesManager(profiles, cacheCluster);
-    org.whispersystems.textsecuregcm.synthetic.PossiblySyntheticProfilesManager syntheticProfilesManager = new org.whispersystems.textsecuregcm.synthetic.PossiblySyntheticProfilesManager(profilesManager, config.getDiskuvSyntheticAccounts().getSharedEntropyInput());
+    org.whispersystems.textsecuregcm.synthetic.PossiblySyntheticProfilesManager syntheticProfilesManager = new org.whispersystems.textsecuregcm.synthetic.PossiblySyntheticProfilesManager(profilesManager, config.getDiskuvSyntheticAccounts().getSharedEntropyInput(), config.getDiskuvSyntheticAccounts().getCacheSize(), config.getDiskuvSyntheticAccounts().getCacheExpiry());
     MessagesCache              messagesCache              = new MessagesCache(messagesCluster, messagesCluster, keyspaceNotificationDispatchExecutor);
     PushLatencyManager         pushLatencyManager         = new PushLatencyManager(metricsCluster);
     MessagesManager            messagesManager            = new MessagesManager(messagesDynamoDb, messagesCache, pushLatencyManager);
     AccountsManager            accountsManager            = new AccountsManager(accounts, accountsDynamoDb, cacheCluster, keysDynamoDb, messagesManager, usernamesManager, profilesManager, secureStorageClient, secureBackupClient, experimentEnrollmentManager, dynamicConfigurationManager);
-    org.whispersystems.textsecuregcm.synthetic.PossiblySyntheticAccountsManager syntheticAccountsManager = new org.whispersystems.textsecuregcm.synthetic.PossiblySyntheticAccountsManager(accountsManager, config.getDiskuvSyntheticAccounts().getSharedEntropyInput());
+    org.whispersystems.textsecuregcm.synthetic.PossiblySyntheticAccountsManager syntheticAccountsManager = new org.whispersystems.textsecuregcm.synthetic.PossiblySyntheticAccountsManager(accountsManager, config.getDiskuvSyntheticAccounts().getSharedEntropyInput(), config.getDiskuvSyntheticAccounts().getCacheSize(), config.getDiskuvSyntheticAccounts().getCacheExpiry());
     RemoteConfigsManager       remoteConfigsManager       = new RemoteConfigsManager(remoteConfigs);
     DeadLetterHandler          deadLetterHandler          = new DeadLetterHandler(accountsManager, messagesManager);
     DispatchManager            dispatchManager            = new DispatchManager(pubSubClientFactory, Optional.of(deadLetterHandler));
@@ -427,9 +431,15 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
     GCMSender                  gcmSender                  = new GCMSender(gcmSenderExecutor, accountsManager, config.getGcmConfiguration().getApiKey());
     ProvisioningManager        provisioningManager        = new ProvisioningManager(pubSubManager);
 
-    JwtAuthentication jwtAuthentication                                                    = new JwtAuthentication(config.getJwtKeys());
-    DiskuvAccountAuthenticator accountAuthenticator                                   = new DiskuvAccountAuthenticator(accountsManager, jwtAuthentication);
-    DisabledPermittedDiskuvAccountAuthenticator disabledPermittedAccountAuthenticator = new DisabledPermittedDiskuvAccountAuthenticator(accountsManager, jwtAuthentication);
+    Optional<com.diskuv.communicatorservice.auth.VerifiedBearerTokenCache> verifiedBearerTokenCache = config.getJwtKeys().getVerifiedTokenCacheSize() > 0
+        ? Optional.of(new com.diskuv.communicatorservice.auth.VerifiedBearerTokenCache(config.getJwtKeys().getVerifiedTokenCacheSize()))
+        : Optional.empty();
+    Optional<com.diskuv.communicatorservice.auth.OutdoorUuidCache> outdoorUuidCache = config.getJwtKeys().getOutdoorUuidCacheSize() > 0
+        ? Optional.of(new com.diskuv.communicatorservice.auth.OutdoorUuidCache(config.getJwtKeys().getOutdoorUuidCacheSize()))
+        : Optional.empty();
+    JwtAuthentication jwtAuthentication                                                    = new JwtAuthentication(config.getJwtKeys(), verifiedBearerTokenCache);
+    DiskuvAccountAuthenticator accountAuthenticator                                   = new DiskuvAccountAuthenticator(accountsManager, jwtAuthentication, outdoorUuidCache);
+    DisabledPermittedDiskuvAccountAuthenticator disabledPermittedAccountAuthenticator = new DisabledPermittedDiskuvAccountAuthenticator(accountsManager, jwtAuthentication, outdoorUuidCache);
 
     ApnFallbackManager       apnFallbackManager = new ApnFallbackManager(pushSchedulerCluster, apnSender, accountsManager);
     TwilioSmsSender          twilioSmsSender    = new TwilioSmsSender(config.getTwilioConfiguration(), dynamicConfigurationManager);
@@ -491,9 +501,14 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
     AuthFilter<DiskuvDeviceCredentials, DisabledPermittedAccount> disabledPermittedAccountAuthFilter = new DiskuvDeviceCredentialAuthFilter.Builder<DisabledPermittedAccount>().setAuthenticator(disabledPermittedAccountAuthenticator).buildAuthFilter();
 
     // [Diskuv Change] BEGIN: Import of groups from storage-service
+    long                                                               verifiedPresentationCacheSize = config.getDiskuvGroupsConfiguration().getVerifiedPresentationCacheSize();
+    Optional<org.signal.storageservice.auth.VerifiedPresentationCache> verifiedPresentationCache     = verifiedPresentationCacheSize > 0
+        ? Optional.of(new org.signal.storageservice.auth.VerifiedPresentationCache(verifiedPresentationCacheSize, config.getDiskuvGroupsConfiguration().getVerifiedPresentationCacheTimeToLive()))
+        : Optional.empty();
+
     // WAS:   UserAuthenticator      userAuthenticator      = new UserAuthenticator(new ExternalServiceCredentialValidator(config.getAuthenticationConfiguration().getKey()));
-    DiskuvOutdoorUserAuthenticator userAuthenticator      = new DiskuvOutdoorUserAuthenticator(jwtAuthentication);
-    DiskuvGroupUserAuthenticator   groupUserAuthenticator = new DiskuvGroupUserAuthenticator(jwtAuthentication, zkAuthOperations);
+    DiskuvOutdoorUserAuthenticator userAuthenticator      = new DiskuvOutdoorUserAuthenticator(jwtAuthentication, outdoorUuidCache);
+    DiskuvGroupUserAuthenticator   groupUserAuthenticator = new DiskuvGroupUserAuthenticator(jwtAuthentication, zkAuthOperations, verifiedPresentationCache);
 
     // WAS: AuthFilter<BasicCredentials, User>      userAuthFilter      = new BasicCredentialAuthFilter.Builder<User>().setAuthenticator(userAuthenticator).buildAuthFilter();
     AuthFilter<String, User>                        userAuthFilter      = new OAuthCredentialAuthFilter.Builder<User>().setAuthenticator(userAuthenticator).setPrefix("Bearer").buildAuthFilter();
@@ -521,7 +536,20 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
     environment.jersey().register(new AccountController(pendingAccountsManager, accountsManager, jwtAuthentication, usernamesManager, abusiveHostRules, rateLimiters, smsSender, messagesManager, dynamicConfigurationManager, turnTokenGenerator, config.getTestDevices(), recaptchaClient, gcmSender, apnSender, backupCredentialsGenerator, verifyExperimentEnrollmentManager));
     environment.jersey().register(new DeviceController(pendingDevicesManager, accountsManager, jwtAuthentication, messagesManager, rateLimiters, config.getMaxDevices()));
     environment.jersey().register(new ProvisioningController(rateLimiters, provisioningManager));
-    environment.jersey().register(new CertificateController(new CertificateGenerator(config.getDeliveryCertificate().getCertificate(), config.getDeliveryCertificate().getPrivateKey(), config.getDeliveryCertificate().getExpiresDays()), zkAuthOperations, isZkEnabled));
+    // [Diskuv Change] Reuse sender certificates across requests.
+    CertificateGenerator             certificateGenerator   = new CertificateGenerator(config.getDeliveryCertificate().getCertificate(), config.getDeliveryCertificate().getPrivateKey(), config.getDeliveryCertificate().getExpiresDays());
+    Optional<SenderCertificateCache> senderCertificateCache = config.getDeliveryCertificate().getCacheSize() > 0
+        ? Optional.of(new SenderCertificateCache(certificateGenerator, config.getDeliveryCertificate().getCacheSize(), config.getDeliveryCertificate().getRefreshFraction()))
+        : Optional.empty();
+    // [Diskuv Change] Reuse and concurrently issue auth credentials.
+    int                                     authCredentialIssuanceThreads  = config.getZkConfig().getAuthCredentialIssuanceThreads();
+    Optional<java.util.concurrent.Executor> authCredentialIssuanceExecutor = authCredentialIssuanceThreads > 0
+        ? Optional.of(environment.lifecycle().executorService(name(getClass(), "authCredentialIssuance-%d")).minThreads(authCredentialIssuanceThreads).maxThreads(authCredentialIssuanceThreads).build())
+        : Optional.empty();
+    Optional<AuthCredentialIssuer>          authCredentialIssuer           = config.getZkConfig().getAuthCredentialCacheSize() > 0 || authCredentialIssuanceExecutor.isPresent()
+        ? Optional.of(new AuthCredentialIssuer(zkAuthOperations, config.getZkConfig().getAuthCredentialCacheSize(), authCredentialIssuanceExecutor))
+        : Optional.empty();
+    environment.jersey().register(new CertificateController(certificateGenerator, zkAuthOperations, isZkEnabled, senderCertificateCache, authCredentialIssuer));
     environment.jersey().register(new VoiceVerificationController(config.getVoiceVerificationConfiguration().getUrl(), config.getVoiceVerificationConfiguration().getLocales()));
     environment.jersey().register(new SecureStorageController(storageCredentialsGenerator));
     environment.jersey().register(new SecureBackupController(backupCredentialsGenerator));
@@ -583,9 +611,11 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
 
     // [Diskuv Change] Groups setup custom to Diskuv
     DynamoDbAsyncClient groupsDbAsyncClient = new AwsClientFactory(config.getDiskuvGroupsConfiguration()).getDynamoDbAsyncClient();
-    GroupChangeCache    groupChangeCache    = new org.whispersystems.textsecuregcm.storage.RedisBackedGroupChangeCache(cacheCluster, config.getDiskuvGroupsConfiguration().getNumberOfGroupCacheCheckingThreads());
+    GroupChangeCache    groupChangeCache    = new org.whispersystems.textsecuregcm.storage.RedisBackedGroupChangeCache(cacheCluster, config.getDiskuvGroupsConfiguration().getNumberOfGroupCacheCheckingThreads(),
+                                                                                                                          config.getDiskuvGroupsConfiguration().getGroupChangeCacheTimeToLive(),
+                                                                                                                          config.getDiskuvGroupsConfiguration().getGroupChangeLocalCacheMaximumBytes());
     GroupsDao           groupsDao           = new GroupsDao(groupsDbAsyncClient, config.getDiskuvGroupsConfiguration().getGroupsTableName(), config.getDiskuvGroupsConfiguration().getChecksumSharedKey());
-    GroupLogDao         groupLogDao         = new GroupLogDao(groupsDbAsyncClient, config.getDiskuvGroupsConfiguration().getGroupLogTableName(), Optional.of(groupChangeCache));
+    GroupLogDao         groupLogDao         = new GroupLogDao(groupsDbAsyncClient, config.getDiskuvGroupsConfiguration().getGroupLogTableName(), Optional.of(groupChangeCache), config.getDiskuvGroupsConfiguration().getGroupLogSnapshotInterval());
 
     // [Diskuv Change] Diskuv Sanctuaries
     SanctuariesDao sanctuariesDao = new SanctuariesDao(groupsDbAsyncClient, config.getDiskuvGroupsConfiguration().getSanctuariesTableName());
@@ -605,7 +635,7 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
 
 
     // [Diskuv Change] BEGIN: Import of groups from storage-service
-    environment.jersey().register(ProtocolBufferMessageBodyProvider.class);
+    environment.jersey().register(new ProtocolBufferMessageBodyProvider(config.getDiskuvGroupsConfiguration().getProtocolBufferRequestSizeLimit()));
     environment.jersey().register(ProtocolBufferValidationErrorMessageBodyWriter.class);
     environment.jersey().register(InvalidProtocolBufferExceptionMapper.class);
     environment.jersey().register(CompletionExceptionMapper.class);
@@ -621,14 +651,28 @@ public class WhisperServerService extends Application<WhisperServerConfiguration
     */
     ServerSecretParams serverSecretParams = new ServerSecretParams(config.getZkConfig()/*WAS: getZkConfiguration()*/.getServerSecret());
     // WAS: GroupsManager groupsManager   = new GroupsManager(bigtableDataClient, config.getBigTableConfiguration().getGroupsTableId(), config.getBigTableConfiguration().getGroupLogsTableId());
-    GroupsManager groupsManager           = new GroupsManager(groupsDao, groupLogDao);
+    long                      groupStateCacheMaximumBytes = config.getDiskuvGroupsConfiguration().getGroupStateCacheMaximumBytes();
+    Optional<GroupStateCache> groupStateCache             = groupStateCacheMaximumBytes > 0
+        ? Optional.of(new GroupStateCache(groupStateCacheMaximumBytes, config.getDiskuvGroupsConfiguration().getGroupStateCacheFreshness()))
+        : Optional.empty();
+    GroupsManager groupsManager           = new GroupsManager(groupsDao, groupLogDao, config.getDiskuvGroupsConfiguration().isAtomicGroupChangeRecords(), groupStateCache);
 
     ExternalGroupCredentialGenerator externalGroupCredentialGenerator    = new ExternalGroupCredentialGenerator(config.getGroupConfiguration().getExternalServiceSecret());
 
     org.signal.storageservice.s3.PolicySigner policySigner               = new org.signal.storageservice.s3.PolicySigner(config.getCdnConfiguration().getAccessSecret(), config.getCdnConfiguration().getRegion());
     org.signal.storageservice.s3.PostPolicyGenerator postPolicyGenerator = new org.signal.storageservice.s3.PostPolicyGenerator(config.getCdnConfiguration().getRegion(), config.getCdnConfiguration().getBucket(), config.getCdnConfiguration().getAccessKey());
 
-    environment.jersey().register(new GroupsController(groupsManager, serverSecretParams, policySigner, postPolicyGenerator, config.getGroupConfiguration(), sanctuariesDao, externalGroupCredentialGenerator));
+    int                                     presentationVerificationThreads  = config.getDiskuvGroupsConfiguration().getPresentationVerificationThreads();
+    Optional<java.util.concurrent.Executor> presentationVerificationExecutor = presentationVerificationThreads > 0
+        ? Optional.of(environment.lifecycle().executorService(name(getClass(), "presentationVerification-%d")).minThreads(presentationVerificationThreads).maxThreads(presentationVerificationThreads).build())
+        : Optional.empty();
+
+    long                                                                    prunedChangeRecordCacheSize = config.getDiskuvGroupsConfiguration().getPrunedChangeRecordCacheSize();
+    Optional<org.signal.storageservice.sanctuaries.PrunedChangeRecordCache> prunedChangeRecordCache     = prunedChangeRecordCacheSize > 0
+        ? Optional.of(new org.signal.storageservice.sanctuaries.PrunedChangeRecordCache(prunedChangeRecordCacheSize))
+        : Optional.empty();
+
+    environment.jersey().register(new GroupsController(groupsManager, serverSecretParams, policySigner, postPolicyGenerator, config.getGroupConfiguration(), sanctuariesDao, externalGroupCredentialGenerator, presentationVerificationExecutor, prunedChangeRecordCache));
     // [Diskuv Change] END: Import of groups from storage-service
 
     environment.metrics().register(name(MaxFileDescriptorGauge.class, "max_fd_count"), new MaxFileDescriptorGauge());
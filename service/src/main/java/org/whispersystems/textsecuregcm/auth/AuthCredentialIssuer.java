@@ -0,0 +1,158 @@
+package org.whispersystems.textsecuregcm.auth;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.signal.zkgroup.auth.ServerZkAuthOperations;
+import org.whispersystems.textsecuregcm.entities.GroupCredentials;
+import org.whispersystems.textsecuregcm.util.Constants;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * [Diskuv Change] Issues the zkgroup auth credentials for a range of redemption days.
+ *
+ * <p>Clients ask for a week of credentials at a time, and each credential costs several
+ * ristretto255 scalar multiplications. An issued credential is reused for the same account and day
+ * until that day is over, after which it can no longer be redeemed. The credentials that are not
+ * cached are issued concurrently on the executor, if one is given.
+ */
+@SuppressWarnings("OptionalUsedAsFieldOrParameterType")
+public class AuthCredentialIssuer {
+
+  private final MetricRegistry metricRegistry = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private final Meter          hitMeter       = metricRegistry.meter(name(AuthCredentialIssuer.class, "hit"));
+  private final Meter          issuedMeter    = metricRegistry.meter(name(AuthCredentialIssuer.class, "issued"));
+  private final Timer          rangeTimer     = metricRegistry.timer(name(AuthCredentialIssuer.class, "range"));
+
+  private static class Key {
+    private final UUID uuid;
+    private final int  redemptionTime;
+
+    private Key(UUID uuid, int redemptionTime) {
+      this.uuid           = uuid;
+      this.redemptionTime = redemptionTime;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      Key key = (Key) o;
+      return redemptionTime == key.redemptionTime && uuid.equals(key.uuid);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(uuid, redemptionTime);
+    }
+  }
+
+  private final ServerZkAuthOperations serverZkAuthOperations;
+  private final Optional<Executor>     executor;
+  private final Cache<Key, byte[]>     cache;
+  private final Clock                  clock;
+
+  /**
+   * @param maximumSize the maximum number of credentials reused across requests, or zero to issue
+   *     every credential anew
+   * @param executor if present, a bounded pool on which the credentials of a range are issued
+   */
+  public AuthCredentialIssuer(ServerZkAuthOperations serverZkAuthOperations, long maximumSize, Optional<Executor> executor) {
+    this(serverZkAuthOperations, maximumSize, executor, Clock.systemUTC());
+  }
+
+  @VisibleForTesting
+  AuthCredentialIssuer(ServerZkAuthOperations serverZkAuthOperations, long maximumSize, Optional<Executor> executor, Clock clock) {
+    this.serverZkAuthOperations = serverZkAuthOperations;
+    this.executor               = executor;
+    this.clock                  = clock;
+    // Credentials are only issued up to a week ahead, so none is redeemable for longer than 8 days
+    this.cache                  = CacheBuilder.newBuilder()
+                                              .maximumSize(maximumSize)
+                                              .expireAfterWrite(8, TimeUnit.DAYS)
+                                              .build();
+  }
+
+  /**
+   * @return the serialized credentials for each day from the start to the end redemption time,
+   *     inclusive, in order
+   */
+  public List<GroupCredentials.GroupCredential> issueAuthCredentials(UUID uuid, int startRedemptionTime, int endRedemptionTime) {
+    try (Timer.Context ignored = rangeTimer.time()) {
+      long          now         = clock.millis();
+      List<byte[]>  credentials = new ArrayList<>(endRedemptionTime - startRedemptionTime + 1);
+      List<Integer> missing     = new ArrayList<>();
+
+      for (int i = startRedemptionTime; i <= endRedemptionTime; i++) {
+        byte[] credential = isRedeemable(i, now) ? cache.getIfPresent(new Key(uuid, i)) : null;
+
+        if (credential != null) hitMeter.mark();
+        else                    missing.add(i);
+
+        credentials.add(credential);
+      }
+
+      if (executor.isEmpty() || missing.size() < 2) {
+        for (int redemptionTime : missing) {
+          credentials.set(redemptionTime - startRedemptionTime, issueAuthCredential(uuid, redemptionTime));
+        }
+      } else {
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>(missing.size());
+
+        for (int redemptionTime : missing) {
+          futures.add(CompletableFuture.supplyAsync(() -> issueAuthCredential(uuid, redemptionTime), executor.get()));
+        }
+
+        for (int j = 0; j < missing.size(); j++) {
+          try {
+            credentials.set(missing.get(j) - startRedemptionTime, futures.get(j).join());
+          } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+          }
+        }
+      }
+
+      List<GroupCredentials.GroupCredential> result = new ArrayList<>(credentials.size());
+
+      for (int i = startRedemptionTime; i <= endRedemptionTime; i++) {
+        result.add(new GroupCredentials.GroupCredential(credentials.get(i - startRedemptionTime), i));
+      }
+
+      return result;
+    }
+  }
+
+  private byte[] issueAuthCredential(UUID uuid, int redemptionTime) {
+    byte[] credential = serverZkAuthOperations.issueAuthCredential(uuid, redemptionTime).serialize();
+    issuedMeter.mark();
+
+    cache.put(new Key(uuid, redemptionTime), credential);
+    return credential;
+  }
+
+  private static boolean isRedeemable(int redemptionTime, long now) {
+    return now < TimeUnit.DAYS.toMillis(redemptionTime + 1L);
+  }
+
+  @VisibleForTesting
+  long getIssuedCount() {
+    return issuedMeter.getCount();
+  }
+}
@@ -17,7 +17,6 @@
 package org.whispersystems.textsecuregcm.auth;
 
 import org.apache.commons.codec.binary.Hex;
-import org.whispersystems.textsecuregcm.util.ByteUtil;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
@@ -26,6 +25,15 @@ import java.security.SecureRandom;
 
 public class AuthenticationCredentials {
 
+  // [Diskuv Change] Every device request is verified, so each thread reuses its own digest.
+  private static final ThreadLocal<MessageDigest> SHA1 = ThreadLocal.withInitial(() -> {
+    try {
+      return MessageDigest.getInstance("SHA1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  });
+
   private final String hashedAuthenticationToken;
   private final String salt;
 
@@ -63,19 +71,12 @@ public class AuthenticationCredentials {
   }
 
   private static String getHashedValue(String salt, String token) {
-    try {
-      return new String(Hex.encodeHex(MessageDigest.getInstance("SHA1").digest((salt + token).getBytes(StandardCharsets.UTF_8))));
-    } catch (NoSuchAlgorithmException e) {
-      throw new AssertionError(e);
-    }
+    return new String(Hex.encodeHex(SHA1.get().digest((salt + token).getBytes(StandardCharsets.UTF_8))));
   }
 
   private static String getHashedValue(String salt, byte[] token) {
-    try {
-      byte[] contents = ByteUtil.combine(salt.getBytes(StandardCharsets.UTF_8), token);
-      return new String(Hex.encodeHex(MessageDigest.getInstance("SHA1").digest(contents)));
-    } catch (NoSuchAlgorithmException e) {
-      throw new AssertionError(e);
-    }
+    MessageDigest digest = SHA1.get();
+    digest.update(salt.getBytes(StandardCharsets.UTF_8));
+    return new String(Hex.encodeHex(digest.digest(token)));
   }
 }
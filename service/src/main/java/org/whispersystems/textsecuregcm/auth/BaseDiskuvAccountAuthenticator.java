@@ -5,6 +5,7 @@ import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.SharedMetricRegistries;
 import com.diskuv.communicatorservice.auth.DiskuvDeviceCredentials;
 import com.diskuv.communicatorservice.auth.JwtAuthentication;
+import com.diskuv.communicatorservice.auth.OutdoorUuidCache;
 import com.google.common.annotations.VisibleForTesting;
 import io.dropwizard.auth.basic.BasicCredentials;
 import io.micrometer.core.instrument.DistributionSummary;
@@ -60,25 +61,37 @@ public class BaseDiskuvAccountAuthenticator {
 
   private final AccountsManager accountsManager;
   private final JwtAuthentication jwtAuthentication;
+  private final Optional<OutdoorUuidCache> outdoorUuidCache;
   private final Clock           clock;
 
   public BaseDiskuvAccountAuthenticator(
       AccountsManager accountsManager, JwtAuthentication jwtAuthentication) {
-    this(accountsManager, jwtAuthentication, Clock.systemUTC());
+    this(accountsManager, jwtAuthentication, Optional.empty());
+  }
+
+  public BaseDiskuvAccountAuthenticator(
+      AccountsManager accountsManager, JwtAuthentication jwtAuthentication, Optional<OutdoorUuidCache> outdoorUuidCache) {
+    this(accountsManager, jwtAuthentication, outdoorUuidCache, Clock.systemUTC());
   }
 
   @VisibleForTesting
   public BaseDiskuvAccountAuthenticator(AccountsManager accountsManager, JwtAuthentication jwtAuthentication, Clock clock) {
+    this(accountsManager, jwtAuthentication, Optional.empty(), clock);
+  }
+
+  @VisibleForTesting
+  public BaseDiskuvAccountAuthenticator(AccountsManager accountsManager, JwtAuthentication jwtAuthentication, Optional<OutdoorUuidCache> outdoorUuidCache, Clock clock) {
     this.accountsManager = accountsManager;
     this.clock           = clock;
     this.jwtAuthentication = jwtAuthentication;
+    this.outdoorUuidCache  = outdoorUuidCache;
   }
 
   public Optional<Account> authenticate(DiskuvDeviceCredentials credentials, boolean enabledRequired) {
     final java.util.UUID authenticatedOutdoorsUuid;
     try {
       String emailAddress = jwtAuthentication.verifyBearerTokenAndGetEmailAddress(credentials.getBearerToken());
-      authenticatedOutdoorsUuid = DiskuvUuidUtil.uuidForOutdoorEmailAddress(emailAddress);
+      authenticatedOutdoorsUuid = OutdoorUuidCache.uuidForOutdoorEmailAddress(outdoorUuidCache, emailAddress);
     } catch (IllegalArgumentException iae) {
       invalidJwtTokenMeter.mark();
       return Optional.empty();
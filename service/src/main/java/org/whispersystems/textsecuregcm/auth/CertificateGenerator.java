@@ -33,6 +33,11 @@ public class CertificateGenerator {
     this.serverCertificate = ServerCertificate.parseFrom(serverCertificate);
   }
 
+  // [Diskuv Change] Let callers that reuse certificates know how long they last.
+  public int getExpiresDays() {
+    return expiresDays;
+  }
+
   public byte[] createFor(Account account, Device device, boolean includeUuid) throws IOException, InvalidKeyException {
     // [Diskuv Change] Use email-based UUID rather than number.
     Preconditions.checkArgument(includeUuid, "Must include the UUID in certificates");
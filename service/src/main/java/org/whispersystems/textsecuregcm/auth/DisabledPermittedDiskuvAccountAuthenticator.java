@@ -2,6 +2,7 @@ package org.whispersystems.textsecuregcm.auth;
 
 import com.diskuv.communicatorservice.auth.DiskuvDeviceCredentials;
 import com.diskuv.communicatorservice.auth.JwtAuthentication;
+import com.diskuv.communicatorservice.auth.OutdoorUuidCache;
 import io.dropwizard.auth.Authenticator;
 import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.AccountsManager;
@@ -14,6 +15,10 @@ public class DisabledPermittedDiskuvAccountAuthenticator extends BaseDiskuvAccou
     super(accountsManager, jwtAuthentication);
   }
 
+  public DisabledPermittedDiskuvAccountAuthenticator(AccountsManager accountsManager, JwtAuthentication jwtAuthentication, Optional<OutdoorUuidCache> outdoorUuidCache) {
+    super(accountsManager, jwtAuthentication, outdoorUuidCache);
+  }
+
   @Override
   public Optional<DisabledPermittedAccount> authenticate(DiskuvDeviceCredentials credentials) {
     Optional<Account> account = super.authenticate(credentials, false);
@@ -2,6 +2,7 @@ package org.whispersystems.textsecuregcm.auth;
 
 import com.diskuv.communicatorservice.auth.DiskuvDeviceCredentials;
 import com.diskuv.communicatorservice.auth.JwtAuthentication;
+import com.diskuv.communicatorservice.auth.OutdoorUuidCache;
 import io.dropwizard.auth.Authenticator;
 import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.AccountsManager;
@@ -15,6 +16,11 @@ public class DiskuvAccountAuthenticator extends BaseDiskuvAccountAuthenticator
     super(accountsManager, jwtAuthentication);
   }
 
+  public DiskuvAccountAuthenticator(
+      AccountsManager accountsManager, JwtAuthentication jwtAuthentication, Optional<OutdoorUuidCache> outdoorUuidCache) {
+    super(accountsManager, jwtAuthentication, outdoorUuidCache);
+  }
+
   @Override
   public Optional<Account> authenticate(DiskuvDeviceCredentials credentials) {
     return super.authenticate(credentials, true);
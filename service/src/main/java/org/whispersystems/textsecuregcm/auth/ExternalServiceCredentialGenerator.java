@@ -5,36 +5,33 @@ import org.apache.commons.codec.binary.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.whispersystems.textsecuregcm.util.DiskuvUuidUtil;
+import org.whispersystems.textsecuregcm.util.ThreadLocalMac;
 import org.whispersystems.textsecuregcm.util.Util;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
-import java.security.InvalidKeyException;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.TimeUnit;
 
 public class ExternalServiceCredentialGenerator {
 
   private final Logger logger = LoggerFactory.getLogger(ExternalServiceCredentialGenerator.class);
 
-  private final byte[] key;
-  private final byte[] userIdKey;
+  // [Diskuv Change] Reuse a keyed MAC for each key on every thread.
+  private final ThreadLocalMac key;
+  private final ThreadLocalMac userIdKey;
   private final boolean usernameDerivation;
 
   public ExternalServiceCredentialGenerator(byte[] key, byte[] userIdKey, boolean usernameDerivation) {
-    this.key                = key;
-    this.userIdKey          = userIdKey;
+    this.key                = new ThreadLocalMac("HmacSHA256", key);
+    this.userIdKey          = new ThreadLocalMac("HmacSHA256", userIdKey);
     this.usernameDerivation = usernameDerivation;
   }
 
   public ExternalServiceCredentials generateFor(String number) {
     DiskuvUuidUtil.verifyDiskuvUuid(number);
-    Mac    mac                = getMacInstance();
-    String username           = getUserId(number, mac, usernameDerivation);
+    String username           = getUserId(number, usernameDerivation);
     long   currentTimeSeconds = System.currentTimeMillis() / 1000;
     String prefix             = username + ":"  + currentTimeSeconds;
-    String output             = Hex.encodeHexString(Util.truncate(getHmac(key, prefix.getBytes(), mac), 10));
+    String output             = Hex.encodeHexString(Util.truncate(key.doFinal(prefix.getBytes()), 10));
     String token              = prefix + ":" + output;
 
     return new ExternalServiceCredentials(username, token);
@@ -43,13 +40,12 @@ public class ExternalServiceCredentialGenerator {
 
   public boolean isValid(String token, String number, long currentTimeMillis) {
     String[] parts = token.split(":");
-    Mac      mac   = getMacInstance();
 
     if (parts.length != 3) {
       return false;
     }
 
-    if (!getUserId(number, mac, usernameDerivation).equals(parts[0])) {
+    if (!getUserId(number, usernameDerivation).equals(parts[0])) {
       return false;
     }
 
@@ -57,11 +53,11 @@ public class ExternalServiceCredentialGenerator {
       return false;
     }
 
-    return isValidSignature(parts[0] + ":" + parts[1], parts[2], mac);
+    return isValidSignature(parts[0] + ":" + parts[1], parts[2]);
   }
 
-  private String getUserId(String number, Mac mac, boolean usernameDerivation) {
-    if (usernameDerivation) return Hex.encodeHexString(Util.truncate(getHmac(userIdKey, number.getBytes(), mac), 10));
+  private String getUserId(String number, boolean usernameDerivation) {
+    if (usernameDerivation) return Hex.encodeHexString(Util.truncate(userIdKey.doFinal(number.getBytes()), 10));
     else                    return number;
   }
 
@@ -77,9 +73,9 @@ public class ExternalServiceCredentialGenerator {
     }
   }
 
-  private boolean isValidSignature(String prefix, String suffix, Mac mac) {
+  private boolean isValidSignature(String prefix, String suffix) {
     try {
-      byte[] ourSuffix   = Util.truncate(getHmac(key, prefix.getBytes(), mac), 10);
+      byte[] ourSuffix   = Util.truncate(key.doFinal(prefix.getBytes()), 10);
       byte[] theirSuffix = Hex.decodeHex(suffix.toCharArray());
 
       return MessageDigest.isEqual(ourSuffix, theirSuffix);
@@ -89,21 +85,4 @@ public class ExternalServiceCredentialGenerator {
     }
   }
 
-  private Mac getMacInstance() {
-    try {
-      return Mac.getInstance("HmacSHA256");
-    } catch (NoSuchAlgorithmException e) {
-      throw new AssertionError(e);
-    }
-  }
-
-  private byte[] getHmac(byte[] key, byte[] input, Mac mac) {
-    try {
-      mac.init(new SecretKeySpec(key, "HmacSHA256"));
-      return mac.doFinal(input);
-    } catch (InvalidKeyException e) {
-      throw new AssertionError(e);
-    }
-  }
-
 }
@@ -0,0 +1,119 @@
+package org.whispersystems.textsecuregcm.auth;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SharedMetricRegistries;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.whispersystems.textsecuregcm.storage.Account;
+import org.whispersystems.textsecuregcm.storage.Device;
+import org.whispersystems.textsecuregcm.util.Constants;
+
+import java.io.IOException;
+import java.security.InvalidKeyException;
+import java.time.Clock;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * [Diskuv Change] Reuses the sender certificates made by a {@link CertificateGenerator}.
+ *
+ * <p>Clients ask for a delivery certificate far more often than one expires, and each new one
+ * costs a curve25519 signature. A certificate is reused for the same account, device and flag until
+ * the given fraction of its lifetime has passed, so a client is never handed a certificate that is
+ * close to expiring. A certificate is never reused once the identity key of the account changes.
+ */
+public class SenderCertificateCache {
+
+  private final MetricRegistry metricRegistry = SharedMetricRegistries.getOrCreate(Constants.METRICS_NAME);
+  private final Meter          hitMeter       = metricRegistry.meter(name(SenderCertificateCache.class, "hit"));
+  private final Meter          signatureMeter = metricRegistry.meter(name(SenderCertificateCache.class, "signature"));
+
+  private static class Key {
+    private final UUID    uuid;
+    private final long    deviceId;
+    private final boolean includeUuid;
+
+    private Key(UUID uuid, long deviceId, boolean includeUuid) {
+      this.uuid        = uuid;
+      this.deviceId    = deviceId;
+      this.includeUuid = includeUuid;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      Key key = (Key) o;
+      return deviceId == key.deviceId && includeUuid == key.includeUuid && uuid.equals(key.uuid);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(uuid, deviceId, includeUuid);
+    }
+  }
+
+  private static class Entry {
+    private final byte[] certificate;
+    private final String identityKey;
+    private final long   createdAt;
+
+    private Entry(byte[] certificate, String identityKey, long createdAt) {
+      this.certificate = certificate;
+      this.identityKey = identityKey;
+      this.createdAt   = createdAt;
+    }
+  }
+
+  private final CertificateGenerator certificateGenerator;
+  private final Cache<Key, Entry>    cache;
+  private final long                 refreshAfterMillis;
+  private final Clock                clock;
+
+  /**
+   * @param refreshFraction the fraction of the lifetime of a certificate after which a new one is
+   *     made, from 0 (never reuse) to 1 (reuse until it expires)
+   */
+  public SenderCertificateCache(CertificateGenerator certificateGenerator, long maximumSize, double refreshFraction) {
+    this(certificateGenerator, maximumSize, refreshFraction, Clock.systemUTC());
+  }
+
+  @VisibleForTesting
+  SenderCertificateCache(CertificateGenerator certificateGenerator, long maximumSize, double refreshFraction, Clock clock) {
+    Preconditions.checkArgument(refreshFraction >= 0 && refreshFraction <= 1, "The refresh fraction must be between 0 and 1");
+
+    this.certificateGenerator = certificateGenerator;
+    this.refreshAfterMillis   = (long) (TimeUnit.DAYS.toMillis(certificateGenerator.getExpiresDays()) * refreshFraction);
+    this.clock                = clock;
+    this.cache                = CacheBuilder.newBuilder()
+                                            .maximumSize(maximumSize)
+                                            .expireAfterWrite(Math.max(1, refreshAfterMillis), TimeUnit.MILLISECONDS)
+                                            .build();
+  }
+
+  /**
+   * @see CertificateGenerator#createFor(Account, Device, boolean)
+   */
+  public byte[] createFor(Account account, Device device, boolean includeUuid) throws IOException, InvalidKeyException {
+    Key   key   = new Key(account.getUuid(), device.getId(), includeUuid);
+    Entry entry = cache.getIfPresent(key);
+    long  now   = clock.millis();
+
+    if (entry != null && now - entry.createdAt < refreshAfterMillis && Objects.equals(entry.identityKey, account.getIdentityKey())) {
+      hitMeter.mark();
+      return entry.certificate;
+    }
+
+    byte[] certificate = certificateGenerator.createFor(account, device, includeUuid);
+    signatureMeter.mark();
+
+    cache.put(key, new Entry(certificate, account.getIdentityKey(), now));
+    return certificate;
+  }
+}
@@ -10,15 +10,26 @@ import java.util.Optional;
 @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
 public class UnidentifiedAccessChecksum {
 
+  // [Diskuv Change] The key differs for every account, so only the MAC itself is reused by each thread.
+  private static final ThreadLocal<Mac> MAC = ThreadLocal.withInitial(() -> {
+    try {
+      return Mac.getInstance("HmacSHA256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  });
+
+  private static final byte[] ZEROS = new byte[32];
+
   public static String generateFor(Optional<byte[]> unidentifiedAccessKey) {
     try {
       if (!unidentifiedAccessKey.isPresent()|| unidentifiedAccessKey.get().length != 16) return null;
 
-      Mac mac = Mac.getInstance("HmacSHA256");
+      Mac mac = MAC.get();
       mac.init(new SecretKeySpec(unidentifiedAccessKey.get(), "HmacSHA256"));
 
-      return Base64.getEncoder().encodeToString(mac.doFinal(new byte[32]));
-    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+      return Base64.getEncoder().encodeToString(mac.doFinal(ZEROS));
+    } catch (InvalidKeyException e) {
       throw new AssertionError(e);
     }
   }
@@ -8,6 +8,7 @@ import org.whispersystems.textsecuregcm.util.ByteArrayAdapter;
 
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
+import java.time.Duration;
 
 public class DiskuvSyntheticAccountsConfiguration {
 
@@ -36,4 +37,28 @@ public class DiskuvSyntheticAccountsConfiguration {
   public void setSharedEntropyInput(byte[] sharedEntropyInput) {
     this.sharedEntropyInput = sharedEntropyInput;
   }
+
+  /**
+   * The maximum number of synthetic accounts, and separately of synthetic profiles, kept in memory
+   * so that repeated lookups of the same unknown UUID do not generate it again. Zero disables the
+   * caches.
+   */
+  @JsonProperty
+  private long cacheSize = 10_000;
+
+  public long getCacheSize() {
+    return cacheSize;
+  }
+
+  /**
+   * How long a synthetic account or profile is kept in memory after it is generated. Zero keeps it
+   * until the cache is full.
+   */
+  @JsonProperty
+  @NotNull
+  private Duration cacheExpiry = Duration.ofHours(1);
+
+  public Duration getCacheExpiry() {
+    return cacheExpiry;
+  }
 }
@@ -3,6 +3,7 @@ package org.whispersystems.textsecuregcm.configuration;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.util.LinkedList;
 import java.util.List;
@@ -12,6 +13,18 @@ public class JwtKeysConfiguration {
 
   @JsonProperty(required = true) @NotNull private List<String> appClientIds = new LinkedList<>();
 
+  /**
+   * The maximum number of verified bearer tokens remembered until they expire, so that a token is
+   * not verified again for every request. Zero verifies every request.
+   */
+  @JsonProperty @Min(0) private long verifiedTokenCacheSize = 10_000;
+
+  /**
+   * The maximum number of email addresses whose outdoor UUID is remembered, so that the UUID is not
+   * hashed again for every request. Zero derives the UUID for every request.
+   */
+  @JsonProperty @Min(0) private long outdoorUuidCacheSize = 10_000;
+
   @JsonIgnore
   public String getDomain() {
     return domain;
@@ -22,6 +35,16 @@ public class JwtKeysConfiguration {
     return appClientIds;
   }
 
+  @JsonIgnore
+  public long getVerifiedTokenCacheSize() {
+    return verifiedTokenCacheSize;
+  }
+
+  @JsonIgnore
+  public long getOutdoorUuidCacheSize() {
+    return outdoorUuidCacheSize;
+  }
+
   public void setDomain(String domain) {
     this.domain = domain;
   }
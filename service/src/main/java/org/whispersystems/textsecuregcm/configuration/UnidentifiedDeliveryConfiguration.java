@@ -7,6 +7,9 @@ import org.whispersystems.textsecuregcm.crypto.Curve;
 import org.whispersystems.textsecuregcm.crypto.ECPrivateKey;
 import org.whispersystems.textsecuregcm.util.ByteArrayAdapter;
 
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
 
@@ -28,6 +31,19 @@ public class UnidentifiedDeliveryConfiguration {
   @NotNull
   private int expiresDays;
 
+  // [Diskuv Change] The maximum number of sender certificates reused across requests. Zero signs a
+  // new certificate for every request.
+  @JsonProperty
+  @Min(0)
+  private long cacheSize = 10_000;
+
+  // [Diskuv Change] The fraction of its lifetime after which a reused sender certificate is
+  // replaced by a new one.
+  @JsonProperty
+  @DecimalMin("0.0")
+  @DecimalMax("1.0")
+  private double refreshFraction = 0.5;
+
   public byte[] getCertificate() {
     return certificate;
   }
@@ -39,4 +55,12 @@ public class UnidentifiedDeliveryConfiguration {
   public int getExpiresDays() {
     return expiresDays;
   }
+
+  public long getCacheSize() {
+    return cacheSize;
+  }
+
+  public double getRefreshFraction() {
+    return refreshFraction;
+  }
 }
@@ -5,6 +5,7 @@ import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import org.whispersystems.textsecuregcm.util.ByteArrayAdapter;
 
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 public class ZkConfig {
@@ -25,6 +26,18 @@ public class ZkConfig {
   @NotNull
   private Boolean enabled;
 
+  // [Diskuv Change] The maximum number of auth credentials reused across requests for the rest of
+  // their redemption day. Zero issues every credential anew.
+  @JsonProperty
+  @Min(0)
+  private long authCredentialCacheSize = 10_000;
+
+  // [Diskuv Change] Size of the thread pool on which the auth credentials of a requested range are
+  // issued concurrently. Zero issues them one at a time on the request thread.
+  @JsonProperty
+  @Min(0)
+  private int authCredentialIssuanceThreads = 0;
+
   public byte[] getServerSecret() {
     return serverSecret;
   }
@@ -36,4 +49,12 @@ public class ZkConfig {
   public boolean isEnabled() {
     return enabled;
   }
+
+  public long getAuthCredentialCacheSize() {
+    return authCredentialCacheSize;
+  }
+
+  public int getAuthCredentialIssuanceThreads() {
+    return authCredentialIssuanceThreads;
+  }
 }
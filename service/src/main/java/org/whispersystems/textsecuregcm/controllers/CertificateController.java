@@ -5,7 +5,9 @@ import io.dropwizard.auth.Auth;
 import org.signal.zkgroup.auth.ServerZkAuthOperations;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.whispersystems.textsecuregcm.auth.AuthCredentialIssuer;
 import org.whispersystems.textsecuregcm.auth.CertificateGenerator;
+import org.whispersystems.textsecuregcm.auth.SenderCertificateCache;
 import org.whispersystems.textsecuregcm.entities.DeliveryCertificate;
 import org.whispersystems.textsecuregcm.entities.GroupCredentials;
 import org.whispersystems.textsecuregcm.storage.Account;
@@ -34,11 +36,27 @@ public class CertificateController {
   private final CertificateGenerator   certificateGenerator;
   private final ServerZkAuthOperations serverZkAuthOperations;
   private final boolean                isZkEnabled;
+  // [Diskuv Change] Reuse sender certificates rather than signing a new one for every request.
+  private final Optional<SenderCertificateCache> senderCertificateCache;
+  // [Diskuv Change] Reuse and concurrently issue auth credentials.
+  private final Optional<AuthCredentialIssuer>   authCredentialIssuer;
 
   public CertificateController(CertificateGenerator certificateGenerator, ServerZkAuthOperations serverZkAuthOperations, boolean isZkEnabled) {
+    this(certificateGenerator, serverZkAuthOperations, isZkEnabled, Optional.empty());
+  }
+
+  // [Diskuv Change] Reuse sender certificates rather than signing a new one for every request.
+  public CertificateController(CertificateGenerator certificateGenerator, ServerZkAuthOperations serverZkAuthOperations, boolean isZkEnabled, Optional<SenderCertificateCache> senderCertificateCache) {
+    this(certificateGenerator, serverZkAuthOperations, isZkEnabled, senderCertificateCache, Optional.empty());
+  }
+
+  // [Diskuv Change] Reuse and concurrently issue auth credentials.
+  public CertificateController(CertificateGenerator certificateGenerator, ServerZkAuthOperations serverZkAuthOperations, boolean isZkEnabled, Optional<SenderCertificateCache> senderCertificateCache, Optional<AuthCredentialIssuer> authCredentialIssuer) {
     this.certificateGenerator   = certificateGenerator;
     this.serverZkAuthOperations = serverZkAuthOperations;
     this.isZkEnabled            = isZkEnabled;
+    this.senderCertificateCache = senderCertificateCache;
+    this.authCredentialIssuer   = authCredentialIssuer;
   }
 
   // As of Signal 5.4.9, the HTTP parameter is includeE164 and not includeUuid. We ignore both HTTP parameters
@@ -54,6 +72,10 @@ public class CertificateController {
       throw new AssertionError();
     }
 
+    if (senderCertificateCache.isPresent()) {
+      return new DeliveryCertificate(senderCertificateCache.get().createFor(account, account.getAuthenticatedDevice().get(), true));
+    }
+
     return new DeliveryCertificate(certificateGenerator.createFor(account, account.getAuthenticatedDevice().get(), true));
   }
 
@@ -70,6 +92,10 @@ public class CertificateController {
     if (endRedemptionTime > Util.currentDaysSinceEpoch() + 7) throw new WebApplicationException(Response.Status.BAD_REQUEST);
     if (startRedemptionTime < Util.currentDaysSinceEpoch())   throw new WebApplicationException(Response.Status.BAD_REQUEST);
 
+    if (authCredentialIssuer.isPresent()) {
+      return new GroupCredentials(authCredentialIssuer.get().issueAuthCredentials(account.getUuid(), startRedemptionTime, endRedemptionTime));
+    }
+
     List<GroupCredentials.GroupCredential> credentials = new LinkedList<>();
 
     for (int i=startRedemptionTime;i<=endRedemptionTime;i++) {
@@ -37,6 +37,7 @@ import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
@@ -91,7 +92,10 @@ public class KeysController {
   @Timed
   @PUT
   @Consumes(MediaType.APPLICATION_JSON)
-  public void setKeys(@Auth DisabledPermittedAccount disabledPermittedAccount, @Valid PreKeyState preKeys)  {
+  public void setKeys(@Auth DisabledPermittedAccount disabledPermittedAccount,
+                      @Valid PreKeyState preKeys,
+                      @QueryParam("append") boolean append)
+  {
     Account account           = disabledPermittedAccount.getAccount();
     Device  device            = account.getAuthenticatedDevice().get();
     boolean updateAccount     = false;
@@ -110,7 +114,11 @@ public class KeysController {
       accounts.update(account);
     }
 
-    keysDynamoDb.store(account, device.getId(), preKeys.getPreKeys());
+    if (append) {
+      keysDynamoDb.append(account, device.getId(), preKeys.getPreKeys());
+    } else {
+      keysDynamoDb.store(account, device.getId(), preKeys.getPreKeys());
+    }
   }
 
   @Timed
@@ -7,95 +7,248 @@ package org.whispersystems.textsecuregcm.storage;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
-import com.amazonaws.services.dynamodbv2.document.DeleteItemOutcome;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.dynamodbv2.document.Item;
 import com.amazonaws.services.dynamodbv2.document.PrimaryKey;
 import com.amazonaws.services.dynamodbv2.document.Table;
 import com.amazonaws.services.dynamodbv2.document.TableWriteItems;
 import com.amazonaws.services.dynamodbv2.document.spec.DeleteItemSpec;
+import com.amazonaws.services.dynamodbv2.document.spec.GetItemSpec;
 import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.CancellationReason;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.Put;
 import com.amazonaws.services.dynamodbv2.model.ReturnValue;
 import com.amazonaws.services.dynamodbv2.model.Select;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItem;
+import com.amazonaws.services.dynamodbv2.model.TransactWriteItemsRequest;
+import com.amazonaws.services.dynamodbv2.model.TransactionCanceledException;
+import com.amazonaws.services.dynamodbv2.model.Update;
 import com.google.common.annotations.VisibleForTesting;
+import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Metrics;
 import io.micrometer.core.instrument.Timer;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import org.whispersystems.textsecuregcm.entities.PreKey;
 import org.whispersystems.textsecuregcm.util.UUIDUtil;
 
 public class KeysDynamoDb extends AbstractDynamoDbStore {
 
-    private final Table table;
+    private final AmazonDynamoDB client;
+    private final Table          table;
 
     public static final String KEY_ACCOUNT_UUID = "U";
     public static final String KEY_DEVICE_ID_KEY_ID = "DK";
     public static final String KEY_PUBLIC_KEY = "P";
 
+    // Pre-key counts for every device of an account live in a single item in the account's partition. Its sort key is
+    // shorter than a device prefix, so it never matches the begins_with queries that select a device's keys.
+    private static final byte[] KEY_COUNT_SORT_KEY                 = new byte[] { 'C' };
+    private static final String KEY_COUNT_ATTRIBUTE_PREFIX         = "C";
+    // Every change to a device's count also increments its version. A count computed from a sequence of non-atomic
+    // writes (a store or a repair) is only written if the version has not moved since the sequence started.
+    private static final String KEY_COUNT_VERSION_ATTRIBUTE_PREFIX = "V";
+
+    // A transaction holds at most 25 items: the counter update and up to 24 key writes
+    private static final int MAX_KEYS_PER_TRANSACTION    = 24;
+    private static final int MAX_TRANSACTION_ATTEMPTS    = 3;
+    private static final int MAX_COUNT_REPAIR_ATTEMPTS   = 3;
+
     private static final Timer               STORE_KEYS_TIMER              = Metrics.timer(name(KeysDynamoDb.class, "storeKeys"));
+    private static final Timer               APPEND_KEYS_TIMER             = Metrics.timer(name(KeysDynamoDb.class, "appendKeys"));
     private static final Timer               TAKE_KEY_FOR_DEVICE_TIMER     = Metrics.timer(name(KeysDynamoDb.class, "takeKeyForDevice"));
     private static final Timer               TAKE_KEYS_FOR_ACCOUNT_TIMER   = Metrics.timer(name(KeysDynamoDb.class, "takeKeyForAccount"));
     private static final Timer               GET_KEY_COUNT_TIMER           = Metrics.timer(name(KeysDynamoDb.class, "getKeyCount"));
+    private static final Timer               REPAIR_KEY_COUNT_TIMER        = Metrics.timer(name(KeysDynamoDb.class, "repairKeyCount"));
     private static final Timer               DELETE_KEYS_FOR_DEVICE_TIMER  = Metrics.timer(name(KeysDynamoDb.class, "deleteKeysForDevice"));
     private static final Timer               DELETE_KEYS_FOR_ACCOUNT_TIMER = Metrics.timer(name(KeysDynamoDb.class, "deleteKeysForAccount"));
+    private static final Counter             KEY_COUNT_REPAIRED_COUNTER    = Metrics.counter(name(KeysDynamoDb.class, "keyCountRepaired"));
+    private static final Counter             KEY_COUNT_DECREMENT_FAILED    = Metrics.counter(name(KeysDynamoDb.class, "keyCountDecrementFailed"));
+    private static final DistributionSummary REPLACED_KEY_DISTRIBUTION     = Metrics.summary(name(KeysDynamoDb.class, "replacedKeys"));
     private static final DistributionSummary CONTESTED_KEY_DISTRIBUTION    = Metrics.summary(name(KeysDynamoDb.class, "contestedKeys"));
     private static final DistributionSummary KEY_COUNT_DISTRIBUTION        = Metrics.summary(name(KeysDynamoDb.class, "keyCount"));
 
-    public KeysDynamoDb(final DynamoDB dynamoDB, final String tableName) {
+    public KeysDynamoDb(final AmazonDynamoDB client, final DynamoDB dynamoDB, final String tableName) {
         super(dynamoDB);
 
-        this.table = dynamoDB.getTable(tableName);
+        this.client = client;
+        this.table  = dynamoDB.getTable(tableName);
     }
 
+    /**
+     * Replaces all pre-keys stored for a device. There are too many keys to write in one transaction, so the device's
+     * counter is removed first and only written back if nothing else changed it in the meantime; otherwise it is
+     * recomputed. A store that fails part way leaves the counter missing, and the next {@link #getCount} repairs it.
+     */
     public void store(final Account account, final long deviceId, final List<PreKey> keys) {
         STORE_KEYS_TIMER.record(() -> {
-            delete(account, deviceId);
+            final long version = invalidateKeyCount(account.getUuid(), deviceId);
+
+            deleteKeys(account, deviceId);
+            putKeys(account.getUuid(), deviceId, keys);
+
+            if (!setKeyCount(account.getUuid(), deviceId, (int)keys.stream().mapToLong(PreKey::getKeyId).distinct().count(), version)) {
+                repairCount(account, deviceId);
+            }
+        });
+    }
 
-            writeInBatches(keys, batch -> {
-                final TableWriteItems items = new TableWriteItems(table.getTableName());
+    /**
+     * Adds pre-keys for a device without removing the keys that are already stored, as when a client tops up its supply
+     * of one-time pre-keys. A key whose ID is already stored for the device replaces the stored key but is not counted
+     * again; if the same ID appears more than once in {@code keys}, the last occurrence wins.
+     */
+    public void append(final Account account, final long deviceId, final List<PreKey> keys) {
+        APPEND_KEYS_TIMER.record(() -> {
+            if (keys.isEmpty()) {
+                return;
+            }
 
-                for (final PreKey preKey : batch) {
-                    items.addItemToPut(getItemFromPreKey(account.getUuid(), deviceId, preKey));
+            final Map<Long, PreKey> preKeysByKeyId = new LinkedHashMap<>();
+            // Sort keys compare as unsigned bytes, so a negative key ID sorts after every non-negative one and the range
+            // bounds must be the unsigned minimum and maximum
+            long minKeyId = -1L;
+            long maxKeyId = 0L;
+
+            for (final PreKey preKey : keys) {
+                preKeysByKeyId.put(preKey.getKeyId(), preKey);
+
+                if (Long.compareUnsigned(preKey.getKeyId(), minKeyId) < 0) {
+                    minKeyId = preKey.getKeyId();
+                }
+
+                if (Long.compareUnsigned(preKey.getKeyId(), maxKeyId) > 0) {
+                    maxKeyId = preKey.getKeyId();
                 }
+            }
+
+            // Clients allocate key IDs sequentially, so the range of new IDs rarely overlaps the stored keys and this
+            // query usually returns nothing.
+            Set<Long> storedKeyIds = getStoredKeyIds(account.getUuid(), deviceId, minKeyId, maxKeyId);
+
+            int replacedKeys = 0;
 
-                executeTableWriteItemsUntilComplete(items);
-            });
+            for (final long keyId : preKeysByKeyId.keySet()) {
+                if (storedKeyIds.contains(keyId)) {
+                    replacedKeys++;
+                }
+            }
+
+            REPLACED_KEY_DISTRIBUTION.record(replacedKeys);
+
+            final List<PreKey> preKeys = List.copyOf(preKeysByKeyId.values());
+
+            for (int start = 0; start < preKeys.size(); start += MAX_KEYS_PER_TRANSACTION) {
+                final List<PreKey> chunk = preKeys.subList(start, Math.min(start + MAX_KEYS_PER_TRANSACTION, preKeys.size()));
+
+                TransactionResult result = putKeysAndAddToKeyCount(account.getUuid(), deviceId, chunk, storedKeyIds);
+
+                if (result == TransactionResult.CONTESTED) {
+                    // Another writer added or took one of these key IDs after they were looked up
+                    storedKeyIds = getStoredKeyIds(account.getUuid(), deviceId, minKeyId, maxKeyId);
+                    result       = putKeysAndAddToKeyCount(account.getUuid(), deviceId, chunk, storedKeyIds);
+                }
+
+                if (result != TransactionResult.WRITTEN) {
+                    // Keys stored before counters existed are not reflected in a fresh counter, and a contested write
+                    // leaves the number of new keys unknown, so write the rest of the keys and count them all instead
+                    putKeys(account.getUuid(), deviceId, preKeys.subList(start, preKeys.size()));
+                    repairCount(account, deviceId);
+                    return;
+                }
+            }
         });
     }
 
+    private enum TransactionResult {
+        WRITTEN,
+        CONTESTED,
+        NO_COUNTER
+    }
+
+    private TransactionResult putKeysAndAddToKeyCount(final UUID accountUuid, final long deviceId, final List<PreKey> keys, final Set<Long> storedKeyIds) {
+        final List<TransactWriteItem> writeItems = new ArrayList<>(keys.size() + 1);
+        int addedKeys = 0;
+
+        for (final PreKey preKey : keys) {
+            final boolean stored = storedKeyIds.contains(preKey.getKeyId());
+
+            if (!stored) {
+                addedKeys++;
+            }
+
+            writeItems.add(new TransactWriteItem().withPut(new Put().withTableName(table.getTableName())
+                                                                    .withItem(Map.of(KEY_ACCOUNT_UUID, new AttributeValue().withB(ByteBuffer.wrap(getPartitionKey(accountUuid))),
+                                                                                     KEY_DEVICE_ID_KEY_ID, new AttributeValue().withB(ByteBuffer.wrap(getSortKey(deviceId, preKey.getKeyId()))),
+                                                                                     KEY_PUBLIC_KEY, new AttributeValue(preKey.getPublicKey())))
+                                                                    .withConditionExpression(stored ? "attribute_exists(#sort)" : "attribute_not_exists(#sort)")
+                                                                    .withExpressionAttributeNames(Map.of("#sort", KEY_DEVICE_ID_KEY_ID))));
+        }
+
+        writeItems.add(new TransactWriteItem().withUpdate(getKeyCountUpdate(accountUuid, deviceId, addedKeys).withConditionExpression("attribute_exists(#count)")));
+
+        final TransactWriteItemsRequest request = new TransactWriteItemsRequest().withTransactItems(writeItems);
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                client.transactWriteItems(request);
+                return TransactionResult.WRITTEN;
+            } catch (final TransactionCanceledException e) {
+                final List<CancellationReason> reasons = e.getCancellationReasons();
+
+                if (isConditionalCheckFailed(reasons.get(reasons.size() - 1))) {
+                    return TransactionResult.NO_COUNTER;
+                } else if (reasons.stream().anyMatch(KeysDynamoDb::isConditionalCheckFailed) || attempt == MAX_TRANSACTION_ATTEMPTS) {
+                    return TransactionResult.CONTESTED;
+                }
+            }
+        }
+    }
+
     public Optional<PreKey> take(final Account account, final long deviceId) {
         return TAKE_KEY_FOR_DEVICE_TIMER.record(() -> {
             final byte[] partitionKey = getPartitionKey(account.getUuid());
 
             final QuerySpec querySpec = new QuerySpec().withKeyConditionExpression("#uuid = :uuid AND begins_with (#sort, :sortprefix)")
-                                                       .withNameMap(Map.of("#uuid", KEY_ACCOUNT_UUID, "#sort", KEY_DEVICE_ID_KEY_ID))
+                                                       .withNameMap(Map.of("#uuid", KEY_ACCOUNT_UUID, "#sort", KEY_DEVICE_ID_KEY_ID, "#pk", KEY_PUBLIC_KEY))
                                                        .withValueMap(Map.of(":uuid", partitionKey,
                                                                             ":sortprefix", getSortKeyPrefix(deviceId)))
-                                                       .withProjectionExpression(KEY_DEVICE_ID_KEY_ID)
+                                                       .withProjectionExpression("#sort, #pk")
                                                        .withConsistentRead(false);
 
             int contestedKeys = 0;
 
             try {
                 for (final Item candidate : table.query(querySpec)) {
-                    final DeleteItemSpec deleteItemSpec = new DeleteItemSpec().withPrimaryKey(KEY_ACCOUNT_UUID, partitionKey, KEY_DEVICE_ID_KEY_ID, candidate.getBinary(KEY_DEVICE_ID_KEY_ID))
-                                                                              .withReturnValues(ReturnValue.ALL_OLD);
-
-                    final DeleteItemOutcome outcome = table.deleteItem(deleteItemSpec);
-
-                    if (outcome.getItem() != null) {
-                        return Optional.of(getPreKeyFromItem(outcome.getItem()));
+                    if (deleteKey(account.getUuid(), candidate)) {
+                        decrementKeyCount(account.getUuid(), deviceId);
+                        return Optional.of(getPreKeyFromItem(candidate));
                     }
 
                     contestedKeys++;
                 }
 
+                // A take that deleted its key but failed to decrement the counter leaves the counter too high, which
+                // would keep the client from uploading more keys; an empty device is where that matters, so fix it here
+                final Integer keyCount = getStoredKeyCount(account.getUuid(), deviceId);
+
+                if (keyCount != null && keyCount > 0) {
+                    repairCount(account, deviceId);
+                }
+
                 return Optional.empty();
             } finally {
                 CONTESTED_KEY_DISTRIBUTION.record(contestedKeys);
@@ -103,6 +256,45 @@ public class KeysDynamoDb extends AbstractDynamoDbStore {
         });
     }
 
+    /**
+     * Deletes a candidate key. The delete is conditional on the public key the candidate was read with, which a
+     * concurrent append may have replaced, so it alone decides which caller takes the key.
+     *
+     * @return {@code true} if this call took the key, or {@code false} if another writer took or replaced it first
+     */
+    private boolean deleteKey(final UUID accountUuid, final Item candidate) {
+        try {
+            table.deleteItem(new DeleteItemSpec().withPrimaryKey(KEY_ACCOUNT_UUID, getPartitionKey(accountUuid),
+                                                                 KEY_DEVICE_ID_KEY_ID, candidate.getBinary(KEY_DEVICE_ID_KEY_ID))
+                                                 .withConditionExpression("#pk = :pk")
+                                                 .withNameMap(Map.of("#pk", KEY_PUBLIC_KEY))
+                                                 .withValueMap(Map.of(":pk", candidate.getString(KEY_PUBLIC_KEY))));
+            return true;
+        } catch (final ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Decrements a device's counter after one of its keys was taken. This is a separate write rather than part of a
+     * transaction with the delete, because every device of an account shares the counter item and transactions on it
+     * would conflict with each other. A counter left too high by a failed decrement is repaired by the next take that
+     * finds the device empty; a counter removed by a store in progress becomes negative, and the store recounts.
+     */
+    private void decrementKeyCount(final UUID accountUuid, final long deviceId) {
+        try {
+            table.updateItem(new UpdateItemSpec().withPrimaryKey(KEY_ACCOUNT_UUID, getPartitionKey(accountUuid),
+                                                                 KEY_DEVICE_ID_KEY_ID, KEY_COUNT_SORT_KEY)
+                                                 .withUpdateExpression("ADD #count :delta, #version :one")
+                                                 .withNameMap(Map.of("#count", getKeyCountAttribute(deviceId),
+                                                                     "#version", getKeyCountVersionAttribute(deviceId)))
+                                                 .withValueMap(Map.of(":delta", -1, ":one", 1)));
+        } catch (final RuntimeException e) {
+            // The key is already taken, so it is returned anyway
+            KEY_COUNT_DECREMENT_FAILED.increment();
+        }
+    }
+
     public Map<Long, PreKey> take(final Account account) {
         return TAKE_KEYS_FOR_ACCOUNT_TIMER.record(() -> {
             final Map<Long, PreKey> preKeysByDeviceId = new HashMap<>();
@@ -115,18 +307,59 @@ public class KeysDynamoDb extends AbstractDynamoDbStore {
         });
     }
 
+    /**
+     * Returns the number of one-time pre-keys stored for a device. The count is read from a counter maintained by
+     * {@link #store}, {@link #append}, {@link #take} and {@link #delete}, so the cost of this call does not depend on how
+     * many keys are stored. A counter that is missing (keys stored before counters existed, or a store that did not
+     * finish) or negative (a take while a store was in progress) is recomputed with {@link #repairCount(Account, long)}.
+     */
     public int getCount(final Account account, final long deviceId) {
         return GET_KEY_COUNT_TIMER.record(() -> {
+            final Integer storedKeyCount = getStoredKeyCount(account.getUuid(), deviceId);
+
+            final int keyCount;
+
+            if (storedKeyCount == null || storedKeyCount < 0) {
+                keyCount = repairCount(account, deviceId);
+            } else {
+                keyCount = storedKeyCount;
+            }
+
+            KEY_COUNT_DISTRIBUTION.record(keyCount);
+            return keyCount;
+        });
+    }
+
+    /**
+     * Counts the pre-keys actually stored for a device and overwrites the maintained counter with the result. The
+     * counter is only overwritten if no other writer changed it while the keys were counted; the count is retried a few
+     * times before the counter is left for a later repair.
+     *
+     * @return the number of pre-keys stored for the device
+     */
+    public int repairCount(final Account account, final long deviceId) {
+        return REPAIR_KEY_COUNT_TIMER.record(() -> {
             final QuerySpec querySpec = new QuerySpec().withKeyConditionExpression("#uuid = :uuid AND begins_with (#sort, :sortprefix)")
                                                        .withNameMap(Map.of("#uuid", KEY_ACCOUNT_UUID, "#sort", KEY_DEVICE_ID_KEY_ID))
                                                        .withValueMap(Map.of(":uuid", getPartitionKey(account.getUuid()),
                                                                             ":sortprefix", getSortKeyPrefix(deviceId)))
                                                        .withSelect(Select.COUNT)
-                                                       .withConsistentRead(false);
+                                                       .withConsistentRead(true);
 
-            final int keyCount = (int)countItemsMatchingQuery(table, querySpec);
+            int keyCount = 0;
+
+            for (int attempt = 0; attempt < MAX_COUNT_REPAIR_ATTEMPTS; attempt++) {
+                // The version must be read before counting, so that any write the count misses also moves the version
+                final long version = getKeyCountVersion(account.getUuid(), deviceId);
+
+                keyCount = (int)countItemsMatchingQuery(table, querySpec);
+
+                if (setKeyCount(account.getUuid(), deviceId, keyCount, version)) {
+                    KEY_COUNT_REPAIRED_COUNTER.increment();
+                    break;
+                }
+            }
 
-            KEY_COUNT_DISTRIBUTION.record(keyCount);
             return keyCount;
         });
     }
@@ -139,6 +372,7 @@ public class KeysDynamoDb extends AbstractDynamoDbStore {
                                                        .withProjectionExpression(KEY_DEVICE_ID_KEY_ID)
                                                        .withConsistentRead(true);
 
+            // This also deletes the key count item, which shares the account's partition
             deleteItemsForAccountMatchingQuery(account, querySpec);
         });
     }
@@ -146,17 +380,57 @@ public class KeysDynamoDb extends AbstractDynamoDbStore {
     @VisibleForTesting
     void delete(final Account account, final long deviceId) {
         DELETE_KEYS_FOR_DEVICE_TIMER.record(() -> {
-            final QuerySpec querySpec = new QuerySpec().withKeyConditionExpression("#uuid = :uuid AND begins_with (#sort, :sortprefix)")
-                                                       .withNameMap(Map.of("#uuid", KEY_ACCOUNT_UUID, "#sort", KEY_DEVICE_ID_KEY_ID))
-                                                       .withValueMap(Map.of(":uuid", getPartitionKey(account.getUuid()),
-                                                                            ":sortprefix", getSortKeyPrefix(deviceId)))
-                                                       .withProjectionExpression(KEY_DEVICE_ID_KEY_ID)
-                                                       .withConsistentRead(true);
+            final long version = invalidateKeyCount(account.getUuid(), deviceId);
 
-            deleteItemsForAccountMatchingQuery(account, querySpec);
+            deleteKeys(account, deviceId);
+
+            if (!setKeyCount(account.getUuid(), deviceId, 0, version)) {
+                repairCount(account, deviceId);
+            }
+        });
+    }
+
+    private void deleteKeys(final Account account, final long deviceId) {
+        final QuerySpec querySpec = new QuerySpec().withKeyConditionExpression("#uuid = :uuid AND begins_with (#sort, :sortprefix)")
+                                                   .withNameMap(Map.of("#uuid", KEY_ACCOUNT_UUID, "#sort", KEY_DEVICE_ID_KEY_ID))
+                                                   .withValueMap(Map.of(":uuid", getPartitionKey(account.getUuid()),
+                                                                        ":sortprefix", getSortKeyPrefix(deviceId)))
+                                                   .withProjectionExpression(KEY_DEVICE_ID_KEY_ID)
+                                                   .withConsistentRead(true);
+
+        deleteItemsForAccountMatchingQuery(account, querySpec);
+    }
+
+    private void putKeys(final UUID accountUuid, final long deviceId, final List<PreKey> keys) {
+        writeInBatches(keys, batch -> {
+            final TableWriteItems items = new TableWriteItems(table.getTableName());
+
+            for (final PreKey preKey : batch) {
+                items.addItemToPut(getItemFromPreKey(accountUuid, deviceId, preKey));
+            }
+
+            executeTableWriteItemsUntilComplete(items);
         });
     }
 
+    private Set<Long> getStoredKeyIds(final UUID accountUuid, final long deviceId, final long minKeyId, final long maxKeyId) {
+        final QuerySpec querySpec = new QuerySpec().withKeyConditionExpression("#uuid = :uuid AND #sort BETWEEN :first AND :last")
+                                                   .withNameMap(Map.of("#uuid", KEY_ACCOUNT_UUID, "#sort", KEY_DEVICE_ID_KEY_ID))
+                                                   .withValueMap(Map.of(":uuid", getPartitionKey(accountUuid),
+                                                                        ":first", getSortKey(deviceId, minKeyId),
+                                                                        ":last", getSortKey(deviceId, maxKeyId)))
+                                                   .withProjectionExpression(KEY_DEVICE_ID_KEY_ID)
+                                                   .withConsistentRead(true);
+
+        final Set<Long> storedKeyIds = new HashSet<>();
+
+        for (final Item item : table.query(querySpec)) {
+            storedKeyIds.add(getKeyIdFromSortKey(item.getBinary(KEY_DEVICE_ID_KEY_ID)));
+        }
+
+        return storedKeyIds;
+    }
+
     private void deleteItemsForAccountMatchingQuery(final Account account, final QuerySpec querySpec) {
         final byte[] partitionKey = getPartitionKey(account.getUuid());
 
@@ -171,6 +445,94 @@ public class KeysDynamoDb extends AbstractDynamoDbStore {
         });
     }
 
+    /**
+     * Removes a device's counter ahead of a sequence of non-atomic key writes.
+     *
+     * @return the counter version that {@link #setKeyCount} must find once the writes are done
+     */
+    private long invalidateKeyCount(final UUID accountUuid, final long deviceId) {
+        final String versionAttribute = getKeyCountVersionAttribute(deviceId);
+
+        return table.updateItem(new UpdateItemSpec().withPrimaryKey(KEY_ACCOUNT_UUID, getPartitionKey(accountUuid),
+                                                                    KEY_DEVICE_ID_KEY_ID, KEY_COUNT_SORT_KEY)
+                                                    .withUpdateExpression("REMOVE #count ADD #version :one")
+                                                    .withNameMap(Map.of("#count", getKeyCountAttribute(deviceId),
+                                                                        "#version", versionAttribute))
+                                                    .withValueMap(Map.of(":one", 1))
+                                                    .withReturnValues(ReturnValue.UPDATED_NEW))
+                    .getItem()
+                    .getLong(versionAttribute);
+    }
+
+    /**
+     * @return the maintained counter of a device, or {@code null} if there is none
+     */
+    private Integer getStoredKeyCount(final UUID accountUuid, final long deviceId) {
+        final String countAttribute = getKeyCountAttribute(deviceId);
+
+        final Item item = table.getItem(new GetItemSpec().withPrimaryKey(KEY_ACCOUNT_UUID, getPartitionKey(accountUuid),
+                                                                         KEY_DEVICE_ID_KEY_ID, KEY_COUNT_SORT_KEY)
+                                                         .withProjectionExpression("#count")
+                                                         .withNameMap(Map.of("#count", countAttribute))
+                                                         .withConsistentRead(false));
+
+        return item != null && item.isPresent(countAttribute) ? item.getInt(countAttribute) : null;
+    }
+
+    private long getKeyCountVersion(final UUID accountUuid, final long deviceId) {
+        final String versionAttribute = getKeyCountVersionAttribute(deviceId);
+
+        final Item item = table.getItem(new GetItemSpec().withPrimaryKey(KEY_ACCOUNT_UUID, getPartitionKey(accountUuid),
+                                                                         KEY_DEVICE_ID_KEY_ID, KEY_COUNT_SORT_KEY)
+                                                         .withProjectionExpression("#version")
+                                                         .withNameMap(Map.of("#version", versionAttribute))
+                                                         .withConsistentRead(true));
+
+        return item != null && item.isPresent(versionAttribute) ? item.getLong(versionAttribute) : 0;
+    }
+
+    /**
+     * @return {@code true} if the counter was set, or {@code false} if its version was no longer the expected version
+     */
+    private boolean setKeyCount(final UUID accountUuid, final long deviceId, final int keyCount, final long expectedVersion) {
+        try {
+            table.updateItem(new UpdateItemSpec().withPrimaryKey(KEY_ACCOUNT_UUID, getPartitionKey(accountUuid),
+                                                                 KEY_DEVICE_ID_KEY_ID, KEY_COUNT_SORT_KEY)
+                                                 .withUpdateExpression("SET #count = :count ADD #version :one")
+                                                 .withConditionExpression(expectedVersion == 0 ? "attribute_not_exists(#version)" : "#version = :version")
+                                                 .withNameMap(Map.of("#count", getKeyCountAttribute(deviceId),
+                                                                     "#version", getKeyCountVersionAttribute(deviceId)))
+                                                 .withValueMap(expectedVersion == 0 ? Map.of(":count", keyCount, ":one", 1)
+                                                                                    : Map.of(":count", keyCount, ":one", 1, ":version", expectedVersion)));
+            return true;
+        } catch (final ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    private Update getKeyCountUpdate(final UUID accountUuid, final long deviceId, final int delta) {
+        return new Update().withTableName(table.getTableName())
+                           .withKey(Map.of(KEY_ACCOUNT_UUID, new AttributeValue().withB(ByteBuffer.wrap(getPartitionKey(accountUuid))),
+                                           KEY_DEVICE_ID_KEY_ID, new AttributeValue().withB(ByteBuffer.wrap(KEY_COUNT_SORT_KEY))))
+                           .withUpdateExpression("ADD #count :delta, #version :one")
+                           .withExpressionAttributeNames(Map.of("#count", getKeyCountAttribute(deviceId),
+                                                                "#version", getKeyCountVersionAttribute(deviceId)))
+                           .withExpressionAttributeValues(Map.of(":delta", new AttributeValue().withN(String.valueOf(delta)),
+                                                                 ":one", new AttributeValue().withN("1")));
+    }
+
+    private static boolean isConditionalCheckFailed(final CancellationReason reason) {
+        return "ConditionalCheckFailed".equals(reason.getCode());
+    }
+
+    private static String getKeyCountAttribute(final long deviceId) {
+        return KEY_COUNT_ATTRIBUTE_PREFIX + deviceId;
+    }
+
+    private static String getKeyCountVersionAttribute(final long deviceId) {
+        return KEY_COUNT_VERSION_ATTRIBUTE_PREFIX + deviceId;
+    }
+
     private static byte[] getPartitionKey(final UUID accountUuid) {
         return UUIDUtil.toBytes(accountUuid);
     }
@@ -194,8 +556,11 @@ public class KeysDynamoDb extends AbstractDynamoDbStore {
                          .withString(KEY_PUBLIC_KEY, preKey.getPublicKey());
     }
 
+    private static long getKeyIdFromSortKey(final byte[] sortKey) {
+        return ByteBuffer.wrap(sortKey).getLong(8);
+    }
+
     private PreKey getPreKeyFromItem(final Item item) {
-        final long keyId = ByteBuffer.wrap(item.getBinary(KEY_DEVICE_ID_KEY_ID)).getLong(8);
-        return new PreKey(keyId, item.getString(KEY_PUBLIC_KEY));
+        return new PreKey(getKeyIdFromSortKey(item.getBinary(KEY_DEVICE_ID_KEY_ID)), item.getString(KEY_PUBLIC_KEY));
     }
 }
@@ -1,26 +1,103 @@
 package org.whispersystems.textsecuregcm.storage;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
 import com.diskuv.communicatorservice.storage.GroupChangeCache;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.primitives.Bytes;
-
+import com.google.protobuf.ByteString;
+import io.lettuce.core.KeyValue;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
 import org.whispersystems.textsecuregcm.redis.FaultTolerantRedisCluster;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * A {@link GroupChangeCache} with two tiers: a bounded in-process LRU cache in front of the Redis
+ * cluster.
+ *
+ * <p>Group changes are immutable once written, so neither tier ever needs invalidating. Redis
+ * entries expire after a configurable time-to-live, which is pushed back whenever an entry is read,
+ * so only the logs of groups that are still being fetched stay in Redis. Reads served by the local
+ * tier push it back at most once per refresh interval for each entry, so a hot entry does not cost
+ * a Redis command on every read yet does not expire from Redis while it is in use.
+ */
 public class RedisBackedGroupChangeCache implements GroupChangeCache {
   private static final byte[] GROUP_CHANGE_KEY_PREFIX =
       "groupchange:".getBytes(StandardCharsets.UTF_8);
+
+  public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofDays(7);
+  public static final long DEFAULT_LOCAL_CACHE_MAXIMUM_BYTES = 32L * 1024 * 1024;
+
+  /** Longest time between refreshes of the Redis time-to-live of an entry read from the local tier. */
+  private static final Duration MAXIMUM_LOCAL_HIT_REFRESH_INTERVAL = Duration.ofHours(1);
+
+  private static final Counter LOCAL_HIT_COUNTER =
+      Metrics.counter(name(RedisBackedGroupChangeCache.class, "get"), "outcome", "localHit");
+  private static final Counter REDIS_HIT_COUNTER =
+      Metrics.counter(name(RedisBackedGroupChangeCache.class, "get"), "outcome", "redisHit");
+  private static final Counter MISS_COUNTER =
+      Metrics.counter(name(RedisBackedGroupChangeCache.class, "get"), "outcome", "miss");
+
   private final FaultTolerantRedisCluster cacheCluster;
   private final int numberOfCacheCheckingThreads;
+  private final long timeToLiveSeconds;
+  private final long localHitRefreshIntervalMillis;
+  private final Cache<ByteString, LocalEntry> localCache;
+  private final AtomicLong localCacheBytes = new AtomicLong();
 
   public RedisBackedGroupChangeCache(
       FaultTolerantRedisCluster cacheCluster, int numberOfCacheCheckingThreads) {
+    this(
+        cacheCluster,
+        numberOfCacheCheckingThreads,
+        DEFAULT_TIME_TO_LIVE,
+        DEFAULT_LOCAL_CACHE_MAXIMUM_BYTES);
+  }
+
+  public RedisBackedGroupChangeCache(
+      FaultTolerantRedisCluster cacheCluster,
+      int numberOfCacheCheckingThreads,
+      Duration timeToLive,
+      long localCacheMaximumBytes) {
     Preconditions.checkArgument(numberOfCacheCheckingThreads > 0);
+    Preconditions.checkArgument(timeToLive.getSeconds() > 0);
+    Preconditions.checkArgument(localCacheMaximumBytes >= 0);
     this.cacheCluster = cacheCluster;
     this.numberOfCacheCheckingThreads = numberOfCacheCheckingThreads;
+    this.timeToLiveSeconds = timeToLive.getSeconds();
+    // at half the time-to-live, an entry still has as long again to live when it is refreshed
+    this.localHitRefreshIntervalMillis =
+        Math.min(timeToLive.toMillis() / 2, MAXIMUM_LOCAL_HIT_REFRESH_INTERVAL.toMillis());
+    this.localCache =
+        CacheBuilder.newBuilder()
+            .maximumWeight(localCacheMaximumBytes)
+            .<ByteString, LocalEntry>weigher((key, entry) -> key.size() + entry.value.length)
+            .<ByteString, LocalEntry>removalListener(
+                notification ->
+                    localCacheBytes.addAndGet(
+                        -(notification.getKey().size() + notification.getValue().value.length)))
+            .recordStats()
+            .build();
+
+    Metrics.gauge(
+        name(RedisBackedGroupChangeCache.class, "localCacheBytes"), localCacheBytes, AtomicLong::get);
+    Metrics.gauge(
+        name(RedisBackedGroupChangeCache.class, "localCacheEntries"), localCache, Cache::size);
+    Metrics.gauge(
+        name(RedisBackedGroupChangeCache.class, "localCacheHitRatio"),
+        localCache,
+        cache -> cache.stats().hitRate());
   }
 
   @Override
@@ -31,15 +108,139 @@ public class RedisBackedGroupChangeCache implements GroupChangeCache {
   @Nullable
   @Override
   public byte[] getValueIfPresent(@Nonnull byte[] keyBytes) {
-    return cacheCluster.withBinaryCluster(connection -> {
-      return connection.sync().get(Bytes.concat(GROUP_CHANGE_KEY_PREFIX, keyBytes));
-    });
+    ByteString localKey = ByteString.copyFrom(keyBytes);
+    LocalEntry localEntry = localCache.getIfPresent(localKey);
+    if (localEntry != null) {
+      LOCAL_HIT_COUNTER.increment();
+      if (localEntry.isRefreshDue(localHitRefreshIntervalMillis)) {
+        refreshTimeToLive(List.of(getRedisKey(keyBytes)));
+      }
+      return localEntry.value;
+    }
+
+    byte[] redisKey = getRedisKey(keyBytes);
+    byte[] redisValue =
+        cacheCluster.withBinaryCluster(connection -> connection.sync().get(redisKey));
+    if (redisValue == null) {
+      MISS_COUNTER.increment();
+      return null;
+    }
+
+    REDIS_HIT_COUNTER.increment();
+    refreshTimeToLive(List.of(redisKey));
+    putLocalValue(localKey, redisValue);
+    return redisValue;
+  }
+
+  @Override
+  public List<byte[]> getValuesIfPresent(@Nonnull List<byte[]> keysBytes) {
+    final List<byte[]> values = new ArrayList<>(keysBytes.size());
+    final List<Integer> remoteIndexes = new ArrayList<>();
+    final List<byte[]> redisKeysToRefresh = new ArrayList<>();
+    for (byte[] keyBytes : keysBytes) {
+      LocalEntry localEntry = localCache.getIfPresent(ByteString.copyFrom(keyBytes));
+      if (localEntry == null) {
+        remoteIndexes.add(values.size());
+        values.add(null);
+      } else {
+        LOCAL_HIT_COUNTER.increment();
+        if (localEntry.isRefreshDue(localHitRefreshIntervalMillis)) {
+          redisKeysToRefresh.add(getRedisKey(keyBytes));
+        }
+        values.add(localEntry.value);
+      }
+    }
+    if (remoteIndexes.isEmpty()) {
+      refreshTimeToLive(redisKeysToRefresh);
+      return values;
+    }
+
+    final byte[][] redisKeys = new byte[remoteIndexes.size()][];
+    for (int i = 0; i < redisKeys.length; i++) {
+      redisKeys[i] = getRedisKey(keysBytes.get(remoteIndexes.get(i)));
+    }
+
+    // The cluster client splits a multi-key MGET by hash slot and dispatches the per-slot MGETs
+    // concurrently, so this costs about one round trip per cluster node rather than one per key.
+    final List<KeyValue<byte[], byte[]>> keyValues =
+        cacheCluster.withBinaryCluster(connection -> connection.sync().mget(redisKeys));
+
+    for (int i = 0; i < keyValues.size(); i++) {
+      final KeyValue<byte[], byte[]> keyValue = keyValues.get(i);
+      if (keyValue.hasValue()) {
+        final int index = remoteIndexes.get(i);
+        REDIS_HIT_COUNTER.increment();
+        redisKeysToRefresh.add(redisKeys[i]);
+        putLocalValue(ByteString.copyFrom(keysBytes.get(index)), keyValue.getValue());
+        values.set(index, keyValue.getValue());
+      } else {
+        MISS_COUNTER.increment();
+      }
+    }
+    refreshTimeToLive(redisKeysToRefresh);
+    return values;
   }
 
   @Override
   public void putValue(@Nonnull byte[] keyBytes, @Nonnull byte[] valueBytes) {
     cacheCluster.useBinaryCluster(connection -> {
-      connection.sync().set(Bytes.concat(GROUP_CHANGE_KEY_PREFIX, keyBytes), valueBytes);
+      connection.sync().setex(getRedisKey(keyBytes), timeToLiveSeconds, valueBytes);
     });
+    putLocalValue(ByteString.copyFrom(keyBytes), valueBytes);
+  }
+
+  @VisibleForTesting
+  long getLocalCacheBytes() {
+    return localCacheBytes.get();
+  }
+
+  @VisibleForTesting
+  void invalidateLocalCache() {
+    localCache.invalidateAll();
+  }
+
+  private void putLocalValue(ByteString localKey, byte[] valueBytes) {
+    // count the bytes before inserting; the removal listener subtracts them again if this entry
+    // replaces an older one or is evicted straight away
+    localCacheBytes.addAndGet(localKey.size() + valueBytes.length);
+    localCache.put(localKey, new LocalEntry(valueBytes));
+  }
+
+  private void refreshTimeToLive(List<byte[]> redisKeys) {
+    if (redisKeys.isEmpty()) {
+      return;
+    }
+    // fire-and-forget; a lost refresh only means an entry may be re-read from the database later
+    cacheCluster.useBinaryCluster(connection -> {
+      for (byte[] redisKey : redisKeys) {
+        connection.async().expire(redisKey, timeToLiveSeconds);
+      }
+    });
+  }
+
+  private static byte[] getRedisKey(byte[] keyBytes) {
+    return Bytes.concat(GROUP_CHANGE_KEY_PREFIX, keyBytes);
+  }
+
+  /**
+   * A value in the local tier, with the time its Redis time-to-live was last pushed back. Every
+   * value is either written to Redis or read from it just before it enters the local tier.
+   */
+  private static class LocalEntry {
+    private final byte[] value;
+    private final AtomicLong timeToLiveRefreshedMillis;
+
+    LocalEntry(byte[] value) {
+      this.value = value;
+      this.timeToLiveRefreshedMillis = new AtomicLong(System.currentTimeMillis());
+    }
+
+    /** @return true for only one of the callers once the refresh interval has passed */
+    boolean isRefreshDue(long refreshIntervalMillis) {
+      long now = System.currentTimeMillis();
+      long refreshedMillis = timeToLiveRefreshedMillis.get();
+      return now - refreshedMillis >= refreshIntervalMillis
+          && timeToLiveRefreshedMillis.compareAndSet(refreshedMillis, now);
+    }
   }
 }
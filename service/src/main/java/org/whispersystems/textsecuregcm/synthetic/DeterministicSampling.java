@@ -9,8 +9,19 @@ import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class DeterministicSampling {
+  // Each thread reuses its own digest, since every synthetic account samples several values
+  private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  });
+
   private final String salt;
 
   public DeterministicSampling(String salt) {
@@ -18,37 +29,61 @@ public class DeterministicSampling {
   }
 
   public ECKeyPair deterministicSampledKeyPair(String discriminator) {
-    try {
-      // make sha256(salt | discriminator)
-      String actualStringToDigest = salt + discriminator;
-      byte[] privateKeyBytes = new byte[32];
-      MessageDigest digest256 = MessageDigest.getInstance("SHA-256");
-      byte[] shaBytes = digest256.digest(actualStringToDigest.getBytes(StandardCharsets.UTF_8));
-      System.arraycopy(shaBytes, 0, privateKeyBytes, 0, privateKeyBytes.length);
-
-      // create private key
-      ECPrivateKey privateKey = Curve.decodePrivatePoint(privateKeyBytes);
-
-      // create valid public key
-      ECPublicKey publicKey = privateKey.publicKey();
-
-      return new ECKeyPair(publicKey, privateKey);
+    return deterministicSampledKeyPair(SHA_256.get(), discriminator);
+  }
 
-    } catch (NoSuchAlgorithmException e) {
-      throw new AssertionError(e);
+  /**
+   * Same as {@link #deterministicSampledKeyPair(String)} for each discriminator, in order, but
+   * with one digest for all of them.
+   */
+  public List<ECKeyPair> deterministicSampledKeyPairs(List<String> discriminators) {
+    MessageDigest   digest256 = SHA_256.get();
+    List<ECKeyPair> keyPairs  = new ArrayList<>(discriminators.size());
+    for (String discriminator : discriminators) {
+      keyPairs.add(deterministicSampledKeyPair(digest256, discriminator));
     }
+    return keyPairs;
   }
 
   public int deterministicSampledIntInRange(
       String discriminator, int minInclusive, int maxExclusive) {
+    return deterministicSampledIntInRange(SHA_256.get(), discriminator, minInclusive, maxExclusive);
+  }
+
+  /**
+   * Same as {@link #deterministicSampledIntInRange(String, int, int)} for each discriminator, in
+   * order, but with one digest for all of them.
+   */
+  public int[] deterministicSampledIntsInRange(
+      List<String> discriminators, int minInclusive, int maxExclusive) {
+    MessageDigest digest256 = SHA_256.get();
+    int[]         samples   = new int[discriminators.size()];
+    for (int i = 0; i < samples.length; i++) {
+      samples[i] = deterministicSampledIntInRange(digest256, discriminators.get(i), minInclusive, maxExclusive);
+    }
+    return samples;
+  }
+
+  private ECKeyPair deterministicSampledKeyPair(MessageDigest digest256, String discriminator) {
+    // make sha256(salt | discriminator)
+    String actualStringToDigest = salt + discriminator;
+    byte[] privateKeyBytes = new byte[32];
+    byte[] shaBytes = digest256.digest(actualStringToDigest.getBytes(StandardCharsets.UTF_8));
+    System.arraycopy(shaBytes, 0, privateKeyBytes, 0, privateKeyBytes.length);
+
+    // create private key
+    ECPrivateKey privateKey = Curve.decodePrivatePoint(privateKeyBytes);
+
+    // create valid public key
+    ECPublicKey publicKey = privateKey.publicKey();
+
+    return new ECKeyPair(publicKey, privateKey);
+  }
+
+  private int deterministicSampledIntInRange(
+      MessageDigest digest256, String discriminator, int minInclusive, int maxExclusive) {
     // make sha256(salt | discriminator)
     String actualStringToDigest = salt + discriminator;
-    MessageDigest digest256;
-    try {
-      digest256 = MessageDigest.getInstance("SHA-256");
-    } catch (NoSuchAlgorithmException e) {
-      throw new AssertionError(e);
-    }
     byte[] digest =
         digest256.digest(actualStringToDigest.getBytes(StandardCharsets.UTF_8));
     ByteBuffer byteBuffer = ByteBuffer.wrap(digest);
@@ -2,6 +2,7 @@ package org.whispersystems.textsecuregcm.synthetic;
 
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.SecretKeySpec;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -35,8 +36,12 @@ import java.util.Arrays;
 public class HmacDrbg {
   private static final String ALGORITHM = "HmacSHA256";
 
-  // "V" from the the spec.
-  private byte[] value;
+  // "V" from the the spec. It is updated in place.
+  private final byte[] value = new byte[DIGEST_NUM_BYTES];
+
+  // "Key" from the spec, kept so it can be computed without allocating. The Mac copies it when
+  // re-keyed.
+  private final byte[] key = new byte[DIGEST_NUM_BYTES];
 
   // An instance of HMAC-SHA256 configured with "Key" from the spec.
   private final Mac mac;
@@ -82,9 +87,6 @@ public class HmacDrbg {
   // floor(7500/8); see: http://csrc.nist.gov/publications/nistpubs/800-90A/SP800-90A.pdf D.2 #5.
   private static final int MAX_BYTES_PER_REQUEST = 937;
 
-  private static final byte[] BYTE_ARRAY_0 = {0};
-  private static final byte[] BYTE_ARRAY_1 = {1};
-
   public HmacDrbg(byte[] entropyInput, byte[] personalizationString) {
     mac = createMac();
 
@@ -97,10 +99,9 @@ public class HmacDrbg {
     byte[] seedMaterial = concat(entropyInput, emptyIfNull(personalizationString));
 
     // 2. Key = 0x00 00...00
-    setKey(new byte[256 / 8]);
+    setKey();
 
     // 3. V = 0x01 01...01
-    value = new byte[DIGEST_NUM_BYTES];
     Arrays.fill(value, (byte) 0x01);
 
     // 4. (Key, V) = HMAC_DRBG_Update(seed_material, Key, V)
@@ -117,9 +118,9 @@ public class HmacDrbg {
   }
 
   /**
-   * Set's the "Key" state from the spec.
+   * Configures the HMAC with the "Key" state from the spec.
    */
-  private void setKey(byte[] key) {
+  private void setKey() {
     try {
       SecretKeySpec hmacKey = new SecretKeySpec(key, ALGORITHM);
       mac.init(hmacKey);
@@ -129,10 +130,22 @@ public class HmacDrbg {
   }
 
   /**
-   * Computes hmac("key" from the spec, x).
+   * Finishes hmac("key" from the spec, whatever was passed to the mac since) into out.
+   */
+  private void hashInto(byte[] out) {
+    try {
+      mac.doFinal(out, 0);
+    } catch (ShortBufferException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * Computes V = hmac("key" from the spec, V).
    */
-  private byte[] hash(byte[] x) {
-    return mac.doFinal(x);
+  private void hashValue() {
+    mac.update(value);
+    hashInto(value);
   }
 
   private static Mac createMac() {
@@ -165,10 +178,16 @@ public class HmacDrbg {
   private void hmacDrbgUpdate(byte[] providedData) {
 
     // 1. K = HMAC(K, V || 0x00 || provided_data)
-    setKey(hash(concat(value, BYTE_ARRAY_0, emptyIfNull(providedData))));
+    mac.update(value);
+    mac.update((byte) 0x00);
+    if (providedData != null) {
+      mac.update(providedData);
+    }
+    hashInto(key);
+    setKey();
 
     // 2. V = HMAC(K, V);
-    value = hash(value);
+    hashValue();
 
     // 3. If (provided_data = Null), then return K and V.
     if (providedData == null) {
@@ -176,10 +195,14 @@ public class HmacDrbg {
     }
 
     // 4. K = HMAC (K, V || 0x01 || provided_data).
-    setKey(hash(concat(value, BYTE_ARRAY_1, providedData)));
+    mac.update(value);
+    mac.update((byte) 0x01);
+    mac.update(providedData);
+    hashInto(key);
+    setKey();
 
     // 5. V = HMAC (K, V).
-    value = hash(value);
+    hashValue();
   }
 
   /**
@@ -199,7 +222,7 @@ public class HmacDrbg {
     // 4. While (len (temp) < requested_number_of_bits) do:
     while (bytesWritten < count) {
       // 4.1 V = HMAC (Key, V).
-      value = hash(value);
+      hashValue();
 
       // 4.2 temp = temp || V.
       // 5. returned_bits = Leftmost requested_number_of_bits of temp
@@ -5,6 +5,10 @@ import java.util.Random;
 public class HmacDrbgRandom extends Random {
   private final HmacDrbg drbg;
 
+  // Holds the bytes of one next(int) call, so drawing an int does not allocate. Like the DRBG, this
+  // random is not thread-safe.
+  private final byte[] nextBuffer = new byte[4];
+
   public HmacDrbgRandom(HmacDrbg drbg) {
     super(0L);
     this.drbg = drbg;
@@ -17,12 +21,11 @@ public class HmacDrbgRandom extends Random {
   @Override
   protected int next(int numBits) {
     int numBytes = (numBits + 7) / 8;
-    byte[] b = new byte[numBytes];
     int next = 0;
-    this.nextBytes(b);
+    drbg.nextBytes(nextBuffer, 0, numBytes);
 
     for (int i = 0; i < numBytes; ++i) {
-      next = (next << 8) + (b[i] & 255);
+      next = (next << 8) + (nextBuffer[i] & 255);
     }
 
     return next >>> numBytes * 8 - numBits;
@@ -1,10 +1,14 @@
 package org.whispersystems.textsecuregcm.synthetic;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.whispersystems.textsecuregcm.storage.Account;
 import org.whispersystems.textsecuregcm.storage.AccountsManager;
 
+import java.time.Duration;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * An accounts manager whose central innovation is to always return an account, regardless if it
@@ -13,10 +17,38 @@ import java.util.UUID;
 public class PossiblySyntheticAccountsManager {
   private final AccountsManager accountsManager;
   private final byte[] sharedEntropyInput;
+  private final Cache<UUID, SyntheticAccount> syntheticAccounts;
 
   public PossiblySyntheticAccountsManager(AccountsManager accountsManager, byte[] sharedEntropyInput) {
+    this(accountsManager, sharedEntropyInput, 0);
+  }
+
+  /**
+   * @param cacheSize the maximum number of synthetic accounts to keep, so that repeated lookups of
+   *     the same unknown UUID reuse the fields already generated for it. Zero disables the cache.
+   *     The cache belongs to this manager and its shared entropy input, so it is keyed by UUID
+   *     alone.
+   */
+  public PossiblySyntheticAccountsManager(AccountsManager accountsManager, byte[] sharedEntropyInput, long cacheSize) {
+    this(accountsManager, sharedEntropyInput, cacheSize, Duration.ZERO);
+  }
+
+  /**
+   * @param cacheExpiry how long a synthetic account, including the keys of its devices, is kept
+   *     after it is generated. Zero keeps it until the cache is full.
+   */
+  public PossiblySyntheticAccountsManager(AccountsManager accountsManager, byte[] sharedEntropyInput, long cacheSize, Duration cacheExpiry) {
     this.accountsManager = accountsManager;
     this.sharedEntropyInput = sharedEntropyInput;
+    this.syntheticAccounts = cacheSize > 0 ? newCache(cacheSize, cacheExpiry) : null;
+  }
+
+  static <V> Cache<UUID, V> newCache(long cacheSize, Duration cacheExpiry) {
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumSize(cacheSize);
+    if (!cacheExpiry.isZero()) {
+      builder.expireAfterWrite(cacheExpiry.toMillis(), TimeUnit.MILLISECONDS);
+    }
+    return builder.build();
   }
 
   public void update(PossiblySyntheticAccount account) {
@@ -29,6 +61,9 @@ public class PossiblySyntheticAccountsManager {
     if (account.isPresent()) {
       return account.get();
     }
-    return new SyntheticAccount(sharedEntropyInput, accountUuid);
+    if (syntheticAccounts == null) {
+      return new SyntheticAccount(sharedEntropyInput, accountUuid);
+    }
+    return syntheticAccounts.asMap().computeIfAbsent(accountUuid, uuid -> new SyntheticAccount(sharedEntropyInput, uuid));
   }
 }
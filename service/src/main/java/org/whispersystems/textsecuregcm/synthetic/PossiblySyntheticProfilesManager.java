@@ -1,19 +1,43 @@
 package org.whispersystems.textsecuregcm.synthetic;
 
+import com.google.common.cache.Cache;
 import org.whispersystems.textsecuregcm.storage.ProfilesManager;
 import org.whispersystems.textsecuregcm.storage.VersionedProfile;
 
+import java.time.Duration;
 import java.util.Optional;
 import java.util.UUID;
 
 public class PossiblySyntheticProfilesManager {
   private final ProfilesManager profilesManager;
   private final byte[] sharedEntropyInput;
+  private final Cache<UUID, SyntheticVersionedProfile> syntheticProfiles;
 
   public PossiblySyntheticProfilesManager(
       ProfilesManager profilesManager, byte[] sharedEntropyInput) {
+    this(profilesManager, sharedEntropyInput, 0);
+  }
+
+  /**
+   * @param cacheSize the maximum number of synthetic profiles to keep; see {@link
+   *     PossiblySyntheticAccountsManager#PossiblySyntheticAccountsManager(
+   *     org.whispersystems.textsecuregcm.storage.AccountsManager, byte[], long)}
+   */
+  public PossiblySyntheticProfilesManager(
+      ProfilesManager profilesManager, byte[] sharedEntropyInput, long cacheSize) {
+    this(profilesManager, sharedEntropyInput, cacheSize, Duration.ZERO);
+  }
+
+  /**
+   * @param cacheExpiry how long a synthetic profile is kept after it is generated; see {@link
+   *     PossiblySyntheticAccountsManager#PossiblySyntheticAccountsManager(
+   *     org.whispersystems.textsecuregcm.storage.AccountsManager, byte[], long, Duration)}
+   */
+  public PossiblySyntheticProfilesManager(
+      ProfilesManager profilesManager, byte[] sharedEntropyInput, long cacheSize, Duration cacheExpiry) {
     this.profilesManager = profilesManager;
     this.sharedEntropyInput = sharedEntropyInput;
+    this.syntheticProfiles = cacheSize > 0 ? PossiblySyntheticAccountsManager.newCache(cacheSize, cacheExpiry) : null;
   }
 
   public Optional<PossiblySyntheticVersionedProfile> get(UUID accountUuid, String version) {
@@ -21,7 +45,10 @@ public class PossiblySyntheticProfilesManager {
     if (profile.isPresent()) {
       return Optional.of(profile.get());
     }
-    SyntheticVersionedProfile syntheticProfile = new SyntheticVersionedProfile(sharedEntropyInput, accountUuid);
+    SyntheticVersionedProfile syntheticProfile =
+        syntheticProfiles == null
+            ? new SyntheticVersionedProfile(sharedEntropyInput, accountUuid)
+            : syntheticProfiles.asMap().computeIfAbsent(accountUuid, uuid -> new SyntheticVersionedProfile(sharedEntropyInput, uuid));
     if (syntheticProfile.getKeyVersion().equals(version)) {
       return Optional.of(syntheticProfile);
     }
@@ -1,12 +1,15 @@
 package org.whispersystems.textsecuregcm.synthetic;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.protobuf.ByteString;
 import org.apache.commons.math3.distribution.PoissonDistribution;
 import org.apache.commons.math3.random.RandomGeneratorFactory;
 import org.whispersystems.libsignal.InvalidKeyException;
 import org.whispersystems.libsignal.ecc.Curve;
 import org.whispersystems.libsignal.ecc.ECKeyPair;
+import org.whispersystems.libsignal.ecc.ECPrivateKey;
 import org.whispersystems.libsignal.ecc.ECPublicKey;
 import org.whispersystems.textsecuregcm.controllers.DeviceController;
 import org.whispersystems.textsecuregcm.entities.SignedPreKey;
@@ -62,26 +65,19 @@ public class SyntheticAccount implements PossiblySyntheticAccount {
   private static final String DISCRIMINATOR_SIGNED_PRE_KEY_KEYPAIR = "spk";
 
   private final SyntheticProfileState profileState;
-  private final PoissonDistribution realDevicesPerAccountDistribution;
 
-  private final DeterministicSampling sampling;
-  private final String                        identityKey;
-  private final ECKeyPair                     identityKeyPair;
-  private final List<PossiblySyntheticDevice> devices;
+  // Keys and devices are derived on first use, since most lookups of a synthetic
+  // account only need a few of its fields.
+  private final DeterministicSampling                   sampling;
+  private final Supplier<ECKeyPair>                     identityKeyPair;
+  private final Supplier<String>                        identityKey;
+  private final Supplier<List<PossiblySyntheticDevice>> devices;
 
   public SyntheticAccount(byte[] sharedEntropyInput, UUID accountUuid) {
     this.profileState = new SyntheticProfileState(sharedEntropyInput, accountUuid);
 
     // configure security parameters
     String salt = Base64.getEncoder().withoutPadding().encodeToString(sharedEntropyInput) + accountUuid.toString();
-
-    // make random samplers
-    realDevicesPerAccountDistribution =
-        new PoissonDistribution(
-            RandomGeneratorFactory.createRandomGenerator(profileState.getRandom()),
-            AVERAGE_REAL_DEVICES_PER_ACCOUNT,
-            DEFAULT_EPSILON,
-            DEFAULT_MAX_ITERATIONS);
     sampling = new DeterministicSampling(salt);
 
     // -----------------------
@@ -91,11 +87,12 @@ public class SyntheticAccount implements PossiblySyntheticAccount {
 
     // Make identity key
     // Confer: org.whispersystems.signalservice.internal.util.JsonUtil.IdentityKeySerializer
-    identityKeyPair = makeKeyPair(DISCRIMINATOR_IDENTITY_KEY);
-    this.identityKey = Base64.getEncoder().withoutPadding().encodeToString(identityKeyPair.getPublicKey().serialize());
+    identityKeyPair = Suppliers.memoize(() -> makeKeyPair(DISCRIMINATOR_IDENTITY_KEY));
+    identityKey     = Suppliers.memoize(() -> Base64.getEncoder().withoutPadding().encodeToString(identityKeyPair.get().getPublicKey().serialize()));
 
-    // Make devices
-    this.devices = makeDevices();
+    // Make devices. They are sampled from the random sequence of the profile state after all the
+    // profile fields, so the profile is generated first.
+    devices = Suppliers.memoize(this::makeDevices);
   }
 
   @Override
@@ -125,7 +122,7 @@ public class SyntheticAccount implements PossiblySyntheticAccount {
 
   @Override
   public String getIdentityKey() {
-    return identityKey;
+    return identityKey.get();
   }
 
   @Override
@@ -135,20 +132,20 @@ public class SyntheticAccount implements PossiblySyntheticAccount {
 
   @Override
   public Optional<? extends PossiblySyntheticDevice> getAuthenticatedDevice() {
-    if (devices.isEmpty()) {
+    if (devices.get().isEmpty()) {
       return Optional.empty();
     }
-    return Optional.of(devices.get(0));
+    return Optional.of(devices.get().get(0));
   }
 
   @Override
   public Collection<? extends PossiblySyntheticDevice> getDevices() {
-    return devices;
+    return devices.get();
   }
 
   @Override
   public Optional<? extends PossiblySyntheticDevice> getDevice(long deviceId) {
-    for (PossiblySyntheticDevice device : devices) {
+    for (PossiblySyntheticDevice device : devices.get()) {
       if (device.getId() == deviceId) {
         return Optional.of(device);
       }
@@ -182,8 +179,16 @@ public class SyntheticAccount implements PossiblySyntheticAccount {
   }
 
   private List<PossiblySyntheticDevice> makeDevices() {
+    // make random samplers
+    PoissonDistribution realDevicesPerAccountDistribution =
+        new PoissonDistribution(
+            RandomGeneratorFactory.createRandomGenerator(profileState.getRandom()),
+            AVERAGE_REAL_DEVICES_PER_ACCOUNT,
+            DEFAULT_EPSILON,
+            DEFAULT_MAX_ITERATIONS);
+
     long numDevices = Math.max(1, realDevicesPerAccountDistribution.sample());
-    List<PossiblySyntheticDevice> syntheticDevices = new ArrayList<>();
+    List<Long> deviceIds = new ArrayList<>();
     for (long candidateDeviceId = Device.MASTER_ID;
         candidateDeviceId <= DeviceController.MAX_DEVICES && candidateDeviceId <= numDevices;
         ++candidateDeviceId) {
@@ -195,33 +200,46 @@ public class SyntheticAccount implements PossiblySyntheticAccount {
           continue;
         }
       }
+      deviceIds.add(candidateDeviceId);
+    }
 
-      // Make (Signal install time) registration id
-      final int registrationId = this.makeRegistrationId(candidateDeviceId);
-
-      // Make signed pre key
-      final SignedPreKey signedPreKey = this.makeSignedPreKey(candidateDeviceId);
+    // The keys do not draw from the random sequence, so all of them are derived together once the
+    // device ids are known
+    return makeDevices(deviceIds);
+  }
 
-      // Make the device
-      syntheticDevices.add(new SyntheticDevice(candidateDeviceId, registrationId, signedPreKey));
+  /**
+   * Derives the registration ids and signed pre keys of all the devices in one pass, with one
+   * digest and one lookup of the identity key.
+   */
+  private List<PossiblySyntheticDevice> makeDevices(List<Long> deviceIds) {
+    List<String> registrationIdDiscriminators = new ArrayList<>(deviceIds.size());
+    List<String> signedPreKeyIdDiscriminators = new ArrayList<>(deviceIds.size());
+    List<String> signedPreKeyDiscriminators   = new ArrayList<>(deviceIds.size());
+    for (long deviceId : deviceIds) {
+      registrationIdDiscriminators.add(DISCRIMINATOR_REGISTRATION_ID + deviceId);
+      signedPreKeyIdDiscriminators.add(DISCRIMINATOR_SIGNED_PRE_KEY_ID + deviceId);
+      signedPreKeyDiscriminators.add(DISCRIMINATOR_SIGNED_PRE_KEY_KEYPAIR + deviceId);
     }
-    return syntheticDevices;
-  }
 
-  private int makeRegistrationId(long deviceId) {
     // Confer: com.diskuv.communicator.registration.service.CodeVerificationRequest#verifyAccount
-    return sampling.deterministicSampledIntInRange(DISCRIMINATOR_REGISTRATION_ID + deviceId, 1, 16380 + 1);
+    int[]           registrationIds      = sampling.deterministicSampledIntsInRange(registrationIdDiscriminators, 1, 16380 + 1);
+    int[]           signedPreKeyIds      = sampling.deterministicSampledIntsInRange(signedPreKeyIdDiscriminators, 0, MEDIUM_MAX_VALUE);
+    List<ECKeyPair> signedPreKeyKeyPairs = sampling.deterministicSampledKeyPairs(signedPreKeyDiscriminators);
+    ECPrivateKey    identityPrivateKey   = identityKeyPair.get().getPrivateKey();
+
+    List<PossiblySyntheticDevice> syntheticDevices = new ArrayList<>(deviceIds.size());
+    for (int i = 0; i < deviceIds.size(); i++) {
+      SignedPreKey signedPreKey = makeSignedPreKey(identityPrivateKey, signedPreKeyIds[i], signedPreKeyKeyPairs.get(i));
+      syntheticDevices.add(new SyntheticDevice(deviceIds.get(i), registrationIds[i], signedPreKey));
+    }
+    return syntheticDevices;
   }
 
-  private SignedPreKey makeSignedPreKey(long deviceId) {
+  private static SignedPreKey makeSignedPreKey(ECPrivateKey identityPrivateKey, long signedPreKeyId, ECKeyPair signedPreKeyKeyPair) {
     // confer: com.diskuv.communicator.crypto.PreKeyUtil#generateSignedPreKey
     // confer: org.whispersystems.signalservice.api.push.SignedPreKeyEntity.ByteArraySerializer
 
-    long signedPreKeyId =
-        sampling.deterministicSampledIntInRange(
-            DISCRIMINATOR_SIGNED_PRE_KEY_ID + deviceId, 0, MEDIUM_MAX_VALUE);
-    ECKeyPair signedPreKeyKeyPair =
-        makeKeyPair(DISCRIMINATOR_SIGNED_PRE_KEY_KEYPAIR + deviceId);
     ECPublicKey signedPreKeyPublicKey = signedPreKeyKeyPair.getPublicKey();
     byte[] signedPreKeyPublicKeyBytesWithType = signedPreKeyPublicKey.serialize();
     byte[] signedPreKeyPublicKeyBytes = ByteString.copyFrom(signedPreKeyPublicKeyBytesWithType).substring(1).toByteArray();
@@ -230,8 +248,7 @@ public class SyntheticAccount implements PossiblySyntheticAccount {
 
     byte[] signatureBytes;
     try {
-      signatureBytes = Curve.calculateSignature(
-              identityKeyPair.getPrivateKey(), signedPreKeyPublicKeyBytesWithType);
+      signatureBytes = Curve.calculateSignature(identityPrivateKey, signedPreKeyPublicKeyBytesWithType);
     } catch (InvalidKeyException e) {
       throw new IllegalStateException(e);
     }
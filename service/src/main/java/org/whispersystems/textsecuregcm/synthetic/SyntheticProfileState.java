@@ -71,30 +71,50 @@ public class SyntheticProfileState {
   private static final float PERCENT_OF_PROFILES_HAVING_AVATAR = 0.3f;
 
   private final UUID accountUuid;
-  private final Random random;
-  private final byte[] keyBytes;
-  private final String keyVersion;
-  private final byte[] commitment;
-  private final PoissonDistribution profileNameLengthDistribution;
-  private final PoissonDistribution profileEmailAddressLengthDistribution;
-  private final PoissonDistribution profileAboutLengthDistribution;
-  private final RandomStringGenerator unicodeGenerator;
-  private final String name;
-  private final String emailAddress;
-  private final String avatar;
-  private final String about;
-  private final String aboutEmoji;
+  private final byte[] sharedEntropyInput;
+
+  // Everything below is generated on first use by generate(), which publishes it by
+  // setting the volatile generated flag last. The commitment is derived separately on first use.
+  private volatile boolean generated;
+  private volatile byte[] commitment;
+  private Random random;
+  private ProfileKey profileKey;
+  private byte[] keyBytes;
+  private String keyVersion;
+  private PoissonDistribution profileNameLengthDistribution;
+  private PoissonDistribution profileEmailAddressLengthDistribution;
+  private PoissonDistribution profileAboutLengthDistribution;
+  private RandomStringGenerator unicodeGenerator;
+  private String name;
+  private String emailAddress;
+  private String avatar;
+  private String about;
+  private String aboutEmoji;
 
   public SyntheticProfileState(byte[] sharedEntropyInput, UUID accountUuid) {
+    Preconditions.checkArgument(sharedEntropyInput.length >= HmacDrbg.ENTROPY_INPUT_SIZE_BYTES);
+    this.accountUuid = accountUuid;
+    this.sharedEntropyInput = sharedEntropyInput;
+  }
+
+  private void ensureGenerated() {
+    if (!generated) {
+      synchronized (this) {
+        if (!generated) {
+          generate();
+          generated = true;
+        }
+      }
+    }
+  }
+
+  private void generate() {
     // Random number sequences loosely following NIST SP 800-90A Rev. 1:
     // https://doi.org/10.6028/NIST.SP.800-90Ar1
     // * Personalization string == account UUID + version
     // * Entropy input == salt shared secret
     // * Initial seed  == the same, and knowable from source code (we want repeatable sequences)
 
-    Preconditions.checkArgument(sharedEntropyInput.length >= HmacDrbg.ENTROPY_INPUT_SIZE_BYTES);
-    this.accountUuid = accountUuid;
-
     // configure deterministic random bit generator (drbg)
     byte[] personalizationString = makePersonalizationString(accountUuid);
     HmacDrbg drbg = new HmacDrbg(sharedEntropyInput, personalizationString);
@@ -106,10 +126,9 @@ public class SyntheticProfileState {
     // !!!!!!!!!!!!!!!!!!!!!!
 
     // Make profile key
-    ProfileKey profileKey = makeProfileKey();
+    this.profileKey = makeProfileKey();
     this.keyBytes = profileKey.serialize();
     this.keyVersion = profileKey.getProfileKeyVersion(accountUuid).serialize();
-    this.commitment = profileKey.getCommitment(accountUuid).serialize();
 
     // make random samplers
     profileNameLengthDistribution =
@@ -151,34 +170,53 @@ public class SyntheticProfileState {
   }
 
   public String getKeyVersion() {
+    ensureGenerated();
     return keyVersion;
   }
 
   public byte[] getCommitment() {
+    // The commitment does not draw from the random sequence, so it is only derived
+    // when a profile is actually returned. Racing threads derive the same value.
+    byte[] commitment = this.commitment;
+    if (commitment == null) {
+      ensureGenerated();
+      commitment = profileKey.getCommitment(accountUuid).serialize();
+      this.commitment = commitment;
+    }
     return commitment.clone();
   }
 
   public String getName() {
+    ensureGenerated();
     return name;
   }
 
   public String getEmailAddress() {
+    ensureGenerated();
     return emailAddress;
   }
 
   public String getAbout() {
+    ensureGenerated();
     return about;
   }
 
   public String getAboutEmoji() {
+    ensureGenerated();
     return aboutEmoji;
   }
 
   public String getAvatar() {
+    ensureGenerated();
     return avatar;
   }
 
+  /**
+   * The random sequence, positioned after all the profile fields. Callers must draw from it in a
+   * stable order, and only once per profile state.
+   */
   Random getRandom() {
+    ensureGenerated();
     return random;
   }
 
@@ -41,6 +41,17 @@ public class DiskuvUuidUtil {
    */
   private static final String HMAC_SHA_224 = "HmacSHA224";
 
+  /**
+   * Each thread reuses its own digest rather than looking it up for every UUID.
+   */
+  private static final ThreadLocal<MessageDigest> SHA_224_DIGEST = ThreadLocal.withInitial(() -> {
+    try {
+      return MessageDigest.getInstance(SHA_224);
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  });
+
   /**
    * @param emailAddress The email address of the user
    * @return the UUID that is valid for the user outside of a sanctuary
@@ -92,13 +103,7 @@ public class DiskuvUuidUtil {
     byte[] emailAddressBytes = emailAddress.getBytes(StandardCharsets.UTF_8);
 
     // Fill UUID with SHA2(email address)
-    MessageDigest digest;
-    try {
-      digest = MessageDigest.getInstance(SHA_224);
-    } catch (NoSuchAlgorithmException e) {
-      throw new AssertionError(e);
-    }
-    byte[] shaBytes = digest.digest(emailAddressBytes);
+    byte[] shaBytes = SHA_224_DIGEST.get().digest(emailAddressBytes);
 
     return truncateDigestAndBitTwiddleIntoUUID(shaBytes);
   }
@@ -0,0 +1,57 @@
+package org.whispersystems.textsecuregcm.util;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * [Diskuv Change] A MAC under a fixed key that can be used from any number of threads.
+ *
+ * <p>Looking up a {@link Mac} and initializing its key costs far more than MACing the short inputs
+ * the server signs. Each thread gets its own copy of a keyed template the first time it MACs, and
+ * reuses that copy afterwards. {@link Mac#doFinal(byte[])} resets the copy for the next use. The
+ * key is not checked until the first MAC, so a generator can still hold a key it never uses.
+ */
+public class ThreadLocalMac {
+
+  private final String           algorithm;
+  private final byte[]           key;
+  private final ThreadLocal<Mac> macs;
+
+  private Mac template;
+
+  public ThreadLocalMac(String algorithm, byte[] key) {
+    this.algorithm = algorithm;
+    this.key       = key.clone();
+    this.macs      = ThreadLocal.withInitial(this::copyTemplate);
+  }
+
+  public byte[] doFinal(byte[] input) {
+    return macs.get().doFinal(input);
+  }
+
+  private synchronized Mac copyTemplate() {
+    // The template itself is never used, so copying it never races with a MAC in progress
+    if (template == null) {
+      template = newMac();
+    }
+
+    try {
+      return (Mac) template.clone();
+    } catch (CloneNotSupportedException e) {
+      // Not every provider can copy a keyed MAC
+      return newMac();
+    }
+  }
+
+  private Mac newMac() {
+    try {
+      Mac mac = Mac.getInstance(algorithm);
+      mac.init(new SecretKeySpec(key, algorithm));
+      return mac;
+    } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
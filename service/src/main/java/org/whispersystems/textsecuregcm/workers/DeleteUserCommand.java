@@ -137,7 +137,8 @@ public class DeleteUserCommand extends EnvironmentCommand<WhisperServerConfigura
           .withCredentials(InstanceProfileCredentialsProvider.getInstance());
 
       DynamoDB messageDynamoDb = new DynamoDB(clientBuilder.build());
-      DynamoDB preKeysDynamoDb = new DynamoDB(keysDynamoDbClientBuilder.build());
+      AmazonDynamoDB preKeysDynamoDbClient = keysDynamoDbClientBuilder.build();
+      DynamoDB preKeysDynamoDb = new DynamoDB(preKeysDynamoDbClient);
 
       AmazonDynamoDB accountsDynamoDbClient = accountsDynamoDbClientBuilder.build();
       AmazonDynamoDBAsync accountsDynamoDbAsyncClient = accountsDynamoDbAsyncClientBuilder.build();
@@ -167,7 +168,7 @@ public class DeleteUserCommand extends EnvironmentCommand<WhisperServerConfigura
       Usernames                 usernames            = new Usernames(accountDatabase);
       Profiles                  profiles             = new Profiles(accountDatabase);
       ReservedUsernames         reservedUsernames    = new ReservedUsernames(accountDatabase);
-      KeysDynamoDb              keysDynamoDb         = new KeysDynamoDb(preKeysDynamoDb, configuration.getKeysDynamoDbConfiguration().getTableName());
+      KeysDynamoDb              keysDynamoDb         = new KeysDynamoDb(preKeysDynamoDbClient, preKeysDynamoDb, configuration.getKeysDynamoDbConfiguration().getTableName());
       MessagesDynamoDb          messagesDynamoDb     = new MessagesDynamoDb(messageDynamoDb, configuration.getMessageDynamoDbConfiguration().getTableName(), configuration.getMessageDynamoDbConfiguration().getTimeToLive());
       FaultTolerantRedisCluster messageInsertCacheCluster = new FaultTolerantRedisCluster("message_insert_cluster", configuration.getMessageCacheConfiguration().getRedisClusterConfiguration(), redisClusterClientResources);
       FaultTolerantRedisCluster messageReadDeleteCluster = new FaultTolerantRedisCluster("message_read_delete_cluster", configuration.getMessageCacheConfiguration().getRedisClusterConfiguration(), redisClusterClientResources);
@@ -0,0 +1,153 @@
+// Copyright 2021 Diskuv, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.diskuv.communicatorservice.auth;
+
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JwtAuthenticationTest {
+
+  private static final String KEY_ID    = "test-key";
+  private static final String CLIENT_ID = "test-client";
+
+  private final Clock clock = mock(Clock.class);
+
+  private KeyPair                  keyPair;
+  private VerifiedBearerTokenCache cache;
+  private JwtAuthentication        jwtAuthentication;
+
+  @Before
+  public void setUp() throws Exception {
+    KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+    keyPairGenerator.initialize(2048);
+    keyPair = keyPairGenerator.generateKeyPair();
+
+    cache             = new VerifiedBearerTokenCache(100, clock);
+    jwtAuthentication = new JwtAuthentication(
+        ImmutableMap.of(KEY_ID, JWT.require(Algorithm.RSA256((RSAPublicKey) keyPair.getPublic(), null))
+                                   .acceptLeeway(TimeUnit.MINUTES.toSeconds(5))
+                                   .withAnyOfAudience(CLIENT_ID)
+                                   .build()),
+        Optional.of(cache));
+
+    when(clock.millis()).thenReturn(System.currentTimeMillis());
+  }
+
+  @Test
+  public void testVerifiedTokenIsCached() {
+    String token = token("trees@yahoo.com", keyPair, TimeUnit.HOURS.toMillis(1));
+    long   hits  = cache.getHitCount();
+
+    assertThat(jwtAuthentication.verifyBearerTokenAndGetEmailAddress(token)).isEqualTo("trees@yahoo.com");
+    assertThat(cache.getHitCount()).isEqualTo(hits);
+
+    assertThat(jwtAuthentication.verifyBearerTokenAndGetEmailAddress(token)).isEqualTo("trees@yahoo.com");
+    assertThat(cache.getHitCount()).isEqualTo(hits + 1);
+  }
+
+  @Test
+  public void testCachedTokenExpiresAtExp() {
+    long   expiresIn = TimeUnit.HOURS.toMillis(1);
+    String token     = token("trees@yahoo.com", keyPair, expiresIn);
+
+    jwtAuthentication.verifyBearerTokenAndGetEmailAddress(token);
+    long hits = cache.getHitCount();
+
+    when(clock.millis()).thenReturn(System.currentTimeMillis() + expiresIn);
+
+    // The verifier itself still accepts the token, so it is verified again rather than taken from the cache
+    assertThat(jwtAuthentication.verifyBearerTokenAndGetEmailAddress(token)).isEqualTo("trees@yahoo.com");
+    assertThat(cache.getHitCount()).isEqualTo(hits);
+  }
+
+  @Test
+  public void testInvalidTokenIsNotCached() throws Exception {
+    KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+    keyPairGenerator.initialize(2048);
+    String token = token("trees@yahoo.com", keyPairGenerator.generateKeyPair(), TimeUnit.HOURS.toMillis(1));
+
+    assertThatThrownBy(() -> jwtAuthentication.verifyBearerTokenAndGetEmailAddress(token)).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> jwtAuthentication.verifyBearerTokenAndGetEmailAddress(token)).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testParallelVerification() throws Exception {
+    List<String> emails = new ArrayList<>();
+    List<String> tokens = new ArrayList<>();
+
+    for (int i = 0; i < 4; i++) {
+      emails.add("user" + i + "@yahoo.com");
+      tokens.add(token(emails.get(i), keyPair, TimeUnit.HOURS.toMillis(1)));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    try {
+      List<Callable<Boolean>> tasks = new ArrayList<>();
+
+      for (int thread = 0; thread < 16; thread++) {
+        tasks.add(() -> {
+          for (int i = 0; i < 100; i++) {
+            int index = i % tokens.size();
+
+            if (!emails.get(index).equals(jwtAuthentication.verifyBearerTokenAndGetEmailAddress(tokens.get(index)))) {
+              return false;
+            }
+          }
+
+          return true;
+        });
+      }
+
+      for (Future<Boolean> result : executor.invokeAll(tasks)) {
+        assertThat(result.get()).isTrue();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static String token(String email, KeyPair keyPair, long expiresIn) {
+    return JWT.create()
+              .withKeyId(KEY_ID)
+              .withAudience(CLIENT_ID)
+              .withExpiresAt(new Date(System.currentTimeMillis() + expiresIn))
+              .withClaim("email", email)
+              .withClaim("email_verified", true)
+              .sign(Algorithm.RSA256(null, (RSAPrivateKey) keyPair.getPrivate()));
+  }
+}
@@ -0,0 +1,58 @@
+// Copyright 2021 Diskuv, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+package com.diskuv.communicatorservice.auth;
+
+import org.junit.Test;
+import org.whispersystems.textsecuregcm.util.DiskuvUuidUtil;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class OutdoorUuidCacheTest {
+
+  private final OutdoorUuidCache cache = new OutdoorUuidCache(100);
+
+  @Test
+  public void testUuidIsCached() {
+    long hits = cache.getHitCount();
+
+    UUID first = cache.uuidForOutdoorEmailAddress("trees@yahoo.com");
+    assertThat(cache.getHitCount()).isEqualTo(hits);
+
+    UUID second = cache.uuidForOutdoorEmailAddress("trees@yahoo.com");
+    assertThat(cache.getHitCount()).isEqualTo(hits + 1);
+
+    assertThat(second).isEqualTo(first);
+    assertThat(second.toString()).isEqualTo("3c5437da-d904-497b-a61c-9227dbbad7e5");
+  }
+
+  @Test
+  public void testInvalidEmailAddressIsNotCached() {
+    long hits = cache.getHitCount();
+
+    assertThatThrownBy(() -> cache.uuidForOutdoorEmailAddress("trees")).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> cache.uuidForOutdoorEmailAddress("trees")).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> cache.uuidForOutdoorEmailAddress(null)).isInstanceOf(IllegalArgumentException.class);
+    assertThat(cache.getHitCount()).isEqualTo(hits);
+  }
+
+  @Test
+  public void testWithoutCache() {
+    assertThat(OutdoorUuidCache.uuidForOutdoorEmailAddress(Optional.empty(), "trees@yahoo.com"))
+        .isEqualTo(DiskuvUuidUtil.uuidForOutdoorEmailAddress("trees@yahoo.com"));
+  }
+}
@@ -23,17 +23,21 @@ import org.mockito.InOrder;
 import org.signal.storageservice.storage.protos.groups.Group;
 import org.signal.storageservice.storage.protos.groups.GroupChange;
 import org.signal.storageservice.storage.protos.groups.GroupChanges;
+import org.signal.storageservice.storage.protos.groups.Member;
 import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
 import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static com.diskuv.communicatorservice.storage.CacheEvent.*;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -284,4 +288,326 @@ public class GroupLogDaoTest {
     // ... and no more uses of the cache
     inOrder.verifyNoMoreInteractions();
   }
+
+  @Test
+  public void
+      given_batchingCacheAndThreeGroupChangesAreCreated_when_getRecordsFromVersion_twice_then_eachFetchIsOneCacheLookup() {
+    // given: cache that only supports batched lookups
+    Cache<ByteString, ByteString> testCache = CacheBuilder.newBuilder().build();
+    List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+    GroupChangeCache realCache =
+        new GroupChangeCache() {
+          @Override
+          public int getSuggestedNumberOfCacheCheckingThreads() {
+            return 1;
+          }
+
+          @Nullable
+          @Override
+          public byte[] getValueIfPresent(@Nonnull byte[] keyBytes) {
+            throw new AssertionError("single key lookups should not be used");
+          }
+
+          @Override
+          public List<byte[]> getValuesIfPresent(@Nonnull List<byte[]> keysBytes) {
+            batchSizes.add(keysBytes.size());
+            List<byte[]> values = new ArrayList<>();
+            for (byte[] keyBytes : keysBytes) {
+              ByteString bytes = testCache.getIfPresent(ByteString.copyFrom(keyBytes));
+              values.add(bytes == null ? null : bytes.toByteArray());
+            }
+            return values;
+          }
+
+          @Override
+          public void putValue(@Nonnull byte[] keyBytes, @Nonnull byte[] valueBytes) {
+            testCache.put(ByteString.copyFrom(keyBytes), ByteString.copyFrom(valueBytes));
+          }
+        };
+    dao = new GroupLogDao(asyncClientWrapper.get(), "GroupLog", Optional.of(realCache));
+
+    // given / when
+    List<GroupChanges.GroupChangeState> fromDatabase =
+        dao.append(
+                GroupsTestObjects.GROUP_ID_ONE,
+                VERSION_1,
+                GroupsTestObjects.GROUP_CHANGE_ONE,
+                GroupsTestObjects.GROUP_ONE)
+            .thenCompose(
+                success ->
+                    dao.append(
+                        GroupsTestObjects.GROUP_ID_ONE,
+                        VERSION_2,
+                        GroupsTestObjects.GROUP_CHANGE_TWO,
+                        GroupsTestObjects.GROUP_ONE))
+            .thenCompose(
+                success ->
+                    dao.append(
+                        GroupsTestObjects.GROUP_ID_ONE,
+                        VERSION_3,
+                        GroupsTestObjects.GROUP_CHANGE_THREE,
+                        GroupsTestObjects.GROUP_ONE))
+            .thenCompose(
+                success ->
+                    dao.getRecordsFromVersion(GroupsTestObjects.GROUP_ID_ONE, VERSION_1, VERSION_4))
+            .join();
+    List<GroupChanges.GroupChangeState> fromCache =
+        dao.getRecordsFromVersion(GroupsTestObjects.GROUP_ID_ONE, VERSION_1, VERSION_4).join();
+
+    // then
+    assertThat(batchSizes).containsExactly(3, 3);
+    assertThat(testCache.size()).isEqualTo(3);
+    assertThat(fromCache).hasSize(3);
+    assertThat(fromCache).isEqualTo(fromDatabase);
+  }
+
+  @Test
+  public void given_snapshotInterval_when_appendWithPreviousGroup_then_deltasStoredAndStatesReconstructed() {
+    // given
+    dao = new GroupLogDao(asyncClientWrapper.get(), "GroupLog", Optional.empty(), 4);
+    List<Group> groups = groupsWithChurn(10);
+    for (int version = 0; version < groups.size(); ++version) {
+      Group previousGroup = version == 0 ? null : groups.get(version - 1);
+      assertThat(
+              dao.append(
+                      GroupsTestObjects.GROUP_ID_ONE,
+                      version,
+                      groupChange(version),
+                      groups.get(version),
+                      previousGroup)
+                  .join())
+          .isTrue();
+    }
+
+    // then: full states only every fourth version
+    for (int version = 0; version < groups.size(); ++version) {
+      GroupChangeItem item = getItem(version);
+      if (version % 4 == 0) {
+        assertThat(item.getGroupBytes()).isEqualTo(groups.get(version).toByteArray());
+        assertThat(item.getGroupDeltaBytes()).isNull();
+      } else {
+        assertThat(item.getGroupBytes()).isNull();
+        assertThat(item.getGroupDeltaBytes().length)
+            .isLessThan(groups.get(version).getSerializedSize());
+        assertThat(item.getSnapshotVersion()).isEqualTo(version - version % 4);
+      }
+    }
+
+    // when / then: reading from a snapshot and from the middle of a run of deltas
+    assertThat(dao.getRecordsFromVersion(GroupsTestObjects.GROUP_ID_ONE, 0, 10).join())
+        .isEqualTo(expectedChangeStates(groups, 0, 10));
+    assertThat(dao.getRecordsFromVersion(GroupsTestObjects.GROUP_ID_ONE, 6, 10).join())
+        .isEqualTo(expectedChangeStates(groups, 6, 10));
+    assertThat(dao.getRecordsFromVersion(GroupsTestObjects.GROUP_ID_ONE, 7, 8).join())
+        .isEqualTo(expectedChangeStates(groups, 7, 8));
+  }
+
+  @Test
+  public void given_existingFullStateItems_when_snapshotIntervalIsRaised_then_allStatesReadable() {
+    // given: items written before deltas existed, then items written with a larger interval
+    List<Group> groups = groupsWithChurn(8);
+    GroupLogDao legacyDao = dao;
+    for (int version = 0; version < 4; ++version) {
+      legacyDao
+          .append(GroupsTestObjects.GROUP_ID_ONE, version, groupChange(version), groups.get(version))
+          .join();
+    }
+    dao = new GroupLogDao(asyncClientWrapper.get(), "GroupLog", Optional.empty(), 3);
+    for (int version = 4; version < groups.size(); ++version) {
+      dao.append(
+              GroupsTestObjects.GROUP_ID_ONE,
+              version,
+              groupChange(version),
+              groups.get(version),
+              groups.get(version - 1))
+          .join();
+    }
+    assertThat(getItem(4).getGroupBytes()).isNull();
+    assertThat(getItem(6).getGroupBytes()).isNotNull();
+
+    // when / then
+    assertThat(dao.getRecordsFromVersion(GroupsTestObjects.GROUP_ID_ONE, 0, 8).join())
+        .isEqualTo(expectedChangeStates(groups, 0, 8));
+    assertThat(dao.getRecordsFromVersion(GroupsTestObjects.GROUP_ID_ONE, 5, 6).join())
+        .isEqualTo(expectedChangeStates(groups, 5, 6));
+    assertThat(legacyDao.getRecordsFromVersion(GroupsTestObjects.GROUP_ID_ONE, 7, 8).join())
+        .isEqualTo(expectedChangeStates(groups, 7, 8));
+  }
+
+  @Test
+  public void given_snapshotInterval_when_deltaCannotReproduceState_then_fullStateStored() {
+    // given
+    dao = new GroupLogDao(asyncClientWrapper.get(), "GroupLog", Optional.empty(), 4);
+    List<Group> groups = groupsWithChurn(2);
+    Group reordered =
+        groups.get(1).toBuilder()
+            .setVersion(2)
+            .clearMembers()
+            .addAllMembers(reverse(groups.get(1).getMembersList()))
+            .build();
+
+    // when
+    dao.append(GroupsTestObjects.GROUP_ID_ONE, 0, groupChange(0), groups.get(0), null).join();
+    dao.append(GroupsTestObjects.GROUP_ID_ONE, 1, groupChange(1), groups.get(1), groups.get(0))
+        .join();
+    dao.append(GroupsTestObjects.GROUP_ID_ONE, 2, groupChange(2), reordered, groups.get(1)).join();
+
+    // then
+    assertThat(getItem(1).getGroupBytes()).isNull();
+    assertThat(getItem(2).getGroupBytes()).isEqualTo(reordered.toByteArray());
+    assertThat(
+            dao.getRecordsFromVersion(GroupsTestObjects.GROUP_ID_ONE, 2, 3)
+                .join()
+                .get(0)
+                .getGroupState())
+        .isEqualTo(reordered);
+  }
+
+  @Test
+  public void given_byteBudget_when_getRecordsFromVersion_then_stopsAtRecordReachingBudget() {
+    // given
+    dao = new GroupLogDao(asyncClientWrapper.get(), "GroupLog", Optional.empty(), 4);
+    List<Group> groups = groupsWithChurn(10);
+    for (int version = 0; version < groups.size(); ++version) {
+      dao.append(
+              GroupsTestObjects.GROUP_ID_ONE,
+              version,
+              groupChange(version),
+              groups.get(version),
+              version == 0 ? null : groups.get(version - 1))
+          .join();
+    }
+    List<GroupChanges.GroupChangeState> expected = expectedChangeStates(groups, 2, 10);
+    long firstTwoBytes = expected.get(0).getSerializedSize() + expected.get(1).getSerializedSize();
+
+    // when / then: the budget is reached by the second record, which is still returned
+    assertThat(dao.getRecordsFromVersion(GroupsTestObjects.GROUP_ID_ONE, 2, 10, firstTwoBytes).join())
+        .isEqualTo(expected.subList(0, 2));
+    assertThat(
+            dao.getRecordsFromVersion(GroupsTestObjects.GROUP_ID_ONE, 2, 10, firstTwoBytes - 1)
+                .join())
+        .isEqualTo(expected.subList(0, 2));
+    // the first record is returned however large it is
+    assertThat(dao.getRecordsFromVersion(GroupsTestObjects.GROUP_ID_ONE, 2, 10, 1).join())
+        .isEqualTo(expected.subList(0, 1));
+  }
+
+  @Test
+  public void given_previousChangeRecordNotAppended_when_appendWithPreviousGroup_then_fullStateStored() {
+    // given: the change record of version 1 was lost, as when a non-atomic append fails
+    dao = new GroupLogDao(asyncClientWrapper.get(), "GroupLog", Optional.empty(), 4);
+    List<Group> groups = groupsWithChurn(4);
+    dao.append(GroupsTestObjects.GROUP_ID_ONE, 0, groupChange(0), groups.get(0), null).join();
+
+    // when
+    dao.append(GroupsTestObjects.GROUP_ID_ONE, 2, groupChange(2), groups.get(2), groups.get(1))
+        .join();
+    dao.append(GroupsTestObjects.GROUP_ID_ONE, 3, groupChange(3), groups.get(3), groups.get(2))
+        .join();
+
+    // then: the version after the gap is a snapshot, and the deltas after it are readable
+    assertThat(getItem(2).getGroupBytes()).isEqualTo(groups.get(2).toByteArray());
+    assertThat(getItem(3).getGroupBytes()).isNull();
+    assertThat(dao.getRecordsFromVersion(GroupsTestObjects.GROUP_ID_ONE, 3, 4).join())
+        .isEqualTo(expectedChangeStates(groups, 3, 4));
+  }
+
+  @Test
+  public void given_snapshotMissing_when_getRecordsFromVersion_then_throwsException() {
+    // given
+    dao = new GroupLogDao(asyncClientWrapper.get(), "GroupLog", Optional.empty(), 4);
+    List<Group> groups = groupsWithChurn(4);
+    for (int version = 0; version < groups.size(); ++version) {
+      dao.append(
+              GroupsTestObjects.GROUP_ID_ONE,
+              version,
+              groupChange(version),
+              groups.get(version),
+              version == 0 ? null : groups.get(version - 1))
+          .join();
+    }
+    dao.getTable().deleteItem(getItem(0)).join();
+
+    // when / then
+    CompletionException completionException =
+        assertThrows(
+            CompletionException.class,
+            () -> dao.getRecordsFromVersion(GroupsTestObjects.GROUP_ID_ONE, 2, 4).join());
+    assertThat(completionException).hasCauseInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void given_snapshotCorrupt_when_getRecordsFromVersion_then_throwsException() {
+    // given
+    dao = new GroupLogDao(asyncClientWrapper.get(), "GroupLog", Optional.empty(), 4);
+    List<Group> groups = groupsWithChurn(2);
+    dao.append(GroupsTestObjects.GROUP_ID_ONE, 0, groupChange(0), groups.get(0), null).join();
+    dao.append(GroupsTestObjects.GROUP_ID_ONE, 1, groupChange(1), groups.get(1), groups.get(0))
+        .join();
+    GroupChangeItem snapshot = getItem(0);
+    snapshot.setGroupBytes(new byte[] {(byte) 0xFF, (byte) 0xFF});
+    dao.getTable().putItem(snapshot).join();
+
+    // when / then
+    CompletionException completionException =
+        assertThrows(
+            CompletionException.class,
+            () -> dao.getRecordsFromVersion(GroupsTestObjects.GROUP_ID_ONE, 1, 2).join());
+    assertThat(completionException).hasCauseInstanceOf(IllegalStateException.class);
+  }
+
+  private GroupChangeItem getItem(int version) {
+    GroupChangeItem key = new GroupChangeItem();
+    key.setGroupId(GroupsTestObjects.GROUP_ID_ONE.toByteArray());
+    key.setGroupVersion(version);
+    return dao.getTable().getItem(key).join();
+  }
+
+  /** Versions of a group that keeps gaining members and occasionally loses one or is renamed. */
+  private static List<Group> groupsWithChurn(int count) {
+    List<Group> groups = new ArrayList<>();
+    Group.Builder group = GroupsTestObjects.GROUP_ONE.toBuilder();
+    for (int version = 0; version < count; ++version) {
+      group.setVersion(version);
+      group.addMembers(
+          Member.newBuilder()
+              .setUserId(ByteString.copyFromUtf8("user id " + version))
+              .setProfileKey(ByteString.copyFromUtf8("profile key " + version))
+              .setPresentation(ByteString.copyFromUtf8("presentation " + version))
+              .setRole(Member.Role.DEFAULT)
+              .setJoinedAtVersion(version)
+              .build());
+      if (version % 3 == 2) {
+        group.removeMembers(1);
+      }
+      if (version % 5 == 4) {
+        group.setTitle(ByteString.copyFromUtf8("title " + version));
+      }
+      groups.add(group.build());
+    }
+    return groups;
+  }
+
+  private static GroupChange groupChange(int version) {
+    return GroupChange.newBuilder().setActions(ByteString.copyFromUtf8("actions" + version)).build();
+  }
+
+  private static List<GroupChanges.GroupChangeState> expectedChangeStates(
+      List<Group> groups, int fromVersionInclusive, int toVersionExclusive) {
+    List<GroupChanges.GroupChangeState> changeStates = new ArrayList<>();
+    for (int version = fromVersionInclusive; version < toVersionExclusive; ++version) {
+      changeStates.add(
+          GroupChanges.GroupChangeState.newBuilder()
+              .setGroupChange(groupChange(version))
+              .setGroupState(groups.get(version))
+              .build());
+    }
+    return changeStates;
+  }
+
+  private static <T> List<T> reverse(List<T> list) {
+    List<T> reversed = new ArrayList<>(list);
+    Collections.reverse(reversed);
+    return reversed;
+  }
 }
@@ -18,6 +18,7 @@ import software.amazon.awssdk.services.dynamodb.model.CreateTableRequest;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.PutItemRequest;
 import software.amazon.awssdk.services.dynamodb.model.QueryRequest;
+import software.amazon.awssdk.services.dynamodb.model.TransactWriteItemsRequest;
 import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 import software.amazon.awssdk.services.dynamodb.paginators.QueryPublisher;
 
@@ -68,6 +69,14 @@ public class TestableDynamoDbAsyncClientWrapper {
           .when(asyncClient)
           .updateItem(any(UpdateItemRequest.class));
     }
+    if (!excludeOperations.contains(DynamoDBOperation.TRANSACT_WRITE_ITEMS)) {
+      doAnswer(
+              o ->
+                  realAsyncClient.transactWriteItems(
+                      o.getArgument(0, TransactWriteItemsRequest.class)))
+          .when(asyncClient)
+          .transactWriteItems(any(TransactWriteItemsRequest.class));
+    }
     if (!excludeOperations.contains(DynamoDBOperation.QUERY)) {
       doAnswer(o -> realAsyncClient.query(o.getArgument(0, QueryRequest.class)))
           .when(asyncClient)
@@ -94,6 +103,7 @@ public class TestableDynamoDbAsyncClientWrapper {
     GET_ITEM,
     PUT_ITEM,
     UPDATE_ITEM,
+    TRANSACT_WRITE_ITEMS,
     QUERY,
     QUERY_PAGINATOR
   }
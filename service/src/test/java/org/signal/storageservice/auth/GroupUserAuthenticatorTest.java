@@ -0,0 +1,108 @@
+package org.signal.storageservice.auth;
+
+import io.dropwizard.auth.basic.BasicCredentials;
+import org.apache.commons.codec.binary.Hex;
+import org.junit.Before;
+import org.junit.Test;
+import org.signal.storageservice.util.AuthHelper;
+import org.signal.zkgroup.InvalidInputException;
+import org.signal.zkgroup.auth.AuthCredentialPresentation;
+import org.signal.zkgroup.auth.ClientZkAuthOperations;
+import org.signal.zkgroup.auth.ServerZkAuthOperations;
+import org.signal.zkgroup.groups.GroupSecretParams;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class GroupUserAuthenticatorTest {
+
+  private static final Duration TIME_TO_LIVE = Duration.ofHours(1);
+
+  private final GroupSecretParams groupSecretParams = GroupSecretParams.generate();
+  private final Clock             clock             = mock(Clock.class);
+
+  private GroupUserAuthenticator authenticator;
+  private long                   startOfRedemptionDay;
+
+  @Before
+  public void setUp() throws InvalidInputException {
+    startOfRedemptionDay = TimeUnit.DAYS.toMillis(new AuthCredentialPresentation(presentationFor(groupSecretParams)).getRedemptionTime());
+    when(clock.millis()).thenReturn(startOfRedemptionDay);
+
+    authenticator = new GroupUserAuthenticator(new ServerZkAuthOperations(AuthHelper.GROUPS_SERVER_KEY),
+                                               Optional.of(new VerifiedPresentationCache(100, TIME_TO_LIVE, clock)));
+  }
+
+  @Test
+  public void testRepeatedPresentationIsServedFromCache() {
+    BasicCredentials credentials = credentialsFor(groupSecretParams, presentationFor(groupSecretParams));
+
+    Optional<GroupUser> first  = authenticator.authenticate(credentials);
+    Optional<GroupUser> second = authenticator.authenticate(credentials);
+
+    assertThat(first).isPresent();
+    assertThat(second).isPresent();
+    assertThat(second.get()).isSameAs(first.get());
+  }
+
+  @Test
+  public void testCachedPresentationIsNotAcceptedForAnotherGroup() {
+    GroupSecretParams otherGroupSecretParams = GroupSecretParams.generate();
+    byte[]            presentation           = presentationFor(groupSecretParams);
+
+    assertThat(authenticator.authenticate(credentialsFor(groupSecretParams, presentation))).isPresent();
+    assertThat(authenticator.authenticate(credentialsFor(otherGroupSecretParams, presentation))).isEmpty();
+  }
+
+  @Test
+  public void testInvalidPresentationIsNotCached() {
+    byte[] presentation = presentationFor(GroupSecretParams.generate());
+
+    assertThat(authenticator.authenticate(credentialsFor(groupSecretParams, presentation))).isEmpty();
+    assertThat(authenticator.authenticate(credentialsFor(groupSecretParams, presentation))).isEmpty();
+  }
+
+  @Test
+  public void testCachedPresentationExpiresAfterTimeToLive() {
+    BasicCredentials credentials = credentialsFor(groupSecretParams, presentationFor(groupSecretParams));
+
+    GroupUser first = authenticator.authenticate(credentials).orElseThrow();
+
+    when(clock.millis()).thenReturn(startOfRedemptionDay + TIME_TO_LIVE.toMillis());
+
+    GroupUser second = authenticator.authenticate(credentials).orElseThrow();
+
+    assertThat(second).isNotSameAs(first);
+    assertThat(second.getUserCiphertext()).isEqualTo(first.getUserCiphertext());
+  }
+
+  @Test
+  public void testCachedPresentationExpiresAtEndOfRedemptionDay() {
+    BasicCredentials credentials = credentialsFor(groupSecretParams, presentationFor(groupSecretParams));
+
+    // late in the redemption day, so the end of the day comes before the time to live
+    when(clock.millis()).thenReturn(startOfRedemptionDay + TimeUnit.DAYS.toMillis(1) - TimeUnit.MINUTES.toMillis(1));
+
+    GroupUser first = authenticator.authenticate(credentials).orElseThrow();
+    assertThat(authenticator.authenticate(credentials).orElseThrow()).isSameAs(first);
+
+    when(clock.millis()).thenReturn(startOfRedemptionDay + TimeUnit.DAYS.toMillis(1));
+
+    assertThat(authenticator.authenticate(credentials).orElseThrow()).isNotSameAs(first);
+  }
+
+  private static byte[] presentationFor(GroupSecretParams groupSecretParams) {
+    AuthCredentialPresentation presentation = new ClientZkAuthOperations(AuthHelper.GROUPS_SERVER_KEY.getPublicParams()).createAuthCredentialPresentation(groupSecretParams, AuthHelper.VALID_USER_AUTH_CREDENTIAL);
+    return presentation.serialize();
+  }
+
+  private static BasicCredentials credentialsFor(GroupSecretParams groupSecretParams, byte[] presentation) {
+    return new BasicCredentials(Hex.encodeHexString(groupSecretParams.getPublicParams().serialize()), Hex.encodeHexString(presentation));
+  }
+}
@@ -20,6 +20,7 @@ import org.signal.storageservice.providers.ProtocolBufferMessageBodyProvider;
 import org.signal.storageservice.providers.ProtocolBufferValidationErrorMessageBodyWriter;
 import org.signal.storageservice.s3.PolicySigner;
 import org.signal.storageservice.s3.PostPolicyGenerator;
+import org.signal.storageservice.sanctuaries.PrunedChangeRecordCache;
 import org.signal.storageservice.storage.GroupsManager;
 import org.signal.storageservice.storage.protos.groups.AccessControl;
 import org.signal.storageservice.storage.protos.groups.Group;
@@ -33,6 +34,8 @@ import org.signal.zkgroup.profiles.ClientZkProfileOperations;
 import org.signal.zkgroup.profiles.ProfileKeyCredentialPresentation;
 
 import java.security.SecureRandom;
+import java.util.Optional;
+import java.util.concurrent.Executor;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.reset;
@@ -72,6 +75,8 @@ public abstract class BaseGroupsControllerTest {
                                                                                                        .build())
                                                                                      .build();
 
+  protected final Optional<PrunedChangeRecordCache> prunedChangeRecordCache = getPrunedChangeRecordCache();
+
   @Rule
   public final ResourceTestRule resources = ResourceTestRule.builder()
                                                             .addProvider(AuthHelper.getAuthFilter())
@@ -80,7 +85,7 @@ public abstract class BaseGroupsControllerTest {
                                                             .addProvider(new ProtocolBufferValidationErrorMessageBodyWriter())
                                                             .addProvider(new InvalidProtocolBufferExceptionMapper())
                                                             .setMapper(SystemMapper.getMapper())
-                                                            .addResource(new GroupsController(groupsManager, AuthHelper.GROUPS_SERVER_KEY, policySigner, postPolicyGenerator, getGroupConfiguration(), sanctuariesDao, groupCredentialGenerator))
+                                                            .addResource(new GroupsController(groupsManager, AuthHelper.GROUPS_SERVER_KEY, policySigner, postPolicyGenerator, getGroupConfiguration(), sanctuariesDao, groupCredentialGenerator, getPresentationVerificationExecutor(), prunedChangeRecordCache))
                                                             .build();
 
   protected GroupConfiguration getGroupConfiguration() {
@@ -90,6 +95,14 @@ public abstract class BaseGroupsControllerTest {
     return groupConfiguration;
   }
 
+  protected Optional<Executor> getPresentationVerificationExecutor() {
+    return Optional.empty();
+  }
+
+  protected Optional<PrunedChangeRecordCache> getPrunedChangeRecordCache() {
+    return Optional.empty();
+  }
+
   protected static String avatarFor(byte[] groupId) {
     byte[] object = new byte[16];
     new SecureRandom().nextBytes(object);
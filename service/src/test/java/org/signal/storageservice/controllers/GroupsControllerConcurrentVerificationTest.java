@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.storageservice.controllers;
+
+import com.google.protobuf.ByteString;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.signal.storageservice.providers.ProtocolBufferMediaType;
+import org.signal.storageservice.storage.protos.groups.AccessControl;
+import org.signal.storageservice.storage.protos.groups.Group;
+import org.signal.storageservice.storage.protos.groups.GroupChange;
+import org.signal.storageservice.storage.protos.groups.Member;
+import org.signal.storageservice.util.AuthHelper;
+import org.signal.zkgroup.groups.GroupSecretParams;
+import org.signal.zkgroup.profiles.ClientZkProfileOperations;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Response;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Runs every {@link GroupsControllerTest} case with profile key credential presentations verified
+ * on a thread pool, plus cases for requests carrying several presentations.
+ */
+public class GroupsControllerConcurrentVerificationTest extends GroupsControllerTest {
+
+  private static final ExecutorService VERIFICATION_EXECUTOR = Executors.newFixedThreadPool(4);
+
+  @Override
+  protected Optional<Executor> getPresentationVerificationExecutor() {
+    return Optional.of(VERIFICATION_EXECUTOR);
+  }
+
+  @Test
+  public void testCreateGroupKeepsMemberOrder() {
+    when(groupsManager.createGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
+        .thenReturn(CompletableFuture.completedFuture(true));
+
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(0), any(GroupChange.class), any(Group.class)))
+        .thenReturn(CompletableFuture.completedFuture(true));
+
+    Group group = Group.newBuilder()
+                       .setPublicKey(ByteString.copyFrom(groupPublicParams.serialize()))
+                       .setAccessControl(AccessControl.newBuilder()
+                                                      .setMembers(AccessControl.AccessRequired.MEMBER)
+                                                      .setAttributes(AccessControl.AccessRequired.MEMBER))
+                       .setTitle(ByteString.copyFromUtf8("Some title"))
+                       .setAvatar(avatarFor(groupPublicParams.getGroupIdentifier().serialize()))
+                       .setVersion(0)
+                       .addMembers(Member.newBuilder()
+                                         .setPresentation(ByteString.copyFrom(validUserTwoPresentation.serialize()))
+                                         .setRole(Member.Role.DEFAULT))
+                       .addMembers(Member.newBuilder()
+                                         .setPresentation(ByteString.copyFrom(validUserPresentation.serialize()))
+                                         .setRole(Member.Role.ADMINISTRATOR))
+                       .addMembers(Member.newBuilder()
+                                         .setPresentation(ByteString.copyFrom(validUserThreePresentation.serialize()))
+                                         .setRole(Member.Role.DEFAULT))
+                       .build();
+
+    Response response = resources.getJerseyTest()
+                                 .target("/v1/groups/")
+                                 .request(ProtocolBufferMediaType.APPLICATION_PROTOBUF)
+                                 .header("Authorization", AuthHelper.getAuthHeader(groupSecretParams, AuthHelper.VALID_USER_AUTH_CREDENTIAL))
+                                 .put(Entity.entity(group.toByteArray(), ProtocolBufferMediaType.APPLICATION_PROTOBUF));
+
+    assertThat(response.getStatus()).isEqualTo(200);
+
+    ArgumentCaptor<Group> captor = ArgumentCaptor.forClass(Group.class);
+
+    verify(groupsManager).createGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
+
+    assertThat(captor.getValue().getMembersList()).extracting(Member::getUserId)
+                                                  .containsExactly(ByteString.copyFrom(validUserTwoPresentation.getUuidCiphertext().serialize()),
+                                                                   ByteString.copyFrom(validUserPresentation.getUuidCiphertext().serialize()),
+                                                                   ByteString.copyFrom(validUserThreePresentation.getUuidCiphertext().serialize()));
+    assertThat(captor.getValue().getMembersList()).allMatch(member -> member.getPresentation().isEmpty());
+  }
+
+  @Test
+  public void testAddMembersWithOneInvalidPresentation() {
+    when(groupsManager.getGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize()))))
+        .thenReturn(CompletableFuture.completedFuture(Optional.of(group)));
+
+    // a well-formed presentation, but for a different group, so only its verification fails
+    GroupSecretParams otherGroupSecretParams = GroupSecretParams.generate();
+    byte[]            otherGroupPresentation = new ClientZkProfileOperations(AuthHelper.GROUPS_SERVER_KEY.getPublicParams()).createProfileKeyCredentialPresentation(otherGroupSecretParams, AuthHelper.VALID_USER_THREE_PROFILE_CREDENTIAL).serialize();
+
+    for (int invalidIndex = 0; invalidIndex < 2; invalidIndex++) {
+      GroupChange.Actions.Builder groupChange = GroupChange.Actions.newBuilder().setVersion(1);
+
+      for (int i = 0; i < 2; i++) {
+        byte[] presentation = i == invalidIndex ? otherGroupPresentation : validUserThreePresentation.serialize();
+
+        groupChange.addAddMembers(GroupChange.Actions.AddMemberAction.newBuilder()
+                                                                     .setAdded(Member.newBuilder()
+                                                                                     .setPresentation(ByteString.copyFrom(presentation))
+                                                                                     .setRole(Member.Role.DEFAULT)));
+      }
+
+      Response response = resources.getJerseyTest()
+                                   .target("/v1/groups/")
+                                   .request(ProtocolBufferMediaType.APPLICATION_PROTOBUF)
+                                   .header("Authorization", AuthHelper.getAuthHeader(groupSecretParams, AuthHelper.VALID_USER_AUTH_CREDENTIAL))
+                                   .method("PATCH", Entity.entity(groupChange.build().toByteArray(), ProtocolBufferMediaType.APPLICATION_PROTOBUF));
+
+      assertThat(response.getStatus()).isEqualTo(400);
+    }
+
+    verify(groupsManager, times(2)).getGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())));
+    verifyNoMoreInteractions(groupsManager);
+  }
+}
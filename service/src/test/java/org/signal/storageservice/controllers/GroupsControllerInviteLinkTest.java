@@ -48,12 +48,13 @@ public class GroupsControllerInviteLinkTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
             .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
             .thenReturn(CompletableFuture.completedFuture(true));
   }
 
   private void verifyNoGroupWrites() {
     verify(groupsManager, never()).appendChangeRecord(any(), anyInt(), any(), any());
+    verify(groupsManager, never()).appendChangeRecord(any(), anyInt(), any(), any(), any());
     verify(groupsManager, never()).createGroup(any(), any());
     verify(groupsManager, never()).updateGroup(any(), any());
   }
@@ -88,7 +89,7 @@ public class GroupsControllerInviteLinkTest extends BaseGroupsControllerTest {
     ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class));
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class), any(Group.class));
 
     assertThat(captor.getValue().getVersion()).isEqualTo(1);
     assertThat(captor.getValue().getAccessControl().getAddFromInviteLink()).isSameAs(AccessControl.AccessRequired.ANY);
@@ -243,7 +244,7 @@ public class GroupsControllerInviteLinkTest extends BaseGroupsControllerTest {
     ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class));
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class), any(Group.class));
 
     assertThat(captor.getValue().getVersion()).isEqualTo(1);
     assertThat(captor.getValue().getMembersPendingAdminApprovalList()).hasSize(1).allMatch(memberPendingAdminApproval -> memberPendingAdminApproval.getUserId().equals(ByteString.copyFrom(validUserThreePresentation.getUuidCiphertext().serialize())));
@@ -487,7 +488,7 @@ public class GroupsControllerInviteLinkTest extends BaseGroupsControllerTest {
     ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class));
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class), any(Group.class));
 
     assertThat(captor.getValue().getVersion()).isEqualTo(1);
     assertThat(captor.getValue().getMembersList()).hasSize(3).last().matches(member -> member.getUserId().equals(ByteString.copyFrom(validUserThreePresentation.getUuidCiphertext().serialize())));
@@ -576,7 +577,7 @@ public class GroupsControllerInviteLinkTest extends BaseGroupsControllerTest {
     ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class));
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class), any(Group.class));
 
     assertThat(captor.getValue().getVersion()).isEqualTo(1);
     assertThat(captor.getValue().getMembersList()).hasSize(2);
@@ -666,7 +667,7 @@ public class GroupsControllerInviteLinkTest extends BaseGroupsControllerTest {
     ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class));
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class), any(Group.class));
 
     assertThat(captor.getValue().getVersion()).isEqualTo(1);
     assertThat(captor.getValue().getMembersList()).hasSize(2);
@@ -727,7 +728,7 @@ public class GroupsControllerInviteLinkTest extends BaseGroupsControllerTest {
     ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class));
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class), any(Group.class));
 
     assertThat(captor.getValue().getVersion()).isEqualTo(1);
     assertThat(captor.getValue().getMembersList()).hasSize(3).last().matches(member -> member.getUserId().equals(ByteString.copyFrom(validUserThreePresentation.getUuidCiphertext().serialize())) &&
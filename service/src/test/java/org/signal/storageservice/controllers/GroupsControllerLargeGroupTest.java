@@ -0,0 +1,297 @@
+/*
+ * Copyright 2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.storageservice.controllers;
+
+import com.google.protobuf.ByteString;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.signal.storageservice.configuration.GroupConfiguration;
+import org.signal.storageservice.providers.ProtocolBufferMediaType;
+import org.signal.storageservice.storage.protos.groups.AccessControl;
+import org.signal.storageservice.storage.protos.groups.Group;
+import org.signal.storageservice.storage.protos.groups.GroupChange;
+import org.signal.storageservice.storage.protos.groups.GroupChanges;
+import org.signal.storageservice.storage.protos.groups.Member;
+import org.signal.storageservice.storage.protos.groups.MemberPendingProfileKey;
+import org.signal.storageservice.util.AuthHelper;
+
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.InputStream;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class GroupsControllerLargeGroupTest extends BaseGroupsControllerTest {
+
+  private static final int  MAX_GROUP_SIZE         = 1000;
+  private static final long MAX_LOG_RESPONSE_BYTES = 512 * 1024;
+
+  @Override
+  protected GroupConfiguration getGroupConfiguration() {
+    final GroupConfiguration groupConfiguration = super.getGroupConfiguration();
+    groupConfiguration.setMaxGroupSize(MAX_GROUP_SIZE);
+    groupConfiguration.setMaxLogResponseBytes(MAX_LOG_RESPONSE_BYTES);
+    return groupConfiguration;
+  }
+
+  @Test
+  public void testModifyMembersIn10MemberGroup() throws Exception {
+    testModifyMembers(10);
+  }
+
+  @Test
+  public void testModifyMembersIn100MemberGroup() throws Exception {
+    testModifyMembers(100);
+  }
+
+  @Test
+  public void testModifyMembersIn1000MemberGroup() throws Exception {
+    testModifyMembers(1000);
+  }
+
+  @Test
+  public void testModifyLargeGroupAsNonMember() {
+    Group group = largeGroup(MAX_GROUP_SIZE, false);
+
+    when(groupsManager.getGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize()))))
+            .thenReturn(CompletableFuture.completedFuture(Optional.of(group)));
+
+    GroupChange.Actions groupChange = GroupChange.Actions.newBuilder()
+                                                         .setVersion(1)
+                                                         .addModifyMemberRoles(GroupChange.Actions.ModifyMemberRoleAction.newBuilder()
+                                                                                                                         .setUserId(group.getMembers(1).getUserId())
+                                                                                                                         .setRole(Member.Role.ADMINISTRATOR))
+                                                         .build();
+
+    Response response = resources.getJerseyTest()
+                                 .target("/v1/groups/")
+                                 .request(ProtocolBufferMediaType.APPLICATION_PROTOBUF)
+                                 .header("Authorization", AuthHelper.getAuthHeader(groupSecretParams, AuthHelper.VALID_USER_AUTH_CREDENTIAL))
+                                 .method("PATCH", Entity.entity(groupChange.toByteArray(), ProtocolBufferMediaType.APPLICATION_PROTOBUF));
+
+    assertThat(response.getStatus()).isEqualTo(403);
+    verify(groupsManager).getGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())));
+    verifyNoMoreInteractions(groupsManager);
+  }
+
+  @Test
+  public void testGetLogsOfLargeGroupIsCutAtByteBudget() throws Exception {
+    List<GroupChanges.GroupChangeState> records = largeGroupLog(1);
+
+    Response response = getLogs(true);
+
+    assertThat(response.getStatus()).isEqualTo(206);
+
+    byte[]       entity       = response.readEntity(InputStream.class).readAllBytes();
+    GroupChanges groupChanges = GroupChanges.parseFrom(entity);
+
+    // each record carries the full state of a 1000 member group, so only a few fit
+    assertThat(entity.length).isLessThanOrEqualTo((int) MAX_LOG_RESPONSE_BYTES);
+    assertThat(groupChanges.getGroupChangesCount()).isBetween(1, 10);
+    assertThat(groupChanges.getGroupChangesList()).isEqualTo(records.subList(0, groupChanges.getGroupChangesCount()));
+    assertThat(response.getHeaderString(HttpHeaders.CONTENT_RANGE)).isEqualTo(String.format("versions 0-%d/63", groupChanges.getGroupChangesCount() - 1));
+    verify(groupsManager).getChangeRecords(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class), eq(0), eq(64), eq(MAX_LOG_RESPONSE_BYTES));
+  }
+
+  @Test
+  public void testGetLogsAlreadyCutByGroupLogEndAtLastVersionReturned() throws Exception {
+    List<GroupChanges.GroupChangeState> records = largeGroupLog(1).subList(0, 1);
+
+    when(groupsManager.getChangeRecords(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class), eq(0), eq(64), anyLong()))
+            .thenReturn(CompletableFuture.completedFuture(records));
+
+    Response response = getLogs(true);
+
+    assertThat(response.getStatus()).isEqualTo(206);
+    assertThat(GroupChanges.parseFrom(response.readEntity(InputStream.class).readAllBytes()).getGroupChangesList()).isEqualTo(records);
+    assertThat(response.getHeaderString(HttpHeaders.CONTENT_RANGE)).isEqualTo("versions 0-0/63");
+  }
+
+  @Test
+  public void testGetLogsOfLargeGroupWithSparseVersionsIsCutAtLastVersionReturned() throws Exception {
+    List<GroupChanges.GroupChangeState> records = largeGroupLog(2);
+
+    Response response = getLogs(true);
+
+    assertThat(response.getStatus()).isEqualTo(206);
+
+    GroupChanges groupChanges = GroupChanges.parseFrom(response.readEntity(InputStream.class).readAllBytes());
+    int          lastVersion  = groupChanges.getGroupChanges(groupChanges.getGroupChangesCount() - 1).getGroupState().getVersion();
+
+    assertThat(groupChanges.getGroupChangesList()).isEqualTo(records.subList(0, groupChanges.getGroupChangesCount()));
+    assertThat(lastVersion).isEqualTo(2 * (groupChanges.getGroupChangesCount() - 1));
+    assertThat(response.getHeaderString(HttpHeaders.CONTENT_RANGE)).isEqualTo(String.format("versions 0-%d/63", lastVersion));
+  }
+
+  @Test
+  public void testGetLogsOfLargeGroupWithoutIntermediateStates() throws Exception {
+    List<GroupChanges.GroupChangeState> records = largeGroupLog(1);
+
+    Response response = getLogs(false);
+
+    assertThat(response.getStatus()).isEqualTo(200);
+
+    byte[]       entity       = response.readEntity(InputStream.class).readAllBytes();
+    GroupChanges groupChanges = GroupChanges.parseFrom(entity);
+
+    assertThat(entity.length).isLessThanOrEqualTo((int) MAX_LOG_RESPONSE_BYTES);
+    assertThat(groupChanges.getGroupChangesCount()).isEqualTo(64);
+
+    for (int i = 0; i < 64; i++) {
+      GroupChanges.GroupChangeState record = groupChanges.getGroupChanges(i);
+
+      assertThat(record.getGroupChange()).isEqualTo(records.get(i).getGroupChange());
+      if (i == 0 || i == 63) {
+        assertThat(record.getGroupState()).isEqualTo(records.get(i).getGroupState());
+      } else {
+        assertThat(record.hasGroupState()).isFalse();
+      }
+    }
+  }
+
+  private List<GroupChanges.GroupChangeState> largeGroupLog(int versionStep) {
+    Group group = largeGroup(MAX_GROUP_SIZE, true).toBuilder().setVersion(63).build();
+
+    List<GroupChanges.GroupChangeState> records = new ArrayList<>();
+    for (int version = 0; version <= 63; version += versionStep) {
+      ByteString title = ByteString.copyFromUtf8("Title " + version);
+      records.add(GroupChanges.GroupChangeState.newBuilder()
+                                               .setGroupChange(GroupChange.newBuilder()
+                                                                          .setActions(GroupChange.Actions.newBuilder()
+                                                                                                         .setVersion(version)
+                                                                                                         .setModifyTitle(GroupChange.Actions.ModifyTitleAction.newBuilder().setTitle(title))
+                                                                                                         .build()
+                                                                                                         .toByteString()))
+                                               .setGroupState(group.toBuilder().setVersion(version).setTitle(title))
+                                               .build());
+    }
+
+    when(groupsManager.getGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize()))))
+            .thenReturn(CompletableFuture.completedFuture(Optional.of(group)));
+    when(groupsManager.getChangeRecords(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(group), eq(0), eq(64), anyLong()))
+            .thenReturn(CompletableFuture.completedFuture(records));
+
+    return records;
+  }
+
+  private Response getLogs(boolean includeIntermediateStates) {
+    return resources.getJerseyTest()
+                    .target("/v1/groups/logs/0")
+                    .queryParam("includeIntermediateStates", includeIntermediateStates)
+                    .request(ProtocolBufferMediaType.APPLICATION_PROTOBUF)
+                    .header("Authorization", AuthHelper.getAuthHeader(groupSecretParams, AuthHelper.VALID_USER_AUTH_CREDENTIAL))
+                    .get();
+  }
+
+  private void testModifyMembers(int size) throws Exception {
+    // the administrator, size - 2 other members and one member pending profile key
+    Group group = largeGroup(size - 1, true).toBuilder()
+                                            .addMembersPendingProfileKey(MemberPendingProfileKey.newBuilder()
+                                                                                                .setMember(Member.newBuilder()
+                                                                                                                 .setUserId(ByteString.copyFrom(validUserTwoPresentation.getUuidCiphertext().serialize()))
+                                                                                                                 .setRole(Member.Role.DEFAULT)
+                                                                                                                 .setJoinedAtVersion(0))
+                                                                                                .setAddedByUserId(ByteString.copyFrom(validUserPresentation.getUuidCiphertext().serialize()))
+                                                                                                .setTimestamp(System.currentTimeMillis()))
+                                            .build();
+
+    when(groupsManager.getGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize()))))
+            .thenReturn(CompletableFuture.completedFuture(Optional.of(group)));
+
+    when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
+            .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
+            .thenReturn(CompletableFuture.completedFuture(true));
+
+    // promote every odd member, delete every fifth one and add the member pending profile key directly
+    GroupChange.Actions.Builder groupChange = GroupChange.Actions.newBuilder().setVersion(1);
+    Group.Builder               expected    = group.toBuilder().setVersion(1).clearMembers().clearMembersPendingProfileKey();
+
+    for (int i = 0; i < group.getMembersCount(); i++) {
+      Member member = group.getMembers(i);
+
+      if (i > 0 && i % 5 == 0) {
+        groupChange.addDeleteMembers(GroupChange.Actions.DeleteMemberAction.newBuilder().setDeletedUserId(member.getUserId()));
+      } else if (i % 2 == 1) {
+        groupChange.addModifyMemberRoles(GroupChange.Actions.ModifyMemberRoleAction.newBuilder().setUserId(member.getUserId()).setRole(Member.Role.ADMINISTRATOR));
+        expected.addMembers(member.toBuilder().setRole(Member.Role.ADMINISTRATOR));
+      } else {
+        expected.addMembers(member);
+      }
+    }
+
+    groupChange.addAddMembers(GroupChange.Actions.AddMemberAction.newBuilder()
+                                                                 .setAdded(Member.newBuilder()
+                                                                                 .setPresentation(ByteString.copyFrom(validUserTwoPresentation.serialize()))
+                                                                                 .setRole(Member.Role.DEFAULT)));
+
+    Response response = resources.getJerseyTest()
+                                 .target("/v1/groups/")
+                                 .request(ProtocolBufferMediaType.APPLICATION_PROTOBUF)
+                                 .header("Authorization", AuthHelper.getAuthHeader(groupSecretParams, AuthHelper.VALID_USER_AUTH_CREDENTIAL))
+                                 .method("PATCH", Entity.entity(groupChange.build().toByteArray(), ProtocolBufferMediaType.APPLICATION_PROTOBUF));
+
+    assertThat(response.getStatus()).isEqualTo(200);
+
+    ArgumentCaptor<Group> captor = ArgumentCaptor.forClass(Group.class);
+
+    verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
+
+    // added members are appended after the existing ones, in the order they were applied
+    Member added = captor.getValue().getMembers(captor.getValue().getMembersCount() - 1);
+
+    assertThat(added.getUserId()).isEqualTo(ByteString.copyFrom(validUserTwoPresentation.getUuidCiphertext().serialize()));
+    assertThat(added.getJoinedAtVersion()).isEqualTo(1);
+    assertThat(captor.getValue().toBuilder().removeMembers(captor.getValue().getMembersCount() - 1).build()).isEqualTo(expected.build());
+  }
+
+  private Group largeGroup(int size, boolean includeAdministrator) {
+    Group.Builder group = Group.newBuilder()
+                               .setPublicKey(ByteString.copyFrom(groupPublicParams.serialize()))
+                               .setAccessControl(AccessControl.newBuilder()
+                                                              .setMembers(AccessControl.AccessRequired.MEMBER)
+                                                              .setAttributes(AccessControl.AccessRequired.MEMBER))
+                               .setTitle(ByteString.copyFromUtf8("Some title"))
+                               .setAvatar(avatarFor(groupPublicParams.getGroupIdentifier().serialize()))
+                               .setVersion(0);
+
+    if (includeAdministrator) {
+      group.addMembers(Member.newBuilder()
+                             .setUserId(ByteString.copyFrom(validUserPresentation.getUuidCiphertext().serialize()))
+                             .setProfileKey(ByteString.copyFrom(validUserPresentation.getProfileKeyCiphertext().serialize()))
+                             .setRole(Member.Role.ADMINISTRATOR)
+                             .setJoinedAtVersion(0));
+    }
+
+    SecureRandom random = new SecureRandom();
+
+    while (group.getMembersCount() < size) {
+      byte[] userId     = new byte[validUserPresentation.getUuidCiphertext().serialize().length];
+      byte[] profileKey = new byte[validUserPresentation.getProfileKeyCiphertext().serialize().length];
+      random.nextBytes(userId);
+      random.nextBytes(profileKey);
+
+      group.addMembers(Member.newBuilder()
+                             .setUserId(ByteString.copyFrom(userId))
+                             .setProfileKey(ByteString.copyFrom(profileKey))
+                             .setRole(Member.Role.DEFAULT)
+                             .setJoinedAtVersion(0));
+    }
+
+    return group.build();
+  }
+}
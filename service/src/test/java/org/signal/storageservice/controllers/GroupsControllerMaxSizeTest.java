@@ -43,7 +43,7 @@ public class GroupsControllerMaxSizeTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
             .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
             .thenReturn(CompletableFuture.completedFuture(true));
 
     GroupChange.Actions groupChange = GroupChange.Actions.newBuilder()
@@ -98,7 +98,7 @@ public class GroupsControllerMaxSizeTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
             .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
             .thenReturn(CompletableFuture.completedFuture(true));
 
     GroupChange.Actions groupChange = GroupChange.Actions.newBuilder()
@@ -0,0 +1,87 @@
+package org.signal.storageservice.controllers;
+
+import org.junit.Test;
+import org.signal.storageservice.sanctuaries.PrunedChangeRecordCache;
+import org.signal.storageservice.storage.protos.groups.Group;
+import org.signal.storageservice.storage.protos.groups.GroupChanges;
+import org.signal.storageservice.util.AuthHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs every {@link GroupsControllerSanctuaryTest} case with pruned change records cached, plus
+ * cases where several members fetch the same log.
+ */
+public class GroupsControllerSanctuaryCacheTest extends GroupsControllerSanctuaryTest {
+
+  @Override
+  protected Optional<PrunedChangeRecordCache> getPrunedChangeRecordCache() {
+    return Optional.of(new PrunedChangeRecordCache(100));
+  }
+
+  @Test
+  public void givenVersion5_whenGetSanctuaryGroupLogsAsDifferentNonAdminMembers_thenEachSeesOwnView() throws Exception {
+    Group groupInServerDatabase = makeGroupVersion5InServerDatabase();
+    when(groupsManager.getGroup(eq(groupId)))
+            .thenReturn(CompletableFuture.completedFuture(Optional.of(groupInServerDatabase)));
+
+    List<GroupChanges.GroupChangeState> storedChanges = makeGroupChangeStatesFromVersion0To5InServerDatabase();
+    when(groupsManager.getChangeRecords(eq(groupId), eq(groupInServerDatabase), eq(1), eq(6), anyLong()))
+            .thenReturn(CompletableFuture.completedFuture(storedChanges));
+
+    GroupChanges member3Changes = getGroupChangesFromServer(AuthHelper.VALID_USER_THREE_AUTH_CREDENTIAL);
+    GroupChanges member2Changes = getGroupChangesFromServer(AuthHelper.VALID_USER_TWO_AUTH_CREDENTIAL);
+
+    assertThat(prunedChangeRecordCache.get().getMissCount()).isEqualTo(5);
+    assertThat(prunedChangeRecordCache.get().getHitCount()).isEqualTo(5);
+
+    // v1 adds member 3 and v4 demotes member 2, so each of them sees only their own
+    assertThat(nonTruncatedVersions(member3Changes)).isEqualTo(new int[] {1, 2, 5});
+    assertThat(nonTruncatedVersions(member2Changes)).isEqualTo(new int[] {2, 4, 5});
+
+    // the cached state of v5 is shared, but each member is added back to it only for themselves
+    assertThat(member3Changes.getGroupChanges(4).getGroupState().getMembersList()).containsExactly(adminMember1Version0, nonAdminMember3Version1);
+    assertThat(member2Changes.getGroupChanges(4).getGroupState().getMembersList()).containsExactly(adminMember1Version0, nonAdminMember2Version4);
+
+    assertThat(getGroupChangesFromServer(AuthHelper.VALID_USER_THREE_AUTH_CREDENTIAL)).isEqualTo(member3Changes);
+    assertThat(prunedChangeRecordCache.get().getMissCount()).isEqualTo(5);
+    assertThat(prunedChangeRecordCache.get().getHitCount()).isEqualTo(10);
+  }
+
+  @Test
+  public void givenVersion5_whenChangeRecordAppendedAfterFirstFetch_thenChangeVisibleOnNextFetch() throws Exception {
+    Group groupInServerDatabase = makeGroupVersion5InServerDatabase();
+    when(groupsManager.getGroup(eq(groupId)))
+            .thenReturn(CompletableFuture.completedFuture(Optional.of(groupInServerDatabase)));
+
+    // before the change record of v5 is appended, the log ends with the current state alone
+    List<GroupChanges.GroupChangeState> storedChanges  = makeGroupChangeStatesFromVersion0To5InServerDatabase();
+    List<GroupChanges.GroupChangeState> pendingChanges = new ArrayList<>(storedChanges.subList(0, storedChanges.size() - 1));
+    pendingChanges.add(GroupChanges.GroupChangeState.newBuilder().setGroupState(groupInServerDatabase).build());
+
+    when(groupsManager.getChangeRecords(eq(groupId), eq(groupInServerDatabase), eq(1), eq(6), anyLong()))
+            .thenReturn(CompletableFuture.completedFuture(pendingChanges))
+            .thenReturn(CompletableFuture.completedFuture(storedChanges));
+
+    GroupChanges before = getGroupChangesFromServer(AuthHelper.VALID_USER_THREE_AUTH_CREDENTIAL);
+    GroupChanges after  = getGroupChangesFromServer(AuthHelper.VALID_USER_THREE_AUTH_CREDENTIAL);
+
+    assertThat(nonTruncatedVersions(before)).isEqualTo(new int[] {1, 2});
+    assertThat(nonTruncatedVersions(after)).isEqualTo(new int[] {1, 2, 5});
+  }
+
+  private static int[] nonTruncatedVersions(GroupChanges groupChanges) {
+    return groupChanges.getGroupChangesList().stream()
+                       .filter(GroupChanges.GroupChangeState::hasGroupChange)
+                       .mapToInt(groupChangeState -> groupChangeState.getGroupState().getVersion())
+                       .toArray();
+  }
+}
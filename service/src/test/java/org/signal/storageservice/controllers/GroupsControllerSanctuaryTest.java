@@ -22,6 +22,7 @@ import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -35,11 +36,11 @@ public class GroupsControllerSanctuaryTest extends BaseGroupsControllerTest {
   private static final ByteString SECOND_TITLE           = ByteString.copyFromUtf8("Second title");
   public static final ByteString  SOME_INVITE_PASSWORD   = ByteString.copyFromUtf8("invite me 1");
   public static final ByteString  SECOND_INVITE_PASSWORD = ByteString.copyFromUtf8("invite me 2");
-  private final ByteString groupId = ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize());
+  protected final ByteString groupId = ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize());
   private final        ByteString userId1 = ByteString.copyFrom(validUserPresentation.getUuidCiphertext().serialize());
   private final        ByteString userId2 = ByteString.copyFrom(validUserTwoPresentation.getUuidCiphertext().serialize());
   private final ByteString userId3 = ByteString.copyFrom(validUserThreePresentation.getUuidCiphertext().serialize());
-  private final Member adminMember1Version0    = Member.newBuilder()
+  protected final Member adminMember1Version0    = Member.newBuilder()
                                                     .setUserId(userId1)
                                                     .setProfileKey(ByteString.copyFrom(validUserPresentation.getProfileKeyCiphertext().serialize()))
                                                     .setRole(Member.Role.ADMINISTRATOR)
@@ -50,13 +51,13 @@ public class GroupsControllerSanctuaryTest extends BaseGroupsControllerTest {
                                                        .setRole(Member.Role.ADMINISTRATOR)
                                                        .setJoinedAtVersion(0)
                                                        .build();
-  private final Member nonAdminMember2Version4 = Member.newBuilder()
+  protected final Member nonAdminMember2Version4 = Member.newBuilder()
                                                        .setUserId(userId2)
                                                        .setProfileKey(ByteString.copyFrom(validUserTwoPresentation.getProfileKeyCiphertext().serialize()))
                                                        .setRole(Member.Role.DEFAULT)
                                                        .setJoinedAtVersion(0)
                                                        .build();
-  private final Member nonAdminMember3Version1 = Member.newBuilder()
+  protected final Member nonAdminMember3Version1 = Member.newBuilder()
                                                        .setUserId(userId3)
                                                        .setProfileKey(ByteString.copyFrom(validUserThreePresentation.getProfileKeyCiphertext().serialize()))
                                                        .setRole(Member.Role.DEFAULT)
@@ -110,7 +111,7 @@ public class GroupsControllerSanctuaryTest extends BaseGroupsControllerTest {
             .thenReturn(CompletableFuture.completedFuture(Optional.of(groupInServerDatabase)));
 
     List<GroupChanges.GroupChangeState> expectedChanges = makeGroupChangeStatesFromVersion0To5InServerDatabase();
-    when(groupsManager.getChangeRecords(eq(groupId), eq(groupInServerDatabase), eq(1), eq(6)))
+    when(groupsManager.getChangeRecords(eq(groupId), eq(groupInServerDatabase), eq(1), eq(6), anyLong()))
             .thenReturn(CompletableFuture.completedFuture(expectedChanges));
 
     GroupChanges receivedChanges = getGroupChangesFromServer(AuthHelper.VALID_USER_AUTH_CREDENTIAL);
@@ -124,7 +125,7 @@ public class GroupsControllerSanctuaryTest extends BaseGroupsControllerTest {
             .thenReturn(CompletableFuture.completedFuture(Optional.of(groupInServerDatabase)));
 
     List<GroupChanges.GroupChangeState> expectedChanges = makeGroupChangeStatesFromVersion0To5InServerDatabase();
-    when(groupsManager.getChangeRecords(eq(groupId), eq(groupInServerDatabase), eq(1), eq(6)))
+    when(groupsManager.getChangeRecords(eq(groupId), eq(groupInServerDatabase), eq(1), eq(6), anyLong()))
             .thenReturn(CompletableFuture.completedFuture(expectedChanges));
 
     GroupChanges receivedChanges = getGroupChangesFromServer(AuthHelper.VALID_USER_THREE_AUTH_CREDENTIAL);
@@ -153,7 +154,7 @@ public class GroupsControllerSanctuaryTest extends BaseGroupsControllerTest {
                 .build();
   }
 
-  private Group makeGroupVersion5InServerDatabase() {
+  protected Group makeGroupVersion5InServerDatabase() {
     return Group.newBuilder(makeGroupVersion0InServerDatabase())
                 .setVersion(5)
                 .setTitle(SECOND_TITLE)
@@ -166,7 +167,7 @@ public class GroupsControllerSanctuaryTest extends BaseGroupsControllerTest {
                 .build();
   }
 
-  private List<GroupChanges.GroupChangeState> makeGroupChangeStatesFromVersion0To5InServerDatabase() {
+  protected List<GroupChanges.GroupChangeState> makeGroupChangeStatesFromVersion0To5InServerDatabase() {
     List<GroupChanges.GroupChangeState> expectedChanges = new LinkedList<>() {{
       add(GroupChanges.GroupChangeState.newBuilder()
                                        .setGroupChange(GroupChange.newBuilder()
@@ -247,7 +248,7 @@ public class GroupsControllerSanctuaryTest extends BaseGroupsControllerTest {
     return Group.parseFrom(entity);
   }
 
-  private GroupChanges getGroupChangesFromServer(AuthCredential authCredential) throws IOException {
+  protected GroupChanges getGroupChangesFromServer(AuthCredential authCredential) throws IOException {
     Response response = resources.getJerseyTest()
                                  .target("/v1/groups/logs/1")
                                  .request(ProtocolBufferMediaType.APPLICATION_PROTOBUF)
@@ -40,6 +40,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.*;
@@ -531,6 +532,83 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     assertThat(Group.parseFrom(entity)).isEqualTo(group);
   }
 
+  @Test
+  public void testGetGroupReadsGroupAndSanctuaryConcurrently() throws Exception, IOException {
+    GroupSecretParams groupSecretParams = GroupSecretParams.generate();
+    GroupPublicParams groupPublicParams = groupSecretParams.getPublicParams();
+
+    ProfileKeyCredentialPresentation validUserPresentation    = new ClientZkProfileOperations(AuthHelper.GROUPS_SERVER_KEY.getPublicParams()).createProfileKeyCredentialPresentation(groupSecretParams, AuthHelper.VALID_USER_PROFILE_CREDENTIAL    );
+    ProfileKeyCredentialPresentation validUserTwoPresentation = new ClientZkProfileOperations(AuthHelper.GROUPS_SERVER_KEY.getPublicParams()).createProfileKeyCredentialPresentation(groupSecretParams, AuthHelper.VALID_USER_TWO_PROFILE_CREDENTIAL);
+
+    Group group = Group.newBuilder()
+                       .setPublicKey(ByteString.copyFrom(groupPublicParams.serialize()))
+                       .setAccessControl(AccessControl.newBuilder()
+                                                      .setMembers(AccessControl.AccessRequired.MEMBER)
+                                                      .setAttributes(AccessControl.AccessRequired.MEMBER))
+                       .setTitle(ByteString.copyFromUtf8("Some title"))
+                       .setAvatar(avatarFor(groupPublicParams.getGroupIdentifier().serialize()))
+                       .setVersion(0)
+                       .addMembers(Member.newBuilder()
+                                         .setUserId(ByteString.copyFrom(validUserPresentation.getUuidCiphertext().serialize()))
+                                         .setProfileKey(ByteString.copyFrom(validUserTwoPresentation.getProfileKeyCiphertext().serialize()))
+                                         .setRole(Member.Role.ADMINISTRATOR)
+                                         .build())
+                       .addMembers(Member.newBuilder()
+                                         .setUserId(ByteString.copyFrom(validUserPresentation.getUuidCiphertext().serialize()))
+                                         .setProfileKey(ByteString.copyFrom(validUserTwoPresentation.getProfileKeyCiphertext().serialize()))
+                                         .setRole(Member.Role.DEFAULT)
+                                         .build())
+                       .build();
+
+
+    // each read only completes once the other has been issued, so reading one after the other
+    // never completes; the timeouts only turn such a hang into a failure
+    CompletableFuture<Void> groupRead     = new CompletableFuture<>();
+    CompletableFuture<Void> sanctuaryRead = new CompletableFuture<>();
+
+    when(groupsManager.getGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize()))))
+        .thenAnswer(invocation -> {
+          groupRead.complete(null);
+          return sanctuaryRead.orTimeout(5, TimeUnit.SECONDS).thenApply(unused -> Optional.of(group));
+        });
+    when(sanctuariesDao.getSanctuary(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize()))))
+        .thenAnswer(invocation -> {
+          sanctuaryRead.complete(null);
+          return groupRead.orTimeout(5, TimeUnit.SECONDS).thenApply(unused -> Optional.empty());
+        });
+
+    Response response = resources.getJerseyTest()
+                                 .target("/v1/groups/")
+                                 .request(ProtocolBufferMediaType.APPLICATION_PROTOBUF)
+                                 .header("Authorization", AuthHelper.getAuthHeader(groupSecretParams, AuthHelper.VALID_USER_AUTH_CREDENTIAL))
+                                 .get();
+
+    assertThat(response.getStatus()).isEqualTo(200);
+    assertThat(response.hasEntity()).isTrue();
+    assertThat(response.getMediaType().toString()).isEqualTo("application/x-protobuf");
+
+    byte[] entity = response.readEntity(InputStream.class).readAllBytes();
+
+    assertThat(response.getStatus()).isEqualTo(200);
+    assertThat(Group.parseFrom(entity)).isEqualTo(group);
+  }
+
+  @Test
+  public void testGetMissingGroupWhenSanctuaryReadFails() {
+    when(groupsManager.getGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize()))))
+        .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+    when(sanctuariesDao.getSanctuary(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize()))))
+        .thenReturn(CompletableFuture.failedFuture(new RuntimeException("sanctuary table unavailable")));
+
+    Response response = resources.getJerseyTest()
+                                 .target("/v1/groups/")
+                                 .request(ProtocolBufferMediaType.APPLICATION_PROTOBUF)
+                                 .header("Authorization", AuthHelper.getAuthHeader(groupSecretParams, AuthHelper.VALID_USER_AUTH_CREDENTIAL))
+                                 .get();
+
+    assertThat(response.getStatus()).isEqualTo(404);
+  }
+
   @Test
   public void testGetGroupJoinInfo() throws Exception {
     final byte[] inviteLinkPassword = new byte[16];
@@ -771,7 +849,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -823,7 +901,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -848,7 +926,87 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class));
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class), eq(group));
+
+    assertThat(captor.getValue().getTitle().toStringUtf8()).isEqualTo("Another title");
+    assertThat(captor.getValue().getVersion()).isEqualTo(1);
+
+    assertThat(captor.getValue().toBuilder()
+                     .setTitle(ByteString.copyFromUtf8("Some title"))
+                     .setVersion(0)
+                     .build()).isEqualTo(group);
+
+    assertThat(signedChange).isEqualTo(changeCaptor.getValue());
+    assertThat(Actions.parseFrom(signedChange.getActions()).getVersion()).isEqualTo(1);
+    assertThat(Actions.parseFrom(signedChange.getActions()).getSourceUuid()).isEqualTo(ByteString.copyFrom(validUserPresentation.getUuidCiphertext().serialize()));
+    assertThat(Actions.parseFrom(signedChange.getActions()).toBuilder().clearSourceUuid().build()).isEqualTo(groupChange);
+
+    AuthHelper.GROUPS_SERVER_KEY.getPublicParams().verifySignature(signedChange.getActions().toByteArray(),
+                                                                   new NotarySignature(signedChange.getServerSignature().toByteArray()));
+
+  }
+
+  @Test
+  public void testModifyGroupTitleWithAtomicChangeRecord() throws Exception, IOException, InvalidInputException {
+    GroupSecretParams groupSecretParams = GroupSecretParams.generate();
+    GroupPublicParams groupPublicParams = groupSecretParams.getPublicParams();
+
+    ProfileKeyCredentialPresentation validUserPresentation    = new ClientZkProfileOperations(AuthHelper.GROUPS_SERVER_KEY.getPublicParams()).createProfileKeyCredentialPresentation(groupSecretParams, AuthHelper.VALID_USER_PROFILE_CREDENTIAL    );
+    ProfileKeyCredentialPresentation validUserTwoPresentation = new ClientZkProfileOperations(AuthHelper.GROUPS_SERVER_KEY.getPublicParams()).createProfileKeyCredentialPresentation(groupSecretParams, AuthHelper.VALID_USER_TWO_PROFILE_CREDENTIAL);
+
+    Group group = Group.newBuilder()
+                       .setPublicKey(ByteString.copyFrom(groupPublicParams.serialize()))
+                       .setAccessControl(AccessControl.newBuilder()
+                                                      .setMembers(AccessControl.AccessRequired.MEMBER)
+                                                      .setAttributes(AccessControl.AccessRequired.MEMBER))
+                       .setTitle(ByteString.copyFromUtf8("Some title"))
+                       .setAvatar(avatarFor(groupPublicParams.getGroupIdentifier().serialize()))
+                       .setVersion(0)
+                       .addMembers(Member.newBuilder()
+                                         .setUserId(ByteString.copyFrom(validUserPresentation.getUuidCiphertext().serialize()))
+                                         .setProfileKey(ByteString.copyFrom(validUserPresentation.getProfileKeyCiphertext().serialize()))
+                                         .setRole(Member.Role.ADMINISTRATOR)
+                                         .build())
+                       .addMembers(Member.newBuilder()
+                                         .setUserId(ByteString.copyFrom(validUserTwoPresentation.getUuidCiphertext().serialize()))
+                                         .setProfileKey(ByteString.copyFrom(validUserTwoPresentation.getProfileKeyCiphertext().serialize()))
+                                         .setRole(Member.Role.DEFAULT)
+                                         .build())
+                       .build();
+
+
+    when(groupsManager.getGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize()))))
+        .thenReturn(CompletableFuture.completedFuture(Optional.of(group)));
+
+    when(groupsManager.isAtomicChangeRecords()).thenReturn(true);
+
+    when(groupsManager.updateGroupWithChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class), any(GroupChange.class), any(Group.class)))
+        .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
+
+    Actions groupChange = Actions.newBuilder()
+                                                         .setVersion(1)
+                                                         .setModifyTitle(ModifyTitleAction.newBuilder()
+                                                                                          .setTitle(ByteString.copyFromUtf8("Another title")))
+                                                         .build();
+
+    Response response = resources.getJerseyTest()
+                                 .target("/v1/groups/")
+                                 .request(ProtocolBufferMediaType.APPLICATION_PROTOBUF)
+                                 .header("Authorization", AuthHelper.getAuthHeader(groupSecretParams, AuthHelper.VALID_USER_AUTH_CREDENTIAL))
+                                 .method("PATCH", Entity.entity(groupChange.toByteArray(), ProtocolBufferMediaType.APPLICATION_PROTOBUF));
+
+    assertThat(response.getStatus()).isEqualTo(200);
+    assertThat(response.hasEntity()).isTrue();
+    assertThat(response.getMediaType().toString()).isEqualTo("application/x-protobuf");
+
+    GroupChange signedChange = GroupChange.parseFrom(response.readEntity(InputStream.class).readAllBytes());
+
+    ArgumentCaptor<Group>       captor       = ArgumentCaptor.forClass(Group.class      );
+    ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
+
+    verify(groupsManager).updateGroupWithChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture(), changeCaptor.capture(), eq(group));
+    verify(groupsManager, never()).updateGroup(any(), any());
+    verify(groupsManager, never()).appendChangeRecord(any(), anyInt(), any(), any(), any());
 
     assertThat(captor.getValue().getTitle().toStringUtf8()).isEqualTo("Another title");
     assertThat(captor.getValue().getVersion()).isEqualTo(1);
@@ -954,7 +1112,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
             .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
             .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -973,7 +1131,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     assertThat(response.getStatus()).isEqualTo(422);
 
     verify(groupsManager, never()).updateGroup(any(), any());
-    verify(groupsManager, never()).appendChangeRecord(any(), anyInt(), any(), any());
+    verify(groupsManager, never()).appendChangeRecord(any(), anyInt(), any(), any(), any());
   }
 
   @Test
@@ -1027,7 +1185,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     assertThat(response.getStatus()).isEqualTo(400);
 
     verify(groupsManager, never()).updateGroup(any(), any());
-    verify(groupsManager, never()).appendChangeRecord(any(), anyInt(), any(), any());
+    verify(groupsManager, never()).appendChangeRecord(any(), anyInt(), any(), any(), any());
   }
 
   @Test
@@ -1067,7 +1225,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(2), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(2), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     String anotherAvatar = avatarFor(groupPublicParams.getGroupIdentifier().serialize());
@@ -1096,7 +1254,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(2), changeCaptor.capture(), any(Group.class));
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(2), changeCaptor.capture(), any(Group.class), eq(group));
 
     assertThat(captor.getValue().getTitle().toStringUtf8()).isEqualTo("Another title");
     assertThat(captor.getValue().getAvatar()).isEqualTo(anotherAvatar);
@@ -1153,7 +1311,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -1179,7 +1337,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class));
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class), any(Group.class));
 
     assertThat(captor.getValue().getDisappearingMessagesTimer().toStringUtf8()).isEqualTo("Another timer");
     assertThat(captor.getValue().getVersion()).isEqualTo(1);
@@ -1283,7 +1441,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -1309,7 +1467,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class));
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class), any(Group.class));
 
     assertThat(captor.getValue().getMembersCount()).isEqualTo(1);
     assertThat(captor.getValue().getMembers(0).getUserId()).isEqualTo(ByteString.copyFrom(validUserPresentation.getUuidCiphertext().serialize()));
@@ -1415,7 +1573,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -1443,7 +1601,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class));
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class), any(Group.class));
 
     assertThat(captor.getValue().getMembersCount()).isEqualTo(2);
     assertThat(captor.getValue().getMembers(1).getUserId()).isEqualTo(ByteString.copyFrom(validUserTwoPresentation.getUuidCiphertext().serialize()));
@@ -1560,7 +1718,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
             .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
             .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -1588,7 +1746,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class));
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class), any(Group.class));
 
     assertThat(captor.getValue().getMembersCount()).isEqualTo(2);
     assertThat(captor.getValue().getMembers(1).getUserId()).isEqualTo(ByteString.copyFrom(validUserTwoPresentation.getUuidCiphertext().serialize()));
@@ -1655,7 +1813,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
             .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
             .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -1683,7 +1841,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class));
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class), any(Group.class));
 
     assertThat(captor.getValue().getMembersCount()).isEqualTo(2);
     assertThat(captor.getValue().getMembers(1).getUserId()).isEqualTo(ByteString.copyFrom(validUserTwoPresentation.getUuidCiphertext().serialize()));
@@ -1791,7 +1949,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -1895,7 +2053,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -1920,7 +2078,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class));
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class), any(Group.class));
 
     assertThat(captor.getValue().getMembersCount()).isEqualTo(2);
     assertThat(captor.getValue().getMembers(1).getProfileKey()).isEqualTo(ByteString.copyFrom(validUserTwoPresentationUpdate.getProfileKeyCiphertext().serialize()));
@@ -2018,7 +2176,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -2050,7 +2208,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     ArgumentCaptor<Group>       changeStateCaptor = ArgumentCaptor.forClass(Group.class      );
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), changeStateCaptor.capture());
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), changeStateCaptor.capture(), eq(group));
 
     assertThat(captor.getValue().getMembersCount()).isEqualTo(1);
     assertThat(captor.getValue().getMembersPendingProfileKeyCount()).isEqualTo(1);
@@ -2107,7 +2265,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -2160,7 +2318,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -2220,7 +2378,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -2245,7 +2403,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class));
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class), any(Group.class));
 
     assertThat(captor.getValue().getMembersCount()).isEqualTo(1);
     assertThat(captor.getValue().getMembersPendingProfileKeyCount()).isEqualTo(0);
@@ -2302,7 +2460,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -2327,7 +2485,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class));
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class), any(Group.class));
 
     assertThat(captor.getValue().getMembersCount()).isEqualTo(1);
     assertThat(captor.getValue().getMembersPendingProfileKeyCount()).isEqualTo(0);
@@ -2389,7 +2547,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -2444,7 +2602,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -2469,7 +2627,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class));
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class), any(Group.class));
 
     assertThat(captor.getValue().getMembersCount()).isEqualTo(2);
     assertThat(captor.getValue().getMembers(1).getJoinedAtVersion()).isEqualTo(1);
@@ -2538,7 +2696,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -2591,7 +2749,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -2616,7 +2774,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class));
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class), any(Group.class));
 
     assertThat(captor.getValue().getAccessControl().getMembers()).isEqualTo(AccessControl.AccessRequired.ADMINISTRATOR);
     assertThat(captor.getValue().getVersion()).isEqualTo(1);
@@ -2671,7 +2829,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -2727,7 +2885,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -2753,7 +2911,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     ArgumentCaptor<GroupChange> changeCaptor = ArgumentCaptor.forClass(GroupChange.class);
 
     verify(groupsManager).updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), captor.capture());
-    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class));
+    verify(groupsManager).appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), changeCaptor.capture(), any(Group.class), any(Group.class));
 
     assertThat(captor.getValue().getMembers(1).getRole()).isEqualTo(Member.Role.ADMINISTRATOR);
     assertThat(captor.getValue().getVersion()).isEqualTo(1);
@@ -2810,7 +2968,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     when(groupsManager.updateGroup(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(Optional.empty()));
 
-    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class)))
+    when(groupsManager.appendChangeRecord(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(1), any(GroupChange.class), any(Group.class), any(Group.class)))
         .thenReturn(CompletableFuture.completedFuture(true));
 
     Actions groupChange = Actions.newBuilder()
@@ -2928,7 +3086,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
     }};
 
 
-    when(groupsManager.getChangeRecords(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(group), eq(1), eq(6)))
+    when(groupsManager.getChangeRecords(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(group), eq(1), eq(6), anyLong()))
         .thenReturn(CompletableFuture.completedFuture(expectedChanges));
 
     Response response = resources.getJerseyTest()
@@ -2982,7 +3140,7 @@ public class GroupsControllerTest extends BaseGroupsControllerTest {
       expectedChanges.add(generateSubjectChange(group, "New Title #" + i, i));
     }
 
-    when(groupsManager.getChangeRecords(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(group), eq(6), eq(70)))
+    when(groupsManager.getChangeRecords(eq(ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize())), eq(group), eq(6), eq(70), anyLong()))
         .thenReturn(CompletableFuture.completedFuture(expectedChanges.subList(0, 64)));
 
     Response response = resources.getJerseyTest()
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.storageservice.providers;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Message;
+import com.google.protobuf.UnknownFieldSet;
+import org.junit.Test;
+import org.signal.storageservice.storage.protos.groups.AccessControl;
+import org.signal.storageservice.storage.protos.groups.Group;
+import org.signal.storageservice.storage.protos.groups.GroupChange;
+import org.signal.storageservice.storage.protos.groups.Member;
+import org.signal.storageservice.storage.protos.groups.MemberPendingAdminApproval;
+import org.signal.storageservice.storage.protos.groups.MemberPendingProfileKey;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NoUnknownFieldsValidatorTest {
+
+  private static final UnknownFieldSet UNKNOWN_FIELDS = UnknownFieldSet.newBuilder().addField(4095, UnknownFieldSet.Field.newBuilder().addVarint(42).build()).build();
+
+  @Test
+  public void testValidGroup() throws Exception {
+    assertValid(largeGroup().build(), true);
+  }
+
+  @Test
+  public void testUnknownFieldOnGroup() throws Exception {
+    assertValid(largeGroup().mergeUnknownFields(UNKNOWN_FIELDS).build(), false);
+  }
+
+  @Test
+  public void testUnknownFieldOnSingularNestedMessage() throws Exception {
+    Group.Builder group = largeGroup();
+    group.setAccessControl(group.getAccessControl().toBuilder().mergeUnknownFields(UNKNOWN_FIELDS));
+
+    assertValid(group.build(), false);
+  }
+
+  @Test
+  public void testUnknownFieldOnLastMember() throws Exception {
+    Group.Builder group = largeGroup();
+    int           last  = group.getMembersCount() - 1;
+    group.setMembers(last, group.getMembers(last).toBuilder().mergeUnknownFields(UNKNOWN_FIELDS));
+
+    assertValid(group.build(), false);
+  }
+
+  @Test
+  public void testUnknownFieldTwoLevelsDown() throws Exception {
+    Group.Builder           group   = largeGroup();
+    MemberPendingProfileKey pending = group.getMembersPendingProfileKey(0);
+    group.setMembersPendingProfileKey(0, pending.toBuilder().setMember(pending.getMember().toBuilder().mergeUnknownFields(UNKNOWN_FIELDS)));
+
+    assertValid(group.build(), false);
+  }
+
+  @Test
+  public void testUnknownFieldInGroupChangeActions() throws Exception {
+    GroupChange.Actions.Builder actions = GroupChange.Actions.newBuilder().setVersion(1);
+
+    for (int i = 0; i < 50; i++) {
+      actions.addAddMembers(GroupChange.Actions.AddMemberAction.newBuilder().setAdded(member(i)));
+      actions.addModifyMemberRoles(GroupChange.Actions.ModifyMemberRoleAction.newBuilder().setUserId(userId(i)).setRole(Member.Role.ADMINISTRATOR));
+    }
+    actions.setModifyTitle(GroupChange.Actions.ModifyTitleAction.newBuilder().setTitle(ByteString.copyFromUtf8("title")));
+
+    assertValid(actions.build(), true);
+
+    actions.setAddMembers(49, GroupChange.Actions.AddMemberAction.newBuilder().setAdded(member(49).toBuilder().mergeUnknownFields(UNKNOWN_FIELDS)));
+
+    assertValid(actions.build(), false);
+  }
+
+  @Test
+  public void testNonRecursiveIgnoresNestedUnknownFields() throws Exception {
+    Group.Builder group = largeGroup();
+    group.setMembers(0, group.getMembers(0).toBuilder().mergeUnknownFields(UNKNOWN_FIELDS));
+
+    NoUnknownFieldsValidator validator = validator("nonRecursive");
+
+    assertThat(validator.isValid(group.build(), null)).isTrue();
+    assertThat(validator.isValid(group.mergeUnknownFields(UNKNOWN_FIELDS).build(), null)).isFalse();
+  }
+
+  private static void assertValid(Message message, boolean expected) throws Exception {
+    assertThat(validator("recursive").isValid(message, null)).isEqualTo(expected);
+    assertThat(isValidByReflection(message)).isEqualTo(expected);
+  }
+
+  // The walk over every set field that the validator used before it precomputed its plans
+  private static boolean isValidByReflection(Message value) {
+    if (!value.getUnknownFields().asMap().isEmpty()) return false;
+    for (Map.Entry<Descriptors.FieldDescriptor, Object> entry : value.getAllFields().entrySet()) {
+      if (entry.getKey().getType() == Descriptors.FieldDescriptor.Type.MESSAGE) {
+        if (entry.getKey().isRepeated()) {
+          //noinspection unchecked
+          for (Message message : (Iterable<? extends Message>) entry.getValue()) {
+            if (!isValidByReflection(message)) return false;
+          }
+        } else {
+          if (!isValidByReflection((Message) entry.getValue())) return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static NoUnknownFieldsValidator validator(String methodName) throws NoSuchMethodException {
+    NoUnknownFields annotation = NoUnknownFieldsValidatorTest.class.getDeclaredMethod(methodName, Message.class)
+                                                                   .getParameters()[0]
+                                                                   .getAnnotation(NoUnknownFields.class);
+
+    NoUnknownFieldsValidator validator = new NoUnknownFieldsValidator();
+    validator.initialize(annotation);
+    return validator;
+  }
+
+  @SuppressWarnings("unused")
+  private static void recursive(@NoUnknownFields Message message) {
+  }
+
+  @SuppressWarnings("unused")
+  private static void nonRecursive(@NoUnknownFields(recursive = false) Message message) {
+  }
+
+  private static Group.Builder largeGroup() {
+    Group.Builder group = Group.newBuilder()
+                               .setPublicKey(ByteString.copyFrom(new byte[97]))
+                               .setVersion(7)
+                               .setTitle(ByteString.copyFromUtf8("Some title"))
+                               .setAccessControl(AccessControl.newBuilder()
+                                                              .setMembers(AccessControl.AccessRequired.MEMBER)
+                                                              .setAttributes(AccessControl.AccessRequired.ADMINISTRATOR));
+
+    for (int i = 0; i < 500; i++) {
+      group.addMembers(member(i));
+    }
+
+    for (int i = 500; i < 550; i++) {
+      group.addMembersPendingProfileKey(MemberPendingProfileKey.newBuilder()
+                                                               .setMember(member(i))
+                                                               .setAddedByUserId(userId(0))
+                                                               .setTimestamp(i));
+      group.addMembersPendingAdminApproval(MemberPendingAdminApproval.newBuilder()
+                                                                     .setUserId(userId(i + 50))
+                                                                     .setProfileKey(ByteString.copyFrom(new byte[65]))
+                                                                     .setTimestamp(i));
+    }
+
+    return group;
+  }
+
+  private static Member member(int i) {
+    return Member.newBuilder()
+                 .setUserId(userId(i))
+                 .setProfileKey(ByteString.copyFrom(new byte[65]))
+                 .setRole(i == 0 ? Member.Role.ADMINISTRATOR : Member.Role.DEFAULT)
+                 .setJoinedAtVersion(i % 7)
+                 .build();
+  }
+
+  private static ByteString userId(int i) {
+    byte[] userId = new byte[65];
+    userId[0] = (byte) i;
+    userId[1] = (byte) (i >> 8);
+    return ByteString.copyFrom(userId);
+  }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2020 Signal Messenger, LLC
+ * SPDX-License-Identifier: AGPL-3.0-only
+ */
+
+package org.signal.storageservice.providers;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Message;
+import com.google.protobuf.util.JsonFormat;
+import org.junit.Test;
+import org.signal.storageservice.storage.protos.groups.Group;
+import org.signal.storageservice.storage.protos.groups.Member;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.MultivaluedMap;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ProtocolBufferMessageBodyProviderTest {
+
+  private static final MediaType PROTOBUF      = MediaType.valueOf(ProtocolBufferMediaType.APPLICATION_PROTOBUF);
+  private static final MediaType PROTOBUF_JSON = MediaType.valueOf(ProtocolBufferMediaType.APPLICATION_PROTOBUF_JSON);
+
+  private final ProtocolBufferMessageBodyProvider provider = new ProtocolBufferMessageBodyProvider(1024);
+
+  @Test
+  public void testReadWithinLimit() throws Exception {
+    Group group = group(10);
+
+    assertThat(group.getSerializedSize()).isLessThan(1024);
+    assertThat(read(group.toByteArray(), PROTOBUF, new Annotation[0], true)).isEqualTo(group);
+    assertThat(read(group.toByteArray(), PROTOBUF, new Annotation[0], false)).isEqualTo(group);
+  }
+
+  @Test
+  public void testReadOverLimitWithContentLength() throws Exception {
+    byte[] entity = group(100).toByteArray();
+
+    assertThat(entity.length).isGreaterThan(1024);
+    assertTooLarge(entity, PROTOBUF, new Annotation[0], true);
+  }
+
+  @Test
+  public void testReadOverLimitWhileStreaming() throws Exception {
+    assertTooLarge(group(100).toByteArray(), PROTOBUF, new Annotation[0], false);
+  }
+
+  @Test
+  public void testReadJsonOverLimit() throws Exception {
+    byte[] entity = JsonFormat.printer().print(group(100)).getBytes(StandardCharsets.UTF_8);
+
+    assertTooLarge(entity, PROTOBUF_JSON, new Annotation[0], false);
+  }
+
+  @Test
+  public void testResourceLimitOverridesDefault() throws Exception {
+    Group        group       = group(100);
+    Annotation[] annotations = ProtocolBufferMessageBodyProviderTest.class.getDeclaredMethod("largeResource", Group.class).getParameterAnnotations()[0];
+
+    assertThat(read(group.toByteArray(), PROTOBUF, annotations, false)).isEqualTo(group);
+    assertTooLarge(group(2000).toByteArray(), PROTOBUF, annotations, false);
+  }
+
+  @Test
+  public void testReadAtExactLimit() throws Exception {
+    Group group = group(10);
+    ProtocolBufferMessageBodyProvider exactProvider = new ProtocolBufferMessageBodyProvider(group.getSerializedSize());
+
+    assertThat(exactProvider.readFrom(cast(Group.class), Group.class, new Annotation[0], PROTOBUF, new MultivaluedHashMap<>(), new ByteArrayInputStream(group.toByteArray())))
+        .isEqualTo(group);
+  }
+
+  @Test
+  public void testReusedBufferIsNotAliasedByMessages() throws Exception {
+    Group first  = group(10);
+    Group second = group(20).toBuilder().setTitle(ByteString.copyFromUtf8("Another title")).build();
+
+    Message firstRead  = read(first.toByteArray(), PROTOBUF, new Annotation[0], true);
+    Message secondRead = read(second.toByteArray(), PROTOBUF, new Annotation[0], true);
+
+    assertThat(firstRead).isEqualTo(first);
+    assertThat(firstRead.toByteArray()).isEqualTo(first.toByteArray());
+    assertThat(secondRead).isEqualTo(second);
+  }
+
+  @Test
+  public void testWriteReportsSize() throws Exception {
+    Group                          group   = group(100);
+    ByteArrayOutputStream          output  = new ByteArrayOutputStream();
+    MultivaluedMap<String, Object> headers = new MultivaluedHashMap<>();
+
+    provider.writeTo(group, Group.class, Group.class, new Annotation[0], PROTOBUF, headers, output);
+
+    assertThat(output.toByteArray()).isEqualTo(group.toByteArray());
+    assertThat(headers.getFirst(HttpHeaders.CONTENT_LENGTH)).isEqualTo(group.getSerializedSize());
+    assertThat(provider.getSize(group, Group.class, Group.class, new Annotation[0], PROTOBUF)).isEqualTo(group.getSerializedSize());
+  }
+
+  @SuppressWarnings("unused")
+  private static void largeResource(@ProtocolBufferSizeLimit(64 * 1024) Group group) {
+  }
+
+  private Message read(byte[] entity, MediaType mediaType, Annotation[] annotations, boolean withContentLength) throws Exception {
+    MultivaluedMap<String, String> headers = new MultivaluedHashMap<>();
+    if (withContentLength) {
+      headers.putSingle(HttpHeaders.CONTENT_LENGTH, String.valueOf(entity.length));
+    }
+    return provider.readFrom(cast(Group.class), Group.class, annotations, mediaType, headers, new ByteArrayInputStream(entity));
+  }
+
+  private void assertTooLarge(byte[] entity, MediaType mediaType, Annotation[] annotations, boolean withContentLength) {
+    assertThatThrownBy(() -> read(entity, mediaType, annotations, withContentLength))
+        .isInstanceOfSatisfying(WebApplicationException.class, e -> assertThat(e.getResponse().getStatus()).isEqualTo(413));
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Class<Message> cast(Class<? extends Message> type) {
+    return (Class<Message>) type;
+  }
+
+  private static Group group(int members) {
+    Group.Builder group = Group.newBuilder().setTitle(ByteString.copyFromUtf8("Some title")).setVersion(1);
+
+    for (int i = 0; i < members; i++) {
+      byte[] userId = new byte[32];
+      userId[0] = (byte) i;
+      userId[1] = (byte) (i >> 8);
+      group.addMembers(Member.newBuilder().setUserId(ByteString.copyFrom(userId)).setRole(Member.Role.DEFAULT));
+    }
+
+    return group.build();
+  }
+}
@@ -0,0 +1,41 @@
+// Copyright 2021 Diskuv, Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//   http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package org.signal.storageservice.storage;
+
+import com.google.protobuf.ByteString;
+import org.junit.Test;
+import org.signal.storageservice.storage.protos.groups.Group;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GroupStateCacheTest {
+
+  @Test
+  public void testGroupsAreWeighedBySerializedSize() {
+    GroupStateCache cache   = new GroupStateCache(1024, Duration.ZERO);
+    ByteString      smallId = ByteString.copyFromUtf8("small");
+    ByteString      largeId = ByteString.copyFromUtf8("large");
+    Group           small   = Group.newBuilder().setVersion(1).setTitle(ByteString.copyFromUtf8("Small")).build();
+    Group           large   = Group.newBuilder().setVersion(1).setTitle(ByteString.copyFrom(new byte[2048])).build();
+
+    cache.put(smallId, small);
+    cache.put(largeId, large);
+
+    assertThat(cache.get(smallId).getGroup()).isEqualTo(small);
+    assertThat(cache.get(largeId)).isNull();
+  }
+}
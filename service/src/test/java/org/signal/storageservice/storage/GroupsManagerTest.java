@@ -45,11 +45,20 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.diskuv.communicatorservice.storage.configuration.DiskuvGroupsConfiguration.CHECKSUM_SHARED_KEY_SIZE;
@@ -58,6 +67,7 @@ import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.Assert.assertFalse;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
 public class GroupsManagerTest {
@@ -295,6 +305,173 @@ public class GroupsManagerTest {
     assertThat(Group.parseFrom(dataCells.get(0).getValue())).isNotEqualTo(updated);
   }
 
+  @Test
+  public void testUpdateGroupWithChangeRecord() throws Exception {
+    GroupsManager         groupsManager = new GroupsManager(groupsDao, groupLogDao, true);
+
+    GroupSecretParams groupSecretParams = GroupSecretParams.generate();
+    GroupPublicParams groupPublicParams = groupSecretParams.getPublicParams();
+    ByteString        groupId           = ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize());
+
+    Group group = Group.newBuilder()
+                       .setVersion(0)
+                       .setTitle(ByteString.copyFromUtf8("Some title"))
+                       .setAvatar("Some avatar")
+                       .setAccessControl(AccessControl.newBuilder()
+                                                      .setMembers(AccessControl.AccessRequired.MEMBER)
+                                                      .setAttributes(AccessControl.AccessRequired.MEMBER))
+                       .setPublicKey(ByteString.copyFrom(groupPublicParams.serialize()))
+                       .build();
+
+    assertTrue(groupsManager.createGroup(groupId, group).get());
+
+    Group       updated = group.toBuilder()
+                               .setVersion(1)
+                               .setTitle(ByteString.copyFromUtf8("Updated title"))
+                               .build();
+    GroupChange change  = GroupChange.newBuilder()
+                                     .setActions(Actions.newBuilder()
+                                                        .setVersion(1)
+                                                        .setModifyTitle(ModifyTitleAction.newBuilder().setTitle(ByteString.copyFromUtf8("Updated title")))
+                                                        .build()
+                                                        .toByteString())
+                                     .build();
+
+    assertThat(groupsManager.updateGroupWithChangeRecord(groupId, updated, change, group).get()).isEmpty();
+    assertThat(groupsManager.getGroup(groupId).get()).isEqualTo(Optional.of(updated));
+    assertThat(groupLogDao.getRecordsFromVersion(groupId, 1, 2).get())
+        .isEqualTo(List.of(GroupChangeState.newBuilder().setGroupChange(change).setGroupState(updated).build()));
+
+    // a stale update writes neither the group nor its change record
+    Group stale = group.toBuilder()
+                       .setVersion(1)
+                       .setTitle(ByteString.copyFromUtf8("Stale title"))
+                       .build();
+
+    assertThat(groupsManager.updateGroupWithChangeRecord(groupId, stale, change, group).get()).isEqualTo(Optional.of(updated));
+    assertThat(groupLogDao.getRecordsFromVersion(groupId, 1, 3).get().size()).isEqualTo(1);
+  }
+
+  @Test
+  public void testUpdateGroupWithExistingChangeRecord() throws Exception {
+    GroupsManager         groupsManager = new GroupsManager(groupsDao, groupLogDao, true);
+
+    GroupSecretParams groupSecretParams = GroupSecretParams.generate();
+    GroupPublicParams groupPublicParams = groupSecretParams.getPublicParams();
+    ByteString        groupId           = ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize());
+
+    Group group = Group.newBuilder()
+                       .setVersion(0)
+                       .setTitle(ByteString.copyFromUtf8("Some title"))
+                       .setAvatar("Some avatar")
+                       .setAccessControl(AccessControl.newBuilder()
+                                                      .setMembers(AccessControl.AccessRequired.MEMBER)
+                                                      .setAttributes(AccessControl.AccessRequired.MEMBER))
+                       .setPublicKey(ByteString.copyFrom(groupPublicParams.serialize()))
+                       .build();
+
+    assertTrue(groupsManager.createGroup(groupId, group).get());
+
+    Group       leftover       = group.toBuilder()
+                                      .setVersion(1)
+                                      .setTitle(ByteString.copyFromUtf8("Leftover title"))
+                                      .build();
+    GroupChange leftoverChange = GroupChange.newBuilder()
+                                            .setActions(Actions.newBuilder()
+                                                               .setVersion(1)
+                                                               .setModifyTitle(ModifyTitleAction.newBuilder().setTitle(ByteString.copyFromUtf8("Leftover title")))
+                                                               .build()
+                                                               .toByteString())
+                                            .build();
+
+    // a change record of version 1 left behind without the group update it belonged to
+    assertTrue(groupLogDao.append(groupId, 1, leftoverChange, leftover, group).get());
+
+    Group       updated = group.toBuilder()
+                               .setVersion(1)
+                               .setTitle(ByteString.copyFromUtf8("Updated title"))
+                               .build();
+    GroupChange change  = GroupChange.newBuilder()
+                                     .setActions(Actions.newBuilder()
+                                                        .setVersion(1)
+                                                        .setModifyTitle(ModifyTitleAction.newBuilder().setTitle(ByteString.copyFromUtf8("Updated title")))
+                                                        .build()
+                                                        .toByteString())
+                                     .build();
+
+    // the update is rejected with the current group rather than failing
+    assertThat(groupsManager.updateGroupWithChangeRecord(groupId, updated, change, group).get()).isEqualTo(Optional.of(group));
+    assertThat(groupsManager.getGroup(groupId).get()).isEqualTo(Optional.of(group));
+    assertThat(groupLogDao.getRecordsFromVersion(groupId, 1, 2).get())
+        .isEqualTo(List.of(GroupChangeState.newBuilder().setGroupChange(leftoverChange).setGroupState(leftover).build()));
+  }
+
+  @Test
+  public void testRacingUpdatesWithChangeRecord() throws Exception {
+    GroupsManager         groupsManager = new GroupsManager(groupsDao, groupLogDao, true);
+
+    GroupSecretParams groupSecretParams = GroupSecretParams.generate();
+    GroupPublicParams groupPublicParams = groupSecretParams.getPublicParams();
+    ByteString        groupId           = ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize());
+
+    Group group = Group.newBuilder()
+                       .setVersion(0)
+                       .setTitle(ByteString.copyFromUtf8("Some title"))
+                       .setAccessControl(AccessControl.newBuilder()
+                                                      .setMembers(AccessControl.AccessRequired.MEMBER)
+                                                      .setAttributes(AccessControl.AccessRequired.MEMBER))
+                       .setPublicKey(ByteString.copyFrom(groupPublicParams.serialize()))
+                       .build();
+
+    assertTrue(groupsManager.createGroup(groupId, group).get());
+
+    // every racer keeps modifying whatever version it last read until one of its modifications wins
+    int                   racers   = 8;
+    ExecutorService       executor = Executors.newFixedThreadPool(racers);
+    CountDownLatch        start    = new CountDownLatch(1);
+    List<Future<Integer>> attempts = new ArrayList<>();
+
+    for (int i = 0; i < racers; i++) {
+      ByteString title = ByteString.copyFromUtf8("Title from racer " + i);
+      attempts.add(executor.submit(() -> {
+        start.await();
+        for (int attempt = 1; attempt <= 100; attempt++) {
+          Group       current = groupsManager.getGroup(groupId).join().orElseThrow();
+          Group       next    = current.toBuilder().setVersion(current.getVersion() + 1).setTitle(title).build();
+          GroupChange change  = GroupChange.newBuilder().setActions(title).build();
+
+          if (groupsManager.updateGroupWithChangeRecord(groupId, next, change, current).join().isEmpty()) {
+            return attempt;
+          }
+        }
+        throw new AssertionError("Racer never won");
+      }));
+    }
+
+    start.countDown();
+    for (Future<Integer> attempt : attempts) {
+      attempt.get(60, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+
+    // no modification was lost, and the log holds exactly the change that produced each version
+    Group finalGroup = groupsManager.getGroup(groupId).get().orElseThrow();
+    assertThat(finalGroup.getVersion()).isEqualTo(racers);
+
+    List<GroupChangeState> changeStates = groupLogDao.getRecordsFromVersion(groupId, 1, racers + 1).get();
+    assertThat(changeStates.size()).isEqualTo(racers);
+
+    Set<ByteString> titles = new HashSet<>();
+    for (int version = 1; version <= racers; version++) {
+      GroupChangeState changeState = changeStates.get(version - 1);
+      assertThat(changeState.getGroupState().getVersion()).isEqualTo(version);
+      assertThat(changeState.getGroupChange().getActions()).isEqualTo(changeState.getGroupState().getTitle());
+      titles.add(changeState.getGroupState().getTitle());
+    }
+    assertThat(titles.size()).isEqualTo(racers);
+    assertThat(changeStates.get(racers - 1).getGroupState()).isEqualTo(finalGroup);
+  }
+
   @Test
   public void testGetGroup() throws Exception {
     // WAS: GroupsManager groupsManager = new GroupsManager(client, GROUPS_TABLE_ID, GROUP_LOGS_TABLE_ID);
@@ -350,6 +527,133 @@ public class GroupsManagerTest {
   }
 
 
+  @Test
+  public void testGetGroupThroughGroupStateCache() throws Exception {
+    Clock         clock         = mock(Clock.class);
+    GroupsManager groupsManager = new GroupsManager(groupsDao, groupLogDao, false, Optional.of(new GroupStateCache(1024 * 1024, Duration.ofSeconds(1), clock)));
+    GroupsManager otherServer   = new GroupsManager(groupsDao, groupLogDao);
+
+    GroupSecretParams groupSecretParams = GroupSecretParams.generate();
+    GroupPublicParams groupPublicParams = groupSecretParams.getPublicParams();
+    ByteString        groupId           = ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize());
+
+    Group group = Group.newBuilder()
+                       .setVersion(0)
+                       .setTitle(ByteString.copyFromUtf8("Some title"))
+                       .setAccessControl(AccessControl.newBuilder()
+                                                      .setMembers(AccessControl.AccessRequired.MEMBER)
+                                                      .setAttributes(AccessControl.AccessRequired.MEMBER))
+                       .setPublicKey(ByteString.copyFrom(groupPublicParams.serialize()))
+                       .build();
+
+    when(clock.millis()).thenReturn(1000L);
+    assertTrue(groupsManager.createGroup(groupId, group).get());
+    clearInvocations(asyncClientWrapper.get());
+
+    // a fresh entry is served without reading DDB
+    assertThat(groupsManager.getGroup(groupId).get()).isEqualTo(Optional.of(group));
+    verify(asyncClientWrapper.get(), never()).getItem(any(GetItemRequest.class));
+
+    // an older entry is served after only the group version was read
+    when(clock.millis()).thenReturn(3000L);
+    assertThat(groupsManager.getGroup(groupId).get()).isEqualTo(Optional.of(group));
+    verify(asyncClientWrapper.get(), times(1)).getItem(argThat((GetItemRequest request) -> "groupVersion".equals(request.projectionExpression())));
+    verify(asyncClientWrapper.get(), times(1)).getItem(any(GetItemRequest.class));
+
+    // which makes it fresh again
+    assertThat(groupsManager.getGroup(groupId).get()).isEqualTo(Optional.of(group));
+    verify(asyncClientWrapper.get(), times(1)).getItem(any(GetItemRequest.class));
+
+    // a change made by another server is picked up once the entry is no longer fresh
+    Group updated = group.toBuilder().setVersion(1).setTitle(ByteString.copyFromUtf8("Updated title")).build();
+    assertThat(otherServer.updateGroup(groupId, updated).get()).isEmpty();
+
+    assertThat(groupsManager.getGroup(groupId).get()).isEqualTo(Optional.of(group));
+
+    when(clock.millis()).thenReturn(5000L);
+    assertThat(groupsManager.getGroup(groupId).get()).isEqualTo(Optional.of(updated));
+  }
+
+  @Test
+  public void testGroupStateCacheWithoutFreshnessSeesOtherServerChanges() throws Exception {
+    Clock         clock         = mock(Clock.class);
+    GroupsManager groupsManager = new GroupsManager(groupsDao, groupLogDao, false, Optional.of(new GroupStateCache(1024 * 1024, Duration.ZERO, clock)));
+    GroupsManager otherServer   = new GroupsManager(groupsDao, groupLogDao);
+
+    GroupSecretParams groupSecretParams = GroupSecretParams.generate();
+    GroupPublicParams groupPublicParams = groupSecretParams.getPublicParams();
+    ByteString        groupId           = ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize());
+
+    Group group = Group.newBuilder()
+                       .setVersion(0)
+                       .setTitle(ByteString.copyFromUtf8("Some title"))
+                       .setAccessControl(AccessControl.newBuilder()
+                                                      .setMembers(AccessControl.AccessRequired.MEMBER)
+                                                      .setAttributes(AccessControl.AccessRequired.MEMBER))
+                       .setPublicKey(ByteString.copyFrom(groupPublicParams.serialize()))
+                       .build();
+
+    when(clock.millis()).thenReturn(1000L);
+    assertTrue(groupsManager.createGroup(groupId, group).get());
+    clearInvocations(asyncClientWrapper.get());
+
+    // every hit reads the group version, even with no time passing
+    assertThat(groupsManager.getGroup(groupId).get()).isEqualTo(Optional.of(group));
+    verify(asyncClientWrapper.get(), times(1)).getItem(argThat((GetItemRequest request) -> "groupVersion".equals(request.projectionExpression())));
+    verify(asyncClientWrapper.get(), times(1)).getItem(any(GetItemRequest.class));
+
+    // so a change made by another server is picked up by the next read
+    Group updated = group.toBuilder().setVersion(1).setTitle(ByteString.copyFromUtf8("Updated title")).build();
+    assertThat(otherServer.updateGroup(groupId, updated).get()).isEmpty();
+
+    assertThat(groupsManager.getGroup(groupId).get()).isEqualTo(Optional.of(updated));
+  }
+
+  @Test
+  public void testConditionalUpdatesRefreshGroupStateCache() throws Exception {
+    Clock         clock         = mock(Clock.class);
+    GroupsManager groupsManager = new GroupsManager(groupsDao, groupLogDao, true, Optional.of(new GroupStateCache(1024 * 1024, Duration.ofSeconds(1), clock)));
+    GroupsManager otherServer   = new GroupsManager(groupsDao, groupLogDao, true);
+
+    GroupSecretParams groupSecretParams = GroupSecretParams.generate();
+    GroupPublicParams groupPublicParams = groupSecretParams.getPublicParams();
+    ByteString        groupId           = ByteString.copyFrom(groupPublicParams.getGroupIdentifier().serialize());
+
+    Group group = Group.newBuilder()
+                       .setVersion(0)
+                       .setTitle(ByteString.copyFromUtf8("Some title"))
+                       .setAccessControl(AccessControl.newBuilder()
+                                                      .setMembers(AccessControl.AccessRequired.MEMBER)
+                                                      .setAttributes(AccessControl.AccessRequired.MEMBER))
+                       .setPublicKey(ByteString.copyFrom(groupPublicParams.serialize()))
+                       .build();
+
+    when(clock.millis()).thenReturn(1000L);
+    assertTrue(groupsManager.createGroup(groupId, group).get());
+
+    // a successful update replaces the cached group
+    Group       updated = group.toBuilder().setVersion(1).setTitle(ByteString.copyFromUtf8("Updated title")).build();
+    GroupChange change  = GroupChange.newBuilder().setActions(updated.getTitle()).build();
+
+    assertThat(groupsManager.updateGroupWithChangeRecord(groupId, updated, change, group).get()).isEmpty();
+    assertThat(groupsManager.getGroup(groupId).get()).isEqualTo(Optional.of(updated));
+
+    // another server moves the group on, so an update from the cached state loses the conditional
+    // update and the current group replaces the cached one
+    Group       theirs       = updated.toBuilder().setVersion(2).setTitle(ByteString.copyFromUtf8("Their title")).build();
+    Group       ours         = updated.toBuilder().setVersion(2).setTitle(ByteString.copyFromUtf8("Our title")).build();
+    GroupChange theirChange  = GroupChange.newBuilder().setActions(theirs.getTitle()).build();
+    GroupChange ourChange    = GroupChange.newBuilder().setActions(ours.getTitle()).build();
+
+    assertThat(otherServer.updateGroupWithChangeRecord(groupId, theirs, theirChange, updated).get()).isEmpty();
+    assertThat(groupsManager.getGroup(groupId).get()).isEqualTo(Optional.of(updated));
+    assertThat(groupsManager.updateGroupWithChangeRecord(groupId, ours, ourChange, updated).get()).isEqualTo(Optional.of(theirs));
+
+    clearInvocations(asyncClientWrapper.get());
+    assertThat(groupsManager.getGroup(groupId).get()).isEqualTo(Optional.of(theirs));
+    verify(asyncClientWrapper.get(), never()).getItem(any(GetItemRequest.class));
+  }
+
   @Test
   public void testReadError() {
     /* WAS ...
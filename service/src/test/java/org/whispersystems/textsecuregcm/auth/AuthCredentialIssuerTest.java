@@ -0,0 +1,97 @@
+package org.whispersystems.textsecuregcm.auth;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.signal.zkgroup.ServerSecretParams;
+import org.signal.zkgroup.auth.AuthCredentialResponse;
+import org.signal.zkgroup.auth.ClientZkAuthOperations;
+import org.signal.zkgroup.auth.ServerZkAuthOperations;
+import org.whispersystems.textsecuregcm.entities.GroupCredentials;
+
+import java.time.Clock;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AuthCredentialIssuerTest {
+
+    private static final ServerSecretParams SERVER_SECRET_PARAMS = ServerSecretParams.generate();
+    private static final int                TODAY                = 18_000;
+
+    private final Clock clock = mock(Clock.class);
+    private final UUID  uuid  = UUID.randomUUID();
+
+    private ExecutorService      executor;
+    private AuthCredentialIssuer issuer;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        issuer   = new AuthCredentialIssuer(new ServerZkAuthOperations(SERVER_SECRET_PARAMS), 100, Optional.of(executor), clock);
+
+        when(clock.millis()).thenReturn(TimeUnit.DAYS.toMillis(TODAY) + 1);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testWeekIssuedConcurrentlyInOrder() throws Exception {
+        List<GroupCredentials.GroupCredential> credentials = issuer.issueAuthCredentials(uuid, TODAY, TODAY + 7);
+
+        assertThat(credentials).hasSize(8);
+
+        ClientZkAuthOperations clientZkAuthOperations = new ClientZkAuthOperations(SERVER_SECRET_PARAMS.getPublicParams());
+
+        for (int i = 0; i <= 7; i++) {
+            assertThat(credentials.get(i).getRedemptionTime()).isEqualTo(TODAY + i);
+            clientZkAuthOperations.receiveAuthCredential(uuid, TODAY + i, new AuthCredentialResponse(credentials.get(i).getCredential()));
+        }
+    }
+
+    @Test
+    public void testReusedWithinRedemptionDay() {
+        List<GroupCredentials.GroupCredential> credentials = issuer.issueAuthCredentials(uuid, TODAY, TODAY + 7);
+        long                                   issued      = issuer.getIssuedCount();
+
+        when(clock.millis()).thenReturn(TimeUnit.DAYS.toMillis(TODAY + 1) - 1);
+        List<GroupCredentials.GroupCredential> reused = issuer.issueAuthCredentials(uuid, TODAY, TODAY + 7);
+
+        assertThat(issuer.getIssuedCount()).isEqualTo(issued);
+
+        for (int i = 0; i <= 7; i++) {
+            assertThat(reused.get(i).getCredential()).isSameAs(credentials.get(i).getCredential());
+        }
+    }
+
+    @Test
+    public void testReissuedAfterRedemptionDay() {
+        List<GroupCredentials.GroupCredential> credentials = issuer.issueAuthCredentials(uuid, TODAY, TODAY + 1);
+        long                                   issued      = issuer.getIssuedCount();
+
+        when(clock.millis()).thenReturn(TimeUnit.DAYS.toMillis(TODAY + 1));
+        List<GroupCredentials.GroupCredential> later = issuer.issueAuthCredentials(uuid, TODAY, TODAY + 1);
+
+        assertThat(issuer.getIssuedCount()).isEqualTo(issued + 1);
+        assertThat(later.get(0).getCredential()).isNotSameAs(credentials.get(0).getCredential());
+        assertThat(later.get(1).getCredential()).isSameAs(credentials.get(1).getCredential());
+    }
+
+    @Test
+    public void testNotReusedAcrossAccounts() {
+        List<GroupCredentials.GroupCredential> credentials = issuer.issueAuthCredentials(uuid, TODAY, TODAY);
+        List<GroupCredentials.GroupCredential> other       = issuer.issueAuthCredentials(UUID.randomUUID(), TODAY, TODAY);
+
+        assertThat(other.get(0).getCredential()).isNotSameAs(credentials.get(0).getCredential());
+    }
+}
@@ -0,0 +1,74 @@
+package org.whispersystems.textsecuregcm.auth;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.whispersystems.textsecuregcm.crypto.Curve;
+import org.whispersystems.textsecuregcm.storage.Account;
+import org.whispersystems.textsecuregcm.storage.Device;
+
+import java.time.Clock;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SenderCertificateCacheTest {
+
+    private static final String SIGNING_CERTIFICATE = "CiUIDBIhBbTz4h1My+tt+vw+TVscgUe/DeHS0W02tPWAWbTO2xc3EkD+go4bJnU0AcnFfbOLKoiBfCzouZtDYMOVi69rE7r4U9cXREEqOkUmU2WJBjykAxWPCcSTmVTYHDw7hkSp/puG";
+    private static final String SIGNING_KEY         = "ABOxG29xrfq4E7IrW11Eg7+HBbtba9iiS0500YoBjn4=";
+    private static final String IDENTITY_KEY        = "BcxxDU9FGMda70E7+Uvm7pnQcEdXQ64aJCpPUeRSfcFo";
+    private static final String NEW_IDENTITY_KEY    = "BQcixKf7KQvA5DZ4szVqiy9cP41U5MTboJFv0l51mL0T";
+
+    private final Clock   clock   = mock(Clock.class);
+    private final Account account = mock(Account.class);
+    private final Device  device  = mock(Device.class);
+
+    private SenderCertificateCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        CertificateGenerator certificateGenerator = new CertificateGenerator(Base64.getDecoder().decode(SIGNING_CERTIFICATE), Curve.decodePrivatePoint(Base64.getDecoder().decode(SIGNING_KEY)), 1);
+        cache = new SenderCertificateCache(certificateGenerator, 100, 0.5, clock);
+
+        when(clock.millis()).thenReturn(1_000_000L);
+        when(account.getIdentityKey()).thenReturn(IDENTITY_KEY);
+        when(account.getUuid()).thenReturn(UUID.randomUUID());
+        when(device.getId()).thenReturn(1L);
+    }
+
+    @Test
+    public void testReusedUntilRefreshFraction() throws Exception {
+        byte[] certificate = cache.createFor(account, device, true);
+
+        when(clock.millis()).thenReturn(1_000_000L + TimeUnit.HOURS.toMillis(12) - 1);
+        assertThat(cache.createFor(account, device, true)).isSameAs(certificate);
+
+        when(clock.millis()).thenReturn(1_000_000L + TimeUnit.HOURS.toMillis(12));
+        assertThat(cache.createFor(account, device, true)).isNotSameAs(certificate);
+    }
+
+    @Test
+    public void testNotReusedAfterIdentityKeyChange() throws Exception {
+        byte[] certificate = cache.createFor(account, device, true);
+
+        when(account.getIdentityKey()).thenReturn(NEW_IDENTITY_KEY);
+        byte[] newCertificate = cache.createFor(account, device, true);
+
+        assertThat(newCertificate).isNotSameAs(certificate);
+        assertThat(cache.createFor(account, device, true)).isSameAs(newCertificate);
+    }
+
+    @Test
+    public void testNotSharedBetweenDevices() throws Exception {
+        Device otherDevice = mock(Device.class);
+        when(otherDevice.getId()).thenReturn(2L);
+
+        byte[] certificate = cache.createFor(account, device, true);
+
+        assertThat(cache.createFor(account, otherDevice, true)).isNotSameAs(certificate);
+        assertThat(cache.createFor(account, device, true)).isSameAs(certificate);
+    }
+}
@@ -5,20 +5,40 @@
 
 package org.whispersystems.textsecuregcm.storage;
 
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.document.DynamoDB;
+import com.amazonaws.services.dynamodbv2.document.Item;
+import com.amazonaws.services.dynamodbv2.document.Table;
+import com.amazonaws.services.dynamodbv2.document.spec.QuerySpec;
+import com.amazonaws.services.dynamodbv2.document.spec.UpdateItemSpec;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Test;
 import org.whispersystems.textsecuregcm.entities.PreKey;
+import org.whispersystems.textsecuregcm.util.UUIDUtil;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 
 public class KeysDynamoDbTest {
@@ -34,7 +54,7 @@ public class KeysDynamoDbTest {
 
     @Before
     public void setup() {
-        keysDynamoDb = new KeysDynamoDb(dynamoDbRule.getDynamoDB(), KeysDynamoDbRule.TABLE_NAME);
+        keysDynamoDb = new KeysDynamoDb(dynamoDbRule.getClient(), dynamoDbRule.getDynamoDB(), KeysDynamoDbRule.TABLE_NAME);
 
         account = mock(Account.class);
         when(account.getNumber()).thenReturn(ACCOUNT_NUMBER);
@@ -106,6 +126,270 @@ public class KeysDynamoDbTest {
         assertEquals(1, keysDynamoDb.getCount(account, DEVICE_ID));
     }
 
+    @Test
+    public void testCountMaintainedAcrossTakes() {
+        keysDynamoDb.store(account, DEVICE_ID, List.of(new PreKey(1, "public-key"), new PreKey(2, "different-public-key"), new PreKey(3, "third-public-key")));
+        assertEquals(3, keysDynamoDb.getCount(account, DEVICE_ID));
+
+        keysDynamoDb.take(account, DEVICE_ID);
+        assertEquals(2, keysDynamoDb.getCount(account, DEVICE_ID));
+
+        keysDynamoDb.take(account, DEVICE_ID);
+        keysDynamoDb.take(account, DEVICE_ID);
+        assertEquals(0, keysDynamoDb.getCount(account, DEVICE_ID));
+
+        assertEquals(Optional.empty(), keysDynamoDb.take(account, DEVICE_ID));
+        assertEquals("Taking from an empty device should not decrement the count",
+                0, keysDynamoDb.getCount(account, DEVICE_ID));
+    }
+
+    @Test
+    public void testCountItemNotTakenAsKey() {
+        keysDynamoDb.store(account, DEVICE_ID, List.of(new PreKey(1, "public-key")));
+
+        assertEquals(Optional.of(new PreKey(1, "public-key")), keysDynamoDb.take(account, DEVICE_ID));
+        assertEquals(Optional.empty(), keysDynamoDb.take(account, DEVICE_ID));
+    }
+
+    @Test
+    public void testTakeWhileStoring() {
+        final DynamoDB dynamoDB = spy(dynamoDbRule.getDynamoDB());
+        final Table    table    = spy(dynamoDB.getTable(KeysDynamoDbRule.TABLE_NAME));
+        doReturn(table).when(dynamoDB).getTable(KeysDynamoDbRule.TABLE_NAME);
+
+        final KeysDynamoDb  interleavedKeysDynamoDb = new KeysDynamoDb(dynamoDbRule.getClient(), dynamoDB, KeysDynamoDbRule.TABLE_NAME);
+        final AtomicBoolean taken                   = new AtomicBoolean();
+
+        // Take a key after the new keys are written but before the store writes their count
+        doAnswer(invocation -> {
+            final UpdateItemSpec updateItemSpec = invocation.getArgument(0);
+
+            if (updateItemSpec.getUpdateExpression().startsWith("SET") && taken.compareAndSet(false, true)) {
+                assertEquals(Optional.of(new PreKey(1, "public-key")), interleavedKeysDynamoDb.take(account, DEVICE_ID));
+            }
+
+            return invocation.callRealMethod();
+        }).when(table).updateItem(any(UpdateItemSpec.class));
+
+        interleavedKeysDynamoDb.store(account, DEVICE_ID, List.of(new PreKey(1, "public-key"), new PreKey(2, "second-public-key")));
+
+        assertTrue(taken.get());
+        assertEquals("A take while storing should not be overwritten by the stored count",
+                1, keysDynamoDb.getCount(account, DEVICE_ID));
+        assertEquals(1, countStoredKeys(DEVICE_ID));
+    }
+
+    @Test
+    public void testConcurrentStoreAndTake() throws Exception {
+        final List<PreKey> preKeys = new ArrayList<>();
+
+        for (int i = 0; i < 30; i++) {
+            preKeys.add(new PreKey(i, "public-key-" + i));
+        }
+
+        keysDynamoDb.store(account, DEVICE_ID, preKeys);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            final List<Callable<Void>> tasks = new ArrayList<>();
+
+            for (int thread = 0; thread < 2; thread++) {
+                tasks.add(() -> {
+                    for (int i = 0; i < 5; i++) {
+                        keysDynamoDb.store(account, DEVICE_ID, preKeys);
+                    }
+
+                    return null;
+                });
+
+                tasks.add(() -> {
+                    for (int i = 0; i < 20; i++) {
+                        keysDynamoDb.take(account, DEVICE_ID);
+                    }
+
+                    return null;
+                });
+            }
+
+            for (final Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(countStoredKeys(DEVICE_ID), keysDynamoDb.getCount(account, DEVICE_ID));
+    }
+
+    @Test
+    public void testConcurrentTakesAcrossDevices() throws Exception {
+        final List<PreKey> preKeys = new ArrayList<>();
+
+        for (int i = 0; i < 20; i++) {
+            preKeys.add(new PreKey(i, "public-key-" + i));
+        }
+
+        keysDynamoDb.store(account, DEVICE_ID, preKeys);
+        keysDynamoDb.store(account, DEVICE_ID + 1, preKeys);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final Set<Long>       takenFromFirstDevice  = ConcurrentHashMap.newKeySet();
+        final Set<Long>       takenFromSecondDevice = ConcurrentHashMap.newKeySet();
+
+        try {
+            final List<Callable<Void>> tasks = new ArrayList<>();
+
+            for (int thread = 0; thread < 2; thread++) {
+                for (final long deviceId : List.of(DEVICE_ID, DEVICE_ID + 1)) {
+                    final Set<Long> taken = deviceId == DEVICE_ID ? takenFromFirstDevice : takenFromSecondDevice;
+
+                    tasks.add(() -> {
+                        for (int i = 0; i < 10; i++) {
+                            keysDynamoDb.take(account, deviceId).ifPresent(preKey -> assertTrue(taken.add(preKey.getKeyId())));
+                        }
+
+                        return null;
+                    });
+                }
+            }
+
+            for (final Future<Void> result : executor.invokeAll(tasks)) {
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Takes of one account share its counter item but must not keep each other from taking a key
+        assertEquals(20, takenFromFirstDevice.size());
+        assertEquals(20, takenFromSecondDevice.size());
+        assertEquals(0, keysDynamoDb.getCount(account, DEVICE_ID));
+        assertEquals(0, keysDynamoDb.getCount(account, DEVICE_ID + 1));
+    }
+
+    @Test
+    public void testCountRepairedAfterFailedDecrement() {
+        final DynamoDB dynamoDB = spy(dynamoDbRule.getDynamoDB());
+        final Table    table    = spy(dynamoDB.getTable(KeysDynamoDbRule.TABLE_NAME));
+        doReturn(table).when(dynamoDB).getTable(KeysDynamoDbRule.TABLE_NAME);
+
+        final KeysDynamoDb failingKeysDynamoDb = new KeysDynamoDb(dynamoDbRule.getClient(), dynamoDB, KeysDynamoDbRule.TABLE_NAME);
+
+        failingKeysDynamoDb.store(account, DEVICE_ID, List.of(new PreKey(1, "public-key")));
+
+        doAnswer(invocation -> {
+            final UpdateItemSpec updateItemSpec = invocation.getArgument(0);
+
+            if (updateItemSpec.getUpdateExpression().startsWith("ADD #count :delta")) {
+                throw new AmazonServiceException("simulated failure");
+            }
+
+            return invocation.callRealMethod();
+        }).when(table).updateItem(any(UpdateItemSpec.class));
+
+        assertEquals(Optional.of(new PreKey(1, "public-key")), failingKeysDynamoDb.take(account, DEVICE_ID));
+        assertEquals(1, keysDynamoDb.getCount(account, DEVICE_ID));
+
+        assertEquals(Optional.empty(), keysDynamoDb.take(account, DEVICE_ID));
+        assertEquals(0, keysDynamoDb.getCount(account, DEVICE_ID));
+    }
+
+    @Test
+    public void testRepairCount() {
+        keysDynamoDb.store(account, DEVICE_ID, List.of(new PreKey(1, "public-key"), new PreKey(2, "different-public-key")));
+
+        // Simulate keys written without maintaining the counter, e.g. before counters existed
+        dynamoDbRule.getDynamoDB().getTable(KeysDynamoDbRule.TABLE_NAME)
+                    .putItem(new Item().withBinary(KeysDynamoDb.KEY_ACCOUNT_UUID, UUIDUtil.toBytes(account.getUuid()))
+                                       .withBinary(KeysDynamoDb.KEY_DEVICE_ID_KEY_ID, ByteBuffer.allocate(16).putLong(DEVICE_ID).putLong(3).array())
+                                       .withString(KeysDynamoDb.KEY_PUBLIC_KEY, "unaccounted-public-key"));
+
+        assertEquals(2, keysDynamoDb.getCount(account, DEVICE_ID));
+        assertEquals(3, keysDynamoDb.repairCount(account, DEVICE_ID));
+        assertEquals(3, keysDynamoDb.getCount(account, DEVICE_ID));
+    }
+
+    @Test
+    public void testCountRepairedWhenMissing() {
+        dynamoDbRule.getDynamoDB().getTable(KeysDynamoDbRule.TABLE_NAME)
+                    .putItem(new Item().withBinary(KeysDynamoDb.KEY_ACCOUNT_UUID, UUIDUtil.toBytes(account.getUuid()))
+                                       .withBinary(KeysDynamoDb.KEY_DEVICE_ID_KEY_ID, ByteBuffer.allocate(16).putLong(DEVICE_ID).putLong(1).array())
+                                       .withString(KeysDynamoDb.KEY_PUBLIC_KEY, "legacy-public-key"));
+
+        assertEquals(1, keysDynamoDb.getCount(account, DEVICE_ID));
+
+        keysDynamoDb.take(account, DEVICE_ID);
+        assertEquals(0, keysDynamoDb.getCount(account, DEVICE_ID));
+    }
+
+    @Test
+    public void testAppend() {
+        keysDynamoDb.store(account, DEVICE_ID, List.of(new PreKey(1, "public-key"), new PreKey(2, "second-public-key")));
+
+        keysDynamoDb.append(account, DEVICE_ID, List.of(new PreKey(3, "third-public-key"), new PreKey(4, "fourth-public-key")));
+        assertEquals("Appending keys should keep the keys already stored",
+                4, keysDynamoDb.getCount(account, DEVICE_ID));
+        assertEquals(4, keysDynamoDb.repairCount(account, DEVICE_ID));
+
+        assertEquals(Optional.of(new PreKey(1, "public-key")), keysDynamoDb.take(account, DEVICE_ID));
+    }
+
+    @Test
+    public void testAppendConflictingKeyIds() {
+        keysDynamoDb.store(account, DEVICE_ID, List.of(new PreKey(1, "public-key"), new PreKey(2, "second-public-key")));
+
+        keysDynamoDb.append(account, DEVICE_ID, List.of(new PreKey(2, "replacement-public-key"),
+                                                        new PreKey(3, "third-public-key"),
+                                                        new PreKey(3, "duplicate-third-public-key")));
+
+        assertEquals("Conflicting or duplicated key IDs should only be counted once",
+                3, keysDynamoDb.getCount(account, DEVICE_ID));
+        assertEquals(3, keysDynamoDb.repairCount(account, DEVICE_ID));
+
+        assertEquals(Optional.of(new PreKey(1, "public-key")), keysDynamoDb.take(account, DEVICE_ID));
+        assertEquals(Optional.of(new PreKey(2, "replacement-public-key")), keysDynamoDb.take(account, DEVICE_ID));
+        assertEquals(Optional.of(new PreKey(3, "duplicate-third-public-key")), keysDynamoDb.take(account, DEVICE_ID));
+        assertEquals(Optional.empty(), keysDynamoDb.take(account, DEVICE_ID));
+    }
+
+    @Test
+    public void testAppendTopUpAfterTakes() {
+        keysDynamoDb.store(account, DEVICE_ID, List.of(new PreKey(1, "public-key"), new PreKey(2, "second-public-key")));
+        keysDynamoDb.take(account, DEVICE_ID);
+        keysDynamoDb.take(account, DEVICE_ID);
+
+        keysDynamoDb.append(account, DEVICE_ID, List.of(new PreKey(3, "third-public-key")));
+        assertEquals(1, keysDynamoDb.getCount(account, DEVICE_ID));
+
+        keysDynamoDb.append(account, DEVICE_ID, List.of());
+        assertEquals(1, keysDynamoDb.getCount(account, DEVICE_ID));
+    }
+
+    @Test
+    public void testAppendNegativeKeyIds() {
+        keysDynamoDb.store(account, DEVICE_ID, List.of(new PreKey(-2, "negative-public-key"), new PreKey(1, "public-key")));
+
+        keysDynamoDb.append(account, DEVICE_ID, List.of(new PreKey(-2, "replacement-negative-public-key"),
+                                                        new PreKey(-1, "second-negative-public-key"),
+                                                        new PreKey(2, "second-public-key")));
+
+        assertEquals("A negative key ID already stored should be found as a replacement",
+                4, keysDynamoDb.getCount(account, DEVICE_ID));
+        assertEquals(4, keysDynamoDb.repairCount(account, DEVICE_ID));
+    }
+
+    @Test
+    public void testAppendWithoutCounter() {
+        dynamoDbRule.getDynamoDB().getTable(KeysDynamoDbRule.TABLE_NAME)
+                    .putItem(new Item().withBinary(KeysDynamoDb.KEY_ACCOUNT_UUID, UUIDUtil.toBytes(account.getUuid()))
+                                       .withBinary(KeysDynamoDb.KEY_DEVICE_ID_KEY_ID, ByteBuffer.allocate(16).putLong(DEVICE_ID).putLong(1).array())
+                                       .withString(KeysDynamoDb.KEY_PUBLIC_KEY, "legacy-public-key"));
+
+        keysDynamoDb.append(account, DEVICE_ID, List.of(new PreKey(2, "second-public-key")));
+        assertEquals(2, keysDynamoDb.getCount(account, DEVICE_ID));
+    }
+
     @Test
     public void testDeleteByAccount() {
         keysDynamoDb.store(account, DEVICE_ID, List.of(new PreKey(1, "public-key"), new PreKey(2, "different-public-key")));
@@ -133,4 +417,20 @@ public class KeysDynamoDbTest {
         assertEquals(0, keysDynamoDb.getCount(account, DEVICE_ID));
         assertEquals(1, keysDynamoDb.getCount(account, DEVICE_ID + 1));
     }
+
+    private int countStoredKeys(final long deviceId) {
+        final QuerySpec querySpec = new QuerySpec().withKeyConditionExpression("#uuid = :uuid AND begins_with (#sort, :sortprefix)")
+                                                   .withNameMap(Map.of("#uuid", KeysDynamoDb.KEY_ACCOUNT_UUID, "#sort", KeysDynamoDb.KEY_DEVICE_ID_KEY_ID))
+                                                   .withValueMap(Map.of(":uuid", UUIDUtil.toBytes(account.getUuid()),
+                                                                        ":sortprefix", ByteBuffer.allocate(8).putLong(deviceId).array()))
+                                                   .withConsistentRead(true);
+
+        int count = 0;
+
+        for (final Item ignored : dynamoDbRule.getDynamoDB().getTable(KeysDynamoDbRule.TABLE_NAME).query(querySpec)) {
+            count++;
+        }
+
+        return count;
+    }
 }
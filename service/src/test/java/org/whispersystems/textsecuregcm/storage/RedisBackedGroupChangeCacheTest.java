@@ -0,0 +1,168 @@
+package org.whispersystems.textsecuregcm.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.primitives.Bytes;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Before;
+import org.junit.Test;
+import org.whispersystems.textsecuregcm.redis.AbstractRedisClusterTest;
+
+public class RedisBackedGroupChangeCacheTest extends AbstractRedisClusterTest {
+
+    private static final int VERSION_COUNT = 64;
+
+    private RedisBackedGroupChangeCache groupChangeCache;
+    private byte[]                      groupId;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+
+        groupChangeCache = new RedisBackedGroupChangeCache(getRedisCluster(), 1);
+
+        groupId = new byte[32];
+        new Random().nextBytes(groupId);
+    }
+
+    @Test
+    public void testGetValueIfPresent() {
+        assertNull(groupChangeCache.getValueIfPresent(getKeyBytes(1)));
+
+        groupChangeCache.putValue(getKeyBytes(1), getValueBytes(1));
+
+        assertArrayEquals(getValueBytes(1), groupChangeCache.getValueIfPresent(getKeyBytes(1)));
+    }
+
+    @Test
+    public void testGetValuesIfPresent() {
+        final List<byte[]> keys = new ArrayList<>();
+
+        for (int version = 0; version < VERSION_COUNT; version++) {
+            keys.add(getKeyBytes(version));
+
+            // Leave a gap so that hits after a miss are exercised too
+            if (version != VERSION_COUNT / 2) {
+                groupChangeCache.putValue(getKeyBytes(version), getValueBytes(version));
+            }
+        }
+
+        final List<byte[]> values = groupChangeCache.getValuesIfPresent(keys);
+
+        assertEquals(VERSION_COUNT, values.size());
+
+        for (int version = 0; version < VERSION_COUNT; version++) {
+            if (version == VERSION_COUNT / 2) {
+                assertNull(values.get(version));
+            } else {
+                assertArrayEquals(getValueBytes(version), values.get(version));
+            }
+        }
+    }
+
+    @Test
+    public void testRedisEntriesExpire() throws InterruptedException {
+        final RedisBackedGroupChangeCache shortLivedCache =
+                new RedisBackedGroupChangeCache(getRedisCluster(), 1, Duration.ofSeconds(1), 0);
+
+        // A long-lived workload keeps appending versions; none of them may stay in Redis forever
+        for (int version = 0; version < VERSION_COUNT; version++) {
+            shortLivedCache.putValue(getKeyBytes(version), getValueBytes(version));
+        }
+
+        for (int version = 0; version < VERSION_COUNT; version++) {
+            final byte[] redisKey = getRedisKey(version);
+            final long ttl = getRedisCluster().withBinaryCluster(connection -> connection.sync().ttl(redisKey));
+            assertTrue("Every group change must have an expiry", ttl > 0);
+        }
+
+        Thread.sleep(2_000);
+
+        for (int version = 0; version < VERSION_COUNT; version++) {
+            assertNull(shortLivedCache.getValueIfPresent(getKeyBytes(version)));
+        }
+    }
+
+    @Test
+    public void testReadRefreshesExpiry() throws InterruptedException {
+        final RedisBackedGroupChangeCache shortLivedCache =
+                new RedisBackedGroupChangeCache(getRedisCluster(), 1, Duration.ofSeconds(2), 0);
+
+        shortLivedCache.putValue(getKeyBytes(1), getValueBytes(1));
+
+        for (int i = 0; i < 3; i++) {
+            Thread.sleep(1_000);
+            assertArrayEquals(getValueBytes(1), shortLivedCache.getValueIfPresent(getKeyBytes(1)));
+        }
+    }
+
+    @Test
+    public void testLocalHitRefreshesExpiry() throws InterruptedException {
+        final RedisBackedGroupChangeCache shortLivedCache =
+                new RedisBackedGroupChangeCache(getRedisCluster(), 1, Duration.ofSeconds(2), 1024);
+
+        shortLivedCache.putValue(getKeyBytes(1), getValueBytes(1));
+
+        // Every read is served by the local tier; without a refresh the Redis entry would be gone
+        // by the third second
+        for (int i = 0; i < 3; i++) {
+            Thread.sleep(1_000);
+            final long exists = getRedisCluster().withBinaryCluster(connection -> connection.sync().exists(getRedisKey(1)));
+            assertEquals(1, exists);
+            assertArrayEquals(getValueBytes(1), shortLivedCache.getValueIfPresent(getKeyBytes(1)));
+        }
+    }
+
+    @Test
+    public void testLocalTierIsBounded() {
+        final long maximumBytes = 1024;
+        final RedisBackedGroupChangeCache boundedCache =
+                new RedisBackedGroupChangeCache(getRedisCluster(), 1, Duration.ofMinutes(1), maximumBytes);
+
+        for (int version = 0; version < 1000; version++) {
+            boundedCache.putValue(getKeyBytes(version), getValueBytes(version));
+            assertTrue(boundedCache.getLocalCacheBytes() <= maximumBytes);
+        }
+
+        assertTrue(boundedCache.getLocalCacheBytes() > 0);
+
+        // Entries evicted from the local tier are still served from Redis
+        assertArrayEquals(getValueBytes(0), boundedCache.getValueIfPresent(getKeyBytes(0)));
+    }
+
+    @Test
+    public void testLocalTierServesWithoutRedis() {
+        groupChangeCache.putValue(getKeyBytes(1), getValueBytes(1));
+
+        getRedisCluster().useBinaryCluster(connection -> connection.sync().del(getRedisKey(1)));
+
+        assertArrayEquals(getValueBytes(1), groupChangeCache.getValueIfPresent(getKeyBytes(1)));
+        assertArrayEquals(getValueBytes(1), groupChangeCache.getValuesIfPresent(List.of(getKeyBytes(1))).get(0));
+
+        groupChangeCache.invalidateLocalCache();
+
+        assertNull(groupChangeCache.getValueIfPresent(getKeyBytes(1)));
+        assertEquals(0, groupChangeCache.getLocalCacheBytes());
+    }
+
+    private byte[] getRedisKey(final int version) {
+        return Bytes.concat("groupchange:".getBytes(StandardCharsets.UTF_8), getKeyBytes(version));
+    }
+
+    private byte[] getKeyBytes(final int version) {
+        return ByteBuffer.allocate(groupId.length + 4).put(groupId).putInt(version).array();
+    }
+
+    private static byte[] getValueBytes(final int version) {
+        return ("group-change-" + version).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,49 @@
+package org.whispersystems.textsecuregcm.synthetic;
+
+import org.junit.Test;
+import org.whispersystems.libsignal.ecc.ECKeyPair;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DeterministicSamplingTest {
+  private static final String       SALT           = "some salt";
+  private static final List<String> DISCRIMINATORS = Arrays.asList("rid1", "rid2", "spk1", "spk3", "ik");
+  private static final int          MIN_INCLUSIVE  = 1;
+  private static final int          MAX_EXCLUSIVE  = 16380 + 1;
+
+  @Test
+  public void testIntsMatchFreshDigest() throws Exception {
+    DeterministicSampling sampling = new DeterministicSampling(SALT);
+    int[]                 samples  = sampling.deterministicSampledIntsInRange(DISCRIMINATORS, MIN_INCLUSIVE, MAX_EXCLUSIVE);
+
+    for (int i = 0; i < DISCRIMINATORS.size(); i++) {
+      // sha256(salt | discriminator) with a digest of its own, as every sample was once derived
+      byte[] digest   = MessageDigest.getInstance("SHA-256").digest((SALT + DISCRIMINATORS.get(i)).getBytes(StandardCharsets.UTF_8));
+      int    expected = (int) (MIN_INCLUSIVE + (Math.abs(ByteBuffer.wrap(digest).getLong()) % (1 + MAX_EXCLUSIVE - MIN_INCLUSIVE)));
+
+      assertThat(samples[i]).isEqualTo(expected);
+      assertThat(sampling.deterministicSampledIntInRange(DISCRIMINATORS.get(i), MIN_INCLUSIVE, MAX_EXCLUSIVE)).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  public void testKeyPairsMatchPerCall() {
+    DeterministicSampling sampling = new DeterministicSampling(SALT);
+    List<ECKeyPair>       keyPairs = sampling.deterministicSampledKeyPairs(DISCRIMINATORS);
+
+    assertThat(keyPairs).hasSize(DISCRIMINATORS.size());
+
+    for (int i = 0; i < DISCRIMINATORS.size(); i++) {
+      ECKeyPair expected = new DeterministicSampling(SALT).deterministicSampledKeyPair(DISCRIMINATORS.get(i));
+
+      assertThat(keyPairs.get(i).getPublicKey().serialize()).isEqualTo(expected.getPublicKey().serialize());
+      assertThat(keyPairs.get(i).getPrivateKey().serialize()).isEqualTo(expected.getPrivateKey().serialize());
+    }
+  }
+}
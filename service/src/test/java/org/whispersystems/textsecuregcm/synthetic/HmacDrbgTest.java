@@ -5,8 +5,12 @@ import org.apache.commons.codec.binary.Hex;
 import org.junit.Test;
 import org.whispersystems.textsecuregcm.util.ByteUtil;
 
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 
 /**
  * Unit tests for {@link HmacDrbg}.
@@ -664,4 +668,70 @@ public class HmacDrbgTest {
     byte[] out = drbg.nextBytes(HmacDrbg.MAX_BYTES_TOTAL);
     assertEquals(HmacDrbg.MAX_BYTES_TOTAL, out.length);
   }
+
+  // ==== Recorded outputs of the implementation before it reused its buffers. ====
+  // Requests of odd sizes and across the 32-byte digest and 937-byte request boundaries.
+  private static byte[] recordedEntropy() {
+    byte[] entropy = new byte[HmacDrbg.ENTROPY_INPUT_SIZE_BYTES];
+    for (int i = 0; i < entropy.length; i++) {
+      entropy[i] = (byte) i;
+    }
+    return entropy;
+  }
+
+  private static byte[] recordedPersonalizationString() {
+    byte[] personalizationString = new byte[16];
+    for (int i = 0; i < personalizationString.length; i++) {
+      personalizationString[i] = (byte) (0xA0 + i);
+    }
+    return personalizationString;
+  }
+
+  @Test
+  public void testHmacDrbgRecordedOutputs() throws NoSuchAlgorithmException {
+    HmacDrbg drbg = new HmacDrbg(recordedEntropy(), recordedPersonalizationString());
+
+    assertArrayEquals(hexToBytes("7c"), drbg.nextBytes(1));
+    assertArrayEquals(hexToBytes("d3f3"), drbg.nextBytes(2));
+    assertArrayEquals(hexToBytes("76a927"), drbg.nextBytes(3));
+    assertArrayEquals(hexToBytes("884d351e"), drbg.nextBytes(4));
+    assertArrayEquals(hexToBytes("021319ef00d56b19a74986456eb91985e107e7e9c95528dc13b6fd58386cb6"), drbg.nextBytes(31));
+    assertArrayEquals(hexToBytes("a7f02a11a2087d4395fda9a1c4028e2ceff468aac6390c09d932adc34ad91828"), drbg.nextBytes(32));
+    assertArrayEquals(hexToBytes("6121f1332dd4e4ecaf514279a97a1decca93d7041aed46c3633a33eb024a85fac1"), drbg.nextBytes(33));
+    assertArrayEquals(
+            hexToBytes("3052d476c8ae1df10f975b263cea9d415124624b1d8a398af921e7706e7ce0a1"
+                    + "0bdca1dc990c02b1884e667a8b3dd2b46f1c54f30616d54f55888e5733c46328"),
+            drbg.nextBytes(64));
+
+    MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    digest.update(hexToBytes("7cd3f376a927884d351e"));
+    digest.update(hexToBytes("021319ef00d56b19a74986456eb91985e107e7e9c95528dc13b6fd58386cb6"));
+    digest.update(hexToBytes("a7f02a11a2087d4395fda9a1c4028e2ceff468aac6390c09d932adc34ad91828"));
+    digest.update(hexToBytes("6121f1332dd4e4ecaf514279a97a1decca93d7041aed46c3633a33eb024a85fac1"));
+    digest.update(hexToBytes("3052d476c8ae1df10f975b263cea9d415124624b1d8a398af921e7706e7ce0a1"
+                                     + "0bdca1dc990c02b1884e667a8b3dd2b46f1c54f30616d54f55888e5733c46328"));
+    digest.update(drbg.nextBytes(937));
+    digest.update(drbg.nextBytes(938));
+
+    assertArrayEquals(hexToBytes("88becfae45"), drbg.nextBytes(5));
+    digest.update(hexToBytes("88becfae45"));
+    assertArrayEquals(hexToBytes("e45704dd53dd985b92b83694e3c77b6839205f6ee49765ced35bb57bbd242d94"), digest.digest());
+  }
+
+  @Test
+  public void testHmacDrbgRandomRecordedOutputs() {
+    HmacDrbgRandom random = new HmacDrbgRandom(new HmacDrbg(recordedEntropy(), recordedPersonalizationString()));
+
+    assertEquals(2095171134, random.nextInt());
+    assertEquals(298, random.nextInt(1000));
+    assertEquals(8550408791945721118L, random.nextLong());
+    assertFalse(random.nextBoolean());
+    assertEquals(0.65600836f, random.nextFloat(), 0f);
+    assertEquals(0.379424168963299, random.nextDouble(), 0d);
+    assertEquals(0.15489426156310468, random.nextGaussian(), 0d);
+
+    byte[] bytes = new byte[7];
+    random.nextBytes(bytes);
+    assertArrayEquals(hexToBytes("c4774c4134b332"), bytes);
+  }
 }
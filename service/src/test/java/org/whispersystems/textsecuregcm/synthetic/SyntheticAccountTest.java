@@ -7,13 +7,19 @@ import org.whispersystems.curve25519.Curve25519;
 import org.whispersystems.libsignal.InvalidKeyException;
 import org.whispersystems.libsignal.ecc.Curve;
 import org.whispersystems.libsignal.ecc.ECPublicKey;
+import org.whispersystems.textsecuregcm.storage.AccountsManager;
 import org.whispersystems.textsecuregcm.util.DiskuvUuidUtil;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Base64;
+import java.util.Optional;
 import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import static org.whispersystems.textsecuregcm.synthetic.SyntheticProfileStateTestCommons.*;
 
 public class SyntheticAccountTest {
@@ -130,4 +136,62 @@ public class SyntheticAccountTest {
               softly.assertAll();
             });
   }
+
+  @Test
+  public void testManagerReusesSyntheticAccounts() {
+    AccountsManager accountsManager = mock(AccountsManager.class);
+    when(accountsManager.get(any(UUID.class))).thenReturn(Optional.empty());
+
+    PossiblySyntheticAccountsManager manager =
+        new PossiblySyntheticAccountsManager(accountsManager, new byte[HmacDrbg.ENTROPY_INPUT_SIZE_BYTES], 10);
+
+    PossiblySyntheticAccount account = manager.get(UUID1);
+    assertThat(manager.get(UUID1)).isSameAs(account);
+    assertThat(manager.get(UUID2)).isNotSameAs(account);
+    assertThat(account.getProfileName()).isEqualTo(NAME1);
+    assertThat(account.getIdentityKey()).isEqualTo("BQcixKf7KQvA5DZ4szVqiy9cP41U5MTboJFv0l51mL0T");
+  }
+
+  @Test
+  public void testDeviceKeysMatchPerCallDerivation() {
+    byte[] sharedEntropyInput = new byte[HmacDrbg.ENTROPY_INPUT_SIZE_BYTES];
+    int    multiDeviceAccounts = 0;
+
+    for (int i = 0; i < 20; i++) {
+      UUID                  uuid     = DiskuvUuidUtil.uuidForOutdoorEmailAddress("sample" + i + "@equator.com");
+      SyntheticAccount      account  = new SyntheticAccount(sharedEntropyInput, uuid);
+      DeterministicSampling sampling = new DeterministicSampling(Base64.getEncoder().withoutPadding().encodeToString(sharedEntropyInput) + uuid);
+
+      assertThat(account.getIdentityKey())
+          .isEqualTo(Base64.getEncoder().withoutPadding().encodeToString(sampling.deterministicSampledKeyPair("ik").getPublicKey().serialize()));
+
+      for (PossiblySyntheticDevice device : account.getDevices()) {
+        assertThat(device.getRegistrationId())
+            .isEqualTo(sampling.deterministicSampledIntInRange("rid" + device.getId(), 1, 16380 + 1));
+        assertThat(device.getSignedPreKey().getKeyId())
+            .isEqualTo(sampling.deterministicSampledIntInRange("spi" + device.getId(), 0, SyntheticAccount.MEDIUM_MAX_VALUE));
+        assertThat(device.getSignedPreKey().getPublicKey())
+            .isEqualTo(Base64.getEncoder().withoutPadding().encodeToString(sampling.deterministicSampledKeyPair("spk" + device.getId()).getPublicKey().serialize()));
+      }
+
+      if (account.getDevices().size() > 1) {
+        multiDeviceAccounts++;
+      }
+    }
+
+    assertThat(multiDeviceAccounts).isGreaterThan(0);
+  }
+
+  @Test
+  public void testManagerWithExpiryReusesSyntheticAccounts() {
+    AccountsManager accountsManager = mock(AccountsManager.class);
+    when(accountsManager.get(any(UUID.class))).thenReturn(Optional.empty());
+
+    PossiblySyntheticAccountsManager manager =
+        new PossiblySyntheticAccountsManager(accountsManager, new byte[HmacDrbg.ENTROPY_INPUT_SIZE_BYTES], 10, Duration.ofHours(1));
+
+    PossiblySyntheticAccount account = manager.get(UUID1);
+    assertThat(manager.get(UUID1)).isSameAs(account);
+    assertThat(account.getIdentityKey()).isEqualTo("BQcixKf7KQvA5DZ4szVqiy9cP41U5MTboJFv0l51mL0T");
+  }
 }
@@ -1,8 +1,16 @@
 package org.whispersystems.textsecuregcm.synthetic;
 
 import org.junit.Test;
+import org.whispersystems.textsecuregcm.storage.ProfilesManager;
+
+import java.util.Optional;
+import java.util.UUID;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import static org.whispersystems.textsecuregcm.synthetic.SyntheticProfileStateTestCommons.*;
 
 public class SyntheticProfileTest {
@@ -19,4 +27,19 @@ public class SyntheticProfileTest {
     assertThat(profile.getAboutEmoji()).isEqualTo(ABOUTEMOJI1);
     assertThat(profile.getCommitment()).containsExactly(COMMITMENT1);
   }
+
+  @Test
+  public void testManagerReusesSyntheticProfiles() {
+    ProfilesManager profilesManager = mock(ProfilesManager.class);
+    when(profilesManager.get(any(UUID.class), anyString())).thenReturn(Optional.empty());
+
+    PossiblySyntheticProfilesManager manager =
+        new PossiblySyntheticProfilesManager(profilesManager, new byte[HmacDrbg.ENTROPY_INPUT_SIZE_BYTES], 10);
+
+    Optional<PossiblySyntheticVersionedProfile> profile = manager.get(UUID1, KEYVERSION1);
+    assertThat(profile).isPresent();
+    assertThat(manager.get(UUID1, KEYVERSION1).orElseThrow()).isSameAs(profile.get());
+    assertThat(manager.get(UUID1, "another version")).isNotPresent();
+    assertThat(profile.get().getCommitment()).containsExactly(COMMITMENT1);
+  }
 }
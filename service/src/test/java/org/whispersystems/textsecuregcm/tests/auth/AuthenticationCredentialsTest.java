@@ -3,6 +3,14 @@ package org.whispersystems.textsecuregcm.tests.auth;
 import org.junit.Test;
 import org.whispersystems.textsecuregcm.auth.AuthenticationCredentials;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
 public class AuthenticationCredentialsTest {
@@ -31,5 +39,61 @@ public class AuthenticationCredentialsTest {
     assertThat(provided.verify("wrong")).isFalse();
   }
 
+  @Test
+  public void testMatchingBytes() {
+    AuthenticationCredentials credentials = new AuthenticationCredentials("mypassword".getBytes(StandardCharsets.UTF_8));
+
+    AuthenticationCredentials provided = new AuthenticationCredentials(credentials.getHashedAuthenticationToken(), credentials.getSalt());
+    assertThat(provided.verify("mypassword".getBytes(StandardCharsets.UTF_8))).isTrue();
+    assertThat(provided.verify("mypassword")).isTrue();
+    assertThat(provided.verify("wrong".getBytes(StandardCharsets.UTF_8))).isFalse();
+  }
+
+  @Test
+  public void testRotation() {
+    AuthenticationCredentials original = new AuthenticationCredentials("oldpassword");
+    assertThat(original.verify("oldpassword")).isTrue();
+
+    AuthenticationCredentials rotated = new AuthenticationCredentials("newpassword");
+    AuthenticationCredentials stored  = new AuthenticationCredentials(rotated.getHashedAuthenticationToken(), rotated.getSalt());
+
+    assertThat(stored.verify("oldpassword")).isFalse();
+    assertThat(stored.verify("newpassword")).isTrue();
+  }
+
+  @Test
+  public void testParallelVerification() throws Exception {
+    List<AuthenticationCredentials> credentials = new ArrayList<>();
+
+    for (int i = 0; i < 4; i++) {
+      credentials.add(new AuthenticationCredentials("password" + i));
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    try {
+      List<Callable<Boolean>> tasks = new ArrayList<>();
+
+      for (int thread = 0; thread < 16; thread++) {
+        tasks.add(() -> {
+          for (int i = 0; i < 1000; i++) {
+            int index = i % credentials.size();
+
+            if (!credentials.get(index).verify("password" + index) || credentials.get(index).verify("password" + (index + 1))) {
+              return false;
+            }
+          }
+
+          return true;
+        });
+      }
+
+      for (Future<Boolean> result : executor.invokeAll(tasks)) {
+        assertThat(result.get()).isTrue();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 
 }
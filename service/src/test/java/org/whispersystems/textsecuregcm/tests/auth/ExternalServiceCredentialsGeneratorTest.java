@@ -4,8 +4,16 @@ import org.junit.Test;
 import org.whispersystems.textsecuregcm.auth.ExternalServiceCredentialGenerator;
 import org.whispersystems.textsecuregcm.auth.ExternalServiceCredentials;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.whispersystems.textsecuregcm.tests.util.UuidHelpers.UUID_ALICE_STRING;
+import static org.whispersystems.textsecuregcm.tests.util.UuidHelpers.UUID_BOB_STRING;
 
 public class ExternalServiceCredentialsGeneratorTest {
 
@@ -27,4 +35,43 @@ public class ExternalServiceCredentialsGeneratorTest {
     assertThat(credentials.getPassword().startsWith(UUID_ALICE_STRING)).isTrue();
   }
 
+  @Test
+  public void testParallelGenerateAndValidate() throws Exception {
+    ExternalServiceCredentialGenerator generator = new ExternalServiceCredentialGenerator(new byte[32], new byte[32], true);
+    ExternalServiceCredentialGenerator other     = new ExternalServiceCredentialGenerator(new byte[32], new byte[32], true);
+    String                             alice     = other.generateFor(UUID_ALICE_STRING).getUsername();
+    String                             bob       = other.generateFor(UUID_BOB_STRING).getUsername();
+    ExecutorService                    executor  = Executors.newFixedThreadPool(8);
+
+    try {
+      List<Callable<Boolean>> tasks = new ArrayList<>();
+
+      for (int i = 0; i < 32; i++) {
+        String number   = i % 2 == 0 ? UUID_ALICE_STRING : UUID_BOB_STRING;
+        String username = i % 2 == 0 ? alice : bob;
+
+        tasks.add(() -> {
+          for (int j = 0; j < 200; j++) {
+            ExternalServiceCredentials credentials = generator.generateFor(number);
+
+            if (!credentials.getUsername().equals(username) ||
+                !generator.isValid(credentials.getPassword(), number, System.currentTimeMillis()) ||
+                generator.isValid(credentials.getPassword(), number.equals(UUID_ALICE_STRING) ? UUID_BOB_STRING : UUID_ALICE_STRING, System.currentTimeMillis()))
+            {
+              return false;
+            }
+          }
+
+          return true;
+        });
+      }
+
+      for (Future<Boolean> result : executor.invokeAll(tasks)) {
+        assertThat(result.get()).isTrue();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
 }
@@ -548,6 +548,35 @@ public class KeysControllerTest {
     verify(accounts).update(AuthHelper.VALID_ACCOUNT);
   }
 
+  @Test
+  public void appendKeysTestV2() throws Exception {
+    final PreKey       preKey       = new PreKey(31337, "foobar");
+    final SignedPreKey signedPreKey = new SignedPreKey(31338, "foobaz", "myvalidsig");
+    final String       identityKey  = "barbar";
+
+    PreKeyState preKeyState = new PreKeyState(identityKey, signedPreKey, List.of(preKey));
+
+    Response response =
+        resources.getJerseyTest()
+                 .target("/v2/keys")
+                 .queryParam("append", "true")
+                 .request()
+                 .header("Authorization", AuthHelper.getAccountAuthHeader(AuthHelper.VALID_BEARER_TOKEN))
+                 .header(DeviceAuthorizationHeader.DEVICE_AUTHORIZATION_HEADER, AuthHelper.getAuthHeader(AuthHelper.VALID_DEVICE_ID_STRING, AuthHelper.VALID_PASSWORD))
+                 .put(Entity.entity(preKeyState, MediaType.APPLICATION_JSON_TYPE));
+
+    assertThat(response.getStatus()).isEqualTo(204);
+
+    ArgumentCaptor<List> listCaptor = ArgumentCaptor.forClass(List.class);
+    verify(keysDynamoDb).append(eq(AuthHelper.VALID_ACCOUNT), eq(1L), listCaptor.capture());
+    verify(keysDynamoDb, never()).store(any(), anyLong(), any());
+
+    List<PreKey> capturedList = listCaptor.getValue();
+    assertThat(capturedList.size()).isEqualTo(1);
+    assertThat(capturedList.get(0).getKeyId()).isEqualTo(31337);
+    assertThat(capturedList.get(0).getPublicKey()).isEqualTo("foobar");
+  }
+
   @Test
   public void disabledPutKeysTestV2() throws Exception {
     final PreKey       preKey       = new PreKey(31337, "foobar");
@@ -9,6 +9,7 @@ import com.almworks.sqlite4java.SQLite;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
 import com.amazonaws.services.dynamodbv2.document.DynamoDB;
 import com.amazonaws.services.dynamodbv2.local.main.ServerRunner;
@@ -43,11 +44,14 @@ public class LocalDynamoDbRule extends ExternalResource {
     super.after();
   }
 
+  public AmazonDynamoDB getClient() {
+    return AmazonDynamoDBClientBuilder.standard()
+                                      .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration("http://localhost:" + port, "local-test-region"))
+                                      .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("accessKey", "secretKey")))
+                                      .build();
+  }
+
   public DynamoDB getDynamoDB() {
-    AmazonDynamoDBClientBuilder clientBuilder =
-            AmazonDynamoDBClientBuilder.standard()
-                                       .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration("http://localhost:" + port, "local-test-region"))
-                                       .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials("accessKey", "secretKey")));
-    return new DynamoDB(clientBuilder.build());
+    return new DynamoDB(getClient());
   }
 }
@@ -0,0 +1,77 @@
+package org.whispersystems.textsecuregcm.util;
+
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ThreadLocalMacTest {
+
+    private static final byte[] KEY = "an example key of some length".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testMatchesMac() throws Exception {
+        ThreadLocalMac mac = new ThreadLocalMac("HmacSHA256", KEY);
+
+        for (int i = 0; i < 10; i++) {
+            byte[] input = ("input " + i).getBytes(StandardCharsets.UTF_8);
+            assertThat(mac.doFinal(input)).isEqualTo(expectedMac(input));
+        }
+    }
+
+    @Test
+    public void testParallelUse() throws Exception {
+        ThreadLocalMac  mac      = new ThreadLocalMac("HmacSHA256", KEY);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        try {
+            List<Callable<Boolean>> tasks = new ArrayList<>();
+
+            for (int thread = 0; thread < 32; thread++) {
+                int prefix = thread;
+
+                tasks.add(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        byte[] input = (prefix + ":" + i).getBytes(StandardCharsets.UTF_8);
+
+                        if (!Arrays.equals(mac.doFinal(input), expectedMac(input))) {
+                            return false;
+                        }
+                    }
+
+                    return true;
+                });
+            }
+
+            for (Future<Boolean> result : executor.invokeAll(tasks)) {
+                assertThat(result.get()).isTrue();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testKeyCheckedOnFirstUse() {
+        ThreadLocalMac mac = new ThreadLocalMac("HmacSHA256", new byte[0]);
+
+        assertThatThrownBy(() -> mac.doFinal(new byte[1])).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static byte[] expectedMac(byte[] input) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(KEY, "HmacSHA256"));
+        return mac.doFinal(input);
+    }
+}